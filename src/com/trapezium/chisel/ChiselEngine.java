@@ -199,7 +199,9 @@ public class ChiselEngine extends Thread {
         chisel.setDataSource( sceneTokenEnumerator );
         nlv.addNodeLocatorListener( chisel );
         System.out.println( chisel.getActionMessage() );
-        vrmlScene.traverse( nlv );
+        if ( !nlv.locateNodes( vrmlScene )) {
+            vrmlScene.traverse( nlv );
+        }
         TokenEditor te = rr.recreateTokenStream( "",
             (TokenEditor)sceneTokenEnumerator, vrmlScene.getFirstTokenOffset(),
             vrmlScene.getLastTokenOffset(), null );
@@ -13,6 +13,12 @@ public class NodeFoundEvent extends EventObject {
 		this.name = name;
 	}
 
+	/** Reuse the event for another node, see NodeLocatorVisitor */
+	void setNode( Node n, String name ) {
+		this.node = n;
+		this.name = name;
+	}
+
 	public Node getNode() {
 		return( node );
 	}
@@ -5,20 +5,30 @@ import com.trapezium.pattern.Visitor;
 import com.trapezium.vrml.ROUTE;
 import com.trapezium.vrml.node.Node;
 import com.trapezium.vrml.node.PROTO;
+import com.trapezium.vrml.node.PROTObase;
+import com.trapezium.vrml.node.PROTOInstance;
 import com.trapezium.vrml.node.DEFUSENode;
 import com.trapezium.vrml.Scene;
+import com.trapezium.vrml.NodeIndex;
+import com.trapezium.vrml.ParseContext;
+import com.trapezium.vrml.grammar.VRML97;
 
 import java.util.Vector;
 import java.util.Hashtable;
+import java.util.Enumeration;
 
 //
 //  The NodeLocatorVisitor is the event source for NodeFoundEvents.  A NodeFoundEvent
 //  is generated whenever a node of one of the registered types is located.  This event
-//  is set to all registered listeners.
+//  is set to all registered listeners interested in that type.
 //
 //  For example, the IFS_ColorOptimizer only cares about IndexedFaceSet nodes.  The
 //  IFS_ColorOptimizer implements the NodeLocatorListener interface which has the
 //  "nodeFound" method.
+//
+//  The listeners interested in each node class are looked up once, and kept in a
+//  table by class.  The same NodeFoundEvent is used for every notification, so
+//  listeners must not keep the event after "nodeFound" returns.
 
 public class NodeLocatorVisitor extends Visitor {
 	Vector nodeNames;
@@ -26,8 +36,30 @@ public class NodeLocatorVisitor extends Visitor {
 	boolean all = false;
 	Hashtable nodesFound;
 
+	/** listeners for DEF and USE nodes, ROUTEs, and PROTO declarations */
+	NodeLocatorListener[] DEFlisteners;
+	NodeLocatorListener[] ROUTElisteners;
+	NodeLocatorListener[] PROTOlisteners;
+
+	/** DispatchEntry by node class, filled in as each class is first found */
+	Hashtable dispatchTable;
+
+	/** events reused for every notification */
+	NodeFoundEvent foundEvent;
+	RouteFoundEvent routeEvent;
+
+	/** visit levels of the PROTO declarations and instances being visited.  Only
+	 *  nodes within these can be reached more than once.
+	 */
+	int[] PROTOlevels;
+	int PROTOdepth;
+
 	public NodeLocatorVisitor( TokenEnumerator v ) {
 		super( v );
+		foundEvent = new NodeFoundEvent( this, null, null );
+		routeEvent = new RouteFoundEvent( this, null, "ROUTE" );
+		PROTOlevels = new int[ 8 ];
+		listenersChanged();
 	}
 
     /** PROTOs can result in duplicate notifications, this prevents this */
@@ -55,14 +87,50 @@ public class NodeLocatorVisitor extends Visitor {
 		for ( int i = 0; i < additionalNames; i++ ) {
 		    registerNodeName( nll.getAdditionalName( i ));
 		}
+		listenersChanged();
 	}
 
 	public void removeNodeLocatorListener( NodeLocatorListener nll ) {
 		if ( listeners != null ) {
 			listeners.removeElement( nll );
+			listenersChanged();
 		}
 	}
 
+	/** Sort the listeners into the DEF, ROUTE, and PROTO lists, and forget the
+	 *  listeners found for each node class.
+	 */
+	void listenersChanged() {
+	    Vector DEFlist = new Vector();
+	    Vector ROUTElist = new Vector();
+	    Vector PROTOlist = new Vector();
+	    if ( listeners != null ) {
+	        int count = listeners.size();
+	        for ( int i = 0; i < count; i++ ) {
+	            NodeLocatorListener nl = (NodeLocatorListener)listeners.elementAt( i );
+	            if ( nl.isDEFUSElistener() || nl.isDEFlistener() ) {
+	                DEFlist.addElement( nl );
+	            }
+	            if ( nl.isROUTElistener() ) {
+	                ROUTElist.addElement( nl );
+	            }
+	            if ( nl.isPROTOlistener() ) {
+	                PROTOlist.addElement( nl );
+	            }
+	        }
+	    }
+	    DEFlisteners = toArray( DEFlist );
+	    ROUTElisteners = toArray( ROUTElist );
+	    PROTOlisteners = toArray( PROTOlist );
+	    dispatchTable = new Hashtable();
+	}
+
+	static NodeLocatorListener[] toArray( Vector v ) {
+	    NodeLocatorListener[] result = new NodeLocatorListener[ v.size() ];
+	    v.copyInto( result );
+	    return( result );
+	}
+
 	public void registerNodeName( String nodeType ) {
 	    if ( nodeType == null ) {
 	        return;
@@ -83,6 +151,7 @@ public class NodeLocatorVisitor extends Visitor {
 		    registerNodeName( "ColorInterpolator" );
 		    registerNodeName( "CoordinateInterpolator" );
 		    registerNodeName( "NormalInterpolator" );
+		    return;
 		}
 		if ( nodeNames == null ) {
 			nodeNames = new Vector();
@@ -95,6 +164,95 @@ public class NodeLocatorVisitor extends Visitor {
 			}
 		}
 		nodeNames.addElement( nodeType );
+		dispatchTable = new Hashtable();
+	}
+
+	/** The listeners notified when a node of a particular class is found */
+	class DispatchEntry {
+	    /** name of the NodeFoundEvent, the base name of the node class */
+	    String name;
+	    NodeLocatorListener[] listeners;
+
+	    DispatchEntry( String name, NodeLocatorListener[] listeners ) {
+	        this.name = name;
+	        this.listeners = listeners;
+	    }
+	}
+
+	/** Get the listeners to notify when a node is found */
+	DispatchEntry getDispatchEntry( Node n ) {
+	    // the base name of a PROTO declaration is different for each PROTO
+	    if ( n instanceof PROTO ) {
+	        return( createDispatchEntry( n.getBaseName() ));
+	    }
+	    Class nodeClass = n.getClass();
+	    DispatchEntry entry = (DispatchEntry)dispatchTable.get( nodeClass );
+	    if ( entry == null ) {
+	        entry = createDispatchEntry( n.getBaseName() );
+	        dispatchTable.put( nodeClass, entry );
+	    }
+	    return( entry );
+	}
+
+	/** Find the listeners interested in nodes with a base name.  Nodes are only
+	 *  found if their name is registered, or if some listener wants all nodes.
+	 */
+	DispatchEntry createDispatchEntry( String baseName ) {
+	    Vector interested = new Vector();
+	    if (( listeners != null ) && ( all || isRegistered( baseName ))) {
+	        int count = listeners.size();
+	        for ( int i = 0; i < count; i++ ) {
+	            NodeLocatorListener nl = (NodeLocatorListener)listeners.elementAt( i );
+	            if ( isInterested( nl, baseName )) {
+	                interested.addElement( nl );
+	            }
+	        }
+	    }
+	    return( new DispatchEntry( baseName, toArray( interested )));
+	}
+
+	/** Check if a node name has been registered */
+	boolean isRegistered( String baseName ) {
+	    if ( nodeNames != null ) {
+	        int count = nodeNames.size();
+	        for ( int i = 0; i < count; i++ ) {
+	            String s = (String)nodeNames.elementAt( i );
+	            if ( s.compareTo( baseName ) == 0 ) {
+	                return( true );
+	            }
+	        }
+	    }
+	    return( false );
+	}
+
+	/** Check if a listener acts on nodes with a base name, using the same rules
+	 *  as Optimizer.nodeFound.
+	 */
+	static boolean isInterested( NodeLocatorListener nl, String baseName ) {
+	    if ( isInterested( nl.getNodeName(), baseName )) {
+	        return( true );
+	    }
+	    int additionalNames = nl.getNumberAdditionalNames();
+	    for ( int i = 0; i < additionalNames; i++ ) {
+	        if ( isInterested( nl.getAdditionalName( i ), baseName )) {
+	            return( true );
+	        }
+	    }
+	    return( false );
+	}
+
+	static boolean isInterested( String nodeType, String baseName ) {
+	    if ( nodeType == null ) {
+	        return( false );
+	    } else if ( nodeType.compareTo( "All" ) == 0 ) {
+	        return( true );
+	    } else if ( nodeType.compareTo( "CoordinateOwner" ) == 0 ) {
+	        return(( baseName.compareTo( "IndexedFaceSet" ) == 0 ) || ( baseName.compareTo( "IndexedLineSet" ) == 0 ));
+	    } else if ( nodeType.compareTo( "Interpolator" ) == 0 ) {
+	        return( baseName.indexOf( "Interpolator" ) > 0 );
+	    } else {
+	        return( nodeType.compareTo( baseName ) == 0 );
+	    }
 	}
 
 	public boolean visitObject( Object a ) {
@@ -102,94 +260,101 @@ public class NodeLocatorVisitor extends Visitor {
 	    //  System.out.print(" ->" + a.getClass().getName());
         //////
 
-		if (( a instanceof ROUTE ) && ( listeners != null )) {
-			ROUTE route = (ROUTE)a;
-			int count = listeners.size();
-			boolean routeListenerFound = false;
-			for ( int i = 0; i < count; i++ ) {
-				NodeLocatorListener nl = (NodeLocatorListener)listeners.elementAt( i );
-				if ( nl.isROUTElistener() ) {
-					routeListenerFound = true;
-					break;
-				}
-			}
-			if ( routeListenerFound ) {
-				RouteFoundEvent rfe = new RouteFoundEvent( this, route, "ROUTE" );
-				for ( int i = 0; i < count; i++ ) {
-					NodeLocatorListener nl = (NodeLocatorListener)listeners.elementAt( i );
-					if ( nl.isROUTElistener() ) {
-						nl.routeFound( rfe );
-					}
-				}
+		if (( a instanceof ROUTE ) && ( ROUTElisteners.length > 0 )) {
+			routeEvent.setRoute( (ROUTE)a );
+			for ( int i = 0; i < ROUTElisteners.length; i++ ) {
+				ROUTElisteners[i].routeFound( routeEvent );
 			}
 		} else if (( a instanceof Node ) && ( listeners != null )) {
 			//  We only find DEFed nodes, USEd nodes have already been DEFed somewhere
 			//  else, so any optimization of the node takes place in its DEFed version
 			Node n = (Node)a;
-			Scene xxxx = (Scene)n.getScene();
 			if ( n instanceof DEFUSENode ) {
 				DEFUSENode dun = (DEFUSENode)n;
-				int count = listeners.size();
-
-				// check if there are any DEF listeners.  This is separate from the
-				// notification because in most cases there won't be any.  If there are,
-				// we then create the NodeFoundEvent and notify them
-				boolean DEFlistenerFound = false;
-				for ( int i = 0; i < count; i++ ) {
-					NodeLocatorListener nl = (NodeLocatorListener)listeners.elementAt( i );
-					if ( nl.isDEFUSElistener() || nl.isDEFlistener() ) {
-						DEFlistenerFound = true;
-						break;
-					}
-				}
-
-				// If there are any DEF listeners, notify them
-				if ( DEFlistenerFound ) {
-					NodeFoundEvent nfe = new NodeFoundEvent( this, n, "DEFUSENode" );
-					for ( int i = 0; i < count; i++ ) {
-						NodeLocatorListener nl = (NodeLocatorListener)listeners.elementAt( i );
-						if ( nl.isDEFUSElistener() || nl.isDEFlistener() ) {
-							nl.nodeFound( nfe );
-						}
-					}
-				}
-
+				notifyAll( DEFlisteners, n, "DEFUSENode" );
 				if ( !dun.isDEF() ) {
 					return( false );
 				} else {
 					return( true );
 				}
 			} else if ( n instanceof PROTO ) {
-			    boolean protoListenerFound = false;
-			    int count = listeners.size();
-			    for ( int i = 0; i < count; i++ ) {
-			        NodeLocatorListener nl = (NodeLocatorListener)listeners.elementAt( i );
-			        if ( nl.isPROTOlistener() ) {
-    					NodeFoundEvent nfe = new NodeFoundEvent( this, n, "PROTO" );
-			            nl.nodeFound( nfe );
-			        }
+			    notifyAll( PROTOlisteners, n, "PROTO" );
+			}
+			if (( n instanceof PROTObase ) || ( n instanceof PROTOInstance )) {
+			    if ( PROTOdepth == PROTOlevels.length ) {
+			        int[] temp = new int[ PROTOdepth*2 ];
+			        System.arraycopy( PROTOlevels, 0, temp, 0, PROTOdepth );
+			        PROTOlevels = temp;
 			    }
+			    PROTOlevels[ PROTOdepth++ ] = visitLevel;
 			}
-			if ( !notified( n )) {
-    			if ( all ) {
-    				NodeFoundEvent nfe = new NodeFoundEvent( this, n, n.getBaseName() );
-    				notifyListeners( nfe );
-    			} else if ( nodeNames != null ) {
-    				int count = nodeNames.size();
-    				for ( int i = 0; i < count; i++ ) {
-    					String s = (String)nodeNames.elementAt( i );
-    					if ( n.getBaseName().compareTo( s ) == 0 ) {
-    						NodeFoundEvent nfe = new NodeFoundEvent( this, n, s );
-    						notifyListeners( nfe );
-    						break;
-    					}
-    				}
-    			}
+			DispatchEntry entry = getDispatchEntry( n );
+			if (( entry.listeners.length > 0 ) && (( PROTOdepth == 0 ) || !notified( n ))) {
+			    notifyAll( entry.listeners, n, entry.name );
 			}
 		}
 		return( true );
 	}
 
+	/** Done visiting at this level, keeps track of the PROTOs being visited */
+	public void done() {
+	    if (( PROTOdepth > 0 ) && ( PROTOlevels[ PROTOdepth - 1 ] == visitLevel )) {
+	        PROTOdepth--;
+	    }
+	    super.done();
+	}
+
+	/** Notify listeners that a node has been found */
+	void notifyAll( NodeLocatorListener[] nl, Node n, String name ) {
+	    if ( nl.length > 0 ) {
+	        foundEvent.setNode( n, name );
+	        for ( int i = 0; i < nl.length; i++ ) {
+	            nl[i].nodeFound( foundEvent );
+	        }
+	    }
+	}
+
+	/** Find the nodes with the NodeIndex the parser built for a Scene, instead
+	 *  of traversing the Scene.  This is only possible if every listener is
+	 *  looking for built in node types, and none for DEFs, ROUTEs, PROTOs, or
+	 *  all nodes.  Nodes are found in the same order as by a traversal.
+	 *
+	 *  @param scene Scene to search
+	 *  @return true if the listeners have been notified, false if the Scene has
+	 *     to be traversed instead
+	 */
+	public boolean locateNodes( Scene scene ) {
+	    NodeIndex nodeIndex = scene.getNodeIndex();
+	    if (( nodeIndex == null ) || ( listeners == null ) || ( nodeNames == null ) || all ) {
+	        return( false );
+	    }
+	    if (( DEFlisteners.length > 0 ) || ( ROUTElisteners.length > 0 ) || ( PROTOlisteners.length > 0 )) {
+	        return( false );
+	    }
+	    int nameCount = nodeNames.size();
+	    int[] nodeIds = new int[ nameCount ];
+	    for ( int i = 0; i < nameCount; i++ ) {
+	        nodeIds[i] = VRML97.getNodeId( (String)nodeNames.elementAt( i ));
+	        if ( nodeIds[i] == -1 ) {
+	            return( false );
+	        }
+	    }
+	    ParseContext context = ParseContext.get();
+	    Enumeration e = nodeIndex.elements( nodeIds );
+	    while ( e.hasMoreElements() ) {
+	        if ( context.isAborted() ) {
+	            break;
+	        }
+	        Node n = (Node)e.nextElement();
+	        int tokenOffset = n.getFirstTokenOffset();
+	        if (( tokenOffset != -1 ) && ( dataSource != null )) {
+	            dataSource.notifyByToken( tokenOffset );
+	        }
+	        DispatchEntry entry = getDispatchEntry( n );
+	        notifyAll( entry.listeners, n, entry.name );
+	    }
+	    return( true );
+	}
 
 	public void notifyListeners( NodeFoundEvent nfe ) {
 		if ( listeners != null ) {
@@ -717,25 +717,24 @@ public class ProcessedFile extends FactoryData implements Serializable {
                 X3dWriter x3dw = new X3dWriter( out, sceneTokenEditor );
                 s.twoPassTraverse( x3dw );
                 x3dw.finished();
-            } else if ( gzip ) {
-                for ( int i = 0; i < numberLines; i++ ) {
-                    GlobalProgressIndicator.markProgress();
-                    if ( saveInUnixFormat ) {
-                        out.print( sceneTokenEditor.getNospaceLineAt( i ));
-                        out.print( '\n' );
-                    } else {
-                        out.println( sceneTokenEditor.getNospaceLineAt( i ));
-                    }
-                }
             } else {
-                for ( int i = 0; i < numberLines; i++ ) {
-                    GlobalProgressIndicator.markProgress();
-                    if ( saveInUnixFormat ) {
-                        out.print( sceneTokenEditor.getTabLineAt( i ));
-                        out.print( '\n' );
-                    } else {
-                        out.println( sceneTokenEditor.getTabLineAt( i ));
+                // lines are written straight from the editor's bytes, without a String per line
+                try {
+                    for ( int i = 0; i < numberLines; i++ ) {
+                        GlobalProgressIndicator.markProgress();
+                        if ( gzip ) {
+                            sceneTokenEditor.writeNospaceLineTo( i, out );
+                        } else {
+                            sceneTokenEditor.writeLineTo( i, out, true );
+                        }
+                        if ( saveInUnixFormat ) {
+                            out.print( '\n' );
+                        } else {
+                            out.println();
+                        }
                     }
+                } catch ( IOException e ) {
+                    e.printStackTrace();
                 }
             }
             out.flush();
@@ -772,7 +771,7 @@ public class ProcessedFile extends FactoryData implements Serializable {
             if ( gzip ) {
                 fo = new GZIPOutputStream( fo );
             }
-            PrintStream out = new PrintStream( fo );
+            PrintStream out = new PrintStream( new BufferedOutputStream( fo, 65536 ));
             TokenEditor sceneTokenEditor = (TokenEditor) scene.getTokenEnumerator();
             int numberLines = sceneTokenEditor.getNumberLines();
             String progressStr = null;
@@ -13,7 +13,7 @@ package com.trapezium.chisel;
 import com.trapezium.parse.TokenEnumerator;
 import com.trapezium.edit.TokenEditor;
 import com.trapezium.vrml.NodeSelection;
-import com.trapezium.util.GlobalProgressIndicator;
+import com.trapezium.vrml.ParseContext;
 import com.trapezium.util.ProgressIndicator;
 
 import java.util.Vector;
@@ -291,7 +291,7 @@ public class RangeReplacer {
 			optimizeData( originalTokenEditor.getNumberTokens() );
 			int loopCount = 0;
 			while ( tokenScanner != -1 ) {
-			    if ( GlobalProgressIndicator.abortCurrentProcess ) {
+			    if ( ParseContext.isCurrentAborted() ) {
 			        return( null );
 			    }
 			    int index = startTokenIdx( tokenScanner );
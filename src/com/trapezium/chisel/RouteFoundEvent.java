@@ -13,6 +13,11 @@ public class RouteFoundEvent extends EventObject {
 		this.name = name;
 	}
 
+	/** Reuse the event for another ROUTE, see NodeLocatorVisitor */
+	void setRoute( ROUTE route ) {
+		this.route = route;
+	}
+
 	public ROUTE getRoute() {
 		return( route );
 	}
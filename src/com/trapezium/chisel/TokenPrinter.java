@@ -27,6 +27,7 @@ public class TokenPrinter {
 	protected TokenEnumerator dataSource;
 	int lastLineNumber = -1;
 	StringBuffer accumulator;
+	StringBuffer lineBuffer = new StringBuffer();
 	int lineCount = 0;
 	boolean prettyPrint = false;
 	int indentLevel = 0;
@@ -292,23 +293,13 @@ public class TokenPrinter {
 	 *  This is an optimization to prevent calls to TokenEnumerator methods,
 	 *  by providing those arrays directly in this object.
 	 */
-	int[] dataSourceLineNumber;
 	byte[] dataSourceByteArray;
 	int dataSourceNumberTokens;
-	short[] dataSourceTokenSizeArray;
-	short[] dataSourceLineOffsetArray;
 	int[] dataSourceLineIdx;
-	boolean[] dataSourceLineBreakArray;
-	byte[] dataSourceTokenTypeArray;
 	void setupDataSourceFields() {
-	    dataSourceLineNumber = dataSource.getLineNumberArray();
 	    dataSourceByteArray = dataSource.getFileData();
 	    dataSourceNumberTokens = dataSource.getNumberTokens();
-	    dataSourceTokenSizeArray = dataSource.getTokenSizeArray();
-	    dataSourceLineOffsetArray = dataSource.getLineOffsetArray();
 	    dataSourceLineIdx = dataSource.getLineIdx();
-	    dataSourceLineBreakArray = dataSource.getLineBreakArray();
-	    dataSourceTokenTypeArray = dataSource.getTokenTypeArray();
 	}
 
     /** Print a range of tokens.
@@ -329,8 +320,8 @@ public class TokenPrinter {
     	    // 2. token range on more than one line
     	    //    - first line may or may not be complete
     	    //    - last line may or may not be complete
-    	    int firstLineNumber = dataSourceLineNumber[ firstTokenOffset ];
-    	    int lastLineNumber = dataSourceLineNumber[ lastTokenOffset ];
+    	    int firstLineNumber = dataSource.getLineNumber( firstTokenOffset );
+    	    int lastLineNumber = dataSource.getLineNumber( lastTokenOffset );
     	    if ( firstLineNumber == lastLineNumber ) {
     	        filterPrint( firstTokenOffset, lastTokenOffset );
     	    } else {
@@ -339,12 +330,12 @@ public class TokenPrinter {
     	        boolean lastLineComplete = false;
     	        if ( firstTokenOffset == 0 ) {
     	            firstLineComplete = true;
-    	        } else if ( dataSourceLineNumber[ firstTokenOffset - 1 ] != firstLineNumber ) {
+    	        } else if ( dataSource.getLineNumber( firstTokenOffset - 1 ) != firstLineNumber ) {
     	            firstLineComplete = true;
     	        }
     	        if ( lastTokenOffset >= ( dataSourceNumberTokens - 1 )) {
     	            lastLineComplete = true;
-    	        } else if ( dataSourceLineNumber[ lastTokenOffset + 1 ] != lastLineNumber ) {
+    	        } else if ( dataSource.getLineNumber( lastTokenOffset + 1 ) != lastLineNumber ) {
     	            lastLineComplete = true;
     	        }
     	        int firstLineOffset = 0;
@@ -353,7 +344,7 @@ public class TokenPrinter {
     	        }
     	        int lastLineOffset = 0;
     	        if ( !lastLineComplete ) {
-    	            lastLineOffset = dataSource.getLineOffset( lastTokenOffset ) + dataSourceTokenSizeArray[ lastTokenOffset ];
+    	            lastLineOffset = dataSource.getLineOffset( lastTokenOffset ) + dataSource.getSize( lastTokenOffset );
     	        }
     	        if ( firstLineComplete ) {
     	            dataSink.addLine( dataSourceLineIdx[ firstLineNumber ], 
@@ -365,8 +356,9 @@ public class TokenPrinter {
 //    	                dataSourceLineOffsetArray, dataSourceTokenSizeArray,
 //    	                dataSourceLineBreakArray, dataSourceTokenTypeArray );
     	        } else {
-    	            String firstLine = dataSource.getLineAt( firstLineNumber );
-    	            printLine( firstLine.substring( firstLineOffset ));
+    	            lineBuffer.setLength( 0 );
+    	            dataSource.appendLineTo( firstLineNumber, firstLineOffset, -1, lineBuffer );
+    	            printLine( lineBuffer );
     	        }
     	        for ( int i = firstLineNumber + 1; i < lastLineNumber; i++ ) {
     	            dataSink.addLine( dataSourceLineIdx[ i ], 
@@ -389,8 +381,9 @@ public class TokenPrinter {
 //    	                dataSourceLineOffsetArray, dataSourceTokenSizeArray,
 //    	                dataSourceLineBreakArray, dataSourceTokenTypeArray );
     	        } else {
-    	            String lastLine = dataSource.getLineAt( lastLineNumber );
-    	            printLine( lastLine.substring( 0, lastLineOffset ));
+    	            lineBuffer.setLength( 0 );
+    	            dataSource.appendLineTo( lastLineNumber, 0, lastLineOffset, lineBuffer );
+    	            printLine( lineBuffer );
     	        }
     	    }
     	}
@@ -727,6 +720,16 @@ public class TokenPrinter {
 	    }
 	}
 
+	/** Print a line held in a StringBuffer, without converting it to a String */
+	public void printLine( StringBuffer s ) {
+	    if ( dataSink != null ) {
+	        dataSink.addLine( s, dataSinkTokenFactory );
+	    }
+	    if ( ps != null ) {
+	        ps.println( s );
+	    }
+	}
+
 	public void println( String s ) {
 		flush();
 		ps.println( s );
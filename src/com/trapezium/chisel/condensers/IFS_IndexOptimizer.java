@@ -69,6 +69,47 @@ public class IFS_IndexOptimizer extends Optimizer {
 		}
 	}
 
+	//
+	//  embedded class, hashtable key for a set of 2 or 3 float values.  One key is
+	//  reused for every lookup, a new one is only created for each value added.
+	//
+	class ValueKey {
+		int[] bits;
+
+		public ValueKey( int factor ) {
+			bits = new int[ factor ];
+		}
+
+		public ValueKey( ValueKey other ) {
+			bits = other.bits.clone();
+		}
+
+		public void set( int i, float f ) {
+			bits[i] = Float.floatToIntBits( f );
+		}
+
+		public int hashCode() {
+			int h = 0;
+			for ( int i = 0; i < bits.length; i++ ) {
+				h = h*31 + bits[i];
+			}
+			return( h );
+		}
+
+		public boolean equals( Object o ) {
+			if ( o instanceof ValueKey ) {
+				int[] otherBits = ((ValueKey)o).bits;
+				for ( int i = 0; i < bits.length; i++ ) {
+					if ( bits[i] != otherBits[i] ) {
+						return( false );
+					}
+				}
+				return( true );
+			}
+			return( false );
+		}
+	}
+
 /*
 	public IFS_IndexOptimizer( RangeReplacer rangeReplacer ) {
 		super( rangeReplacer, "IndexedFaceSet" );
@@ -267,6 +308,8 @@ public class IFS_IndexOptimizer extends Optimizer {
 			int scannerOffset = nodeField.getFirstTokenOffset();
 			dataSource.setState( scannerOffset );
 			int[] list = new int[ factor ];
+			ValueKey hashval = new ValueKey( factor );
+			StringBuffer tokval = new StringBuffer();
 			
 			// handle error case, otherwise get Array out of bounds exception
 			if ( numberNodeFieldValues > numberFaces ) {
@@ -284,26 +327,24 @@ public class IFS_IndexOptimizer extends Optimizer {
 				if ( scannerOffset == -1 ) {
 				    break;
 				}
-				String hashval = null;
-				if ( factor == 2 ) {
-					hashval = dataSource.getFloat( list[0] ) + " " + dataSource.getFloat( list[1] );
-				} else { // factor is 3
-					hashval = dataSource.getFloat( list[0] ) + " " + dataSource.getFloat( list[1] ) + " " + dataSource.getFloat( list[2] );
+				for ( int j = 0; j < factor; j++ ) {
+					hashval.set( j, dataSource.getFloat( list[j] ));
 				}
 
 				// look up the hashval in the hashtable, if it is there, this is a repeated
 				// value
 				Integer index = (Integer)valueTable.get( hashval );
 				if ( index == null ) {
-					valueTable.put( hashval, new Integer( nonRepeatingValues.size() ));
-					String tokval = null;
-					if ( factor == 2 ) {
-						tokval = dataSource.toString( list[0] ) + " " + dataSource.toString( list[1] );
-					} else {
-						tokval = dataSource.toString( list[0] ) + " " + dataSource.toString( list[1] ) + " " + dataSource.toString( list[2] );
+					valueTable.put( new ValueKey( hashval ), new Integer( nonRepeatingValues.size() ));
+					tokval.setLength( 0 );
+					for ( int j = 0; j < factor; j++ ) {
+						if ( j > 0 ) {
+							tokval.append( ' ' );
+						}
+						dataSource.append( list[j], tokval );
 					}
 					inMemoryIndex[ i ] = nonRepeatingValues.size();
-					nonRepeatingValues.addElement( tokval );
+					nonRepeatingValues.addElement( tokval.toString() );
 				} else {
 					// Its a repeat, its offset is indicated by "index"
 					inMemoryIndex[i] = index.intValue();
@@ -17,9 +17,14 @@ import com.trapezium.chisel.*;
 //  the current file.  It will only un-inline the first url listed in
 //  the url field.  If no urls are listed, does nothing.
 //
+//  Each inlined file is outlined first, and only parsed if it has nodes
+//  or PROTOs to merge.  An Inline of a file with neither is removed.
+//
 
 import java.io.PrintStream;
+import java.io.InputStream;
 import com.trapezium.parse.TokenEnumerator;
+import com.trapezium.parse.InputStreamFactory;
 import com.trapezium.vrml.node.Node;
 import com.trapezium.vrml.fields.ExposedField;
 import com.trapezium.vrml.fields.Field;
@@ -29,6 +34,8 @@ import com.trapezium.vrml.VrmlElement;
 import com.trapezium.vrml.visitor.PROTOcollector;
 import com.trapezium.vrml.Scene;
 import com.trapezium.vrml.ROUTE;
+import com.trapezium.vrml.grammar.SceneOutline;
+import com.trapezium.vrml.grammar.VRML97parser;
 import com.trapezium.vrml.node.PROTObase;
 import com.trapezium.util.StringUtil;
 
@@ -79,12 +86,28 @@ public class Uninline extends Optimizer {
             	        } else {
                 	        url = StringUtil.stripQuotes( url );
                 	    }
+                	    TokenEnumerator te = null;
                 	    if ( url != null ) {
+                	        te = readInline( url );
+                	    }
+                	    if ( te != null ) {
+                	        SceneOutline outline = new SceneOutline( te );
+                	        if (( outline.getNumberNodes() == 0 ) && ( outline.getNumberPROTOs() == 0 )) {
+                	            replaceRange( n.getFirstTokenOffset(), n.getLastTokenOffset(), null );
+                	            return;
+                	        }
+
                 	        // here we need to create a Scene,
                 	        // if it has PROTOs, print them at start of
                 	        // optimize, renaming to avoid namespace
                 	        // collisions
-                	        Scene s = new Scene( url );
+                	        Scene s = new Scene( url, te );
+                	        try {
+                	            VRML97parser parser = new VRML97parser();
+                	            parser.Build( te, s );
+                	        } catch ( Exception e ) {
+                	            // merge what was parsed, as when the Scene is created from the url
+                	        }
                 	        if ( s.getTokenEnumerator() != null ) {
                     	        PROTOcollector protoCollector = new PROTOcollector( s, (Scene)n.getScene() );
                     	        s.traverse( protoCollector );
@@ -106,6 +129,19 @@ public class Uninline extends Optimizer {
     	}
 	}
 
+	/** Read the tokens of an inlined file, null if it cannot be read */
+	TokenEnumerator readInline( String url ) {
+	    try {
+	        InputStream is = InputStreamFactory.getInputStream( url );
+	        if ( is != null ) {
+	            return( new TokenEnumerator( is, url ));
+	        }
+	    } catch ( Exception e ) {
+	        // could not create InputStream or TokenEnumerator
+	    }
+	    return( null );
+	}
+
 	// Replace an Inline node with the actual file
 	// First gets a prefix that is does not exist in the file.  This prefix
 	// is placed in front of every DEF/USE in the file being merged, to
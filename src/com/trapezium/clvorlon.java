@@ -15,11 +15,13 @@ import com.trapezium.vrml.visitor.UrlVisitor;
 import com.trapezium.vrml.visitor.DumpVisitor;
 import com.trapezium.vrml.visitor.ComplexityData;
 import com.trapezium.vrml.visitor.ComplexityVisitor;
+import com.trapezium.pattern.CompositeVisitor;
 import com.trapezium.vrml.node.NodeType;
 import com.trapezium.vrml.grammar.*;
 import com.trapezium.parse.TextLineParser;
 import com.trapezium.parse.TextLineEnumerator;
 import com.trapezium.parse.TokenEnumerator;
+import com.trapezium.parse.StreamingTokenEnumerator;
 import com.trapezium.parse.InputStreamFactory;
 import com.trapezium.vrml.*;
 import com.trapezium.vrml.node.PROTO;
@@ -62,6 +64,8 @@ public class clvorlon {
 	static boolean binary_import_file = false;
 	static boolean showTimes = false;
 	static boolean displaySceneGraph = false;
+	static boolean outlineOnly = false;
+	static boolean outlineDEFs = false;
 	static SpecHumanoid humanoid = null;
 	static int vrml1count = 0;
 	static int vrml2count = 0;
@@ -171,6 +175,11 @@ public class clvorlon {
 						binary_import_file = true;
 					} else if ( args[i].compareTo( "-graph" ) == 0 ) {
 					    displaySceneGraph = true;
+					} else if ( args[i].compareTo( "-outline" ) == 0 ) {
+					    outlineOnly = true;
+					} else if ( args[i].compareTo( "-outlineDEFs" ) == 0 ) {
+					    outlineOnly = true;
+					    outlineDEFs = true;
 					} else if ( args[i].compareTo( "-vorlon" ) == 0 ) {
 					    // ignore this, flag used by chisel to call vorlon directly
 					} else if ( args[i].indexOf( "-" ) == 0 ) {
@@ -536,6 +545,10 @@ public class clvorlon {
 		} else {
 			try {
 				InputStream is = InputStreamFactory.getInputStream( inFile );
+				if ( outlineOnly ) {
+				    outlineInputStream( inFile, is );
+				    return( 0 );
+				}
 				return( processInputStream( inFile, urlVisitor, is ));
 			} catch ( NoClassDefFoundError eee ) {
 			    eee.printStackTrace();
@@ -549,6 +562,32 @@ public class clvorlon {
 		}
 	}
 
+    /**
+     *  Print the outline of a single input stream, without checking it,
+     *  with its DEF names if requested, and its polygon count.  The file is
+     *  read in one pass, without keeping it in memory.
+     *
+     *  @param   inFile  the url used to create the input stream
+     *  @param   is      the InputStream created from the url
+     */
+	static void outlineInputStream( String inFile, InputStream is ) {
+	    long startTime = System.currentTimeMillis();
+	    StreamingTokenEnumerator v = new StreamingTokenEnumerator( is, inFile );
+	    SceneOutline outline = new SceneOutline( v, ComplexityVisitor.OutlineCapturedFields,
+	        ComplexityVisitor.OutlineCountedFields );
+	    outline.summary( System.out );
+	    if ( outlineDEFs ) {
+	        outline.listDEFs( System.out );
+	    }
+	    ComplexityVisitor cv = new ComplexityVisitor( new ComplexityData() );
+	    cv.visitOutline( outline );
+	    cv.summary( System.out );
+	    globalCD.addInfo( cv.getComplexityData() );
+	    if ( showTimes ) {
+	        System.out.println( "Outline took " + ( System.currentTimeMillis() - startTime ) + " ms" );
+	    }
+	}
+
     /**
      *  Process a single input stream, either a vrml or html file.
      *
@@ -604,8 +643,10 @@ public class clvorlon {
     				vrmlScene.traverse( hv );
     				hv.summarize( System.out );
     			}
-    			vrmlScene.traverse( lv );
-	    		vrmlScene.traverse( cv );
+    			CompositeVisitor validators = new CompositeVisitor( vrmlTokenEnumerator );
+    			validators.addVisitor( lv );
+    			validators.addVisitor( cv );
+    			vrmlScene.traverse( validators );
 	    	} else {
 				TokenPrinter tp = new TokenPrinter( System.out, vrmlTokenEnumerator );
 				tp.doPrettyPrint();
@@ -648,7 +689,9 @@ public class clvorlon {
 			NodeLocatorVisitor nlv = new NodeLocatorVisitor( vrmlScene.getTokenEnumerator() );
 //			Sweeper sweeper = new Sweeper( vrmlScene );
 			createChisels( rr, nlv, vrmlScene.getTokenEnumerator() );
-			vrmlScene.traverse( nlv );
+			if ( !nlv.locateNodes( vrmlScene )) {
+    			vrmlScene.traverse( nlv );
+    		}
 			rr.writeFile( inFile + ".chiseled", vrmlScene.getTokenEnumerator() ); //sweeper );
 			summarizeChisels( System.out );
 			return( 0 );
@@ -729,6 +772,8 @@ public class clvorlon {
 		System.out.println( "-out          output file check info to <fileName>.out" );
 		System.out.println( "-conformance  verify VRML 97 base profile conformance only" );
 		System.out.println( "-graph        show scene graph" );
+		System.out.println( "-outline      list nodes without checking" );
+		System.out.println( "-outlineDEFs  list nodes and DEF names without checking" );
 		System.out.println( "-nurbs        check blaxxun nurbs nodes" );
 	}
 
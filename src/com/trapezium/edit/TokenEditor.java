@@ -22,6 +22,10 @@ public class TokenEditor extends TokenEnumerator implements Lines {
 	    super( is, inFile, frl, fileSource );
 	}
 
+	public TokenEditor( File fileSource, String inFile, ProgressIndicator frl ) throws FileNotFoundException, IOException {
+	    super( fileSource, inFile, frl );
+	}
+
 	/** used when recreating token enumerator based on old one */
 	public TokenEditor() {
 	    super();
@@ -94,6 +98,7 @@ public class TokenEditor extends TokenEnumerator implements Lines {
     }
 
     public void setLine( String line, int lineNumber ) {
+        unpackTokens();
         int scanner = lineIdx[ lineNumber ];
         int len = line.length();
         expandSize( lineNumber, len*2 );
@@ -101,21 +106,25 @@ public class TokenEditor extends TokenEnumerator implements Lines {
             fileData[ scanner++ ] = (byte)line.charAt( i );
         }
         fileData[ scanner ] = 0;
-        dirtyFileData = true;
+        markLinesChanged( lineNumber, 1, 1 );
     }
 
 
 
     /** Split a line at a particular offset */
     public void splitLine( int lineNumber, int offset ) {
+        boolean untracked = untrackedEdit;
         // put a 0 character for line termination at the split location
         doInsertChar( lineNumber, offset, (char)0 );
         // update lineIdx array
         insertLine( lineNumber + 1, lineIdx[ lineNumber ] + offset + 1 );
+        untrackedEdit = untracked;
+        markLinesChanged( lineNumber, 1, 2 );
     }
 
     // join this line number to the next one
     public void joinLine( int lineNumber, boolean addSpace ) {
+        unpackTokens();
         // if we are at the last line, we can't join lines
         if ( lineNumber == ( numberLines - 1 )) {
             return;
@@ -156,6 +165,7 @@ public class TokenEditor extends TokenEnumerator implements Lines {
             lineIdx[ i ] = lineIdx[ i + 1 ];
         }
         numberLines--;
+        markLinesChanged( lineNumber, 2, 1 );
     }
 
     //
@@ -164,6 +174,7 @@ public class TokenEditor extends TokenEnumerator implements Lines {
     //  gets shifted 10000s of bytes times 100s of times ~ 1,000,000s of bytes
     //
     public void insertString( String s, int insertOffset ) {
+        unpackTokens();
         System.out.println( "InsertString '" + s );
         addLineCapacity();
         int nbytes = s.length() + 1;
@@ -247,6 +258,7 @@ public class TokenEditor extends TokenEnumerator implements Lines {
     /** Lines interface, split line at a particular offset */
     public void split_line( int tokenLine, int visualTokenLineOffset ) {
         System.out.println( "split line " + tokenLine + " at " + visualTokenLineOffset );
+        unpackTokens();
         int lineStart = lineIdx[ tokenLine ];
         int byteTokenLineOffset = visualTokenLineOffset;
         if (( fileData[ lineStart ] & 128 ) != 0 ) {
@@ -280,6 +292,7 @@ public class TokenEditor extends TokenEnumerator implements Lines {
 
     /** Insert one or more lines into TokenEditor */
     public void insertLines( String s, int lineNumber, int lineOffset ) {
+        unpackTokens();
         int len = s.length();
         int nLines = 1;
         int firstLineEnd = -1;
@@ -330,7 +343,8 @@ public class TokenEditor extends TokenEnumerator implements Lines {
 
 
     public void doDeleteChar( int lineNumber, int offset ) {
-        dirtyFileData = true;
+        unpackTokens();
+        markLinesChanged( lineNumber, 1, 1 );
         int lineByteOffset = lineIdx[ lineNumber ];
         int fileDataLocation = lineByteOffset + offset;
         if (( fileData[ lineByteOffset ] & 128 ) != 0 ) {
@@ -338,7 +352,7 @@ public class TokenEditor extends TokenEnumerator implements Lines {
             if ( offset < rleSpace ) {
                 rleSpace--;
                 if ( rleSpace == 0 ) {
-                    fileDataLocation = 0;
+                    fileDataLocation = lineByteOffset;
                 } else if ( rleSpace == 1 ) {
                     fileData[ lineByteOffset ] = (byte)' ';
                     return;
@@ -376,8 +390,9 @@ public class TokenEditor extends TokenEnumerator implements Lines {
             }
             rleSpace--;
             // find the tokens that are on that line number, shift their offset
+            int tokenLine = tokenLineNumber( lineNumber );
             for ( int i = 0; i < numberTokens; i++ ) {
-                if ( getLineNumber( i ) == lineNumber ) {
+                if ( getLineNumber( i ) == tokenLine ) {
                     lineOffsetArray[i] += rleSpace;
                 }
             }
@@ -386,6 +401,7 @@ public class TokenEditor extends TokenEnumerator implements Lines {
 
 
     public void doInsertChar( int lineNumber, int offset, char cval ) {
+        unpackTokens();
 //        System.out.println( "insert char '" + cval + "', fileDataIdx is " + fileDataIdx + " at line " + lineNumber + ", offset " + offset );
         int expansionSize = 20;
         int lineByteOffset = lineIdx[ lineNumber ];
@@ -408,7 +424,23 @@ public class TokenEditor extends TokenEnumerator implements Lines {
             }
             fileData[ endScanner ] = (byte)cval;
         }
-        dirtyFileData = true;
+        markLinesChanged( lineNumber, 1, 1 );
+    }
+
+    /** Get the line number tokens use for a line, tokens are not renumbered until
+     *  retokenize() is called.
+     *
+     *  @return line number in token numbering, or -1 if the line is one that
+     *     retokenize() replaces anyway
+     */
+    int tokenLineNumber( int lineNumber ) {
+        if (( dirtyFirstLine == -1 ) || untrackedEdit || ( lineNumber < dirtyFirstLine )) {
+            return( lineNumber );
+        } else if ( lineNumber > dirtyLastLine ) {
+            return( lineNumber - dirtyLineDelta );
+        } else {
+            return( -1 );
+        }
     }
 
     /** Lines interface */
@@ -545,17 +577,20 @@ public class TokenEditor extends TokenEnumerator implements Lines {
 
     /** Delete a particular line */
     public void deleteLine( int lineNumber ) {
+        unpackTokens();
         // numberLines is next empty spot.  numberLines-1 is last line
         for ( int i = lineNumber; i < ( numberLines - 1 ); i++ ) {
             lineIdx[i] = lineIdx[ i + 1 ];
         }
         numberLines--;
-        dirtyFileData = true;
+        markLinesChanged( lineNumber, 1, 0 );
     }
 
     /** Make an existing line empty */
     public void clearLine( int lineNumber ) {
+        unpackTokens();
         int fileDataOffset = lineIdx[ lineNumber ];
         fileData[ fileDataOffset ] = 0;
+        markLinesChanged( lineNumber, 1, 1 );
     }
 }
@@ -12,6 +12,7 @@ package com.trapezium.factory;
 
 import com.trapezium.vrml.Scene;
 import com.trapezium.vrml.VrmlElement;
+import com.trapezium.vrml.ParseContext;
 import com.trapezium.util.GlobalProgressIndicator;
 import com.trapezium.parse.TokenEnumerator;
 import com.trapezium.edit.TokenEditor;
@@ -168,6 +169,7 @@ public class ChiselFactory extends QueuedRequestFactory {
 	 *  stream is placed in the FactoryData object.
      */
 	public void handleRequest( FactoryData factoryData ) {
+	    ParseContext previousContext = ParseContext.get();
 		try {
 		    if ( rowState != null ) {
     		    rowState.rowRunning();
@@ -178,12 +180,17 @@ public class ChiselFactory extends QueuedRequestFactory {
                             System.out.println("Chisel: Failed to handle request (probably a queued request that is no longer valid)");
                             return;
                         }
+			// chisels use the options of the job that parsed the Scene
+			ParseContext context = vrmlScene.getParseContext();
+			ParseContext.bind( context );
 			TokenEnumerator sceneTokenEnumerator = vrmlScene.getTokenEnumerator();
 			NodeLocatorVisitor nlv = new NodeLocatorVisitor( sceneTokenEnumerator );
 			createChisels( rr, nlv, sceneTokenEnumerator, factoryData );
 			GlobalProgressIndicator.setProgressIndicator( progressListener, "Traversing scene...", 0 );
 			sceneTokenEnumerator.notifyLineNumbers( progressListener );
-			vrmlScene.traverse( nlv );
+			if ( !nlv.locateNodes( vrmlScene )) {
+    			vrmlScene.traverse( nlv );
+    		}
 			if ( progressListener != null ) {
     		    progressListener.reset();
     			progressListener.setTitle( factoryTitle );
@@ -194,7 +201,7 @@ public class ChiselFactory extends QueuedRequestFactory {
 			if ( rr.replacementsRegistered() ) {
     			TokenEditor te = rr.recreateTokenStream( factoryTitle, (TokenEditor)sceneTokenEnumerator, vrmlScene.getFirstTokenOffset(), vrmlScene.getLastTokenOffset(), progressListener );
     			rr.wipeout();
-    			if ( !GlobalProgressIndicator.abortCurrentProcess ) {
+    			if ( !context.isAborted() ) {
                     Document doc = factoryData.getDocument();
                     if ( doc != null ) {
                         doc.setLines( te );
@@ -225,6 +232,8 @@ public class ChiselFactory extends QueuedRequestFactory {
 			System.out.println( "ChiselFactory got an exception: " + e.toString() );
 			e.printStackTrace();
 			factoryData.setError( e );
+		} finally {
+		    ParseContext.bind( previousContext );
 		}
 	}
 
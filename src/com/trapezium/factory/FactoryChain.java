@@ -22,6 +22,8 @@ import com.trapezium.chisel.ChiselRow;
 import com.trapezium.chisel.RowState;
 import com.trapezium.chisel.Chisel;
 import com.trapezium.chisel.Optimizer;
+import com.trapezium.vrml.ParseContext;
+import com.trapezium.vrml.PROTOLibrary;
 
 /*
     The FactoryChain is a list of file processing factories.
@@ -142,6 +144,9 @@ public class FactoryChain extends QueuedRequestFactory {
 	public void submit( FactoryData factoryData ) {
 		if ( chainLinks.size() > 0 ) {
 		    factoryData.setError( null );
+		    factoryData.setParseContext( new ParseContext() );
+		    // libraries at urls that cannot be checked for changes are read again by each job
+		    PROTOLibrary.clearUnchecked();
 			factoryData.pushFactoryInfo();
 			runFactory( 0, factoryData );
 		}
@@ -159,7 +164,7 @@ public class FactoryChain extends QueuedRequestFactory {
 //		System.out.println( "GlobalProgressIndicator.abortCurrentProcess " + GlobalProgressIndicator.abortCurrentProcess );
 //		System.out.println( "nextFactoryNumber " + nextFactoryNumber  + ", chainLinks.size() " + chainLinks.size() );
 		if (( fd.getError() == null ) && !fd.errorsCreated() &&
-		    !GlobalProgressIndicator.abortCurrentProcess && 
+		    !fd.getParseContext().isAborted() &&
 		    (( nextFactoryNumber > 0 ) && ( nextFactoryNumber < chainLinks.size() ))) {
 			fd.setFactoryChain( this );
 			if ( nextFactoryNumber == ( chainLinks.size() - 1 )) {
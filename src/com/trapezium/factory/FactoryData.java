@@ -15,7 +15,7 @@ import java.util.Vector;
 import java.util.BitSet;
 
 import com.trapezium.vrml.Scene;
-import com.trapezium.vrml.VrmlElement;
+import com.trapezium.vrml.ParseContext;
 import com.trapezium.vrml.visitor.ParentClearer;
 import com.trapezium.edit.TokenEditor;
 import com.trapezium.parse.TokenEnumerator;
@@ -37,6 +37,11 @@ public class FactoryData implements DocumentLoader {
 
     boolean aborted;
     boolean validated;
+
+    /** options, counters and abort flag of the job processing this request,
+     *  a new one is created each time a FactoryChain starts on the request
+     */
+    ParseContext parseContext;
     
 	/** if this object is marked as temporary then its file will be
 	    deleted when it is closed. */
@@ -198,6 +203,8 @@ public class FactoryData implements DocumentLoader {
 	public String getErrorSummaryString() {
 	    errorSummaryString = null;
         if ( errorSummaryString == null ) {
+            Scene scene = getScene();
+            ParseContext context = ( scene != null ) ? scene.getParseContext() : ParseContext.get();
    		    StringBuffer sb = new StringBuffer();
    		    if ( getNumberErrors() == 0 ) {
    		        sb.append( "No errors" );
@@ -206,14 +213,14 @@ public class FactoryData implements DocumentLoader {
    		    } else {
    		        sb.append( getNumberErrors() + " errors" );
    		    }
-   		    if ( !VrmlElement.disableBaseProfile ) {
+   		    if ( !context.getDisableBaseProfile() ) {
        		    if ( getNumberNonconformances() == 1 ) {
        		        sb.append( ", 1 nonconformance" );
        		    } else if ( getNumberNonconformances() > 1 ) {
        		        sb.append( ", " + getNumberNonconformances() + " nonconformances" );
        		    }
        		}
-       		if ( !VrmlElement.nowarning ) {
+       		if ( !context.getNowarning() ) {
        		    if ( getNumberWarnings() == 1 ) {
        		        sb.append( ", 1 warning" );
        		    } else if ( getNumberWarnings() > 1 ) {
@@ -291,6 +298,24 @@ public class FactoryData implements DocumentLoader {
 	public boolean getAborted() {
 	    return( aborted );
 	}
+
+	/** Get the ParseContext of the job processing this request, created if there is none */
+	public ParseContext getParseContext() {
+	    if ( parseContext == null ) {
+	        parseContext = new ParseContext();
+	    }
+	    return( parseContext );
+	}
+
+	/** Set the ParseContext for a new job on this request */
+	public void setParseContext( ParseContext parseContext ) {
+	    this.parseContext = parseContext;
+	}
+
+	/** Abort processing of this request only, other requests keep running */
+	public void abort() {
+	    getParseContext().abort();
+	}
 	
 	/** Set the validated flag, abort operation closes files if it 
 	 *  occurs during the first validation.  Subsequent validations
@@ -12,11 +12,12 @@ package com.trapezium.factory;
 
 import com.trapezium.edit.EditLintVisitor;
 import com.trapezium.edit.TokenEditor;
-import com.trapezium.vrml.VrmlElement;
 import com.trapezium.vrml.Scene;
+import com.trapezium.vrml.ParseContext;
 import com.trapezium.util.GlobalProgressIndicator;
 import com.trapezium.vrml.visitor.ComplexityVisitor;
 import com.trapezium.vrml.visitor.ComplexityData;
+import com.trapezium.pattern.CompositeVisitor;
 import com.trapezium.vrml.grammar.VRML97parser;
 import com.trapezium.vrml.node.NodeType;
 import com.trapezium.vrml.node.DEFUSENode;
@@ -40,6 +41,10 @@ public class ParserFactory extends QueuedRequestFactory {
 	public void handleRequest( FactoryData request ) {
 	    System.out.println( "Checking syntax for " + request.getUrl() );
 		if (( request.getTokenEditor() != null ) && ( request.isParseEnabled() || request.getNodeVerifyChecksEnabled() )) {
+		    // options and counters of this request, so requests can run on several threads
+		    ParseContext context = request.getParseContext();
+		    context.setCreateCount( 0 );
+		    ParseContext previousContext = ParseContext.bind( context );
 			try {
 			    request.setPreviousNumberErrors();
 			    if ( hackTest ) {
@@ -60,21 +65,20 @@ public class ParserFactory extends QueuedRequestFactory {
         			}
     				VRML97parser parser = new VRML97parser();
     				if ( !request.getNodeVerifyChecksEnabled() ) {
-    				    NodeType.verifyDisabled = true;
+    				    context.setVerifyDisabled( true );
     				    if ( request.getUsageChecksEnabled() ) {
-    				        NodeType.usageChecksEnabled = true;
+    				        context.setUsageChecksEnabled( true );
     				    }
     				}
 
-                    VrmlElement.createCount = 0;
     				parser.Build( vrmlTokenEditor, vrmlScene );
-    				vrmlScene.setVrmlElementCount( VrmlElement.createCount );
-    				NodeType.verifyDisabled = false;
-    				NodeType.usageChecksEnabled = false;
+    				vrmlScene.setVrmlElementCount( context.getCreateCount() );
+    				context.setVerifyDisabled( false );
+    				context.setUsageChecksEnabled( false );
     				if ( pl != null ) {
         				pl.reset();
         			}
-    				if ( GlobalProgressIndicator.abortCurrentProcess ) {
+    				if ( context.isAborted() ) {
     				    request.setAborted( true );
     				} else {
            				request.setScene( vrmlScene );
@@ -87,23 +91,21 @@ public class ParserFactory extends QueuedRequestFactory {
                 			NodeType.verifyUsage( vrmlScene.getUsageTable(), vrmlScene.getTokenEnumerator(), vrmlScene.getErrorSummary() );
             				vrmlTokenEditor.notifyLineNumbers( pl );
             				EditLintVisitor lv = new EditLintVisitor( vrmlTokenEditor );
+            				ComplexityData cd = new ComplexityData();
+            				ComplexityVisitor cv = new ComplexityVisitor( cd, vrmlTokenEditor );
             				if ( pl != null ) {
                 				pl.reset();
-                				pl.setTitle( "Collecting errors..." );
+                				pl.setTitle( "Collecting errors and counting polygons..." );
                 			}
-            				//System.out.println( "traversing with lint visitor..." );
-            				vrmlScene.traverse( lv );
+            				// errors and polygons are collected in a single traversal
+            				CompositeVisitor validators = new CompositeVisitor( vrmlTokenEditor );
+            				validators.addVisitor( lv );
+            				validators.addVisitor( cv );
+            				vrmlScene.traverse( validators );
             				lv.setErrorKeys();
             				request.setLintInfo( lv );
-            				if ( !GlobalProgressIndicator.abortCurrentProcess ) {
-                        		ComplexityData cd = new ComplexityData();
-                				ComplexityVisitor cv = new ComplexityVisitor( cd, vrmlTokenEditor );
-                				if ( pl != null ) {
-                    				pl.reset();
-                    				pl.setTitle( "Counting polygons..." );
-                    			}
-                				//System.out.println( "traversing with complexity visitor..." );
-                    			vrmlScene.traverse( cv );
+            				// counts from an aborted traversal are incomplete
+            				if ( !context.isAborted() ) {
                     			lv.setInlineCount( cv.getInlineCount() );
                     			request.setPolygonCount( cd.getPolygonCount() );
                     			vrmlTokenEditor.notifyLineNumbers( null );
@@ -122,6 +124,8 @@ public class ParserFactory extends QueuedRequestFactory {
 System.out.println( "Got an exception: " + e.toString() );
 				e.printStackTrace();
 				request.setError( e );
+			} finally {
+			    ParseContext.bind( previousContext );
 			}
 		}
 	}
@@ -35,6 +35,10 @@ public abstract class QueuedRequestFactory extends FactoryDataUpdater implements
 	QueueRequestThread queueRequestThread;
 
     public void wipeout() {
+        // let the request being processed stop cleanly, before its thread is stopped
+        if ( data != null ) {
+            data.abort();
+        }
         if ( queueRequestThread != null ) {
             queueRequestThread.stop();
             queueRequestThread.wipeout();
@@ -10,12 +10,15 @@
 package com.trapezium.factory;
 
 import com.trapezium.edit.TokenEditor;
+import com.trapezium.parse.TokenEnumerator;
+import com.trapezium.parse.TokenCache;
 import java.io.*;
 import java.util.Vector;
 import java.net.URL;
 import java.util.zip.GZIPInputStream;
 
-import com.trapezium.util.GlobalProgressIndicator;
+import com.trapezium.vrml.ParseContext;
+import com.trapezium.util.PipelinedInputStream;
 import com.trapezium.edit.Document;
 import com.trapezium.util.ProgressIndicator;
 import com.trapezium.chisel.ChiselSet;
@@ -42,6 +45,22 @@ public class TokenStreamFactory extends QueuedRequestFactory {
 		return( "Token Stream Factory" );
 	}
 
+    /** Option, decompress gzipped files on a separate thread while tokenizing */
+    static public boolean pipelinedGzip = true;
+    static public void setPipelinedGzip( boolean value ) {
+        pipelinedGzip = value;
+    }
+
+    /** Option, save tokens of local files in a per-user cache, and load them from
+     *  the cache when the file has not changed.
+     *
+     *  @see TokenCache
+     */
+    static public boolean tokenCache = false;
+    static public void setTokenCache( boolean value ) {
+        tokenCache = value;
+    }
+
 
     // ugly hack to communicate between createTokenStream and handleRequest
     private File fileSource;
@@ -51,6 +70,9 @@ public class TokenStreamFactory extends QueuedRequestFactory {
 	//
 	public void handleRequest( FactoryData request ) {
 	    //System.out.println( "Creating tokens for " + request.getUrl() );
+	    // loading checks the request's ParseContext for an abort
+	    ParseContext context = request.getParseContext();
+	    ParseContext previousContext = ParseContext.bind( context );
 		try {
 		    // check if the request includes a dirty token enumerator.
 		    // If it does, this means we have a text-editted token enumerator,
@@ -68,11 +90,37 @@ public class TokenStreamFactory extends QueuedRequestFactory {
           			pl.setTitle( "Loading file ... " );
           		}
        			System.out.println( "Loading '" + request.getUrl() + "'" );
-                InputStream is = createTokenStream( request.getUrl(), request );
-    			TokenEditor te = new TokenEditor( is, request.getUrl(), pl, fileSource );
-    			if ( GlobalProgressIndicator.abortCurrentProcess ) {
+                TokenEditor te = null;
+                boolean cached = false;
+                File localFile = getLocalFile( request.getUrl() );
+                if ( localFile != null ) {
+                    fileSource = localFile;
+                    request.setGzip( isGzipped( localFile ));
+                    if ( tokenCache ) {
+                        // no need to tokenize a file that has not changed since it was cached
+                        te = new TokenEditor();
+                        cached = TokenCache.load( te, fileSource, true );
+                    }
+                }
+                if ( cached ) {
+                    te.setFileUrl( request.getUrl() );
+                } else if (( localFile != null ) && !request.isGzipped() && TokenEnumerator.mappedLoading ) {
+                    // local uncompressed file, tokenize directly from the file bytes
+                    te = new TokenEditor( fileSource, request.getUrl(), pl );
+                } else {
+                    InputStream is = createTokenStream( request.getUrl(), request );
+                    try {
+    			        te = new TokenEditor( is, request.getUrl(), pl, fileSource );
+    			    } finally {
+    			        is.close();
+    			    }
+    			}
+    			if ( context.isAborted() ) {
     			    request.setAborted( true );
     			} else {
+    			    if (( fileSource != null ) && tokenCache && !cached ) {
+    			        TokenCache.save( te, fileSource, true );
+    			    }
     			    if ( doc != null ) {
             			doc.setLines( te );
             			doc.setDocumentLoader( request );
@@ -87,9 +135,52 @@ public class TokenStreamFactory extends QueuedRequestFactory {
 		} catch ( Exception e ) {
 		    e.printStackTrace();
 			request.setError( e );
+		} finally {
+		    ParseContext.bind( previousContext );
 		}
 	}
 
+	/** Create the stream for gzipped data, pipelined if that option is on */
+	InputStream createGzipStream( InputStream compressed ) throws IOException {
+	    GZIPInputStream gzi = new GZIPInputStream( compressed, 65536 );
+	    if ( pipelinedGzip ) {
+	        return( new PipelinedInputStream( gzi ));
+	    } else {
+	        return( new BufferedInputStream( gzi ));
+	    }
+	}
+
+	/** Get the local file named by a url.
+	 *
+	 *  @return the File if the url is not a valid URL and names an existing file,
+	 *     otherwise null, in which case createTokenStream decides how to open it
+	 */
+	File getLocalFile( String url ) {
+	    try {
+	        new URL( url );
+	        return( null );
+	    } catch ( java.net.MalformedURLException e ) {
+	        File f = new File( url );
+	        if ( f.isFile() ) {
+	            return( f );
+	        } else {
+	            return( null );
+	        }
+	    }
+	}
+
+	/** Check if a local file starts with the gzip magic byte, the same test
+	 *  createTokenStream uses.
+	 */
+	boolean isGzipped( File f ) throws IOException {
+	    FileInputStream test = new FileInputStream( f );
+	    try {
+	        return( test.read() == 0x1f );
+	    } finally {
+	        test.close();
+	    }
+	}
+
 	InputStream createTokenStream( String url, FactoryData data ) throws FileNotFoundException, IOException {
 
 		fileSource = null;
@@ -103,7 +194,7 @@ public class TokenStreamFactory extends QueuedRequestFactory {
 			test.unread( testchar );
 			if ( testchar == 0x1f ) {
 			    data.setGzip( true );
-				return( new BufferedInputStream( new GZIPInputStream( test )));
+				return( createGzipStream( test ));
 //			} else if ( testchar == 'P' ) {
 			} else {
 				return( new BufferedInputStream( test ));
@@ -115,7 +206,7 @@ public class TokenStreamFactory extends QueuedRequestFactory {
 			test.unread( testchar );
 			if ( testchar == 0x1f ) {
 			    data.setGzip( true );
-				return( new BufferedInputStream( new GZIPInputStream( test )));
+				return( createGzipStream( test ));
 //			} else if ( testchar == 'P' ) {
 			} else {
 				return( new BufferedInputStream( test ));
@@ -0,0 +1,318 @@
+/*
+ * @(#)DecimalParser.java
+ *
+ * Copyright (c) 1998 by Trapezium Development LLC.  All Rights Reserved.
+ *
+ * The information in this file is the property of Trapezium Development LLC
+ * and may be used only in accordance with the terms of the license granted
+ * by Trapezium.
+ *
+ */
+package com.trapezium.parse;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+/**
+ *  Converts decimal number text in a byte array to float or double, without
+ *  creating a String.
+ *  <P>
+ *  Results are correctly rounded, the same as Float.parseFloat and
+ *  Double.parseDouble.  Up to 19 significant digits are accumulated into a
+ *  long.  Small values with small exponents are converted with one exact
+ *  multiply or divide.  Everything else uses the Eisel-Lemire algorithm, which
+ *  multiplies the digits by a 128 bit approximation of the power of ten.  Only
+ *  numbers with more than 19 significant digits that fall too close to a
+ *  rounding boundary are handed to Float.parseFloat or Double.parseDouble.
+ *  <P>
+ *  The text is an optional sign, digits with an optional decimal point, and
+ *  an optional exponent.  Conversion stops at the first byte that does not fit.
+ *
+ *  @see DecimalParserCheck
+ */
+public class DecimalParser {
+    /** Binary formats, float and double */
+    static final int MantissaBitsFloat = 23;
+    static final int MinimumExponentFloat = -127;
+    static final int InfinitePowerFloat = 0xFF;
+    static final int SmallestPowerOfTenFloat = -65;
+    static final int LargestPowerOfTenFloat = 38;
+    static final int MinRoundToEvenFloat = -17;
+    static final int MaxRoundToEvenFloat = 10;
+
+    static final int MantissaBitsDouble = 52;
+    static final int MinimumExponentDouble = -1023;
+    static final int InfinitePowerDouble = 0x7FF;
+    static final int SmallestPowerOfTenDouble = -342;
+    static final int LargestPowerOfTenDouble = 308;
+    static final int MinRoundToEvenDouble = -4;
+    static final int MaxRoundToEvenDouble = 23;
+
+    /** Range of the power of five table */
+    static final int SmallestPowerOfFive = -342;
+    static final int LargestPowerOfFive = 308;
+
+    /** Powers of ten that are exactly representable */
+    static final float[] exactFloatPowersOfTen = {
+        1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f };
+    static final double[] exactDoublePowersOfTen = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    /** 128 bit approximations of 5^q, high and low halves, for q from SmallestPowerOfFive
+     *  to LargestPowerOfFive.  Each is normalized so its top bit is set.
+     */
+    static final long[] powersOfFive = createPowersOfFive();
+
+    static long[] createPowersOfFive() {
+        long[] table = new long[ 2*( LargestPowerOfFive - SmallestPowerOfFive + 1 ) ];
+        BigInteger two128 = BigInteger.ONE.shiftLeft( 128 );
+        BigInteger two127 = BigInteger.ONE.shiftLeft( 127 );
+        BigInteger five = BigInteger.valueOf( 5 );
+        int idx = 0;
+        for ( int q = SmallestPowerOfFive; q < 0; q++ ) {
+            BigInteger power5 = five.pow( -q );
+            int z = power5.bitLength();
+            int b = ( q >= -27 ) ? z + 127 : 2*z + 128;
+            BigInteger c = BigInteger.ONE.shiftLeft( b ).divide( power5 ).add( BigInteger.ONE );
+            while ( c.compareTo( two128 ) >= 0 ) {
+                c = c.shiftRight( 1 );
+            }
+            table[ idx++ ] = c.shiftRight( 64 ).longValue();
+            table[ idx++ ] = c.longValue();
+        }
+        for ( int q = 0; q <= LargestPowerOfFive; q++ ) {
+            BigInteger power5 = five.pow( q );
+            while ( power5.compareTo( two127 ) < 0 ) {
+                power5 = power5.shiftLeft( 1 );
+            }
+            while ( power5.compareTo( two128 ) >= 0 ) {
+                power5 = power5.shiftRight( 1 );
+            }
+            table[ idx++ ] = power5.shiftRight( 64 ).longValue();
+            table[ idx++ ] = power5.longValue();
+        }
+        return( table );
+    }
+
+    /** Convert number text to a float
+     *
+     *  @param data bytes containing the text
+     *  @param scanner offset of the first byte of the number
+     *  @param size number of bytes in the number
+     *
+     *  @return the nearest float, 0 if there are no digits
+     */
+    static public float parseFloat( byte[] data, int scanner, int size ) {
+        return( Float.intBitsToFloat( (int)parse( data, scanner, size, true )));
+    }
+
+    /** Convert number text to a double
+     *
+     *  @param data bytes containing the text
+     *  @param scanner offset of the first byte of the number
+     *  @param size number of bytes in the number
+     *
+     *  @return the nearest double, 0 if there are no digits
+     */
+    static public double parseDouble( byte[] data, int scanner, int size ) {
+        return( Double.longBitsToDouble( parse( data, scanner, size, false )));
+    }
+
+    /** Convert number text to the bits of a float or double
+     *
+     *  @param data bytes containing the text
+     *  @param scanner offset of the first byte of the number
+     *  @param size number of bytes in the number
+     *  @param isFloat true for float bits, false for double bits
+     */
+    static long parse( byte[] data, int scanner, int size, boolean isFloat ) {
+        int start = scanner;
+        int end = scanner + size;
+        boolean negative = false;
+        if (( scanner < end ) && (( data[ scanner ] == '-' ) || ( data[ scanner ] == '+' ))) {
+            negative = ( data[ scanner ] == '-' );
+            scanner++;
+        }
+
+        // up to 19 significant digits, the rest only affect the exponent
+        long w = 0;
+        int nDigits = 0;
+        int q = 0;
+        boolean gotDigit = false;
+        boolean gotDot = false;
+        boolean truncated = false;
+        for ( ; scanner < end; scanner++ ) {
+            byte x = data[ scanner ];
+            if (( x >= '0' ) && ( x <= '9' )) {
+                gotDigit = true;
+                if (( nDigits == 0 ) && ( x == '0' )) {
+                    if ( gotDot ) {
+                        q--;
+                    }
+                } else if ( nDigits < 19 ) {
+                    w = w*10 + ( x - '0' );
+                    nDigits++;
+                    if ( gotDot ) {
+                        q--;
+                    }
+                } else {
+                    if ( x != '0' ) {
+                        truncated = true;
+                    }
+                    if ( !gotDot ) {
+                        q++;
+                    }
+                }
+            } else if (( x == '.' ) && !gotDot ) {
+                gotDot = true;
+            } else {
+                break;
+            }
+        }
+        if ( gotDigit && ( scanner < end ) && (( data[ scanner ] == 'e' ) || ( data[ scanner ] == 'E' ))) {
+            scanner++;
+            boolean negativeExponent = false;
+            if (( scanner < end ) && (( data[ scanner ] == '-' ) || ( data[ scanner ] == '+' ))) {
+                negativeExponent = ( data[ scanner ] == '-' );
+                scanner++;
+            }
+            int e = 0;
+            for ( ; scanner < end; scanner++ ) {
+                byte x = data[ scanner ];
+                if (( x < '0' ) || ( x > '9' )) {
+                    break;
+                }
+                if ( e < 100000 ) {
+                    e = e*10 + ( x - '0' );
+                }
+            }
+            q += negativeExponent ? -e : e;
+        }
+
+        long bits;
+        if ( w == 0 ) {
+            bits = 0;
+        } else if ( isFloat && !truncated && ( w > 0 ) && ( w <= ( 1L << 24 )) && ( q >= -10 ) && ( q <= 10 )) {
+            // both operands are exact, so one operation rounds correctly
+            float f = ( q < 0 ) ? (float)w / exactFloatPowersOfTen[ -q ] : (float)w * exactFloatPowersOfTen[ q ];
+            bits = Float.floatToRawIntBits( f );
+        } else if ( !isFloat && !truncated && ( w > 0 ) && ( w <= ( 1L << 53 )) && ( q >= -22 ) && ( q <= 22 )) {
+            double d = ( q < 0 ) ? (double)w / exactDoublePowersOfTen[ -q ] : (double)w * exactDoublePowersOfTen[ q ];
+            bits = Double.doubleToRawLongBits( d );
+        } else {
+            bits = toBinary( q, w, isFloat );
+            if ( truncated && ( bits != toBinary( q, w + 1, isFloat ))) {
+                // too close to call with 19 digits
+                return( slowParse( data, start, scanner - start, isFloat, negative, bits ));
+            }
+        }
+        if ( negative ) {
+            bits |= isFloat ? 0x80000000L : 0x8000000000000000L;
+        }
+        return( bits );
+    }
+
+    /** Convert number text with String parsing, for the rare numbers the fast path cannot decide.
+     *
+     *  @param bits positive result from the fast path, used if the text cannot be parsed as a String
+     */
+    static long slowParse( byte[] data, int start, int size, boolean isFloat, boolean negative, long bits ) {
+        try {
+            String s = new String( data, start, size, StandardCharsets.ISO_8859_1 );
+            if ( isFloat ) {
+                return( Float.floatToRawIntBits( Float.parseFloat( s )) & 0xFFFFFFFFL );
+            } else {
+                return( Double.doubleToRawLongBits( Double.parseDouble( s )));
+            }
+        } catch ( NumberFormatException e ) {
+            if ( negative ) {
+                bits |= isFloat ? 0x80000000L : 0x8000000000000000L;
+            }
+            return( bits );
+        }
+    }
+
+    /** Eisel-Lemire conversion of w*10^q to the bits of a positive float or double.
+     *
+     *  @param q decimal exponent
+     *  @param w decimal digits, unsigned, not zero
+     *  @param isFloat true for float bits, false for double bits
+     */
+    static long toBinary( int q, long w, boolean isFloat ) {
+        int mantissaBits = isFloat ? MantissaBitsFloat : MantissaBitsDouble;
+        int infinitePower = isFloat ? InfinitePowerFloat : InfinitePowerDouble;
+        if ( q < ( isFloat ? SmallestPowerOfTenFloat : SmallestPowerOfTenDouble )) {
+            return( 0 );
+        }
+        if ( q > ( isFloat ? LargestPowerOfTenFloat : LargestPowerOfTenDouble )) {
+            return( (long)infinitePower << mantissaBits );
+        }
+        int lz = Long.numberOfLeadingZeros( w );
+        w <<= lz;
+
+        // the top bits of the 192 bit product of w and the 128 bit power of five
+        int index = 2*( q - SmallestPowerOfFive );
+        long precisionMask = -1L >>> ( mantissaBits + 3 );
+        long high = multiplyHigh( w, powersOfFive[ index ] );
+        long low = w*powersOfFive[ index ];
+        if (( high & precisionMask ) == precisionMask ) {
+            long secondHigh = multiplyHigh( w, powersOfFive[ index + 1 ] );
+            low += secondHigh;
+            if ( Long.compareUnsigned( secondHigh, low ) > 0 ) {
+                high++;
+            }
+        }
+
+        int upperBit = (int)( high >>> 63 );
+        int shift = upperBit + 64 - mantissaBits - 3;
+        long mantissa = high >>> shift;
+        int power2 = ((( 152170 + 65536 )*q ) >> 16 ) + 63 + upperBit - lz
+            - ( isFloat ? MinimumExponentFloat : MinimumExponentDouble );
+        if ( power2 <= 0 ) {
+            // subnormal
+            if ( -power2 + 1 >= 64 ) {
+                return( 0 );
+            }
+            mantissa >>>= -power2 + 1;
+            mantissa += ( mantissa & 1 );
+            mantissa >>>= 1;
+            power2 = ( mantissa < ( 1L << mantissaBits )) ? 0 : 1;
+            return((( (long)power2 ) << mantissaBits ) | ( mantissa & (( 1L << mantissaBits ) - 1 )));
+        }
+        if (( Long.compareUnsigned( low, 1 ) <= 0 ) &&
+            ( q >= ( isFloat ? MinRoundToEvenFloat : MinRoundToEvenDouble )) &&
+            ( q <= ( isFloat ? MaxRoundToEvenFloat : MaxRoundToEvenDouble )) &&
+            (( mantissa & 3 ) == 1 )) {
+            // exactly halfway between two values, round to even
+            if (( mantissa << shift ) == high ) {
+                mantissa &= ~1L;
+            }
+        }
+        mantissa += ( mantissa & 1 );
+        mantissa >>>= 1;
+        if ( mantissa >= ( 2L << mantissaBits )) {
+            mantissa = ( 1L << mantissaBits );
+            power2++;
+        }
+        mantissa &= ~( 1L << mantissaBits );
+        if ( power2 >= infinitePower ) {
+            return( (long)infinitePower << mantissaBits );
+        }
+        return(( (long)power2 << mantissaBits ) | mantissa );
+    }
+
+    /** High 64 bits of the unsigned 128 bit product of two longs */
+    static long multiplyHigh( long x, long y ) {
+        long x0 = x & 0xFFFFFFFFL;
+        long x1 = x >>> 32;
+        long y0 = y & 0xFFFFFFFFL;
+        long y1 = y >>> 32;
+        long p00 = x0*y0;
+        long p01 = x0*y1;
+        long p10 = x1*y0;
+        long p11 = x1*y1;
+        long middle = p10 + ( p00 >>> 32 ) + ( p01 & 0xFFFFFFFFL );
+        return( p11 + ( middle >>> 32 ) + ( p01 >>> 32 ));
+    }
+}
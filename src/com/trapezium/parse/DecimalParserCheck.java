@@ -0,0 +1,131 @@
+/*
+ * @(#)DecimalParserCheck.java
+ *
+ * Copyright (c) 1998 by Trapezium Development LLC.  All Rights Reserved.
+ *
+ * The information in this file is the property of Trapezium Development LLC
+ * and may be used only in accordance with the terms of the license granted
+ * by Trapezium.
+ *
+ */
+package com.trapezium.parse;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ *  Command line check that DecimalParser gives exactly the same results as
+ *  Float.parseFloat and Double.parseDouble.
+ *  <P>
+ *  A fixed list of rounding boundary cases is checked first, then randomly
+ *  generated numbers.  Each mismatch is printed, and the exit status is 1 if
+ *  there were any.
+ *  <P>
+ *  Usage: java com.trapezium.parse.DecimalParserCheck [count [seed]]
+ *
+ *  @see DecimalParser
+ */
+public class DecimalParserCheck {
+    /** Numbers on or next to rounding boundaries, subnormals and overflow */
+    static final String[] edgeCases = {
+        "0", "-0", "0.0", "-0.0e5", "1", "-1", ".5", "5.", "+7", "1e0", "1E+2",
+        "0.1", "0.2", "0.3", "3.14159265358979323846", "2.718281828459045",
+        "9007199254740992", "9007199254740993", "9007199254740994", "9007199254740995",
+        "16777216", "16777217", "16777218", "16777219",
+        "1.00000005960464477539062499", "1.000000059604644775390625", "1.00000005960464477539062501",
+        "1.0000000000000001110223024625156540423631668090820312499",
+        "1.00000000000000011102230246251565404236316680908203125",
+        "1.0000000000000001110223024625156540423631668090820312501",
+        "3.4028234663852886e38", "3.4028235677973366e38", "3.4028235677973367e38", "3.5e38",
+        "1.1754943508222875e-38", "1.17549435E-38", "1.4e-45", "1.401298464324817e-45",
+        "7.006492321624085e-46", "7.006492321624086e-46", "1e-46",
+        "1.7976931348623157e308", "1.7976931348623158e308", "1.7976931348623159e308", "1e309",
+        "2.2250738585072014e-308", "2.2250738585072011e-308", "4.9e-324",
+        "2.4703282292062327e-324", "2.4703282292062328e-324", "1e-325",
+        "123456789012345678901234567890", "0.000000000000000000000000000000123456789012345678901",
+        "12345678901234567890.12345678901234567890e-10", "1e22", "1e23", "8.589973e9",
+        "0.7e-9", "1e-5", "4.35679e-10", "179769313486231570000000000000000000000000000000000"
+    };
+
+    static public void main( String[] args ) {
+        int count = 1000000;
+        long seed = 1;
+        if ( args.length > 0 ) {
+            count = Integer.parseInt( args[0] );
+        }
+        if ( args.length > 1 ) {
+            seed = Long.parseLong( args[1] );
+        }
+        int failures = 0;
+        for ( int i = 0; i < edgeCases.length; i++ ) {
+            failures += check( edgeCases[i] );
+        }
+        Random random = new Random( seed );
+        for ( int i = 0; i < count; i++ ) {
+            failures += check( randomNumber( random ));
+        }
+        System.out.println(( edgeCases.length + count ) + " numbers checked, " + failures + " mismatches" );
+        if ( failures > 0 ) {
+            System.exit( 1 );
+        }
+    }
+
+    /** Compare both float and double conversions of a number
+     *
+     *  @return number of mismatches, 0, 1 or 2
+     */
+    static int check( String s ) {
+        int failures = 0;
+        byte[] data = ( " " + s + " " ).getBytes( StandardCharsets.ISO_8859_1 );
+        int expectedFloat = Float.floatToIntBits( Float.parseFloat( s ));
+        int actualFloat = Float.floatToIntBits( DecimalParser.parseFloat( data, 1, s.length() ));
+        if ( expectedFloat != actualFloat ) {
+            System.out.println( "float " + s + ": expected " + Float.intBitsToFloat( expectedFloat ) + ", got " + Float.intBitsToFloat( actualFloat ));
+            failures++;
+        }
+        long expectedDouble = Double.doubleToLongBits( Double.parseDouble( s ));
+        long actualDouble = Double.doubleToLongBits( DecimalParser.parseDouble( data, 1, s.length() ));
+        if ( expectedDouble != actualDouble ) {
+            System.out.println( "double " + s + ": expected " + Double.longBitsToDouble( expectedDouble ) + ", got " + Double.longBitsToDouble( actualDouble ));
+            failures++;
+        }
+        return( failures );
+    }
+
+    /** Create number text the way VRML files contain it, mostly short
+     *  coordinates, sometimes long digit strings and large exponents.
+     */
+    static String randomNumber( Random random ) {
+        StringBuffer sb = new StringBuffer();
+        int sign = random.nextInt( 4 );
+        if ( sign == 0 ) {
+            sb.append( '-' );
+        } else if ( sign == 1 ) {
+            sb.append( '+' );
+        }
+        int nDigits = ( random.nextInt( 8 ) == 0 ) ? 1 + random.nextInt( 40 ) : 1 + random.nextInt( 9 );
+        int dot = random.nextInt( nDigits + 2 ) - 1;
+        if ( dot == -1 ) {
+            sb.append( '.' );
+        }
+        for ( int i = 0; i < nDigits; i++ ) {
+            sb.append( (char)( '0' + random.nextInt( 10 )));
+            if ( i == dot ) {
+                sb.append( '.' );
+            }
+        }
+        int exponent = random.nextInt( 4 );
+        if ( exponent == 0 ) {
+            sb.append( random.nextBoolean() ? 'e' : 'E' );
+            int e = random.nextInt( 700 ) - 350;
+            if (( e >= 0 ) && random.nextBoolean() ) {
+                sb.append( '+' );
+            }
+            sb.append( e );
+        } else if ( exponent == 1 ) {
+            sb.append( 'e' );
+            sb.append( random.nextInt( 100 ) - 50 );
+        }
+        return( sb.toString() );
+    }
+}
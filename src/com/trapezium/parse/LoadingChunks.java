@@ -0,0 +1,277 @@
+/*
+ * @(#)LoadingChunks.java
+ *
+ * Copyright (c) 1998 by Trapezium Development LLC.  All Rights Reserved.
+ *
+ * The information in this file is the property of Trapezium Development LLC
+ * and may be used only in accordance with the terms of the license granted
+ * by Trapezium.
+ *
+ */
+package com.trapezium.parse;
+
+import java.util.Vector;
+
+/**
+ *  Fixed size chunks holding the bytes and tokens of a TokenEnumerator while
+ *  it is being loaded.
+ *  <P>
+ *  When fileData or the token arrays fill up during loading, they are set aside
+ *  as a finished chunk and loading continues into new arrays, so growing never
+ *  copies what has already been loaded.  Once loading is done, the chunks are
+ *  handed to the TokenEnumerator as they are, and are only joined into single
+ *  arrays if the file is edited or the arrays themselves are asked for.
+ *  <P>
+ *  Lines never cross a byte chunk, so while loading, lineIdx holds offsets
+ *  within the chunk of each line.  Token line numbers are not affected, but
+ *  packed tokens hold byte offsets, which are also within the chunk of the
+ *  token until loading is done.
+ *  <P>
+ *  After loading, each byte chunk starts at a multiple of the byte chunk size,
+ *  a chunk larger than that taking up several slots, so the chunk holding a
+ *  byte offset is found with a shift.  Tokens are packed into chunks of exactly
+ *  the token chunk size, so a token is found the same way.
+ *
+ *  @see TokenEnumerator#loadLines
+ *  @see TokenEnumerator#bytesAt
+ *  @see TokenEnumerator#getPackedToken
+ */
+class LoadingChunks {
+    /** Byte chunks hold 1 << ByteChunkShift bytes, token chunks 1 << TokenChunkShift
+     *  tokens.  Only changed before a file is loaded.
+     */
+    static int ByteChunkShift = 22;
+    static int TokenChunkShift = 18;
+
+    /** Finished byte chunks, and the number of bytes used in each */
+    Vector byteChunks = new Vector();
+    int[] byteChunkLengths = new int[ 8 ];
+
+    /** First line and first token of each byte chunk, including the current one */
+    int[] chunkFirstLine = new int[ 8 ];
+    int[] chunkFirstToken = new int[ 8 ];
+
+    /** Finished token chunks, each an array holding the token arrays */
+    Vector tokenChunks = new Vector();
+    int[] tokenChunkLengths = new int[ 8 ];
+    int finishedTokens;
+
+    /** Add a value to the end of an array holding n values, growing the array if it is full */
+    static int[] append( int[] a, int n, int value ) {
+        if ( n == a.length ) {
+            int[] temp = new int[ n*2 ];
+            System.arraycopy( a, 0, temp, 0, n );
+            a = temp;
+        }
+        a[n] = value;
+        return( a );
+    }
+
+    /** Set aside the current fileData and start a new chunk with room for at least len bytes.
+     *  Called before a line is added, so the line starts the new chunk.
+     */
+    void finishBytes( TokenEnumerator te, int len ) {
+        int n = byteChunks.size();
+        byteChunks.addElement( te.fileData );
+        byteChunkLengths = append( byteChunkLengths, n, te.fileDataIdx );
+        chunkFirstLine = append( chunkFirstLine, n + 1, te.numberLines );
+        chunkFirstToken = append( chunkFirstToken, n + 1, finishedTokens + te.numberTokens );
+        int size = 1 << ByteChunkShift;
+        if ( size < len + 2 ) {
+            size = len + 2;
+        }
+        te.fileData = new byte[ size ];
+        te.fileDataIdx = 0;
+        te.byteArrayBoundary = size;
+    }
+
+    /** Set aside the current token arrays and start new ones with room for at least nTokens */
+    void finishTokens( TokenEnumerator te, int nTokens ) {
+        setAsideTokens( te );
+        int size = 1 << TokenChunkShift;
+        if ( size <= nTokens ) {
+            size = nTokens + 1;
+        }
+        if ( te.packedTokenArray != null ) {
+            te.packedTokenArray = new long[ size ];
+        } else {
+            te.lineNumberArray = new int[ size ];
+            te.lineOffsetArray = new short[ size ];
+            te.lineBreakArray = new boolean[ size ];
+            te.tokenTypeArray = new byte[ size ];
+            te.tokenSizeArray = new short[ size ];
+        }
+        if ( te.symbolArray != null ) {
+            te.symbolArray = new int[ size ];
+        }
+        te.numberTokens = 0;
+        te.tokenArrayBoundary = size;
+    }
+
+    /** Add the current token arrays to the finished token chunks */
+    void setAsideTokens( TokenEnumerator te ) {
+        Object[] arrays = new Object[7];
+        arrays[0] = te.lineNumberArray;
+        arrays[1] = te.lineOffsetArray;
+        arrays[2] = te.lineBreakArray;
+        arrays[3] = te.tokenTypeArray;
+        arrays[4] = te.tokenSizeArray;
+        arrays[5] = te.symbolArray;
+        arrays[6] = te.packedTokenArray;
+        tokenChunkLengths = append( tokenChunkLengths, tokenChunks.size(), te.numberTokens );
+        tokenChunks.addElement( arrays );
+        finishedTokens += te.numberTokens;
+    }
+
+    /** Hand the chunks to the TokenEnumerator.  If there was more than one
+     *  chunk of either kind, byte offsets become offsets in the chunked
+     *  storage, and all tokens are packed into token chunks.
+     */
+    void join( TokenEnumerator te ) {
+        int[] base = joinBytes( te );
+        if ( tokenChunks.size() > 0 ) {
+            joinTokens( te, base );
+        } else if (( base != null ) && ( te.packedTokenArray != null )) {
+            long[] packed = te.packedTokenArray;
+            int chunk = 0;
+            for ( int i = 0; i < te.numberTokens; i++ ) {
+                while (( chunk + 1 < base.length ) && ( i >= chunkFirstToken[ chunk + 1 ] )) {
+                    chunk++;
+                }
+                packed[i] = rebase( packed[i], base[ chunk ] );
+            }
+        }
+    }
+
+    /** Add the offset of its chunk to the byte offset of a packed token */
+    static long rebase( long p, int base ) {
+        return(( p & ~TokenEnumerator.PackedOffsetMask ) | (( p & TokenEnumerator.PackedOffsetMask ) + base ));
+    }
+
+    /** Hand the byte chunks to the TokenEnumerator, and adjust lineIdx to match.
+     *
+     *  @return the byte offset of each chunk, null if there was only one chunk
+     */
+    int[] joinBytes( TokenEnumerator te ) {
+        int nChunks = byteChunks.size();
+        if ( nChunks == 0 ) {
+            return( null );
+        }
+        byteChunks.addElement( te.fileData );
+        byteChunkLengths = append( byteChunkLengths, nChunks, te.fileDataIdx );
+        nChunks++;
+        int shift = ByteChunkShift;
+        int slotSize = 1 << shift;
+        int nSlots = 0;
+        for ( int i = 0; i < nChunks; i++ ) {
+            nSlots += slotsFor( byteChunkLengths[i], slotSize );
+        }
+        byte[][] chunks = new byte[ nSlots ][];
+        int[] chunkBase = new int[ nSlots ];
+        int[] chunkLength = new int[ nSlots ];
+        int[] base = new int[ nChunks ];
+        int slot = 0;
+        for ( int i = 0; i < nChunks; i++ ) {
+            byte[] data = (byte[])byteChunks.elementAt( i );
+            int len = byteChunkLengths[i];
+            base[i] = slot << shift;
+            for ( int j = slotsFor( len, slotSize ); j > 0; j-- ) {
+                chunks[ slot ] = data;
+                chunkBase[ slot ] = base[i];
+                chunkLength[ slot ] = len;
+                slot++;
+            }
+        }
+        for ( int i = 1; i < nChunks; i++ ) {
+            int lineEnd = ( i == nChunks - 1 ) ? te.numberLines : chunkFirstLine[ i + 1 ];
+            for ( int line = chunkFirstLine[i]; line < lineEnd; line++ ) {
+                te.lineIdx[ line ] += base[i];
+            }
+        }
+        te.byteChunks = chunks;
+        te.byteChunkBase = chunkBase;
+        te.byteChunkLength = chunkLength;
+        te.fileData = null;
+        te.fileDataIdx = base[ nChunks - 1 ] + te.fileDataIdx;
+        te.byteArrayBoundary = te.fileDataIdx;
+        byteChunks = null;
+        return( base );
+    }
+
+    /** Number of slots taken up by a byte chunk, at least one */
+    static int slotsFor( int len, int slotSize ) {
+        int n = ( len + slotSize - 1 )/slotSize;
+        return(( n == 0 ) ? 1 : n );
+    }
+
+    /** Pack all tokens into chunks of the token chunk size, freeing each loading
+     *  chunk once its tokens are packed.
+     *
+     *  @param base byte offset of each byte chunk, null if there was only one
+     */
+    void joinTokens( TokenEnumerator te, int[] base ) {
+        setAsideTokens( te );
+        int total = finishedTokens;
+        int shift = TokenChunkShift;
+        int mask = ( 1 << shift ) - 1;
+        int nChunks = ( total >>> shift ) + 1;
+        long[][] packed = new long[ nChunks ][];
+        int[][] symbols = ( te.symbolArray != null ) ? new int[ nChunks ][] : null;
+        for ( int i = 0; i < nChunks; i++ ) {
+            packed[i] = new long[ mask + 1 ];
+            if ( symbols != null ) {
+                symbols[i] = new int[ mask + 1 ];
+            }
+        }
+        int token = 0;
+        int byteChunk = 0;
+        for ( int i = 0; i < tokenChunks.size(); i++ ) {
+            Object[] arrays = (Object[])tokenChunks.elementAt( i );
+            tokenChunks.setElementAt( null, i );
+            int len = tokenChunkLengths[i];
+            int[] lineNumbers = (int[])arrays[0];
+            short[] lineOffsets = (short[])arrays[1];
+            boolean[] lineBreaks = (boolean[])arrays[2];
+            byte[] tokenTypes = (byte[])arrays[3];
+            short[] tokenSizes = (short[])arrays[4];
+            int[] symbolIds = (int[])arrays[5];
+            long[] packedTokens = (long[])arrays[6];
+            for ( int j = 0; j < len; j++, token++ ) {
+                long p;
+                if ( packedTokens != null ) {
+                    p = packedTokens[j];
+                    if ( base != null ) {
+                        while (( byteChunk + 1 < base.length ) && ( token >= chunkFirstToken[ byteChunk + 1 ] )) {
+                            byteChunk++;
+                        }
+                        p = rebase( p, base[ byteChunk ] );
+                    }
+                } else {
+                    int lineOffset = lineOffsets[j];
+                    if ( lineOffset < 0 ) {
+                        lineOffset += 65536;
+                    }
+                    p = TokenEnumerator.packToken( te.lineIdx[ lineNumbers[j]] + lineOffset,
+                        tokenSizes[j] & 0xffff, tokenTypes[j], lineBreaks[j] );
+                }
+                packed[ token >>> shift ][ token & mask ] = p;
+                if ( symbols != null ) {
+                    symbols[ token >>> shift ][ token & mask ] = symbolIds[j];
+                }
+            }
+        }
+        te.packedTokenChunks = packed;
+        te.symbolChunks = symbols;
+        te.packedTokenArray = null;
+        te.lineNumberArray = null;
+        te.lineOffsetArray = null;
+        te.lineBreakArray = null;
+        te.tokenTypeArray = null;
+        te.tokenSizeArray = null;
+        te.symbolArray = null;
+        te.numberTokens = total;
+        te.tokenArrayBoundary = nChunks << shift;
+        te.lastPackedLine = 0;
+        tokenChunks = null;
+    }
+}
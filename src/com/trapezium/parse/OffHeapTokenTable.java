@@ -0,0 +1,81 @@
+/*
+ * @(#)OffHeapTokenTable.java
+ *
+ * Copyright (c) 1998 by Trapezium Development LLC.  All Rights Reserved.
+ *
+ * The information in this file is the property of Trapezium Development LLC
+ * and may be used only in accordance with the terms of the license granted
+ * by Trapezium.
+ *
+ */
+package com.trapezium.parse;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+/**
+ *  Packed token table kept outside the Java heap, in direct ByteBuffers.
+ *  <P>
+ *  The table is split into fixed size buffers, so growing it only allocates
+ *  another buffer, and its size is not limited by the size of one buffer.
+ *  Cursors share the table with the TokenEnumerator they were created from,
+ *  so the buffers are never freed explicitly, they are reclaimed by the
+ *  garbage collector once nothing refers to the table.
+ *
+ *  @see TokenEnumerator#moveTokensOffHeap
+ */
+class OffHeapTokenTable {
+    /** 128K tokens, 1MB per buffer */
+    static final int BufferShift = 17;
+    static final int BufferSize = 1 << BufferShift;
+    static final int BufferMask = BufferSize - 1;
+
+    ByteBuffer[] buffers;
+    LongBuffer[] tables;
+    int capacity;
+
+    /** Class constructor
+     *
+     *  @param capacity initial number of tokens the table can hold
+     */
+    OffHeapTokenTable( int capacity ) {
+        buffers = new ByteBuffer[0];
+        tables = new LongBuffer[0];
+        ensureCapacity( capacity );
+    }
+
+    /** Get the number of tokens the table can hold without growing */
+    int getCapacity() {
+        return( capacity );
+    }
+
+    /** Get a packed token */
+    long get( int tokenOffset ) {
+        return( tables[ tokenOffset >>> BufferShift ].get( tokenOffset & BufferMask ));
+    }
+
+    /** Set a packed token */
+    void set( int tokenOffset, long value ) {
+        tables[ tokenOffset >>> BufferShift ].put( tokenOffset & BufferMask, value );
+    }
+
+    /** Add buffers until the table can hold <B>n</B> tokens */
+    void ensureCapacity( int n ) {
+        if ( n <= capacity ) {
+            return;
+        }
+        int nBuffers = ( n + BufferMask ) >>> BufferShift;
+        ByteBuffer[] newBuffers = new ByteBuffer[ nBuffers ];
+        LongBuffer[] newTables = new LongBuffer[ nBuffers ];
+        System.arraycopy( buffers, 0, newBuffers, 0, buffers.length );
+        System.arraycopy( tables, 0, newTables, 0, tables.length );
+        for ( int i = buffers.length; i < nBuffers; i++ ) {
+            newBuffers[i] = ByteBuffer.allocateDirect( BufferSize*8 ).order( ByteOrder.nativeOrder() );
+            newTables[i] = newBuffers[i].asLongBuffer();
+        }
+        buffers = newBuffers;
+        tables = newTables;
+        capacity = nBuffers*BufferSize;
+    }
+}
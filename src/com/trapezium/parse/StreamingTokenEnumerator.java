@@ -0,0 +1,567 @@
+/*
+ * @(#)StreamingTokenEnumerator.java
+ *
+ * Copyright (c) 1998 by Trapezium Development LLC.  All Rights Reserved.
+ *
+ * The information in this file is the property of Trapezium Development LLC
+ * and may be used only in accordance with the terms of the license granted
+ * by Trapezium.
+ *
+ */
+package com.trapezium.parse;
+
+import com.trapezium.vrml.ParseContext;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ *  Read-only TokenSource that keeps only a sliding window of the file
+ *  in memory, so that a single forward pass can be made over files larger
+ *  than the heap.
+ *  <P>
+ *  Token offsets and line numbers are absolute, exactly as they would be in
+ *  a TokenEnumerator holding the whole file.  Internally the window is an
+ *  ordinary TokenEnumerator.  When getNextToken() runs off the end of the
+ *  window, the older half of the window is discarded and more lines are read
+ *  from the InputStream.  Accessing a token or line that has been discarded
+ *  throws an IllegalStateException.
+ *  <P>
+ *  This is not a TokenEnumerator, since the token arrays, the byte array and
+ *  the editing methods of a TokenEnumerator all assume the whole file is in
+ *  memory.
+ *
+ *  @see TokenEnumerator
+ */
+public class StreamingTokenEnumerator implements TokenSource {
+    /** default number of bytes of text kept in the window */
+    static public int DefaultWindowSize = 4000000;
+
+    /** holds the lines and tokens currently in memory */
+    TokenEnumerator window;
+
+    /** source of lines */
+    LineReader lineReader;
+    TokenFactory tokenFactory;
+    boolean endOfStream;
+
+    /** url used to create the InputStream */
+    String fileUrl;
+
+    /** number of bytes of text the window is filled to */
+    int windowSize;
+
+    /** absolute offset of the first token in the window */
+    int tokenBase;
+
+    /** absolute line number of the first line in the window */
+    int lineBase;
+
+    /** Class constructor
+     *
+     *  @param is      InputStream containing the data
+     *  @param inFile  url used to create the InputStream
+     */
+    public StreamingTokenEnumerator( InputStream is, String inFile ) {
+        this( is, inFile, DefaultWindowSize );
+    }
+
+    /** Class constructor
+     *
+     *  @param is      InputStream containing the data
+     *  @param inFile  url used to create the InputStream
+     *  @param windowSize  number of bytes of text to keep in memory
+     */
+    public StreamingTokenEnumerator( InputStream is, String inFile, int windowSize ) {
+        fileUrl = inFile;
+        this.windowSize = windowSize;
+        window = new TokenEnumerator( windowSize + TokenEnumerator.InitialByteArraySize, windowSize/2, windowSize/8 + TokenEnumerator.InitialLineArraySize );
+        lineReader = new LineReader( is );
+        tokenFactory = new TokenFactory();
+        fill();
+    }
+
+    /** Read lines into the window until it holds windowSize bytes, or the stream ends.
+     *  At least one line is read, so that the window grows if nothing could be discarded.
+     */
+    void fill() {
+        try {
+            do {
+                String s = lineReader.readLine();
+                if ( s == null ) {
+                    endOfStream = true;
+                } else {
+                    window.addLine( s, tokenFactory );
+                }
+            } while ( !endOfStream && ( window.fileDataIdx < windowSize ));
+        } catch ( IOException e ) {
+            e.printStackTrace();
+            endOfStream = true;
+        }
+    }
+
+    /** Discard the older half of the window and read more lines */
+    void advance() {
+        int current = window.tokenScannerOffset;
+        if ( current > window.numberTokens ) {
+            current = window.numberTokens;
+        }
+        slide( current - window.numberTokens/2 );
+        fill();
+    }
+
+    /** Discard all lines before the line containing a particular token.
+     *
+     *  @param keep window offset of the first token that must be kept
+     */
+    void slide( int keep ) {
+        if ( keep <= 0 ) {
+            return;
+        }
+        TokenEnumerator w = window;
+        int keepLine = w.numberLines;
+        int firstToken = w.numberTokens;
+        if ( keep < w.numberTokens ) {
+            keepLine = w.lineNumberArray[ keep ];
+            firstToken = keep;
+            while (( firstToken > 0 ) && ( w.lineNumberArray[ firstToken - 1 ] == keepLine )) {
+                firstToken--;
+            }
+        }
+        int byteShift = w.fileDataIdx;
+        if ( keepLine < w.numberLines ) {
+            byteShift = w.lineIdx[ keepLine ];
+        }
+        System.arraycopy( w.fileData, byteShift, w.fileData, 0, w.fileDataIdx - byteShift );
+        w.fileDataIdx -= byteShift;
+        int nLines = w.numberLines - keepLine;
+        for ( int i = 0; i < nLines; i++ ) {
+            w.lineIdx[ i ] = w.lineIdx[ i + keepLine ] - byteShift;
+        }
+        w.numberLines = nLines;
+        int nTokens = w.numberTokens - firstToken;
+        System.arraycopy( w.lineNumberArray, firstToken, w.lineNumberArray, 0, nTokens );
+        System.arraycopy( w.lineOffsetArray, firstToken, w.lineOffsetArray, 0, nTokens );
+        System.arraycopy( w.lineBreakArray, firstToken, w.lineBreakArray, 0, nTokens );
+        System.arraycopy( w.tokenTypeArray, firstToken, w.tokenTypeArray, 0, nTokens );
+        System.arraycopy( w.tokenSizeArray, firstToken, w.tokenSizeArray, 0, nTokens );
+        if ( w.symbolArray != null ) {
+            System.arraycopy( w.symbolArray, firstToken, w.symbolArray, 0, nTokens );
+        }
+        for ( int i = 0; i < nTokens; i++ ) {
+            w.lineNumberArray[ i ] -= keepLine;
+        }
+        w.numberTokens = nTokens;
+        w.tokenScannerOffset -= firstToken;
+        w.lastLineChecked = -1;
+        w.firstTokenOnLastLineChecked = -1;
+        w.startOffsetOfNextLine = -1;
+        tokenBase += firstToken;
+        lineBase += keepLine;
+    }
+
+    /** Convert an absolute token offset to an offset in the window */
+    int rel( int tokenOffset ) {
+        if ( tokenOffset < 0 ) {
+            return( tokenOffset );
+        }
+        int result = tokenOffset - tokenBase;
+        if ( result < 0 ) {
+            throw new IllegalStateException( "token " + tokenOffset + " no longer in streaming window" );
+        }
+        return( result );
+    }
+
+    /** Convert a window token offset to an absolute offset */
+    int abs( int tokenOffset ) {
+        if ( tokenOffset < 0 ) {
+            return( tokenOffset );
+        }
+        return( tokenOffset + tokenBase );
+    }
+
+    /** Convert an absolute line number to a line number in the window */
+    int relLine( int lineNumber ) {
+        int result = lineNumber - lineBase;
+        if ( result < 0 ) {
+            throw new IllegalStateException( "line " + lineNumber + " no longer in streaming window" );
+        }
+        return( result );
+    }
+
+    public String getFileUrl() {
+        return( fileUrl );
+    }
+
+    /** Has the entire InputStream been read? */
+    public boolean isEndOfStream() {
+        return( endOfStream );
+    }
+
+    /** Get the number of tokens read so far */
+    public int getNumberTokens() {
+        return( tokenBase + window.numberTokens );
+    }
+
+    /** Get the number of lines read so far */
+    public int getNumberLines() {
+        return( lineBase + window.numberLines );
+    }
+
+    public boolean hasLines() {
+        return( getNumberLines() > 0 );
+    }
+
+    /********************* SCANNING **************************/
+	public int getNextToken() {
+	    int state = window.tokenScannerOffset;
+	    int result = window.getNextToken();
+	    while (( result == -1 ) && !endOfStream && !ParseContext.isCurrentAborted() ) {
+	        window.tokenScannerOffset = state;
+	        advance();
+	        state = window.tokenScannerOffset;
+	        result = window.getNextToken();
+	    }
+	    return( abs( result ));
+	}
+
+	public int getNextToken( int prevToken ) {
+	    if ( prevToken != -1 ) {
+	        setState( prevToken );
+	        return( getNextToken() );
+	    } else {
+	        return( -1 );
+	    }
+	}
+
+	public int getNextNumber( int tokenOffset ) {
+	    while ( tokenOffset > 0 ) {
+	        if ( isNumber( tokenOffset )) {
+	            return( tokenOffset );
+	        } else {
+	            tokenOffset = getNextToken( tokenOffset );
+	        }
+	    }
+	    return( tokenOffset );
+	}
+
+	public boolean hasMoreElements() {
+	    int state = getState();
+	    int nextToken = getNextToken();
+	    setState( state );
+	    return( nextToken != -1 );
+	}
+
+	public int getState() {
+	    return( abs( window.tokenScannerOffset ));
+	}
+
+	public int getCurrentTokenOffset() {
+	    return( getState() );
+	}
+
+	public void setState( int state ) {
+	    window.tokenScannerOffset = rel( state );
+	}
+
+    public void skipTo( int tokenType ) {
+        int prevToken = getState();
+        int scanner = prevToken;
+        while (( scanner != -1 ) && ( getType( scanner ) != tokenType )) {
+            prevToken = scanner;
+            scanner = getNextToken();
+        }
+        setState( prevToken );
+    }
+
+    public int skipNonNumbers() {
+        int scanner = getState();
+        while (( scanner != -1 ) && !isNumber( scanner )) {
+            scanner = getNextToken();
+        }
+        return( scanner );
+    }
+
+    public int skipToNumber( int offset ) {
+        int currentOffset = 0;
+        while ( true ) {
+            int scanner = window.tokenScannerOffset;
+            if ( scanner >= window.numberTokens ) {
+                if ( endOfStream ) {
+                    return( -1 );
+                }
+                advance();
+                continue;
+            }
+            if ( window.tokenTypeArray[ scanner ] == NumberToken ) {
+                if ( currentOffset == offset ) {
+                    return( abs( scanner ));
+                } else {
+                    currentOffset++;
+                }
+            }
+            window.tokenScannerOffset++;
+        }
+    }
+
+	public void disableCommentSkipping() {
+	    window.disableCommentSkipping();
+	}
+
+	public void enableCommentSkipping() {
+	    window.enableCommentSkipping();
+	}
+
+    /********************* TOKEN ACCESS **************************/
+	public int getType( int offset ) {
+	    return( window.getType( rel( offset )));
+	}
+
+	public String getTokenType( int offset ) {
+	    return( window.getTokenType( rel( offset )));
+	}
+
+    public int getSize( int tokenOffset ) {
+        return( window.getSize( rel( tokenOffset )));
+    }
+
+    public int length( int offset ) {
+        return( window.length( rel( offset )));
+    }
+
+    public char charAt( int charOffset, int tokenOffset ) {
+        return( window.charAt( charOffset, rel( tokenOffset )));
+    }
+
+    public int getIntValue( int offset ) {
+        return( window.getIntValue( rel( offset )));
+    }
+
+    public boolean isHexInt( int offset ) {
+        return( window.isHexInt( rel( offset )));
+    }
+
+    public boolean isNegativeOne( int offset ) {
+        return( window.isNegativeOne( rel( offset )));
+    }
+
+    public int valueBeforeDot( int offset ) {
+        return( window.valueBeforeDot( rel( offset )));
+    }
+
+    public int zerosAfterDot( int offset ) {
+        return( window.zerosAfterDot( rel( offset )));
+    }
+
+    public int valueAfterDot( int offset ) {
+        return( window.valueAfterDot( rel( offset )));
+    }
+
+    public float getFloat( int offset ) {
+        return( window.getFloat( rel( offset )));
+    }
+
+    public double getDouble( int offset ) {
+        return( window.getDouble( rel( offset )));
+    }
+
+    public int countNumbers( int firstToken, int lastToken ) {
+        return( window.countNumbers( rel( firstToken ), rel( lastToken )));
+    }
+
+    public float[] getFloatArray( int firstToken, int lastToken ) {
+        return( window.getFloatArray( rel( firstToken ), rel( lastToken )));
+    }
+
+    public int[] getIntArray( int firstToken, int lastToken ) {
+        return( window.getIntArray( rel( firstToken ), rel( lastToken )));
+    }
+
+    public boolean isFloat( int offset ) {
+        return( window.isFloat( rel( offset )));
+    }
+
+    public boolean hasChar( int offset, char cval ) {
+        return( window.hasChar( rel( offset ), cval ));
+    }
+
+    public void append( int tokenOffset, StringBuffer accumulator ) {
+        window.append( rel( tokenOffset ), accumulator );
+    }
+
+    public String toString( int tokenOffset ) {
+        return( window.toString( rel( tokenOffset )));
+    }
+
+    public void appendTo( int tokenOffset, Appendable a ) throws IOException {
+        window.appendTo( rel( tokenOffset ), a );
+    }
+
+    public void writeTo( int tokenOffset, OutputStream out ) throws IOException {
+        window.writeTo( rel( tokenOffset ), out );
+    }
+
+    public TokenText getTokenText( int tokenOffset, TokenText text ) {
+        return( window.getTokenText( rel( tokenOffset ), text ));
+    }
+
+    public byte[] getCharArray( int t1, int t2 ) {
+        return( window.getCharArray( rel( t1 ), rel( t2 )));
+    }
+
+    public byte[] getCharArray( int t1, int t2, int t3 ) {
+        return( window.getCharArray( rel( t1 ), rel( t2 ), rel( t3 )));
+    }
+
+    public boolean isRightBracketOrBrace( int offset ) {
+        return( window.isRightBracketOrBrace( rel( offset )));
+    }
+
+    public boolean isQuotedString( int offset ) {
+        return( window.isQuotedString( rel( offset )));
+    }
+
+    public boolean isRightBracket( int offset ) {
+        return( window.isRightBracket( rel( offset )));
+    }
+
+    public boolean isLeftBracket( int offset ) {
+        return( window.isLeftBracket( rel( offset )));
+    }
+
+    public boolean isRightBrace( int offset ) {
+        return( window.isRightBrace( rel( offset )));
+    }
+
+    public boolean isLeftBrace( int offset ) {
+        return( window.isLeftBrace( rel( offset )));
+    }
+
+    public boolean isSpecialCharacter( int offset ) {
+        return( window.isSpecialCharacter( rel( offset )));
+    }
+
+    public boolean isContinuationString( int offset ) {
+        return( window.isContinuationString( rel( offset )));
+    }
+
+    public boolean isNumber( int offset ) {
+        return( window.isNumber( rel( offset )));
+    }
+
+    public boolean isName( int offset ) {
+        return( window.isName( rel( offset )));
+    }
+
+    public boolean isComment( int offset ) {
+        return( window.isComment( rel( offset )));
+    }
+
+    public SymbolTable getSymbolTable() {
+        return( window.getSymbolTable() );
+    }
+
+    public int getSymbol( int tokenOffset ) {
+        return( window.getSymbol( rel( tokenOffset )));
+    }
+
+    public boolean isSymbol( int tokenOffset, int symbol ) {
+        return( window.isSymbol( rel( tokenOffset ), symbol ));
+    }
+
+    public boolean sameAs( String s ) {
+        return( window.sameAs( s ));
+    }
+
+    public boolean sameAs( int tokenOffset, String s ) {
+        return( window.sameAs( rel( tokenOffset ), s ));
+    }
+
+    public boolean nearlySameAs( int tokenOffset, String s ) {
+        return( window.nearlySameAs( rel( tokenOffset ), s ));
+    }
+
+    public boolean matches( int tokenOffset, String s ) {
+        return( window.matches( rel( tokenOffset ), s ));
+    }
+
+    public boolean sameAs( int token1offset, int token2offset ) {
+        return( window.sameAs( rel( token1offset ), rel( token2offset )));
+    }
+
+    public boolean isLineBreak( int offset ) {
+        return( window.isLineBreak( rel( offset )));
+    }
+
+    public boolean copy3f( float[] result, int last ) {
+        for ( int i = 0; i < 3; i++ ) {
+            skipTo( NumberToken );
+            if ( getState() >= last ) {
+                return( false );
+            }
+            result[i] = getFloat( getState() );
+            getNextToken();
+        }
+        return( true );
+    }
+
+    public boolean copy2f( float[] result, int last ) {
+        for ( int i = 0; i < 2; i++ ) {
+            skipTo( NumberToken );
+            if ( getState() >= last ) {
+                return( false );
+            }
+            result[i] = getFloat( getState() );
+            getNextToken();
+        }
+        return( true );
+    }
+
+    /********************* LINE ACCESS **************************/
+    public int getLineNumber( int offset ) {
+        return( window.getLineNumber( rel( offset )) + lineBase );
+    }
+
+    public int getLineOffset( int offset ) {
+        return( window.getLineOffset( rel( offset )));
+    }
+
+    public char getLineChar( int lineNumber, int charOffset ) {
+        return( window.getLineChar( relLine( lineNumber ), charOffset ));
+    }
+
+	public String getLineAt( int offset ) {
+	    return( window.getLineAt( relLine( offset )));
+	}
+
+	public String getLineAt( int offset, int sizeLimit ) {
+	    return( window.getLineAt( relLine( offset ), sizeLimit ));
+	}
+
+	public String getNospaceLineAt( int offset ) {
+	    return( window.getNospaceLineAt( relLine( offset )));
+	}
+
+	public String getTabLineAt( int offset ) {
+	    return( window.getTabLineAt( relLine( offset )));
+	}
+
+    public int getNumberTokensOnLine( int lineNumber ) {
+        return( window.getNumberTokensOnLine( relLine( lineNumber )));
+    }
+
+    public int getFirstTokenOnLine( int lineNumber ) {
+        return( abs( window.getFirstTokenOnLine( relLine( lineNumber ))));
+    }
+
+    public int getLineSize( int lineNumber ) {
+        return( window.getLineSize( relLine( lineNumber )));
+    }
+
+    /** release the window */
+    public void wipeout() {
+        window.wipeout();
+        lineReader = null;
+        endOfStream = true;
+    }
+}
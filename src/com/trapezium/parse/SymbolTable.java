@@ -0,0 +1,267 @@
+/*
+ * @(#)SymbolTable.java
+ *
+ * Copyright (c) 1998 by Trapezium Development LLC.  All Rights Reserved.
+ *
+ * The information in this file is the property of Trapezium Development LLC
+ * and may be used only in accordance with the terms of the license granted
+ * by Trapezium.
+ *
+ */
+package com.trapezium.parse;
+
+/**
+ *  Per document table of interned names.
+ *  <P>
+ *  Each distinct name gets a small int id, so that names can be compared as
+ *  ints without creating Strings.  Names are hashed directly from the bytes
+ *  of the TokenEnumerator, a String is only created when getName() is called.
+ *  The names in Symbols have the same id in every table.
+ *
+ *  @see             Symbols
+ *  @see             TokenEnumerator#getSymbol
+ */
+public class SymbolTable implements Symbols {
+    /** Names with fixed ids, in the order of the constants in Symbols */
+    static final String[] PredefinedNames = {
+        null, "DEF", "USE", "PROTO", "EXTERNPROTO", "ROUTE", "TO", "IS",
+        "field", "exposedField", "eventIn", "eventOut", "Script",
+        "TRUE", "FALSE", "NULL"
+    };
+
+    /** bytes of all names, one after another */
+    byte[] nameBytes;
+    int nameBytesIdx;
+
+    /** One entry per symbol id, id 0 is unused */
+    int[] nameOffset;
+    int[] nameLength;
+    int[] nameHash;
+    String[] names;
+    int numberSymbols;
+
+    /** open addressing hash table of symbol ids, 0 for an empty slot */
+    int[] hashTable;
+    int hashMask;
+
+    /** Caches of ids looked up by name, see getCachedId */
+    static public final int NodeIdCache = 0;
+    static public final int FieldIdCache = 1;
+    static final int NumberCaches = 2;
+
+    /** Returned by getCachedId if no id has been cached for a symbol */
+    static public final int NoCachedId = -2;
+
+    /** One array per cache, indexed by symbol id, holding the cached id + 2 */
+    int[][] idCaches = new int[ NumberCaches ][];
+
+    /** Class constructor, the table starts out with the predefined names */
+    public SymbolTable() {
+        nameBytes = new byte[ 4096 ];
+        nameOffset = new int[ 256 ];
+        nameLength = new int[ 256 ];
+        nameHash = new int[ 256 ];
+        names = new String[ 256 ];
+        numberSymbols = 1;
+        hashTable = new int[ 512 ];
+        hashMask = 511;
+        for ( int i = 1; i < PredefinedNames.length; i++ ) {
+            intern( PredefinedNames[i] );
+        }
+    }
+
+    /** Get the number of symbol ids in use, including the unused id 0 */
+    public int getNumberSymbols() {
+        return( numberSymbols );
+    }
+
+    /** Hash a sequence of bytes */
+    static int hash( byte[] data, int offset, int length ) {
+        int h = 0;
+        for ( int i = 0; i < length; i++ ) {
+            h = 31*h + data[ offset + i ];
+        }
+        return( h ^ ( h >>> 16 ));
+    }
+
+    /** Get the symbol id of a name, adding it to the table if necessary.
+     *
+     *  @param data bytes containing the name
+     *  @param offset offset of the first byte of the name
+     *  @param length number of bytes in the name
+     *
+     *  @return the symbol id of the name, never NoSymbol
+     */
+    public synchronized int intern( byte[] data, int offset, int length ) {
+        int h = hash( data, offset, length );
+        int slot = h & hashMask;
+        while ( true ) {
+            int id = hashTable[ slot ];
+            if ( id == 0 ) {
+                break;
+            }
+            if (( nameHash[ id ] == h ) && equals( id, data, offset, length )) {
+                return( id );
+            }
+            slot = ( slot + 1 ) & hashMask;
+        }
+        int id = addName( data, offset, length, h );
+        hashTable[ slot ] = id;
+        if ( numberSymbols*2 > hashTable.length ) {
+            rehash();
+        }
+        return( id );
+    }
+
+    /** Get the symbol id of a name, adding it to the table if necessary */
+    public int intern( String s ) {
+        byte[] b = toBytes( s );
+        return( intern( b, 0, b.length ));
+    }
+
+    /** Get the symbol id of a name without adding it to the table.
+     *
+     *  @return the symbol id of the name, or NoSymbol if it is not in the table
+     */
+    public synchronized int lookup( String s ) {
+        byte[] b = toBytes( s );
+        int h = hash( b, 0, b.length );
+        int slot = h & hashMask;
+        while ( true ) {
+            int id = hashTable[ slot ];
+            if ( id == 0 ) {
+                return( NoSymbol );
+            }
+            if (( nameHash[ id ] == h ) && equals( id, b, 0, b.length )) {
+                return( id );
+            }
+            slot = ( slot + 1 ) & hashMask;
+        }
+    }
+
+    /** Get an id that was looked up by name and cached for a symbol.  This
+     *  lets a name be looked up once per document rather than once per token.
+     *
+     *  @param cache which cache to check, NodeIdCache or FieldIdCache
+     *  @param id the symbol id
+     *
+     *  @return the id passed to setCachedId, or NoCachedId
+     */
+    public int getCachedId( int cache, int id ) {
+        int[] ids = idCaches[ cache ];
+        if (( ids == null ) || ( id <= 0 ) || ( id >= ids.length )) {
+            return( NoCachedId );
+        }
+        return( ids[ id ] - 2 );
+    }
+
+    /** Cache an id looked up by the name of a symbol.
+     *
+     *  @param cache which cache to set, NodeIdCache or FieldIdCache
+     *  @param id the symbol id
+     *  @param value the id to cache, -1 or greater
+     */
+    public synchronized void setCachedId( int cache, int id, int value ) {
+        if (( id <= 0 ) || ( id >= numberSymbols )) {
+            return;
+        }
+        int[] ids = idCaches[ cache ];
+        if (( ids == null ) || ( id >= ids.length )) {
+            int[] temp = new int[ nameOffset.length ];
+            if ( ids != null ) {
+                System.arraycopy( ids, 0, temp, 0, ids.length );
+            }
+            ids = temp;
+            idCaches[ cache ] = ids;
+        }
+        ids[ id ] = value + 2;
+    }
+
+    /** Get the name of a symbol id */
+    public synchronized String getName( int id ) {
+        if (( id <= 0 ) || ( id >= numberSymbols )) {
+            return( null );
+        }
+        if ( names[ id ] == null ) {
+            int length = nameLength[ id ];
+            int offset = nameOffset[ id ];
+            char[] c = new char[ length ];
+            for ( int i = 0; i < length; i++ ) {
+                c[i] = (char)nameBytes[ offset + i ];
+            }
+            names[ id ] = new String( c );
+        }
+        return( names[ id ] );
+    }
+
+    /** Strings are stored one byte per char, the same way as in TokenEnumerator */
+    static byte[] toBytes( String s ) {
+        int len = s.length();
+        byte[] b = new byte[ len ];
+        for ( int i = 0; i < len; i++ ) {
+            b[i] = (byte)s.charAt( i );
+        }
+        return( b );
+    }
+
+    /** Check if a symbol has a particular name */
+    boolean equals( int id, byte[] data, int offset, int length ) {
+        if ( nameLength[ id ] != length ) {
+            return( false );
+        }
+        int nameStart = nameOffset[ id ];
+        for ( int i = 0; i < length; i++ ) {
+            if ( nameBytes[ nameStart + i ] != data[ offset + i ] ) {
+                return( false );
+            }
+        }
+        return( true );
+    }
+
+    /** Add a new name, returns its symbol id */
+    int addName( byte[] data, int offset, int length, int h ) {
+        if ( nameBytesIdx + length > nameBytes.length ) {
+            byte[] btemp = new byte[ nameBytes.length*2 + length ];
+            System.arraycopy( nameBytes, 0, btemp, 0, nameBytesIdx );
+            nameBytes = btemp;
+        }
+        if ( numberSymbols == nameOffset.length ) {
+            int newSize = numberSymbols*2;
+            int[] temp = new int[ newSize ];
+            System.arraycopy( nameOffset, 0, temp, 0, numberSymbols );
+            nameOffset = temp;
+            temp = new int[ newSize ];
+            System.arraycopy( nameLength, 0, temp, 0, numberSymbols );
+            nameLength = temp;
+            temp = new int[ newSize ];
+            System.arraycopy( nameHash, 0, temp, 0, numberSymbols );
+            nameHash = temp;
+            String[] stemp = new String[ newSize ];
+            System.arraycopy( names, 0, stemp, 0, numberSymbols );
+            names = stemp;
+        }
+        System.arraycopy( data, offset, nameBytes, nameBytesIdx, length );
+        int id = numberSymbols++;
+        nameOffset[ id ] = nameBytesIdx;
+        nameLength[ id ] = length;
+        nameHash[ id ] = h;
+        nameBytesIdx += length;
+        return( id );
+    }
+
+    /** Double the size of the hash table */
+    void rehash() {
+        int newSize = hashTable.length*2;
+        int[] newTable = new int[ newSize ];
+        int newMask = newSize - 1;
+        for ( int id = 1; id < numberSymbols; id++ ) {
+            int slot = nameHash[ id ] & newMask;
+            while ( newTable[ slot ] != 0 ) {
+                slot = ( slot + 1 ) & newMask;
+            }
+            newTable[ slot ] = id;
+        }
+        hashTable = newTable;
+        hashMask = newMask;
+    }
+}
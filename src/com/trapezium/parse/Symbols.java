@@ -0,0 +1,37 @@
+/*
+ * @(#)Symbols.java
+ *
+ * Copyright (c) 1998 by Trapezium Development LLC.  All Rights Reserved.
+ *
+ * The information in this file is the property of Trapezium Development LLC
+ * and may be used only in accordance with the terms of the license granted
+ * by Trapezium.
+ *
+ */
+package com.trapezium.parse;
+
+/**
+ *  Symbol ids of names that have the same id in every SymbolTable.
+ *  The order must match SymbolTable.PredefinedNames.
+ *
+ *  @see             SymbolTable
+ *  @see             TokenEnumerator#getSymbol
+ */
+public interface Symbols {
+    static public final int NoSymbol = 0;
+    static public final int DEF = 1;
+    static public final int USE = 2;
+    static public final int PROTO = 3;
+    static public final int EXTERNPROTO = 4;
+    static public final int ROUTE = 5;
+    static public final int TO = 6;
+    static public final int IS = 7;
+    static public final int Field = 8;
+    static public final int ExposedField = 9;
+    static public final int EventIn = 10;
+    static public final int EventOut = 11;
+    static public final int Script = 12;
+    static public final int TRUE = 13;
+    static public final int FALSE = 14;
+    static public final int NULL = 15;
+};
@@ -0,0 +1,295 @@
+/*
+ * @(#)TokenCache.java
+ *
+ * Copyright (c) 1998 by Trapezium Development LLC.  All Rights Reserved.
+ *
+ * The information in this file is the property of Trapezium Development LLC
+ * and may be used only in accordance with the terms of the license granted
+ * by Trapezium.
+ *
+ */
+package com.trapezium.parse;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ *  Sidecar file holding the tokenized form of a file, so that a file which
+ *  has not changed since it was last loaded does not have to be tokenized again.
+ *  <P>
+ *  Cache files are kept in a per-user directory, by default ".chisel/tokcache"
+ *  in the user's home directory, so nothing is written next to the source file.
+ *  The cache for "x.wrl" is named "x.wrl-" followed by a hash of the absolute
+ *  path of "x.wrl", so files with the same name in different directories get
+ *  different caches.  It holds
+ *  the fileData bytes, the lineIdx array and the token arrays of a TokenEnumerator,
+ *  including the line break flags, after a header with the path, size and
+ *  modification time of the file they came from, and a CRC32 of the first
+ *  HeaderHashSize bytes of the file.  The cache is only used if all of these
+ *  still match, and if it was written with the same tokenizing options.
+ *  The rest of the file is not read to check the cache.
+ *
+ *  @see TokenEnumerator
+ */
+public class TokenCache {
+    static final int Magic = 0x544b4331;  // "TKC1"
+    static final int Version = 2;
+    static final String Suffix = ".tokcache";
+
+    /** option bits in the header */
+    static final int AllowUnterminatedString = 1;
+    static final int PackedTokens = 2;
+
+    /** Option, directory the cache files are kept in */
+    static public File cacheDirectory = new File( new File( System.getProperty( "user.home" ), ".chisel" ), "tokcache" );
+    static public void setCacheDirectory( File dir ) {
+        cacheDirectory = dir;
+    }
+
+    /** Get the cache file for a file, named by the file name and a hash of its absolute path */
+    static public File getCacheFile( File source ) {
+        String path = source.getAbsolutePath();
+        CRC32 crc = new CRC32();
+        try {
+            crc.update( path.getBytes( "UTF-8" ));
+        } catch ( java.io.UnsupportedEncodingException e ) {
+            e.printStackTrace();
+        }
+        String key = Long.toHexString( crc.getValue() ) + Integer.toHexString( path.hashCode() );
+        return( new File( cacheDirectory, source.getName() + "-" + key + Suffix ));
+    }
+
+    /** Get the option bits a cache must have been written with to be used */
+    static int getOptions( boolean allowUnterminatedString, boolean packed ) {
+        int options = 0;
+        if ( allowUnterminatedString ) {
+            options |= AllowUnterminatedString;
+        }
+        if ( packed ) {
+            options |= PackedTokens;
+        }
+        return( options );
+    }
+
+    /** Number of bytes at the start of a file included in the header hash */
+    static final int HeaderHashSize = 4096;
+
+    /** Compute the CRC32 of the first HeaderHashSize bytes of a file */
+    static long getHeaderHash( File source ) throws IOException {
+        FileInputStream fis = new FileInputStream( source );
+        try {
+            CRC32 crc = new CRC32();
+            byte[] buffer = new byte[ HeaderHashSize ];
+            int offset = 0;
+            int n;
+            while (( offset < buffer.length ) && (( n = fis.read( buffer, offset, buffer.length - offset )) > 0 )) {
+                offset += n;
+            }
+            crc.update( buffer, 0, offset );
+            return( crc.getValue() );
+        } finally {
+            fis.close();
+        }
+    }
+
+    /** Make sure the rest of a cache holds at least a number of bytes */
+    static void checkRemaining( MappedByteBuffer bb, long n ) throws IOException {
+        if (( n < 0 ) || ( n > bb.remaining() )) {
+            throw new IOException( "token cache truncated" );
+        }
+    }
+
+    /** Load a TokenEnumerator from the cache of a file, if the cache is current.
+     *  The cache is mapped into memory and its arrays copied in bulk from the
+     *  mapping.
+     *
+     *  @param te TokenEnumerator to load, its contents are replaced only if
+     *     the cache is current
+     *  @param source file the TokenEnumerator is for
+     *  @param allowUnterminatedString tokenizing option the cache must match
+     *
+     *  @return true if the TokenEnumerator was loaded from the cache, otherwise false
+     */
+    static public boolean load( TokenEnumerator te, File source, boolean allowUnterminatedString ) {
+        File cacheFile = getCacheFile( source );
+        if ( !cacheFile.exists() ) {
+            return( false );
+        }
+        try {
+            MappedByteBuffer bb = TokenEnumerator.mapFile( cacheFile );
+            checkRemaining( bb, 16 );
+            if (( bb.getInt() != Magic ) || ( bb.getInt() != Version )) {
+                return( false );
+            }
+            boolean packed = TokenEnumerator.packWhileLoading();
+            if ( bb.getInt() != getOptions( allowUnterminatedString, packed )) {
+                return( false );
+            }
+            int pathLength = bb.getInt();
+            checkRemaining( bb, pathLength + 36L );
+            byte[] pathBytes = new byte[ pathLength ];
+            bb.get( pathBytes );
+            if ( !source.getAbsolutePath().equals( new String( pathBytes, "UTF-8" ))) {
+                return( false );
+            }
+            if (( bb.getLong() != source.length() ) || ( bb.getLong() != source.lastModified() )) {
+                return( false );
+            }
+            if ( bb.getLong() != getHeaderHash( source )) {
+                return( false );
+            }
+            int fileDataIdx = bb.getInt();
+            int numberLines = bb.getInt();
+            int numberTokens = bb.getInt();
+            if (( fileDataIdx < 0 ) || ( numberLines < 0 ) || ( numberTokens < 0 )) {
+                return( false );
+            }
+            checkRemaining( bb, fileDataIdx + numberLines*4L + numberTokens*14L );
+            te.init( fileDataIdx + TokenEnumerator.InitialByteArraySize,
+                numberTokens + TokenEnumerator.InitialTokenArraySize,
+                numberLines + TokenEnumerator.InitialLineArraySize );
+            bb.get( te.fileData, 0, fileDataIdx );
+            te.fileDataIdx = fileDataIdx;
+            bb.asIntBuffer().get( te.lineIdx, 0, numberLines );
+            bb.position( bb.position() + numberLines*4 );
+            te.numberLines = numberLines;
+            int[] lineNumbers = te.lineNumberArray;
+            bb.asIntBuffer().get( lineNumbers, 0, numberTokens );
+            bb.position( bb.position() + numberTokens*4 );
+            int[] lineOffsets = new int[ numberTokens ];
+            bb.asIntBuffer().get( lineOffsets );
+            bb.position( bb.position() + numberTokens*4 );
+            int[] sizes = new int[ numberTokens ];
+            bb.asIntBuffer().get( sizes );
+            bb.position( bb.position() + numberTokens*4 );
+            bb.get( te.tokenTypeArray, 0, numberTokens );
+            byte[] lineBreaks = new byte[ numberTokens ];
+            bb.get( lineBreaks );
+            if ( packed ) {
+                long[] packedTokens = new long[ te.tokenArrayBoundary ];
+                int[] lineIdx = te.lineIdx;
+                byte[] types = te.tokenTypeArray;
+                for ( int i = 0; i < numberTokens; i++ ) {
+                    packedTokens[i] = TokenEnumerator.packToken( lineIdx[ lineNumbers[i]] + lineOffsets[i], sizes[i], types[i], lineBreaks[i] != 0 );
+                }
+                te.packedTokenArray = packedTokens;
+                te.lineNumberArray = null;
+                te.lineOffsetArray = null;
+                te.lineBreakArray = null;
+                te.tokenTypeArray = null;
+                te.tokenSizeArray = null;
+                te.lastPackedLine = 0;
+            } else {
+                short[] lineOffsetArray = te.lineOffsetArray;
+                short[] tokenSizeArray = te.tokenSizeArray;
+                boolean[] lineBreakArray = te.lineBreakArray;
+                for ( int i = 0; i < numberTokens; i++ ) {
+                    lineOffsetArray[i] = (short)lineOffsets[i];
+                    tokenSizeArray[i] = (short)sizes[i];
+                    lineBreakArray[i] = ( lineBreaks[i] != 0 );
+                }
+            }
+            te.numberTokens = numberTokens;
+            te.clearDirty();
+            if ( TokenEnumerator.offHeapTokens ) {
+                te.moveTokensOffHeap();
+            }
+            return( true );
+        } catch ( IOException e ) {
+            // an unreadable cache is the same as no cache, the file gets tokenized
+            return( false );
+        }
+    }
+
+    /** Save the tokens of a file to its cache.  Nothing is saved if the cache cannot
+     *  be written, for example when the directory is read only.
+     *
+     *  @param te TokenEnumerator just created from the file, not yet parsed or edited
+     *  @param source file the TokenEnumerator was created from
+     *  @param allowUnterminatedString tokenizing option used to create the tokens
+     */
+    static public void save( TokenEnumerator te, File source, boolean allowUnterminatedString ) {
+        File cacheFile = getCacheFile( source );
+        File tempFile = new File( cacheFile.getPath() + ".tmp" );
+        try {
+            cacheDirectory.mkdirs();
+            long length = source.length();
+            long lastModified = source.lastModified();
+            long hash = getHeaderHash( source );
+            DataOutputStream dos = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tempFile ), 65536 ));
+            try {
+                dos.writeInt( Magic );
+                dos.writeInt( Version );
+                // large files are packed while loading whatever the option is, the
+                // cache holds the same data either way, so it records the option
+                dos.writeInt( getOptions( allowUnterminatedString, TokenEnumerator.packWhileLoading() ));
+                byte[] pathBytes = source.getAbsolutePath().getBytes( "UTF-8" );
+                dos.writeInt( pathBytes.length );
+                dos.write( pathBytes );
+                dos.writeLong( length );
+                dos.writeLong( lastModified );
+                dos.writeLong( hash );
+                // the cache holds the bytes as one array, chunks left from loading
+                // are written one after another and their offsets converted to match
+                int[] joinedBase = te.getJoinedBases();
+                int numberLines = te.numberLines;
+                int numberTokens = te.numberTokens;
+                int fileDataIdx = te.fileDataIdx;
+                byte[][] chunks = te.byteChunks;
+                if ( chunks != null ) {
+                    int last = chunks.length - 1;
+                    fileDataIdx = joinedBase[ last ] + te.byteChunkLength[ last ];
+                }
+                dos.writeInt( fileDataIdx );
+                dos.writeInt( numberLines );
+                dos.writeInt( numberTokens );
+                if ( chunks != null ) {
+                    for ( int i = 0; i < chunks.length; i++ ) {
+                        if (( i == 0 ) || ( chunks[i] != chunks[ i - 1 ] )) {
+                            dos.write( chunks[i], 0, te.byteChunkLength[i] );
+                        }
+                    }
+                } else {
+                    dos.write( te.fileData, 0, fileDataIdx );
+                }
+                int[] lineIdx = te.lineIdx;
+                for ( int i = 0; i < numberLines; i++ ) {
+                    if ( joinedBase != null ) {
+                        dos.writeInt( te.joinedOffset( lineIdx[i], joinedBase ));
+                    } else {
+                        dos.writeInt( lineIdx[i] );
+                    }
+                }
+                for ( int i = 0; i < numberTokens; i++ ) {
+                    dos.writeInt( te.getLineNumber( i ));
+                }
+                for ( int i = 0; i < numberTokens; i++ ) {
+                    dos.writeInt( te.byteOffset( i ) - lineIdx[ te.getLineNumber( i )] );
+                }
+                for ( int i = 0; i < numberTokens; i++ ) {
+                    dos.writeInt( te.getSize( i ));
+                }
+                for ( int i = 0; i < numberTokens; i++ ) {
+                    dos.writeByte( te.getType( i ));
+                }
+                for ( int i = 0; i < numberTokens; i++ ) {
+                    dos.writeByte( te.isLineBreak( i ) ? 1 : 0 );
+                }
+            } finally {
+                dos.close();
+            }
+            cacheFile.delete();
+            if ( !tempFile.renameTo( cacheFile )) {
+                tempFile.delete();
+            }
+        } catch ( IOException e ) {
+            tempFile.delete();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * @(#)TokenChunk.java
+ *
+ * Copyright (c) 1998 by Trapezium Development LLC.  All Rights Reserved.
+ *
+ * The information in this file is the property of Trapezium Development LLC
+ * and may be used only in accordance with the terms of the license granted
+ * by Trapezium.
+ *
+ */
+package com.trapezium.parse;
+
+import com.trapezium.vrml.ParseContext;
+import java.util.concurrent.Callable;
+
+/**
+ *  Tokenizes a range of lines of another TokenEnumerator into private token
+ *  arrays, so that several ranges can be tokenized at the same time.
+ *  <P>
+ *  The byte array and line index are shared with the source, only the token
+ *  arrays belong to the chunk.  The only tokenizer state carried from one line
+ *  to the next is an unterminated quoted string, so each chunk records the
+ *  state it started with and the state it ended with.  The source stitches the
+ *  chunks together in order, and re-runs any chunk whose assumed starting state
+ *  turns out to be wrong.
+ *
+ *  @see TokenEnumerator#tokenizeLines
+ */
+class TokenChunk extends TokenEnumerator implements Callable {
+    TokenEnumerator source;
+    int firstLine;
+    int lastLine;
+    boolean allowUnterminatedString;
+    boolean startUnterminated;
+    boolean endUnterminated;
+
+    /** job the chunk is tokenized for, chunks run on pool threads with no context bound */
+    ParseContext context;
+
+    /** Class constructor
+     *
+     *  @param source TokenEnumerator containing the lines
+     *  @param firstLine first line in the chunk
+     *  @param lastLine line after the last line in the chunk
+     *  @param allowUnterminatedString passed on to the TokenFactory
+     */
+    TokenChunk( TokenEnumerator source, int firstLine, int lastLine, boolean allowUnterminatedString ) {
+        super( 1, estimateTokens( source, firstLine, lastLine ), 1 );
+        this.source = source;
+        this.firstLine = firstLine;
+        this.lastLine = lastLine;
+        this.allowUnterminatedString = allowUnterminatedString;
+        context = ParseContext.get();
+        fileData = source.fileData;
+        byteChunks = source.byteChunks;
+        byteChunkBase = source.byteChunkBase;
+        byteChunkLength = source.byteChunkLength;
+        fileDataIdx = source.fileDataIdx;
+        byteArrayBoundary = source.byteArrayBoundary;
+        lineIdx = source.lineIdx;
+        numberLines = source.numberLines;
+        lineArrayBoundary = source.lineArrayBoundary;
+
+        // names are interned by the source when first asked for
+        symbolArray = null;
+        if ( source.isPacked() ) {
+            packTokens();
+        }
+    }
+
+    /** Estimate token count from the number of bytes in the line range */
+    static int estimateTokens( TokenEnumerator source, int firstLine, int lastLine ) {
+        int endByte = source.fileDataIdx;
+        if ( lastLine < source.numberLines ) {
+            endByte = source.lineIdx[ lastLine ];
+        }
+        return(( endByte - source.lineIdx[ firstLine ] )/2 + 100 );
+    }
+
+    /** Callable interface, tokenize assuming no string continues into the chunk */
+    public Object call() {
+        tokenize( false );
+        return( this );
+    }
+
+    /** Tokenize all lines in the chunk
+     *
+     *  @param unterminated true if a quoted string continues onto the first line
+     */
+    void tokenize( boolean unterminated ) {
+        numberTokens = 0;
+        startUnterminated = unterminated;
+        TokenFactory t = new TokenFactory( allowUnterminatedString );
+        t.setUnterminatedString( unterminated );
+        for ( int i = firstLine; i < lastLine; i++ ) {
+            processLine( t, lineIdx[ i ], i );
+            if ((( i & 1023 ) == 0 ) && context.isAborted() ) {
+                break;
+            }
+        }
+        endUnterminated = t.isUnterminatedString();
+    }
+
+    /** Was the chunk tokenized assuming a quoted string continues onto its first line? */
+    boolean startsUnterminated() {
+        return( startUnterminated );
+    }
+
+    /** Does a quoted string continue past the last line of the chunk? */
+    boolean endsUnterminated() {
+        return( endUnterminated );
+    }
+}
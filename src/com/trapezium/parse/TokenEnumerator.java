@@ -14,6 +14,7 @@ import com.trapezium.util.ByteString;
 import com.trapezium.util.ProgressIndicator;
 
 import java.util.Vector;
+import java.util.Arrays;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -21,9 +22,19 @@ import java.io.InputStreamReader;
 import java.io.BufferedReader;
 import java.io.InputStream;
 import java.io.FileInputStream;
+import java.io.BufferedInputStream;
 import java.io.PrintStream;
+import java.io.OutputStream;
 import java.io.FileOutputStream;
-import com.trapezium.util.GlobalProgressIndicator;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutionException;
+import com.trapezium.vrml.ParseContext;
 
 /**
  *  Converts an InputStream into a sequence of tokens used by parsing.
@@ -55,11 +66,26 @@ import com.trapezium.util.GlobalProgressIndicator;
  *
  *  @since           1.0
  */
-public class TokenEnumerator implements TokenTypes, java.io.Serializable {
+public class TokenEnumerator implements TokenSource, Cloneable, java.io.Serializable {
     static int tabIndentSize = 0;
     static public void setTabIndentSize( int n ) {
         tabIndentSize = n;
     }
+
+    /** Option, load local uncompressed files by mapping them into memory */
+    static public boolean mappedLoading = true;
+    static public void setMappedLoading( boolean value ) {
+        mappedLoading = value;
+    }
+
+    /** Option, tokenize large files on several threads */
+    static public boolean parallelTokenizing = false;
+    static public void setParallelTokenizing( boolean value ) {
+        parallelTokenizing = value;
+    }
+
+    /** Minimum number of lines handled by one thread when tokenizing in parallel */
+    static int ParallelChunkSize = 20000;
     static int InitialByteArraySize = 10000;
     static int InitialTokenArraySize = 5000;
     static int InitialLineArraySize = 5000;
@@ -74,6 +100,70 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
     transient protected byte[] tokenTypeArray;
     transient protected short[] tokenSizeArray;
 
+    /** Option, store each token in a single long instead of the arrays above */
+    static public boolean packedTokens = false;
+    static public void setPackedTokens( boolean value ) {
+        packedTokens = value;
+    }
+
+    /** Packed token table, used instead of the five arrays above when not null.
+     *  Each entry holds the byte offset of the token in fileData, its size, its
+     *  type, and its line break flag.  Line numbers are found by searching lineIdx,
+     *  so there is no 64K limit on the offset of a token within its line.
+     */
+    transient protected long[] packedTokenArray;
+    static final long PackedOffsetMask = 0x7fffffffL;
+    static final int PackedSizeShift = 31;
+    static final long PackedSizeMask = 0xffffffL;
+    static final int PackedTypeShift = 55;
+    static final long PackedTypeMask = 0x7fL;
+    static final long PackedLineBreak = 1L << 62;
+
+    /** Line found by the most recent search of lineIdx */
+    transient int lastPackedLine;
+
+    /** Option, keep the packed token table outside the Java heap once a file is
+     *  loaded.  Tokens are packed while loading even if packedTokens is off.
+     */
+    static public boolean offHeapTokens = false;
+    static public void setOffHeapTokens( boolean value ) {
+        offHeapTokens = value;
+    }
+
+    /** Packed token table outside the Java heap, used instead of packedTokenArray when not null */
+    transient protected OffHeapTokenTable offHeapTokenTable;
+
+    /** Chunks left from loading a file that did not fit the first arrays, used
+     *  instead of fileData, packedTokenArray and symbolArray when not null.
+     *  byteChunks has one entry per slot of 1 << LoadingChunks.ByteChunkShift bytes,
+     *  with the byte offset of the chunk in that slot in byteChunkBase, and the
+     *  number of bytes used in it in byteChunkLength.
+     *
+     *  @see LoadingChunks
+     */
+    transient byte[][] byteChunks;
+    transient int[] byteChunkBase;
+    transient int[] byteChunkLength;
+    transient long[][] packedTokenChunks;
+    transient int[][] symbolChunks;
+
+    /** Option, intern name tokens into the SymbolTable as they are tokenized */
+    static public boolean internNames = true;
+    static public void setInternNames( boolean value ) {
+        internNames = value;
+    }
+
+    /** Chunks holding bytes and tokens while loading, null if not loading */
+    transient LoadingChunks loadingChunks;
+
+    /** Names in the document, created when first needed */
+    transient protected SymbolTable symbolTable;
+
+    /** One entry per token, the symbol id of a name token, or 0 if the token
+     *  has not been interned yet.  Null if names are not interned.
+     */
+    transient protected int[] symbolArray;
+
     /** The number of entries possible in the above arrays */
     protected int tokenArrayBoundary;
 
@@ -113,6 +203,7 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
 
     /** Set the number of lines */
     public void setNumberLines( int n ) {
+        unpackTokens();
         numberLines = n;
     }
 
@@ -126,16 +217,19 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
 
     /** Get the lineNumberArray */
     public int[] getLineNumberArray() {
+        unpackTokens();
         return( lineNumberArray );
     }
 
     /** Get the lineOffsetArray */
     public short[] getLineOffsetArray() {
+        unpackTokens();
         return( lineOffsetArray );
     }
 
     /** Get the lineBreakArray */
     public boolean[] getLineBreakArray() {
+        unpackTokens();
         return( lineBreakArray );
     }
 
@@ -144,11 +238,13 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
      *  @see TokenTypes
      */
     public byte[] getTokenTypeArray() {
+        unpackTokens();
         return( tokenTypeArray );
     }
 
     /** Get the tokenSizeArray */
     public short[] getTokenSizeArray() {
+        unpackTokens();
         return( tokenSizeArray );
     }
 
@@ -157,13 +253,315 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
         return( tokenArrayBoundary );
     }
 
+    /** Check if tokens are stored in the packed token table */
+    public boolean isPacked() {
+        return(( packedTokenArray != null ) || ( packedTokenChunks != null ) || ( offHeapTokenTable != null ));
+    }
+
+    /** Check if the packed token table is outside the Java heap */
+    public boolean isOffHeap() {
+        return( offHeapTokenTable != null );
+    }
+
+    /** Are tokens packed while loading? */
+    static boolean packWhileLoading() {
+        return( packedTokens || offHeapTokens );
+    }
+
+    /** Get a packed token table entry, tokens must be packed */
+    long getPackedToken( int tokenOffset ) {
+        long[] packed = packedTokenArray;
+        if ( packed != null ) {
+            return( packed[ tokenOffset ] );
+        }
+        long[][] chunks = packedTokenChunks;
+        if ( chunks != null ) {
+            int shift = LoadingChunks.TokenChunkShift;
+            return( chunks[ tokenOffset >>> shift ][ tokenOffset & (( 1 << shift ) - 1 )] );
+        }
+        return( offHeapTokenTable.get( tokenOffset ));
+    }
+
+    /** Set a packed token table entry, tokens must be packed */
+    void setPackedToken( int tokenOffset, long value ) {
+        long[] packed = packedTokenArray;
+        long[][] chunks = packedTokenChunks;
+        if ( packed != null ) {
+            packed[ tokenOffset ] = value;
+        } else if ( chunks != null ) {
+            int shift = LoadingChunks.TokenChunkShift;
+            chunks[ tokenOffset >>> shift ][ tokenOffset & (( 1 << shift ) - 1 )] = value;
+        } else {
+            offHeapTokenTable.set( tokenOffset, value );
+        }
+    }
+
+    /** Move the packed token table outside the Java heap, packing tokens first if necessary.
+     *
+     *  @return true if the tokens are now outside the heap, otherwise false
+     */
+    public boolean moveTokensOffHeap() {
+        if ( offHeapTokenTable != null ) {
+            return( true );
+        }
+        if ( !packTokens() ) {
+            return( false );
+        }
+        OffHeapTokenTable table = new OffHeapTokenTable( tokenArrayBoundary );
+        for ( int i = 0; i < numberTokens; i++ ) {
+            table.set( i, getPackedToken( i ));
+        }
+        offHeapTokenTable = table;
+        packedTokenArray = null;
+        packedTokenChunks = null;
+        return( true );
+    }
+
+    /** Drop the packed token table outside the heap.  Cursors created by
+     *  createCursor() may still refer to it, so its memory is left to the
+     *  garbage collector.
+     */
+    void releaseOffHeap() {
+        offHeapTokenTable = null;
+    }
+
+    /** Can tokens be packed?  Packed tokens are located through lineIdx, which
+     *  must be in ascending order for as long as the tokens stay packed.
+     */
+    protected boolean canPackTokens() {
+        return( true );
+    }
+
+    /** Convert the token arrays into the packed token table.
+     *
+     *  @return true if the tokens are now packed, otherwise false
+     */
+    public boolean packTokens() {
+        if ( isPacked() ) {
+            return( true );
+        }
+        if ( !canPackTokens() ) {
+            return( false );
+        }
+        for ( int i = 1; i < numberLines; i++ ) {
+            if ( lineIdx[ i ] <= lineIdx[ i - 1 ] ) {
+                return( false );
+            }
+        }
+        long[] packed = new long[ tokenArrayBoundary ];
+        for ( int i = 0; i < numberTokens; i++ ) {
+            int byteOffset = byteOffset( i );
+            if ( byteOffset < lineIdx[ lineNumberArray[ i ]] ) {
+                return( false );
+            }
+            packed[ i ] = packToken( byteOffset, tokenSizeArray[ i ] & 0xffff, tokenTypeArray[ i ], lineBreakArray[ i ] );
+        }
+        packedTokenArray = packed;
+        lineNumberArray = null;
+        lineOffsetArray = null;
+        lineBreakArray = null;
+        tokenTypeArray = null;
+        tokenSizeArray = null;
+        lastPackedLine = 0;
+        return( true );
+    }
+
+    /** Convert the packed token table back into token arrays, done by any method
+     *  that changes lines or tokens.  Offsets and sizes too large for a short are
+     *  truncated just as they are when tokens are not packed.
+     */
+    public void unpackTokens() {
+        joinChunks();
+        if ( !isPacked() ) {
+            return;
+        }
+        int[] lineNumbers = new int[ tokenArrayBoundary ];
+        short[] lineOffsets = new short[ tokenArrayBoundary ];
+        boolean[] lineBreaks = new boolean[ tokenArrayBoundary ];
+        byte[] tokenTypes = new byte[ tokenArrayBoundary ];
+        short[] tokenSizes = new short[ tokenArrayBoundary ];
+        for ( int i = 0; i < numberTokens; i++ ) {
+            long p = getPackedToken( i );
+            int byteOffset = (int)( p & PackedOffsetMask );
+            int line = findLine( byteOffset );
+            lineNumbers[ i ] = line;
+            lineOffsets[ i ] = (short)( byteOffset - lineIdx[ line ] );
+            lineBreaks[ i ] = ( p & PackedLineBreak ) != 0;
+            tokenTypes[ i ] = (byte)(( p >>> PackedTypeShift ) & PackedTypeMask );
+            tokenSizes[ i ] = (short)(( p >>> PackedSizeShift ) & PackedSizeMask );
+        }
+        lineNumberArray = lineNumbers;
+        lineOffsetArray = lineOffsets;
+        lineBreakArray = lineBreaks;
+        tokenTypeArray = tokenTypes;
+        tokenSizeArray = tokenSizes;
+        packedTokenArray = null;
+        releaseOffHeap();
+    }
+
+    /** Join the chunks left from loading into fileData and single token arrays,
+     *  done by any method that changes lines or tokens, or that hands out the
+     *  arrays or byte offsets into them.  Cursors created earlier keep the chunks.
+     */
+    public void joinChunks() {
+        if (( byteChunks == null ) && ( packedTokenChunks == null )) {
+            return;
+        }
+        int[] joinedBase = getJoinedBases();
+        byte[][] chunks = byteChunks;
+        if ( chunks != null ) {
+            int last = chunks.length - 1;
+            int total = joinedBase[ last ] + byteChunkLength[ last ];
+            byte[] data = new byte[ total + InitialByteArraySize ];
+            for ( int i = 0; i <= last; i++ ) {
+                if (( i == 0 ) || ( chunks[i] != chunks[ i - 1 ] )) {
+                    System.arraycopy( chunks[i], 0, data, joinedBase[i], byteChunkLength[i] );
+                }
+            }
+            int[] lines = new int[ lineArrayBoundary ];
+            for ( int i = 0; i < numberLines; i++ ) {
+                lines[i] = joinedOffset( lineIdx[i], joinedBase );
+            }
+            lineIdx = lines;
+            fileData = data;
+            fileDataIdx = total;
+            byteArrayBoundary = data.length;
+        }
+        if (( joinedBase != null ) || ( packedTokenChunks != null )) {
+            if ( isPacked() ) {
+                OffHeapTokenTable table = null;
+                long[] packed = null;
+                if ( offHeapTokenTable != null ) {
+                    table = new OffHeapTokenTable( tokenArrayBoundary );
+                } else {
+                    packed = new long[ tokenArrayBoundary ];
+                }
+                for ( int i = 0; i < numberTokens; i++ ) {
+                    long p = getPackedToken( i );
+                    if ( joinedBase != null ) {
+                        p = ( p & ~PackedOffsetMask ) | joinedOffset( (int)( p & PackedOffsetMask ), joinedBase );
+                    }
+                    if ( table != null ) {
+                        table.set( i, p );
+                    } else {
+                        packed[i] = p;
+                    }
+                }
+                if ( table != null ) {
+                    offHeapTokenTable = table;
+                } else {
+                    packedTokenArray = packed;
+                }
+                packedTokenChunks = null;
+            }
+            int[][] symbols = symbolChunks;
+            if ( symbols != null ) {
+                int chunkSize = 1 << LoadingChunks.TokenChunkShift;
+                symbolArray = new int[ tokenArrayBoundary ];
+                for ( int i = 0; i < symbols.length; i++ ) {
+                    System.arraycopy( symbols[i], 0, symbolArray, i*chunkSize, chunkSize );
+                }
+                symbolChunks = null;
+            }
+        }
+        byteChunks = null;
+        byteChunkBase = null;
+        byteChunkLength = null;
+    }
+
+    /** Get the offset each byte chunk slot would have if the chunks were joined
+     *  into one array, with no gaps between the chunks.
+     *
+     *  @return the offset of each slot, or null if the bytes are not in chunks
+     *  @see #joinedOffset
+     */
+    int[] getJoinedBases() {
+        byte[][] chunks = byteChunks;
+        if ( chunks == null ) {
+            return( null );
+        }
+        int[] joinedBase = new int[ chunks.length ];
+        int offset = 0;
+        for ( int i = 0; i < chunks.length; i++ ) {
+            if (( i == 0 ) || ( chunks[i] != chunks[ i - 1 ] )) {
+                joinedBase[i] = offset;
+                offset += byteChunkLength[i];
+            } else {
+                joinedBase[i] = joinedBase[ i - 1 ];
+            }
+        }
+        return( joinedBase );
+    }
+
+    /** Convert a byte offset in the byte chunks into an offset in the joined array */
+    int joinedOffset( int byteOffset, int[] joinedBase ) {
+        int slot = byteOffset >>> LoadingChunks.ByteChunkShift;
+        return( joinedBase[ slot ] + byteOffset - byteChunkBase[ slot ] );
+    }
+
+    /** Get the byte array holding a byte offset, fileData unless the file was
+     *  loaded in several chunks.
+     *
+     *  @see #offsetIn
+     */
+    byte[] bytesAt( int byteOffset ) {
+        byte[][] chunks = byteChunks;
+        if ( chunks == null ) {
+            return( fileData );
+        }
+        return( chunks[ byteOffset >>> LoadingChunks.ByteChunkShift ] );
+    }
+
+    /** Get the offset within the array returned by bytesAt of a byte offset */
+    int offsetIn( int byteOffset ) {
+        int[] base = byteChunkBase;
+        if ( base == null ) {
+            return( byteOffset );
+        }
+        return( byteOffset - base[ byteOffset >>> LoadingChunks.ByteChunkShift ] );
+    }
+
+    /** Create a packed token table entry */
+    static long packToken( int byteOffset, int size, int type, boolean lineBreak ) {
+        long p = ( byteOffset & PackedOffsetMask ) |
+            (( size & PackedSizeMask ) << PackedSizeShift ) |
+            (( type & PackedTypeMask ) << PackedTypeShift );
+        if ( lineBreak ) {
+            p |= PackedLineBreak;
+        }
+        return( p );
+    }
+
+    /** Find the line containing a byte offset, lineIdx must be in ascending order */
+    int findLine( int byteOffset ) {
+        int line = lastPackedLine;
+        if (( line < numberLines ) && ( lineIdx[ line ] <= byteOffset ) &&
+            (( line + 1 == numberLines ) || ( lineIdx[ line + 1 ] > byteOffset ))) {
+            return( line );
+        }
+        int low = 0;
+        int high = numberLines - 1;
+        while ( low < high ) {
+            int mid = ( low + high + 1 ) >>> 1;
+            if ( lineIdx[ mid ] <= byteOffset ) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        lastPackedLine = low;
+        return( low );
+    }
+
     /** Get the lineIdx array */
     public int[] getLineIdx() {
+        joinChunks();
         return( lineIdx );
     }
 
     /** Set the offset in the byte array of a line */
     public void setLineIdx( int lineNo, int idxVal ) {
+        joinChunks();
         lineIdx[ lineNo ] = idxVal;
     }
 
@@ -187,6 +585,63 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
         return( dirtyFileData );
     }
 
+    /** First and last line, in current line numbering, changed by text edits since
+     *  the last retokenize, dirtyFirstLine is -1 if none.  dirtyLineDelta is the
+     *  number of lines added less the number removed by those edits.
+     */
+    transient protected int dirtyFirstLine = -1;
+    transient protected int dirtyLastLine = -1;
+    transient protected int dirtyLineDelta = 0;
+
+    /** Set by edits that do not record which lines changed, retokenize() then
+     *  has to process the entire file.
+     */
+    transient protected boolean untrackedEdit = false;
+
+    /** Mark fileData as changed, without recording which lines changed */
+    protected void markDirty() {
+        dirtyFileData = true;
+        untrackedEdit = true;
+    }
+
+    /** Record a text edit which replaced a sequence of lines, so that retokenize()
+     *  only has to process the changed lines.  Token line numbers must not have been
+     *  adjusted by the edit.
+     *
+     *  @param first first line changed
+     *  @param oldCount number of lines before the edit
+     *  @param newCount number of lines replacing them
+     */
+    protected void markLinesChanged( int first, int oldCount, int newCount ) {
+        dirtyFileData = true;
+        int delta = newCount - oldCount;
+        int last = first + newCount - 1;
+        if ( dirtyFirstLine == -1 ) {
+            dirtyFirstLine = first;
+            dirtyLastLine = last;
+            dirtyLineDelta = delta;
+        } else {
+            int prevLast = dirtyLastLine;
+            if ( prevLast >= first + oldCount ) {
+                prevLast += delta;
+            }
+            if ( first < dirtyFirstLine ) {
+                dirtyFirstLine = first;
+            }
+            dirtyLastLine = ( prevLast > last ) ? prevLast : last;
+            dirtyLineDelta += delta;
+        }
+    }
+
+    /** Forget all recorded edits, used after retokenizing */
+    void clearDirty() {
+        dirtyFileData = false;
+        untrackedEdit = false;
+        dirtyFirstLine = -1;
+        dirtyLastLine = -1;
+        dirtyLineDelta = 0;
+    }
+
     /** Get the number of tokens on a line */
     int lastLineChecked = -1;
     int firstTokenOnLastLineChecked = -1;
@@ -202,16 +657,16 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
         int result = 0;
         for ( int i = startOffset; i < numberTokens; i++ ) {
             if ( !foundIt ) {
-                if ( lineNumberArray[ i ] == lineNumber ) {
+                if ( getLineNumber( i ) == lineNumber ) {
                     firstTokenOnLastLineChecked = i;
                     lastLineChecked = lineNumber;
                     result = 1;
                     foundIt = true;
-                } else if ( lineNumberArray[i] > lineNumber ) {
+                } else if ( getLineNumber( i ) > lineNumber ) {
                     break;
                 }
             } else {
-                if ( lineNumberArray[ i ] != lineNumber ) {
+                if ( getLineNumber( i ) != lineNumber ) {
                     startOffsetOfNextLine = i + 1;
                     return( result );
                 }
@@ -227,20 +682,20 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
             return( firstTokenOnLastLineChecked );
         } else if ( lineNumber > lastLineChecked ) {
             for ( int i = startOffsetOfNextLine; i < numberTokens; i++ ) {
-                if ( lineNumberArray[ i ] == lineNumber ) {
+                if ( getLineNumber( i ) == lineNumber ) {
 //                    System.out.println( "ret 2" );
                     return( i );
-                } else if ( lineNumberArray[i] > lineNumber ) {
+                } else if ( getLineNumber( i ) > lineNumber ) {
                     return( -1 );
                 }
             }
             return( -1 );
         }
         for ( int i = 0; i < numberTokens; i++ ) {
-            if ( lineNumberArray[i] == lineNumber ) {
+            if ( getLineNumber( i ) == lineNumber ) {
   //              System.out.println( "ret3" );
                 return( i );
-            } else if ( lineNumberArray[i] > lineNumber ) {
+            } else if ( getLineNumber( i ) > lineNumber ) {
                 return( -1 );
             }
         }
@@ -250,7 +705,8 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
 
     /** Remove a set of tokens */
     public void removeTokens( int startToken, int nTokens ) {
-        dirtyFileData = true;
+        unpackTokens();
+        markDirty();
         int end = numberTokens - nTokens;
         for ( int i = startToken; i < end; i++ ) {
             lineNumberArray[i] = lineNumberArray[ i + nTokens ];
@@ -259,6 +715,9 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
             tokenTypeArray[i] = tokenTypeArray[ i + nTokens ];
             tokenSizeArray[i] = tokenSizeArray[ i + nTokens ];
         }
+        if (( symbolArray != null ) && ( end > startToken )) {
+            System.arraycopy( symbolArray, startToken + nTokens, symbolArray, startToken, end - startToken );
+        }
         numberTokens -= nTokens;
     }
 
@@ -270,7 +729,8 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
      *     text of the line
      */
     protected void insertLine( int newLineNumber, int byteOffset ) {
-        dirtyFileData = true;
+        unpackTokens();
+        markDirty();
         addLineCapacity();
         for ( int i = numberLines; i > newLineNumber; i-- ) {
             lineIdx[ i ] = lineIdx[ i - 1 ];
@@ -283,6 +743,7 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
      *  offset values in lineIdx
      */
     protected void expandSize( int lineNumber, int size ) {
+        unpackTokens();
         // size must be at least 20
         if ( size < 20 ) {
             size = 20;
@@ -337,14 +798,15 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
 
     /** Remove a set of lines */
     public void removeLines( int startLine, int n ) {
-        dirtyFileData = true;
+        unpackTokens();
+        markDirty();
         int end = numberLines - n;
         for ( int i = startLine; i < end; i++ ) {
             lineIdx[ i ] = lineIdx[ i + n ];
         }
         numberLines -= n;
         for ( int i = 0; i < numberTokens; i++ ) {
-            int lineNo = lineNumberArray[i];
+            int lineNo = lineNumberArray[ i ];
             if ( lineNo >= startLine ) {
                 lineNo -= n;
                 lineNumberArray[i] = lineNo;
@@ -356,6 +818,7 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
      *  Get the offset in the byte array of the first byte of a particular line
      */
     public int getLineIdx( int lineNo ) {
+        joinChunks();
         return( lineIdx[ lineNo ] );
     }
 
@@ -363,6 +826,7 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
      *  and assuming that next line immediately follows.
      */
     public int getLineSize( int lineNo ) {
+        joinChunks();
         if ( lineNo == ( numberLines - 1 )) {
             return( fileDataIdx - lineIdx[ lineNo ] );
         } else {
@@ -380,17 +844,20 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
      *  Get the byte array used to store file text.
      */
     public byte[] getFileData() {
+        joinChunks();
         return( fileData );
     }
 
 
     /** Get the number of bytes used in the byte array.  */
     public int getFileDataIdx() {
+        joinChunks();
         return( fileDataIdx );
     }
 
     /** Set the next free location in the byte array */
     public void setFileDataIdx( int fileDataIdx ) {
+        joinChunks();
         this.fileDataIdx = fileDataIdx;
     }
 
@@ -404,10 +871,19 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
         lineOffsetArray = null;
         lineBreakArray = null;
         tokenSizeArray = null;
+        packedTokenArray = null;
+        releaseOffHeap();
+        symbolArray = null;
+        byteChunks = null;
+        byteChunkBase = null;
+        byteChunkLength = null;
+        packedTokenChunks = null;
+        symbolChunks = null;
     }
 
     /** Make token be the first token in a line */
     public void startLineWith( int tokenOffset ) {
+        unpackTokens();
         if ( tokenOffset == 0 ) {
             return;
         }
@@ -418,10 +894,10 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
         }
 
         // split the lines
-        int tokenByteOffset = getByteOffset( tokenOffset );
+        int tokenByteOffset = byteOffset( tokenOffset );
         int tokenLineOffset = lineOffsetArray[ tokenOffset ];
         boolean splitOnSpace = true;
-        if ( tokenByteOffset == ( getByteOffset( tokenOffset - 1 ) + getSize( tokenOffset - 1 ))) {
+        if ( tokenByteOffset == ( byteOffset( tokenOffset - 1 ) + tokenSizeArray[ tokenOffset - 1 ])) {
             splitOnSpace = false;
         }
         split_line( tokenLine, tokenLineOffset, splitOnSpace );
@@ -447,7 +923,8 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
      *  @param splitOnSpace
      */
     protected void split_line( int tokenLine, int tokenLineOffset, boolean splitOnSpace ) {
-        dirtyFileData = true;
+        unpackTokens();
+        markDirty();
         int tokenByteOffset = lineIdx[ tokenLine ] + tokenLineOffset;
         insertLine( tokenLine + 1, tokenByteOffset );
 
@@ -467,12 +944,13 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
 
     /** Insert one token of specific type */
     public void insert( int tokenOffset, String tok1, byte tokType ) {
+        unpackTokens();
         int len1 = tok1.length();
         int length = len1 + 1;
         ensureByteCapacity( length );
         ensureTokenCapacity( 1 );
         rightShiftTokens( tokenOffset, 1 );
-        int tokenByteOffset = getByteOffset( tokenOffset );
+        int tokenByteOffset = byteOffset( tokenOffset );
         rightShiftBytes( tokenByteOffset, length );
         for ( int i = 0; i < len1; i++ ) {
             fileData[ tokenByteOffset++ ] = (byte)tok1.charAt( i );
@@ -496,13 +974,14 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
 
     /** Insert two tokens */
     public void insert( int tokenOffset, String tok1, String tok2 ) {
+        unpackTokens();
         int len1 = tok1.length();
         int len2 = tok2.length();
         int length = len1 + len2 + 2;
         ensureByteCapacity( length );
         ensureTokenCapacity( 2 );
         rightShiftTokens( tokenOffset, 2 );
-        int tokenByteOffset = getByteOffset( tokenOffset );
+        int tokenByteOffset = byteOffset( tokenOffset );
         rightShiftBytes( tokenByteOffset, length );
         for ( int i = 0; i < len1; i++ ) {
             fileData[ tokenByteOffset++ ] = (byte)tok1.charAt( i );
@@ -536,11 +1015,12 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
 
     /** Replace a token with a specific String value */
     public void replace( int tokenOffset, String newToken ) {
+        unpackTokens();
         // new length - original length is the change
         int newTokenLength = newToken.length();
         int lengthChange = newTokenLength - tokenSizeArray[ tokenOffset ];
         ensureByteCapacity( lengthChange );
-        int tokenByteOffset = getByteOffset( tokenOffset );
+        int tokenByteOffset = byteOffset( tokenOffset );
         if ( lengthChange > 0 ) {
             rightShiftBytes( tokenByteOffset, lengthChange );
         } else {
@@ -555,6 +1035,9 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
             fileData[ tokenByteOffset++ ] = (byte)newToken.charAt( i );
         }
         tokenSizeArray[ tokenOffset ] = (short)newTokenLength;
+        if ( symbolArray != null ) {
+            symbolArray[ tokenOffset ] = 0;
+        }
         int insertionLine = lineNumberArray[ tokenOffset ];
         int scanner = tokenOffset + 1;
         while ( lineNumberArray[ scanner ] == insertionLine ) {
@@ -574,12 +1057,21 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
 
     /** Shift all token arrays right by the specified amount starting at a specific boundary */
     void rightShiftTokens( int boundary, int amount ) {
+        unpackTokens();
         for ( int i = numberTokens - 1; i >= boundary; i-- ) {
-            lineNumberArray[ i + amount ] = lineNumberArray[i];
+            lineNumberArray[ i + amount ] = lineNumberArray[ i ];
             lineOffsetArray[ i + amount ] = lineOffsetArray[i];
-            lineBreakArray[ i + amount ] = lineBreakArray[i];
-            tokenTypeArray[ i + amount ] = tokenTypeArray[i];
-            tokenSizeArray[ i + amount ] = tokenSizeArray[i];
+            lineBreakArray[ i + amount ] = lineBreakArray[ i ];
+            tokenTypeArray[ i + amount ] = tokenTypeArray[ i ];
+            tokenSizeArray[ i + amount ] = tokenSizeArray[ i ];
+        }
+        if ( symbolArray != null ) {
+            if ( numberTokens > boundary ) {
+                System.arraycopy( symbolArray, boundary, symbolArray, boundary + amount, numberTokens - boundary );
+            }
+            for ( int i = 0; i < amount; i++ ) {
+                symbolArray[ boundary + i ] = 0;
+            }
         }
         numberTokens += amount;
     }
@@ -613,6 +1105,7 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
 
     /** get the number of bytes available in the byte array */
     public int getByteArrayBoundary() {
+        joinChunks();
         return( byteArrayBoundary );
     }
     public int getByteArraySize() {
@@ -666,20 +1159,87 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
 	    lastId++;
 	    myId = lastId;
 	    fileUrl = inFile;
+	    init( estimateByteArraySize( fileSource ));
+	    if ( packWhileLoading() ) {
+	        packTokens();
+	    }
+        loadLines( is, frl, allowUnterminatedString );
+        if ( offHeapTokens ) {
+            moveTokensOffHeap();
+        }
+	}
+
+    /**  Class constructor, maps a local uncompressed file into memory and
+     *  tokenizes the bytes directly, without decoding each line into a String.
+     *
+     *  @param  fileSource  local file containing the data
+     *  @param  inFile  url used to identify the file
+     *  @param  frl     callback to give progress
+     */
+	public TokenEnumerator( File fileSource, String inFile, ProgressIndicator frl ) throws FileNotFoundException, IOException {
+	    this( fileSource, inFile, frl, true );
+	}
+
+	public TokenEnumerator( File fileSource, String inFile, ProgressIndicator frl, boolean allowUnterminatedString ) throws FileNotFoundException, IOException {
+	    lastId++;
+	    myId = lastId;
+	    fileUrl = inFile;
+	    init( estimateByteArraySize( fileSource ));
+	    if ( packWhileLoading() ) {
+	        packTokens();
+	    }
+	    loadFileLines( fileSource, frl, allowUnterminatedString );
+	    if ( offHeapTokens ) {
+	        moveTokensOffHeap();
+	    }
+	}
+
+    /** Estimate the byte array size needed for a file, InitialByteArraySize if unknown */
+	static long estimateByteArraySize( File fileSource ) {
 	    long fileLength = 0;
 	    if ( fileSource != null ) {
-	        fileLength = fileSource.length();
+	        fileLength = gzipLength( fileSource );
+	        if ( fileLength < 0 ) {
+	            fileLength = fileSource.length();
+	        }
 	        if ( fileLength < InitialByteArraySize ) {
 	            fileLength += fileLength/2;
 	        } else {
-    	        fileLength = ( fileSource.length()/100000 ) * 100000 + 100000;
+    	        fileLength = ( fileLength/100000 ) * 100000 + 100000;
     	    }
 	    }
 	    if ( fileLength == 0 ) {
 	        fileLength = InitialByteArraySize;
 	    }
-	    init( fileLength );
-        loadLines( is, frl, allowUnterminatedString );
+	    return( fileLength );
+	}
+
+	/** Get the uncompressed length of a gzipped file from the gzip trailer,
+	 *  so that arrays are not sized by the compressed length.
+	 *
+	 *  @return uncompressed length, or -1 if the file is not gzipped
+	 */
+	static long gzipLength( File fileSource ) {
+	    RandomAccessFile raf = null;
+	    try {
+	        raf = new RandomAccessFile( fileSource, "r" );
+	        long length = raf.length();
+	        if (( length < 18 ) || ( raf.read() != 0x1f ) || ( raf.read() != 0x8b )) {
+	            return( -1 );
+	        }
+	        raf.seek( length - 4 );
+	        long isize = raf.read() | ( raf.read() << 8 ) | ( raf.read() << 16 ) | ((long)raf.read() << 24 );
+	        return( isize );
+	    } catch ( IOException e ) {
+	        return( -1 );
+	    } finally {
+	        try {
+	            if ( raf != null ) {
+	                raf.close();
+	            }
+	        } catch ( IOException e ) {
+	        }
+	    }
 	}
 
 	/** enumerate sequence of tokens from a string */
@@ -777,6 +1337,7 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
     		lineBreakArray = new boolean[ tokenArraySize ];
     		tokenTypeArray = new byte[ tokenArraySize ];
     		tokenSizeArray = new short[ tokenArraySize ];
+    		symbolArray = internNames ? new int[ tokenArraySize ] : null;
     		tokenArrayBoundary = tokenArraySize;
     		lineArrayBoundary = lineArraySize;
     		if ( initializeByteArray ) {
@@ -805,10 +1366,18 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
 	    }
 	}
 
+	/** Write object to ObjectOutputStream, joining any chunks left from loading first */
+	private void writeObject( java.io.ObjectOutputStream stream ) throws java.io.IOException {
+	    joinChunks();
+	    stream.defaultWriteObject();
+	}
+
     static public long presetLength = 0;
 	void loadLines( InputStream inStream, ProgressIndicator frl, boolean allowUnterminatedString ) {
 		TokenFactory t = new TokenFactory( allowUnterminatedString );
 		long sizeInBytes = 0;
+		deferTokenizing = parallelTokenizing;
+		loadingChunks = new LoadingChunks();
 		try {
     		LineReader lr = new LineReader( inStream );
     		int counter = 0;
@@ -831,26 +1400,253 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
     		        counter = 0;
     		    }
     		    counter++;
-    		    if ( GlobalProgressIndicator.abortCurrentProcess ) {
+    		    if ( ParseContext.isCurrentAborted() ) {
     		        return;
     		    }
 		    }
+		    finishLoading();
+		    if ( deferTokenizing ) {
+		        tokenizeLines( allowUnterminatedString );
+		    }
 		} catch( Exception e ) {
+		    e.printStackTrace();
+		    if ( frl != null ) {
+		        lineReporter.setLineCount( numberLines );
+		    }
+		} finally {
+		    deferTokenizing = false;
+		    finishLoading();
 		    try {
-		        e.printStackTrace();
-    		    inStream.close();
-    		    if ( frl != null ) {
-    		        lineReporter.setLineCount( numberLines );
-    		    }
-    		} catch( Exception e2 ) {
-    		}
+		        inStream.close();
+		    } catch( IOException e ) {
+		    }
 		}
 	}
 
+	/** Join the chunks created while loading into fileData and the token arrays */
+	void finishLoading() {
+	    LoadingChunks chunks = loadingChunks;
+	    if ( chunks != null ) {
+	        loadingChunks = null;
+	        chunks.join( this );
+	    }
+	}
+
 
 
-	/** Retokenize the data in the "fileData" byte array. */
+	/** Map an entire file into memory read only, the file is closed on return.
+	 *  The mapping stays valid until the buffer is garbage collected.
+	 */
+	static MappedByteBuffer mapFile( File fileSource ) throws IOException {
+		FileInputStream fis = new FileInputStream( fileSource );
+		try {
+		    FileChannel fc = fis.getChannel();
+		    long fileSize = fc.size();
+		    if ( fileSize > Integer.MAX_VALUE ) {
+		        throw new IOException( "File too large to load: " + fileSource );
+		    }
+		    return( fc.map( FileChannel.MapMode.READ_ONLY, 0, fileSize ));
+		} finally {
+		    fis.close();
+		}
+	}
+
+	/** Load lines from a local file.  The file is mapped into memory, and each
+	 *  line is copied once from the mapping into fileData and tokenized there,
+	 *  line terminators are handled the same way as BufferedReader.readLine().
+	 *
+	 *  Files containing non-ASCII bytes are decoded with the platform charset
+	 *  by loadLines(), so both loading paths produce the same fileData.
+	 */
+	void loadFileLines( File fileSource, ProgressIndicator frl, boolean allowUnterminatedString ) throws IOException {
+	    MappedByteBuffer bb = mapFile( fileSource );
+	    int size = bb.limit();
+	    if ( size == 0 ) {
+	        return;
+	    }
+	    for ( int i = 0; i < size; i++ ) {
+	        if ( bb.get( i ) < 0 ) {
+	            loadLines( new BufferedInputStream( new FileInputStream( fileSource )), frl, allowUnterminatedString );
+	            return;
+	        }
+	    }
+		TokenFactory t = new TokenFactory( allowUnterminatedString );
+		try {
+		    deferTokenizing = parallelTokenizing;
+		    loadingChunks = new LoadingChunks();
+		    int lineStart = 0;
+		    int scanner = 0;
+		    int counter = 0;
+		    while ( scanner < size ) {
+		        byte b = bb.get( scanner );
+		        if (( b == '\n' ) || ( b == '\r' )) {
+		            addLine( bb, lineStart, scanner, t );
+		            scanner++;
+		            if (( b == '\r' ) && ( scanner < size ) && ( bb.get( scanner ) == '\n' )) {
+		                scanner++;
+		            }
+		            lineStart = scanner;
+		            if ( counter == 100 ) {
+		                if ( frl != null ) {
+		                    frl.setPercent( (int)((long)scanner*100/size) );
+		                }
+		                counter = 0;
+		            }
+		            counter++;
+		            if ( ParseContext.isCurrentAborted() ) {
+		                return;
+		            }
+		        } else {
+		            scanner++;
+		        }
+		    }
+		    if ( lineStart < size ) {
+		        addLine( bb, lineStart, size, t );
+		    }
+		    finishLoading();
+		    if ( deferTokenizing ) {
+		        tokenizeLines( allowUnterminatedString );
+		    }
+		} finally {
+		    deferTokenizing = false;
+		    finishLoading();
+		}
+	}
+
+	/** Tokenize all lines in the "fileData" byte array, in parallel if the
+	 *  file is large enough to be split into several chunks.
+	 *
+	 *  @param allowUnterminatedString passed on to the TokenFactory
+	 */
+	void tokenizeLines( boolean allowUnterminatedString ) {
+	    numberTokens = 0;
+	    int nChunks = numberLines/ParallelChunkSize;
+	    int maxChunks = Runtime.getRuntime().availableProcessors()*4;
+	    if ( nChunks > maxChunks ) {
+	        nChunks = maxChunks;
+	    }
+	    if ( nChunks > 1 ) {
+	        TokenChunk[] chunks = new TokenChunk[ nChunks ];
+	        Vector tasks = new Vector( nChunks );
+	        int linesPerChunk = numberLines/nChunks;
+	        for ( int i = 0; i < nChunks; i++ ) {
+	            int lastLine = ( i == nChunks - 1 ) ? numberLines : ( i + 1 )*linesPerChunk;
+	            chunks[i] = new TokenChunk( this, i*linesPerChunk, lastLine, allowUnterminatedString );
+	            tasks.addElement( chunks[i] );
+	        }
+	        java.util.List results = ForkJoinPool.commonPool().invokeAll( tasks );
+	        try {
+	            for ( int i = 0; i < nChunks; i++ ) {
+	                ((Future)results.get( i )).get();
+	            }
+	        } catch ( ExecutionException e ) {
+	            // a failed chunk is a real tokenizer bug, report it to the caller
+	            Throwable cause = e.getCause();
+	            if ( cause instanceof RuntimeException ) {
+	                throw (RuntimeException)cause;
+	            } else if ( cause instanceof Error ) {
+	                throw (Error)cause;
+	            } else {
+	                throw new RuntimeException( cause );
+	            }
+	        } catch ( InterruptedException e ) {
+	            Thread.currentThread().interrupt();
+	            throw new RuntimeException( e );
+	        }
+	        stitchChunks( chunks );
+	        return;
+	    }
+	    TokenFactory t = new TokenFactory( allowUnterminatedString );
+	    for ( int i = 0; i < numberLines; i++ ) {
+	        processLine( t, lineIdx[ i ], i );
+	    }
+	}
+
+	/** Copy the tokens from each chunk into the token arrays, re-tokenizing
+	 *  any chunk that started inside a quoted string continued from the
+	 *  previous chunk.
+	 */
+	void stitchChunks( TokenChunk[] chunks ) {
+	    boolean unterminated = false;
+	    int total = 0;
+	    for ( int i = 0; i < chunks.length; i++ ) {
+	        if ( chunks[i].startsUnterminated() != unterminated ) {
+	            chunks[i].tokenize( unterminated );
+	        }
+	        unterminated = chunks[i].endsUnterminated();
+	        total += chunks[i].getNumberTokens();
+	    }
+	    if ( offHeapTokenTable != null ) {
+	        numberTokens = 0;
+	        if ( total >= tokenArrayBoundary ) {
+	            growTokenArrays( total + InitialTokenArraySize );
+	        }
+	        clearSymbols();
+	        for ( int i = 0; i < chunks.length; i++ ) {
+	            int n = chunks[i].getNumberTokens();
+	            long[] packed = chunks[i].packedTokenArray;
+	            for ( int j = 0; j < n; j++ ) {
+	                offHeapTokenTable.set( numberTokens + j, packed[ j ] );
+	            }
+	            numberTokens += n;
+	        }
+	        return;
+	    }
+	    if ( packedTokenArray != null ) {
+	        if ( total >= tokenArrayBoundary ) {
+	            packedTokenArray = new long[ total + InitialTokenArraySize ];
+	            tokenArrayBoundary = total + InitialTokenArraySize;
+	        }
+	        clearSymbols();
+	        numberTokens = 0;
+	        for ( int i = 0; i < chunks.length; i++ ) {
+	            int n = chunks[i].getNumberTokens();
+	            System.arraycopy( chunks[i].packedTokenArray, 0, packedTokenArray, numberTokens, n );
+	            numberTokens += n;
+	        }
+	        return;
+	    }
+	    if ( total >= tokenArrayBoundary ) {
+	        int newSize = total + InitialTokenArraySize;
+	        lineNumberArray = new int[ newSize ];
+	        lineOffsetArray = new short[ newSize ];
+	        lineBreakArray = new boolean[ newSize ];
+	        tokenTypeArray = new byte[ newSize ];
+	        tokenSizeArray = new short[ newSize ];
+	        tokenArrayBoundary = newSize;
+	    }
+	    clearSymbols();
+	    numberTokens = 0;
+	    for ( int i = 0; i < chunks.length; i++ ) {
+	        TokenChunk c = chunks[i];
+	        int n = c.getNumberTokens();
+	        System.arraycopy( c.getLineNumberArray(), 0, lineNumberArray, numberTokens, n );
+	        System.arraycopy( c.getLineOffsetArray(), 0, lineOffsetArray, numberTokens, n );
+	        System.arraycopy( c.getLineBreakArray(), 0, lineBreakArray, numberTokens, n );
+	        System.arraycopy( c.getTokenTypeArray(), 0, tokenTypeArray, numberTokens, n );
+	        System.arraycopy( c.getTokenSizeArray(), 0, tokenSizeArray, numberTokens, n );
+	        numberTokens += n;
+	    }
+	}
+
+	/** Retokenize the data in the "fileData" byte array.  If all edits since the
+	 *  last retokenize recorded the lines they changed, only those lines are
+	 *  retokenized.
+	 */
 	public void retokenize() {
+	    joinChunks();
+	    if ( !untrackedEdit && ( dirtyFirstLine != -1 )) {
+	        retokenizeChangedLines();
+	        tokenScannerOffset = 0;
+	        clearDirty();
+	        return;
+	    }
+	    if ( parallelTokenizing ) {
+	        tokenizeLines( true );
+	        tokenScannerOffset = 0;
+	        clearDirty();
+	        return;
+	    }
 	    TokenFactory t = new TokenFactory();
 	    int replacementLineNumber = 0;
 	    numberTokens = 0;
@@ -862,7 +1658,183 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
 	    }
 	    numberLines = replacementLineNumber;
 	    tokenScannerOffset = 0;
-	    dirtyFileData = false;
+	    clearDirty();
+	}
+
+	/** Retokenize the lines recorded by markLinesChanged, and shift the line numbers
+	 *  of tokens after them.  Retokenizing continues past the changed lines as long
+	 *  as the edit changed whether a quoted string continues onto the next line.
+	 */
+	void retokenizeChangedLines() {
+	    unpackTokens();
+	    int first = dirtyFirstLine;
+	    int last = dirtyLastLine;
+	    int delta = dirtyLineDelta;
+	    if ( first > numberLines ) {
+	        first = numberLines;
+	    }
+	    if ( last >= numberLines ) {
+	        last = numberLines - 1;
+	    }
+
+	    // token lines are in the numbering before the edits, tokens on old lines
+	    // first..oldLast are replaced
+	    int oldLast = last - delta;
+	    int headEnd = firstTokenAtOrAfterLine( first );
+	    int tailStart = firstTokenAtOrAfterLine( oldLast + 1 );
+	    TokenFactory t = new TokenFactory();
+	    if ( headEnd > 0 ) {
+	        t.setUnterminatedString( isStringOpenAfter( headEnd - 1 ));
+	    }
+	    TokenChunk chunk = new TokenChunk( this, first, ( last < numberLines ) ? last + 1 : numberLines, true );
+	    int line = first;
+	    while ( true ) {
+	        for ( ; line <= last; line++ ) {
+	            chunk.processLine( t, lineIdx[ line ], line );
+	        }
+	        boolean oldStringOpen = ( tailStart < numberTokens ) && ( tokenTypeArray[ tailStart ] == QuotedStringContinuation );
+	        if (( t.isUnterminatedString() == oldStringOpen ) || ( last >= numberLines - 1 )) {
+	            break;
+	        }
+	        last++;
+	        oldLast++;
+	        while (( tailStart < numberTokens ) && ( lineNumberArray[ tailStart ] <= oldLast )) {
+	            tailStart++;
+	        }
+	    }
+
+	    // replace tokens headEnd..tailStart-1 with the chunk tokens
+	    int newCount = chunk.getNumberTokens();
+	    int tailCount = numberTokens - tailStart;
+	    int total = headEnd + newCount + tailCount;
+	    if ( total >= tokenArrayBoundary ) {
+	        growTokenArrays( total + InitialTokenArraySize );
+	    }
+	    int newTailStart = headEnd + newCount;
+	    System.arraycopy( lineNumberArray, tailStart, lineNumberArray, newTailStart, tailCount );
+	    System.arraycopy( lineOffsetArray, tailStart, lineOffsetArray, newTailStart, tailCount );
+	    System.arraycopy( lineBreakArray, tailStart, lineBreakArray, newTailStart, tailCount );
+	    System.arraycopy( tokenTypeArray, tailStart, tokenTypeArray, newTailStart, tailCount );
+	    System.arraycopy( tokenSizeArray, tailStart, tokenSizeArray, newTailStart, tailCount );
+	    if ( symbolArray != null ) {
+	        System.arraycopy( symbolArray, tailStart, symbolArray, newTailStart, tailCount );
+	        for ( int i = headEnd; i < newTailStart; i++ ) {
+	            symbolArray[ i ] = 0;
+	        }
+	    }
+	    if ( delta != 0 ) {
+	        for ( int i = newTailStart; i < total; i++ ) {
+	            lineNumberArray[ i ] += delta;
+	        }
+	    }
+	    System.arraycopy( chunk.getLineNumberArray(), 0, lineNumberArray, headEnd, newCount );
+	    System.arraycopy( chunk.getLineOffsetArray(), 0, lineOffsetArray, headEnd, newCount );
+	    System.arraycopy( chunk.getLineBreakArray(), 0, lineBreakArray, headEnd, newCount );
+	    System.arraycopy( chunk.getTokenTypeArray(), 0, tokenTypeArray, headEnd, newCount );
+	    System.arraycopy( chunk.getTokenSizeArray(), 0, tokenSizeArray, headEnd, newCount );
+	    numberTokens = total;
+	}
+
+	/** Get the offset of the first token on or after a line, numberTokens if none */
+	int firstTokenAtOrAfterLine( int line ) {
+	    int low = 0;
+	    int high = numberTokens;
+	    while ( low < high ) {
+	        int mid = ( low + high ) >>> 1;
+	        if ( lineNumberArray[ mid ] < line ) {
+	            low = mid + 1;
+	        } else {
+	            high = mid;
+	        }
+	    }
+	    return( low );
+	}
+
+	/** Is a quoted string still open after a particular token?  Only possible if
+	 *  the token is a string, in which case the token's line is scanned again.
+	 */
+	boolean isStringOpenAfter( int tokenOffset ) {
+	    int type = tokenTypeArray[ tokenOffset ];
+	    if (( type != QuotedString ) && ( type != QuotedStringContinuation )) {
+	        return( false );
+	    }
+	    int line = lineNumberArray[ tokenOffset ];
+	    int firstOnLine = tokenOffset;
+	    while (( firstOnLine > 0 ) && ( lineNumberArray[ firstOnLine - 1 ] == line )) {
+	        firstOnLine--;
+	    }
+	    TokenFactory t = new TokenFactory();
+	    t.setUnterminatedString( tokenTypeArray[ firstOnLine ] == QuotedStringContinuation );
+	    ByteString bs = new ByteString();
+	    bs.setup( fileData, lineIdx[ line ] );
+	    ReturnInteger offsetReturn = new ReturnInteger();
+	    ReturnInteger typeReturn = new ReturnInteger();
+	    ReturnInteger sizeReturn = new ReturnInteger();
+	    int charsProcessed = 0;
+	    int len = bs.length();
+	    while ( charsProcessed < len ) {
+	        t.tokenize( bs, charsProcessed, offsetReturn, typeReturn, sizeReturn );
+	        if ( offsetReturn.getValue() == -1 ) {
+	            break;
+	        }
+	        charsProcessed = offsetReturn.getValue() + sizeReturn.getValue();
+	    }
+	    return( t.isUnterminatedString() );
+	}
+
+	/** Increase the size of all token arrays, keeping their contents */
+	void growTokenArrays( int newSize ) {
+	    if ( offHeapTokenTable != null ) {
+	        offHeapTokenTable.ensureCapacity( newSize );
+	        tokenArrayBoundary = newSize;
+	        growSymbolArray( newSize );
+	        return;
+	    }
+	    if ( packedTokenArray != null ) {
+	        long[] ptemp = new long[ newSize ];
+	        System.arraycopy( packedTokenArray, 0, ptemp, 0, numberTokens );
+	        packedTokenArray = ptemp;
+	        tokenArrayBoundary = newSize;
+	        growSymbolArray( newSize );
+	        return;
+	    }
+	    int[] temp = new int[ newSize ];
+	    System.arraycopy( lineNumberArray, 0, temp, 0, numberTokens );
+	    lineNumberArray = temp;
+	    short[] stemp = new short[ newSize ];
+	    System.arraycopy( lineOffsetArray, 0, stemp, 0, numberTokens );
+	    lineOffsetArray = stemp;
+	    boolean[] btemp = new boolean[ newSize ];
+	    System.arraycopy( lineBreakArray, 0, btemp, 0, numberTokens );
+	    lineBreakArray = btemp;
+	    byte[] bytetemp = new byte[ newSize ];
+	    System.arraycopy( tokenTypeArray, 0, bytetemp, 0, numberTokens );
+	    tokenTypeArray = bytetemp;
+	    stemp = new short[ newSize ];
+	    System.arraycopy( tokenSizeArray, 0, stemp, 0, numberTokens );
+	    tokenSizeArray = stemp;
+	    tokenArrayBoundary = newSize;
+	    growSymbolArray( newSize );
+	}
+
+	/** Increase the size of the symbol array to match the token arrays */
+	void growSymbolArray( int newSize ) {
+	    if ( symbolArray != null ) {
+	        int[] temp = new int[ newSize ];
+	        System.arraycopy( symbolArray, 0, temp, 0, numberTokens );
+	        symbolArray = temp;
+	    }
+	}
+
+	/** Mark all tokens as not interned, the symbol array is sized to match the token arrays */
+	void clearSymbols() {
+	    if ( symbolArray != null ) {
+	        if ( symbolArray.length < tokenArrayBoundary ) {
+	            symbolArray = new int[ tokenArrayBoundary ];
+	        } else {
+	            Arrays.fill( symbolArray, 0 );
+	        }
+	    }
 	}
 
     public void addLineCapacity() {
@@ -871,9 +1843,9 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
         }
     }
 
-    /** Increase the capacity of the lineIdx[] array */
+    /** Increase the capacity of the lineIdx[] array by half */
     void increaseLineCapacity() {
-        int newSize = lineArrayBoundary + InitialLineArraySize;
+        int newSize = lineArrayBoundary + lineArrayBoundary/2 + InitialLineArraySize;
         int[] temp = new int[ newSize ];
         System.arraycopy( lineIdx, 0, temp, 0, lineArrayBoundary );
         lineIdx = temp;
@@ -885,55 +1857,95 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
      *  @param nLines  the number of new lines to add
      */
     public void ensureLineCapacity( int nLines ) {
-        if (( numberLines + nLines ) >= lineArrayBoundary ) {
+        while (( numberLines + nLines ) >= lineArrayBoundary ) {
             increaseLineCapacity();
         }
-    }
-
-    void ensureTokenCapacity( int nTokens ) {
-        if (( numberTokens + nTokens ) >= tokenArrayBoundary ) {
-            int newSize = tokenArrayBoundary + InitialTokenArraySize;
-            int[] temp = new int[ newSize ];
-            System.arraycopy( lineNumberArray, 0, temp, 0, tokenArrayBoundary );
-            lineNumberArray = temp;
-            temp = null;
-            System.gc();
-            short[] stemp = new short[ newSize ];
-            System.arraycopy( lineOffsetArray, 0, stemp, 0, tokenArrayBoundary );
-            lineOffsetArray = stemp;
-            stemp = null;
-            System.gc();
-            byte[] bytetemp = new byte[ newSize ];
-            System.arraycopy( tokenTypeArray, 0, bytetemp, 0, tokenArrayBoundary );
-            tokenTypeArray = bytetemp;
-            bytetemp = null;
-            System.gc();
-            stemp = new short[ newSize ];
-            System.arraycopy( tokenSizeArray, 0, stemp, 0, tokenArrayBoundary );
-            tokenSizeArray = stemp;
-            stemp = null;
-            System.gc();
-            boolean[] btemp = new boolean[ newSize ];
-            System.arraycopy( lineBreakArray, 0, btemp, 0, tokenArrayBoundary );
-            lineBreakArray = btemp;
-            tokenArrayBoundary = newSize;
-            temp = null;
-            btemp = null;
-            System.gc();
+    }
+
+    void ensureTokenCapacity( int nTokens ) {
+        if ( packedTokenChunks != null ) {
+            joinChunks();
+        }
+        if (( numberTokens + nTokens ) >= tokenArrayBoundary ) {
+            if ( loadingChunks != null ) {
+                loadingChunks.finishTokens( this, nTokens );
+                return;
+            }
+            int newSize = tokenArrayBoundary + tokenArrayBoundary/2 + InitialTokenArraySize;
+            if ( newSize <= numberTokens + nTokens ) {
+                newSize = numberTokens + nTokens + InitialTokenArraySize;
+            }
+            growTokenArrays( newSize );
+        }
+    }
+
+    /** Add a line to the list of lines */
+    public void addLine( String line, TokenFactory t ) {
+        addLineCapacity();
+        int len = line.length();
+//        System.out.println( "ensure byte capacity " + len );
+        ensureByteCapacity( len + len/1000 );
+        lineIdx[ numberLines ] = fileDataIdx;
+        // rle encode leading spaces
+        int spaceCount = 0;
+        for ( int i = 0; i < len; i++ ) {
+            char x = line.charAt( i );
+            if (( x == ' ' ) || ( x == '\t' )) {
+                spaceCount++;
+            } else {
+                break;
+            }
+        }
+        if ( spaceCount > 0 ) {
+            if ( spaceCount > 100 ) {
+                spaceCount = 100;
+            }
+            fileData[ fileDataIdx++ ] = (byte)(spaceCount | 128);
+        }
+//        System.out.println( "spaceCount is " + spaceCount + ", fileDataIdx " + fileDataIdx + ", line " + lno + ", byteArrayBoundary " + byteArrayBoundary );
+        int internalCount = 0;
+        int internalLine = 0;
+        for ( int i = spaceCount; i < len; i++ ) {
+            fileData[ fileDataIdx++ ] = (byte)line.charAt( i );
+            internalCount++;
+            if (( internalCount > 1000 ) && ( line.charAt( i ) == ' ' )) {
+                internalLine++;
+//                System.out.println( "internal line " + internalLine );
+                fileData[ fileDataIdx++ ] = 0;
+                if ( !deferTokenizing ) {
+                    byteString.setup( fileData, lineIdx[ numberLines ] );
+                    processLine( t, byteString, numberLines );
+                }
+                numberLines++;
+                addLineCapacity();
+                lineIdx[ numberLines ] = fileDataIdx;
+                internalCount = 0;
+            }
+        }
+        fileData[ fileDataIdx++ ] = 0;
+        if ( !deferTokenizing ) {
+            byteString.setup( fileData, lineIdx[ numberLines ] );
+            processLine( t, byteString, numberLines );
         }
+        numberLines++;
     }
 
-    /** Add a line to the list of lines */
-    public void addLine( String line, TokenFactory t ) {
+    /** Add a line taken directly from a byte buffer, same encoding as addLine( String, TokenFactory ).
+     *
+     *  @param source buffer containing the line text
+     *  @param start offset of the first byte of the line
+     *  @param end offset just past the last byte of the line, excluding line terminator
+     *  @param t TokenFactory used to create tokens
+     */
+    void addLine( ByteBuffer source, int start, int end, TokenFactory t ) {
         addLineCapacity();
+        int len = end - start;
+        ensureByteCapacity( len + len/1000 );
         lineIdx[ numberLines ] = fileDataIdx;
-        int len = line.length();
-//        System.out.println( "ensure byte capacity " + len );
-        ensureByteCapacity( len );
         // rle encode leading spaces
         int spaceCount = 0;
-        for ( int i = 0; i < len; i++ ) {
-            char x = line.charAt( i );
+        for ( int i = start; i < end; i++ ) {
+            byte x = source.get( i );
             if (( x == ' ' ) || ( x == '\t' )) {
                 spaceCount++;
             } else {
@@ -946,18 +1958,17 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
             }
             fileData[ fileDataIdx++ ] = (byte)(spaceCount | 128);
         }
-//        System.out.println( "spaceCount is " + spaceCount + ", fileDataIdx " + fileDataIdx + ", line " + lno + ", byteArrayBoundary " + byteArrayBoundary );
         int internalCount = 0;
-        int internalLine = 0;
-        for ( int i = spaceCount; i < len; i++ ) {
-            fileData[ fileDataIdx++ ] = (byte)line.charAt( i );
+        for ( int i = start + spaceCount; i < end; i++ ) {
+            byte x = source.get( i );
+            fileData[ fileDataIdx++ ] = x;
             internalCount++;
-            if (( internalCount > 1000 ) && ( line.charAt( i ) == ' ' )) {
-                internalLine++;
-//                System.out.println( "internal line " + internalLine );
+            if (( internalCount > 1000 ) && ( x == ' ' )) {
                 fileData[ fileDataIdx++ ] = 0;
-                byteString.setup( fileData, lineIdx[ numberLines ] );
-                processLine( t, byteString, numberLines );
+                if ( !deferTokenizing ) {
+                    byteString.setup( fileData, lineIdx[ numberLines ] );
+                    processLine( t, byteString, numberLines );
+                }
                 numberLines++;
                 addLineCapacity();
                 lineIdx[ numberLines ] = fileDataIdx;
@@ -965,17 +1976,19 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
             }
         }
         fileData[ fileDataIdx++ ] = 0;
-        byteString.setup( fileData, lineIdx[ numberLines ] );
-        processLine( t, byteString, numberLines );
+        if ( !deferTokenizing ) {
+            byteString.setup( fileData, lineIdx[ numberLines ] );
+            processLine( t, byteString, numberLines );
+        }
         numberLines++;
     }
 
     /** Add a line to the list of lines */
     public void addLine( StringBuffer line, TokenFactory t ) {
         addLineCapacity();
-        lineIdx[ numberLines ] = fileDataIdx;
         int len = line.length();
         ensureByteCapacity( len );
+        lineIdx[ numberLines ] = fileDataIdx;
         // rle encode leading spaces
         int spaceCount = 0;
         for ( int i = 0; i < len; i++ ) {
@@ -1010,8 +2023,8 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
      */
     public void addLine( int offset, int len, byte[] sourceArray, TokenFactory t ) {
         addLineCapacity();
-        lineIdx[ numberLines ] = fileDataIdx;
         ensureByteCapacity( len );
+        lineIdx[ numberLines ] = fileDataIdx;
         System.arraycopy( sourceArray, offset, fileData, fileDataIdx, len );
         fileDataIdx += len;
 //        fileData[ fileDataIdx++ ] = 0;
@@ -1023,9 +2036,10 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
         int numberSourceTokens, int sourceTokenOffset,
         short[] sourceLineOffsetArray, short[] sourceTokenSizeArray,
         boolean[] sourceLineBreakArray, byte[] sourceTokenTypeArray ) {
+        unpackTokens();
         addLineCapacity();
-        lineIdx[ numberLines ] = fileDataIdx;
         ensureByteCapacity( len );
+        lineIdx[ numberLines ] = fileDataIdx;
         System.arraycopy( sourceArray, offset, fileData, fileDataIdx, len );
         fileDataIdx += len;
         if ( numberSourceTokens > 0 ) {
@@ -1033,6 +2047,9 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
             for ( int i = 0; i < numberSourceTokens; i++ ) {
                 lineNumberArray[numberTokens + i] = numberLines;
             }
+            if ( symbolArray != null ) {
+                Arrays.fill( symbolArray, numberTokens, numberTokens + numberSourceTokens, 0 );
+            }
 //            System.out.println( "addLine numberSourceTokens " + numberSourceTokens + ", sourceTokenOffset " + sourceTokenOffset );
 //            System.out.println( "numberTokens " + numberTokens );
 //            System.out.println( "sourceLineOffsetArray size is " + sourceLineOffsetArray.length );
@@ -1056,19 +2073,24 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
      *  @param len  number of bytes more that are to be added
      */
     public void ensureByteCapacity( int len ) {
+        if ( byteChunks != null ) {
+            joinChunks();
+        }
         len++;
+        if (( loadingChunks != null ) && (( fileDataIdx + len ) >= byteArrayBoundary )) {
+            loadingChunks.finishBytes( this, len );
+            return;
+        }
         while (( fileDataIdx + len ) >= byteArrayBoundary ) {
             int newSize = byteArrayBoundary;
             if ( byteArrayBoundary > 300000 ) {
-                newSize += 300000;
+                newSize += newSize/2;
             } else {
                 newSize = newSize * 2;
             }
             byte[] btemp = new byte[ newSize ];
             System.arraycopy( fileData, 0, btemp, 0, byteArrayBoundary );
             fileData = btemp;
-            btemp = null;
-            Runtime.getRuntime().gc();
             byteArrayBoundary = newSize;
         }
     }
@@ -1082,14 +2104,19 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
 
     /** save lines to a PrintStream */
     public void saveLines( PrintStream ps ) {
-        for ( int i = 0; i < numberLines; i++ ) {
-            String s = getLineAt( i );
-            ps.println( s );
+        try {
+            for ( int i = 0; i < numberLines; i++ ) {
+                writeLineTo( i, ps, false );
+                ps.println();
+            }
+        } catch ( IOException e ) {
+            e.printStackTrace();
         }
     }
 
     /** debugging dump of TokenEnumerator */
     public void dump() {
+        joinChunks();
         System.out.println( "TokenEnumerator dump: FileDataIdx is " + fileDataIdx );
         int scanner = 0;
         StringBuffer buf = new StringBuffer();
@@ -1176,6 +2203,19 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
             offset = 0;
         }
         ensureTokenCapacity( 1 );
+        if ( symbolArray != null ) {
+            if (( type == NameToken ) || ( type == Keyword1Token ) || ( type == Keyword2Token )) {
+                int byteOffset = lineIdx[ lineNumber ] + offset;
+                symbolArray[ numberTokens ] = getSymbolTable().intern( bytesAt( byteOffset ), offsetIn( byteOffset ), size );
+            } else {
+                symbolArray[ numberTokens ] = 0;
+            }
+        }
+        if ( isPacked() ) {
+            setPackedToken( numberTokens, packToken( lineIdx[ lineNumber ] + offset, size, type, false ));
+            numberTokens++;
+            return;
+        }
         lineNumberArray[ numberTokens ] = lineNumber;
         lineOffsetArray[ numberTokens ] = (short)offset;
         tokenSizeArray[ numberTokens ] = (short)size;
@@ -1186,11 +2226,18 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
 
     /** mark the token as one that is associated with a line break */
     public void breakLineAt( int offset ) {
-        lineBreakArray[ offset ] = true;
+        if ( isPacked() ) {
+            setPackedToken( offset, getPackedToken( offset ) | PackedLineBreak );
+        } else {
+            lineBreakArray[ offset ] = true;
+        }
     }
 
     /** is the token associated with a line break? */
     public boolean isLineBreak( int offset ) {
+        if ( isPacked() ) {
+            return(( getPackedToken( offset ) & PackedLineBreak ) != 0 );
+        }
         return( lineBreakArray[ offset ] );
     }
 
@@ -1255,16 +2302,131 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
 	    return( getString( lineIdx[ offset ], true ));
 	}
 
+	/** Get a view of a line, without copying it.
+	 *
+	 *  @param offset the line number
+	 *  @param line view to reuse, or null to create a new one
+	 *
+	 *  @return the view, or null if there is no such line
+	 */
+	public ByteString getLineText( int offset, ByteString line ) {
+	    if ( offset >= numberLines ) {
+	        return( null );
+	    }
+	    if ( line == null ) {
+	        line = new ByteString();
+	    }
+	    line.setup( bytesAt( lineIdx[ offset ] ), offsetIn( lineIdx[ offset ] ));
+	    return( line );
+	}
+
+	/** Append part of a line to a StringBuffer, same text as getLineAt( offset ).substring( start, end )
+	 *
+	 *  @param offset the line number
+	 *  @param start first character to append
+	 *  @param end character after the last one to append, -1 for the end of the line
+	 *  @param sb where to append the characters
+	 */
+	public void appendLineTo( int offset, int start, int end, StringBuffer sb ) {
+	    byte[] data = bytesAt( lineIdx[ offset ] );
+	    int lineByteOffset = offsetIn( lineIdx[ offset ] );
+	    int charOffset = 0;
+	    if (( data[ lineByteOffset ] & 128 ) != 0 ) {
+	        int rleSpace = data[ lineByteOffset ] & 127;
+	        for ( ; charOffset < rleSpace; charOffset++ ) {
+	            if (( charOffset >= start ) && (( end < 0 ) || ( charOffset < end ))) {
+	                sb.append( ' ' );
+	            }
+	        }
+	        lineByteOffset++;
+	    }
+	    while ( data[ lineByteOffset ] != 0 ) {
+	        if (( end >= 0 ) && ( charOffset >= end )) {
+	            break;
+	        }
+	        if ( charOffset >= start ) {
+	            if ( data[ lineByteOffset ] == (byte)'\t' ) {
+	                sb.append( ' ' );
+	            } else {
+	                sb.append( (char)data[ lineByteOffset ] );
+	            }
+	        }
+	        charOffset++;
+	        lineByteOffset++;
+	    }
+	}
+
+	/** Write a line to an OutputStream, same text as getLineAt or getTabLineAt,
+	 *  without the line separator.
+	 *
+	 *  @param offset the line number
+	 *  @param out where to write the line
+	 *  @param spaceToTab if true, leading spaces are written as tabs, as in getTabLineAt
+	 */
+	public void writeLineTo( int offset, OutputStream out, boolean spaceToTab ) throws IOException {
+	    byte[] data = bytesAt( lineIdx[ offset ] );
+	    int lineByteOffset = offsetIn( lineIdx[ offset ] );
+	    if (( data[ lineByteOffset ] & 128 ) != 0 ) {
+	        int rleSpace = data[ lineByteOffset ] & 127;
+	        if (( tabIndentSize == 0 ) || !spaceToTab ) {
+	            writeRepeated( out, ' ', rleSpace );
+	        } else {
+	            writeRepeated( out, '\t', rleSpace/tabIndentSize );
+	            writeRepeated( out, ' ', rleSpace%tabIndentSize );
+	        }
+	        lineByteOffset++;
+	    }
+	    writeLineBytes( data, lineByteOffset, out, false );
+	}
+
+	/** Write a line to an OutputStream, same text as getNospaceLineAt, without the line separator */
+	public void writeNospaceLineTo( int offset, OutputStream out ) throws IOException {
+	    writeLineBytes( bytesAt( lineIdx[ offset ] ), offsetIn( lineIdx[ offset ] ), out, true );
+	}
+
+	/** Write the bytes of a line, tabs become spaces.
+	 *
+	 *  @param data array holding the line, from bytesAt
+	 *  @param skipHighBytes if true, bytes with the high bit set are skipped, otherwise
+	 *     they are written as the char with the same value would be
+	 */
+	void writeLineBytes( byte[] data, int lineByteOffset, OutputStream out, boolean skipHighBytes ) throws IOException {
+	    int runStart = lineByteOffset;
+	    while ( data[ lineByteOffset ] != 0 ) {
+	        byte b = data[ lineByteOffset ];
+	        if (( b == (byte)'\t' ) || ( b < 0 )) {
+	            out.write( data, runStart, lineByteOffset - runStart );
+	            runStart = lineByteOffset + 1;
+	            if ( b == (byte)'\t' ) {
+	                out.write( ' ' );
+	            } else if ( !skipHighBytes ) {
+	                out.write( String.valueOf( (char)b ).getBytes() );
+	            }
+	        }
+	        lineByteOffset++;
+	    }
+	    out.write( data, runStart, lineByteOffset - runStart );
+	}
+
+	/** Write a character to an OutputStream a number of times */
+	static void writeRepeated( OutputStream out, char c, int count ) throws IOException {
+	    for ( int i = 0; i < count; i++ ) {
+	        out.write( c );
+	    }
+	}
+
 	String getNospaceString( int lineByteOffset ) {
+	    byte[] data = bytesAt( lineByteOffset );
+	    lineByteOffset = offsetIn( lineByteOffset );
 	    StringBuffer sb = new StringBuffer();
-	    while ( fileData[ lineByteOffset ] != 0 ) {
-	        if (( fileData[ lineByteOffset ] & 128 ) != 0 ) {
+	    while ( data[ lineByteOffset ] != 0 ) {
+	        if (( data[ lineByteOffset ] & 128 ) != 0 ) {
 	            lineByteOffset++;
 	            continue;
-	        } else if ( fileData[ lineByteOffset ] == (byte)'\t' ) {
+	        } else if ( data[ lineByteOffset ] == (byte)'\t' ) {
                 sb.append( ' ' );
 	        } else {
-    	        sb.append( (char)fileData[ lineByteOffset ] );
+    	        sb.append( (char)data[ lineByteOffset ] );
     	    }
 	        lineByteOffset++;
 	    }
@@ -1273,11 +2435,13 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
 
     /** Get the String at a particular offset in the byte array */
 	String getString( int lineByteOffset, boolean spaceToTab ) {
+	    byte[] data = bytesAt( lineByteOffset );
+	    lineByteOffset = offsetIn( lineByteOffset );
 	    StringBuffer sb = new StringBuffer();
 	    int firstByteOffset = lineByteOffset;
-	    while ( fileData[ lineByteOffset ] != 0 ) {
-	        if (( firstByteOffset == lineByteOffset ) && (( fileData[ lineByteOffset ] & 128 ) != 0 )) {
-	            int rleSpace = fileData[ lineByteOffset ] & 127;
+	    while ( data[ lineByteOffset ] != 0 ) {
+	        if (( firstByteOffset == lineByteOffset ) && (( data[ lineByteOffset ] & 128 ) != 0 )) {
+	            int rleSpace = data[ lineByteOffset ] & 127;
 	            if (( tabIndentSize == 0 ) || !spaceToTab ) {
     	            for ( int i = 0; i < rleSpace; i++ ) {
     	                sb.append( ' ' );
@@ -1292,15 +2456,15 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
     	                sb.append( ' ' );
     	            }
     	        }
-	        } else if ( fileData[ lineByteOffset ] == (byte)'\t' ) {
+	        } else if ( data[ lineByteOffset ] == (byte)'\t' ) {
                 sb.append( ' ' );
 	        } else {
-	            if (( fileData[ lineByteOffset ] & 128 ) != 0 ) {
-	                int ival = fileData[ lineByteOffset ] & 127;
+	            if (( data[ lineByteOffset ] & 128 ) != 0 ) {
+	                int ival = data[ lineByteOffset ] & 127;
 	                ival += 128;
 	                System.out.println( "byte is " + ival );
 	            }
-    	        sb.append( (char)fileData[ lineByteOffset ] );
+    	        sb.append( (char)data[ lineByteOffset ] );
     	    }
 	        lineByteOffset++;
 	    }
@@ -1308,20 +2472,22 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
 	}
 
 	String getString( int lineByteOffset, int sizeLimit ) {
+	    byte[] data = bytesAt( lineByteOffset );
+	    lineByteOffset = offsetIn( lineByteOffset );
 	    StringBuffer sb = new StringBuffer();
 	    int currentSize = 0;
-	    while ( fileData[ lineByteOffset ] != 0 ) {
-	        if (( fileData[ lineByteOffset ] & 128 ) != 0 ) {
-	            int rleSpace = fileData[ lineByteOffset ] & 127;
+	    while ( data[ lineByteOffset ] != 0 ) {
+	        if (( data[ lineByteOffset ] & 128 ) != 0 ) {
+	            int rleSpace = data[ lineByteOffset ] & 127;
    	            for ( int i = 0; i < rleSpace; i++ ) {
    	                sb.append( ' ' );
    	            }
    	            currentSize += rleSpace;
-	        } else if ( fileData[ lineByteOffset ] == (byte)'\t' ) {
+	        } else if ( data[ lineByteOffset ] == (byte)'\t' ) {
                 sb.append( ' ' );
                 currentSize++;
 	        } else {
-    	        sb.append( (char)fileData[ lineByteOffset ] );
+    	        sb.append( (char)data[ lineByteOffset ] );
     	        currentSize++;
     	    }
 	        lineByteOffset++;
@@ -1352,12 +2518,16 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
 
     /**  Get the line number of a token */
     public int getLineNumber( int offset ) {
+        if ( isPacked() ) {
+            return( findLine( (int)( getPackedToken( offset ) & PackedOffsetMask )));
+        }
         return( lineNumberArray[ offset ] );
     }
 
     public void incLineNumbers( int line ) {
+        unpackTokens();
 //        for ( int i = 0; i < numberTokens; i++ ) {
-//            System.out.println( "before " + i + " line is " + getLineNumber( i ));
+//            System.out.println( "before " + i + " line is " + lineNumberArray[ i ]);
 //        }
         for ( int i = numberTokens - 1; i >= 0; i-- ) {
             int lno = lineNumberArray[ i ];
@@ -1369,7 +2539,7 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
             }
         }
 //        for ( int i = 0; i < numberTokens; i++ ) {
-//            System.out.println( "after " + i + " line is " + getLineNumber( i ));
+//            System.out.println( "after " + i + " line is " + lineNumberArray[ i ]);
 //        }
     }
 
@@ -1378,17 +2548,16 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
      *  @param  offset  token offset
      */
     public int getLineOffset( int offset ) {
-        int lineNumber = lineNumberArray[ offset ];
-        int lineOffset = lineOffsetArray[ offset ];
+        int lineNumber = getLineNumber( offset );
+        int byteOffset = lineIdx[ lineNumber ];
+        int lineOffset = byteOffset( offset ) - byteOffset;
         if ( lineOffset == 0 ) {
             return( 0 );
         }
-        if ( lineOffset < 0 ) {
-            lineOffset += 65536;
-        }
-        int byteOffset = lineIdx[ lineNumber ];
-        if (( fileData[ byteOffset ] & 128 ) != 0 ) {
-            int rleCount = fileData[ byteOffset ] & 127;
+        byte[] data = bytesAt( byteOffset );
+        byteOffset = offsetIn( byteOffset );
+        if (( data[ byteOffset ] & 128 ) != 0 ) {
+            int rleCount = data[ byteOffset ] & 127;
             return( lineOffset + rleCount - 1 );
         } else {
             return( lineOffset );
@@ -1397,41 +2566,43 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
 
     /** get the character at a particular offset in the current token */
     public char charAt( int charOffset ) {
-        int line = lineNumberArray[ tokenScannerOffset ];
-        int lineOffset = lineOffsetArray[ tokenScannerOffset ];
-        if ( lineOffset < 0 ) {
-            lineOffset += 65536;
-        }
-        int byteOffset = lineIdx[ line ];
-        return( (char)fileData[ byteOffset + lineOffset + charOffset ] );
+        return( charAt( charOffset, tokenScannerOffset ));
     }
 
     /** get the character at a particular offset in a line */
     public char getLineChar( int lineNumber, int charOffset ) {
-        int lineOffset = lineIdx[ lineNumber ];
+        byte[] data = bytesAt( lineIdx[ lineNumber ] );
+        int lineOffset = offsetIn( lineIdx[ lineNumber ] );
         int rleCount = 0;
-        if (( fileData[ lineOffset ] & 128 ) != 0 ) {
-            rleCount = fileData[ lineOffset ] & 127;
+        if (( data[ lineOffset ] & 128 ) != 0 ) {
+            rleCount = data[ lineOffset ] & 127;
             if ( charOffset < rleCount ) {
                 return( ' ' );
             }
         }
-        return( (char)fileData[ lineOffset + charOffset - rleCount ] );
+        return( (char)data[ lineOffset + charOffset - rleCount ] );
     }
 
     /** Get the character at a particular offset for a token */
     public char charAt( int charOffset, int tokenOffset ) {
-        int line = lineNumberArray[ tokenOffset ];
-        int lineOffset = lineOffsetArray[ tokenOffset ];
-        int byteOffset = lineIdx[ line ];
-        if ( lineOffset < 0 ) {
-            lineOffset += 65536;
-        }
-        return( (char)fileData[ byteOffset + lineOffset + charOffset ] );
+        int byteOffset = byteOffset( tokenOffset );
+        return( (char)bytesAt( byteOffset )[ offsetIn( byteOffset ) + charOffset ] );
     }
 
     /** Get the byte offset of a token in fileData byte array */
     public int getByteOffset( int tokenOffset ) {
+        joinChunks();
+        return( byteOffset( tokenOffset ));
+    }
+
+    /** Get the byte offset of a token, without joining chunks left from loading
+     *
+     *  @see #bytesAt
+     */
+    int byteOffset( int tokenOffset ) {
+        if ( isPacked() ) {
+            return( (int)( getPackedToken( tokenOffset ) & PackedOffsetMask ));
+        }
         int line = lineNumberArray[ tokenOffset ];
         int lineOffset = lineOffsetArray[ tokenOffset ];
         if ( lineOffset < 0 ) {
@@ -1448,7 +2619,7 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
 
     /** Get the length of a particular token */
     public int length( int offset ) {
-        return( tokenSizeArray[ offset ] );
+        return( getSize( offset ));
     }
 
     /**  Get the integer value of the token at a particular offset.
@@ -1456,21 +2627,94 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
      *  @return the integer value of the token at the offset, 0 if token isn't an int
      */
     public int getIntValue( int offset ) {
-		int result = 0;
-		int sign = 1;
-		int len = length( offset );
-		for ( int i = 0; i < len; i++ ) {
-			if (( i == 0 ) && ( charAt( i, offset ) == '-' )) {
-				sign = -1;
-			} else {
-				result = result*10 + ( charAt( i, offset ) - '0');
-			}
-		}
-		return( sign*result );
+        return( decodeInt( byteOffset( offset ), getSize( offset )));
+    }
+
+    /** Decode an integer from the fileData byte array.  Hexadecimal values
+     *  (0x...) are allowed for SFInt32, and keep their 32 bit pattern, so
+     *  0xFFFFFFFF is -1.  Values too large for 32 bits are clamped to
+     *  Integer.MIN_VALUE or Integer.MAX_VALUE rather than wrapping around.
+     *
+     *  @param scanner offset of the first byte in fileData
+     *  @param size number of bytes in the integer
+     */
+    int decodeInt( int scanner, int size ) {
+        byte[] data = bytesAt( scanner );
+        scanner = offsetIn( scanner );
+        int end = scanner + size;
+        boolean negative = false;
+        if (( scanner < end ) && ( data[ scanner ] == '-' )) {
+            negative = true;
+            scanner++;
+        } else if (( scanner < end ) && ( data[ scanner ] == '+' )) {
+            scanner++;
+        }
+        long value = 0;
+        if ( isHexPrefix( data, scanner, end )) {
+            for ( scanner += 2; scanner < end; scanner++ ) {
+                value = value*16 + Character.digit( (char)data[ scanner ], 16 );
+                if ( value > 0xFFFFFFFFL ) {
+                    value = 0xFFFFFFFFL;
+                    break;
+                }
+            }
+            int result = (int)value;
+            return( negative ? -result : result );
+        }
+        for ( ; scanner < end; scanner++ ) {
+            value = value*10 + ( data[ scanner ] - '0' );
+            if ( value > Integer.MAX_VALUE + 1L ) {
+                break;
+            }
+        }
+        if ( negative ) {
+            value = -value;
+        }
+        if ( value > Integer.MAX_VALUE ) {
+            return( Integer.MAX_VALUE );
+        } else if ( value < Integer.MIN_VALUE ) {
+            return( Integer.MIN_VALUE );
+        } else {
+            return( (int)value );
+        }
+    }
+
+    /** Check for "0x" or "0X" followed by at least one hex digit */
+    boolean isHexPrefix( byte[] data, int scanner, int end ) {
+        if (( end - scanner < 3 ) || ( data[ scanner ] != '0' )) {
+            return( false );
+        }
+        byte x = data[ scanner + 1 ];
+        return(( x == 'x' ) || ( x == 'X' ));
+    }
+
+    /** Check if a token is a hexadecimal integer.  The TokenFactory marks
+     *  these as BadNumber, since they are only valid for SFInt32 values.
+     */
+    public boolean isHexInt( int offset ) {
+        if ( getType( offset ) != BadNumber ) {
+            return( false );
+        }
+        int scanner = byteOffset( offset );
+        byte[] data = bytesAt( scanner );
+        scanner = offsetIn( scanner );
+        int end = scanner + getSize( offset );
+        if (( data[ scanner ] == '-' ) || ( data[ scanner ] == '+' )) {
+            scanner++;
+        }
+        if ( !isHexPrefix( data, scanner, end )) {
+            return( false );
+        }
+        for ( scanner += 2; scanner < end; scanner++ ) {
+            if ( Character.digit( (char)data[ scanner ], 16 ) < 0 ) {
+                return( false );
+            }
+        }
+        return( true );
     }
 
     public boolean isNegativeOne( int offset ) {
-        if ( tokenSizeArray[ offset ] == 2 ) {
+        if ( getSize( offset ) == 2 ) {
             if ( charAt( 0, offset ) == '-' ) {
                 if ( charAt( 1, offset ) == '1' ) {
                     return( true );
@@ -1553,54 +2797,54 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
 
     /** is the token at a particular offset a right bracket or a right brace */
     public boolean isRightBracketOrBrace( int offset ) {
-        return(( tokenTypeArray[ offset ] == RightBracket ) || ( tokenTypeArray[ offset ] == RightBrace ));
+        return(( getType( offset ) == RightBracket ) || ( getType( offset ) == RightBrace ));
     }
 
     /** is the token a quoted string? */
     public boolean isQuotedString( int offset ) {
-        return( tokenTypeArray[ offset ] == QuotedString );
+        return( getType( offset ) == QuotedString );
     }
 
     /** is the token a right bracket? */
     public boolean isRightBracket( int offset ) {
-        return( tokenTypeArray[ offset ] == RightBracket );
+        return( getType( offset ) == RightBracket );
     }
 
     /** is the token a left bracket? */
     public boolean isLeftBracket( int offset ) {
-        return( tokenTypeArray[ offset ] == LeftBracket );
+        return( getType( offset ) == LeftBracket );
     }
 
     /** is the token a right brace? */
     public boolean isRightBrace( int offset ) {
-        return( tokenTypeArray[ offset ] == RightBrace );
+        return( getType( offset ) == RightBrace );
     }
 
     /** is the token a left brace? */
     public boolean isLeftBrace( int offset ) {
-        return( tokenTypeArray[ offset ] == LeftBrace );
+        return( getType( offset ) == LeftBrace );
     }
 
     /** is the token a bracket or brace? */
     public boolean isSpecialCharacter( int offset ) {
-        int tokenType = tokenTypeArray[ offset ];
+        int tokenType = getType( offset );
         return(( tokenType == RightBracket ) || ( tokenType == RightBrace ) ||
                ( tokenType == LeftBracket ) || ( tokenType == LeftBrace ));
     }
 
     /** is the token a quoted string continuation? */
     public boolean isContinuationString( int offset ) {
-        return( tokenTypeArray[ offset ] == QuotedStringContinuation );
+        return( getType( offset ) == QuotedStringContinuation );
     }
 
     /** is the token a number? */
     public boolean isNumber( int offset ) {
-        return( tokenTypeArray[ offset ] == NumberToken );
+        return( getType( offset ) == NumberToken );
     }
 
     /** is the token a name? */
     public boolean isName( int offset ) {
-        int type = tokenTypeArray[ offset ];
+        int type = getType( offset );
         return(( type == NameToken ) || ( type == Keyword1Token ) || ( type == Keyword2Token ));
     }
 
@@ -1608,7 +2852,7 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
     public void skipTo( int tokenType ) {
         int prevToken = tokenScannerOffset;
         int scanner = tokenScannerOffset;
-        while (( scanner != -1 ) && ( tokenTypeArray[ scanner ] != tokenType )) {
+        while (( scanner != -1 ) && ( getType( scanner ) != tokenType )) {
             prevToken = scanner;
             scanner = getNextToken();
         }
@@ -1639,7 +2883,7 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
     public int skipToNumber( int offset ) {
         int currentOffset = 0;
         while ( tokenScannerOffset < numberTokens ) {
-            if ( tokenTypeArray[ tokenScannerOffset ] == NumberToken ) {
+            if ( getType( tokenScannerOffset ) == NumberToken ) {
                 if ( currentOffset == offset ) {
                     return( tokenScannerOffset );
                 } else {
@@ -1653,7 +2897,73 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
 
     /** is this a comment token? */
     public boolean isComment( int offset ) {
-        return( tokenTypeArray[ offset ] == CommentToken );
+        return( getType( offset ) == CommentToken );
+    }
+
+    /** Get the table of names in the document */
+    public synchronized SymbolTable getSymbolTable() {
+        if ( symbolTable == null ) {
+            symbolTable = new SymbolTable();
+        }
+        return( symbolTable );
+    }
+
+    /** Get the symbol id of a name token.
+     *
+     *  @param tokenOffset the token to check
+     *
+     *  @return the symbol id of the token in the SymbolTable, or NoSymbol if
+     *     the token is not a name
+     *  @see Symbols
+     */
+    public int getSymbol( int tokenOffset ) {
+        if (( tokenOffset < 0 ) || ( tokenOffset >= numberTokens )) {
+            return( Symbols.NoSymbol );
+        }
+        int[] symbols = symbolArray;
+        int index = tokenOffset;
+        if ( symbolChunks != null ) {
+            int shift = LoadingChunks.TokenChunkShift;
+            symbols = symbolChunks[ tokenOffset >>> shift ];
+            index = tokenOffset & (( 1 << shift ) - 1 );
+        }
+        if (( symbols != null ) && ( symbols[ index ] != 0 )) {
+            return( symbols[ index ] );
+        }
+        int type = getType( tokenOffset );
+        if (( type != NameToken ) && ( type != Keyword1Token ) && ( type != Keyword2Token )) {
+            return( Symbols.NoSymbol );
+        }
+        int byteOffset = byteOffset( tokenOffset );
+        int id = getSymbolTable().intern( bytesAt( byteOffset ), offsetIn( byteOffset ), getSize( tokenOffset ));
+        if ( symbols != null ) {
+            symbols[ index ] = id;
+        }
+        return( id );
+    }
+
+    /** Check if a token is a particular name, without creating a String.
+     *
+     *  @param tokenOffset the token to check
+     *  @param symbol the symbol id to compare with, usually one of the Symbols constants
+     */
+    public boolean isSymbol( int tokenOffset, int symbol ) {
+        return( getSymbol( tokenOffset ) == symbol );
+    }
+
+    /** Get the text of a name token as the String kept by the SymbolTable, so
+     *  every token with the same name returns the same String.
+     *
+     *  @param tokenOffset the token to get
+     *
+     *  @return the name, or the text of the token if it is not a name
+     */
+    public String getSymbolName( int tokenOffset ) {
+        int symbol = getSymbol( tokenOffset );
+        if ( symbol == Symbols.NoSymbol ) {
+            return( toString( tokenOffset ));
+        }
+        return( getSymbolTable().getName( symbol ));
     }
 
     /** compare current token to a string */
@@ -1665,10 +2975,10 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
     public boolean sameAs( int tokenOffset, String s ) {
         if ( tokenOffset == -1 ) {
             return( false );
-        } else if ( tokenSizeArray[ tokenOffset ] != s.length() ) {
+        } else if ( getSize( tokenOffset ) != s.length() ) {
             return( false );
         }
-        int size = tokenSizeArray[ tokenOffset ];
+        int size = getSize( tokenOffset );
         for ( int i = 0; i < size; i++ ) {
             if ( s.charAt( i ) != charAt( i, tokenOffset )) {
                 return( false );
@@ -1681,10 +2991,10 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
     public boolean nearlySameAs( int tokenOffset, String s ) {
         if ( tokenOffset == -1 ) {
             return( false );
-        } else if ( tokenSizeArray[ tokenOffset ] != s.length() ) {
+        } else if ( getSize( tokenOffset ) != s.length() ) {
             return( false );
         }
-        int size = tokenSizeArray[ tokenOffset ];
+        int size = getSize( tokenOffset );
         for ( int i = 0; i < size; i++ ) {
             if ( Character.toLowerCase( s.charAt( i )) != Character.toLowerCase( charAt( i, tokenOffset ))) {
                 return( false );
@@ -1695,7 +3005,7 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
 
     /** compare beginning of token to a string */
     public boolean matches( int tokenOffset, String s ) {
-        int size = tokenSizeArray[ tokenOffset ];
+        int size = getSize( tokenOffset );
         if ( size >= s.length() ) {
             for ( int i = 0; i < size; i++ ) {
                 if ( s.charAt( i ) != charAt( i, tokenOffset )) {
@@ -1712,10 +3022,10 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
         if (( token1offset == -1 ) || ( token2offset == -2 )) {
             return( false );
         }
-        if ( tokenSizeArray[ token1offset ] != tokenSizeArray[ token2offset ] ) {
+        if ( getSize( token1offset ) != getSize( token2offset ) ) {
             return( false );
         }
-        int size = tokenSizeArray[ token1offset ];
+        int size = getSize( token1offset );
         for ( int i = 0; i < size; i++ ) {
             if ( charAt( i, token1offset ) != charAt( i, token2offset )) {
                 return( false );
@@ -1726,12 +3036,27 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
 
     /** Get size of a token, does not include leading white space */
     public int getSize( int tokenOffset ) {
+        if ( isPacked() ) {
+            return( (int)(( getPackedToken( tokenOffset ) >>> PackedSizeShift ) & PackedSizeMask ));
+        }
         return( tokenSizeArray[ tokenOffset ] );
     }
 
     /** Convert a token to a string, does not include leading white space */
     public String toString( int tokenOffset ) {
-        int size = tokenSizeArray[ tokenOffset ];
+        int size = getSize( tokenOffset );
+        int byteOffset = byteOffset( tokenOffset );
+        byte[] data = bytesAt( byteOffset );
+        byteOffset = offsetIn( byteOffset );
+        int end = byteOffset + size;
+        int scanner = byteOffset;
+        while (( scanner < end ) && ( data[ scanner ] >= 0 )) {
+            scanner++;
+        }
+        if ( scanner == end ) {
+            // plain ASCII, copy it directly into the String
+            return( new String( data, byteOffset, size, StandardCharsets.ISO_8859_1 ));
+        }
         StringBuffer sb = new StringBuffer();
         for ( int i = 0; i < size; i++ ) {
             char c = charAt( i, tokenOffset );
@@ -1748,65 +3073,108 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
 
     /** Get the float value of a token */
     public float getFloat( int offset ) {
-        int size = getSize( offset );
-        int line = lineNumberArray[ offset ];
-        int lineOffset = lineOffsetArray[ offset ];
-        if ( lineOffset < 0 ) {
-            lineOffset += 65536;
-        }
-        int scanner = lineIdx[ line ] + lineOffset;
-        int resultBeforeDot = 0;
-        int resultAfterDot = 0;
-        boolean gotDot = false;
-        int divisor =  1;
-        boolean negate = false;
-        int afterDotCount = 0;  // limit to 8
-        for ( int i = 0; i < size; i++, scanner++ ) {
-            char x = (char)fileData[ scanner ];
-            if (( x >= '0' ) && ( x <= '9' )) {
-                int n = (int)(x - '0');
-                if ( gotDot ) {
-                    afterDotCount++;
-                    if ( afterDotCount > 8 ) continue;
-                    resultAfterDot = resultAfterDot*10 + n;
-                    divisor = divisor*10;
-                } else {
-                    resultBeforeDot = resultBeforeDot * 10 + n;
-                }
-            } else if ( x == '.' ) {
-                gotDot = true;
-            } else if ( x == 'e' ) {
-                return( eGetFloat( offset ));
-            } else if ( x == 'E' ) {
-                return( eGetFloat( offset ));
-            } else if ( x == '-' ) {
-                negate = true;
+        return( getFloat( byteOffset( offset ), getSize( offset )));
+    }
+
+    /** Get the double value of a token */
+    public double getDouble( int offset ) {
+        int byteOffset = byteOffset( offset );
+        return( DecimalParser.parseDouble( bytesAt( byteOffset ), offsetIn( byteOffset ), getSize( offset )));
+    }
+
+    /** Get the float value of the number text at a particular location in fileData,
+     *  correctly rounded.
+     *
+     *  @param scanner offset of the first byte of the number in fileData
+     *  @param size number of bytes in the number
+     */
+    float getFloat( int scanner, int size ) {
+        return( DecimalParser.parseFloat( bytesAt( scanner ), offsetIn( scanner ), size ));
+    }
+
+    /** Count the number tokens in a range of tokens
+     *
+     *  @param firstToken first token in the range
+     *  @param lastToken last token in the range
+     */
+    public int countNumbers( int firstToken, int lastToken ) {
+        if ( lastToken >= numberTokens ) {
+            lastToken = numberTokens - 1;
+        }
+        int count = 0;
+        for ( int i = firstToken; i <= lastToken; i++ ) {
+            if ( getType( i ) == NumberToken ) {
+                count++;
             }
         }
-        float result  = resultBeforeDot + (float)((float)resultAfterDot/(float)divisor);
+        return( count );
+    }
 
-        if ( negate ) {
-            result = result*-1;
+    /** Decode all number tokens in a range of tokens into a float array.  Used
+     *  for MFVec3f, MFVec2f, MFColor, MFRotation and MFFloat values, other tokens
+     *  such as brackets and comments are skipped.
+     *
+     *  @param firstToken first token in the range
+     *  @param lastToken last token in the range
+     *  @return array with one entry for each number token in the range
+     */
+    public float[] getFloatArray( int firstToken, int lastToken ) {
+        if ( firstToken < 0 ) {
+            return( new float[0] );
+        }
+        if ( lastToken >= numberTokens ) {
+            lastToken = numberTokens - 1;
+        }
+        float[] result = new float[ countNumbers( firstToken, lastToken ) ];
+        int n = 0;
+        for ( int i = firstToken; i <= lastToken; i++ ) {
+            if ( getType( i ) == NumberToken ) {
+                result[ n++ ] = getFloat( byteOffset( i ), getSize( i ) );
+            }
         }
         return( result );
     }
 
-    float eGetFloat( int tokenOffset ) {
-        String s = toString( tokenOffset );
-        return( Float.valueOf( s ).floatValue() );
+    /** Decode all integer tokens in a range of tokens into an int array.  Used
+     *  for MFInt32 values, other tokens such as brackets and comments are skipped.
+     *  Each value is decoded the same way as getIntValue(), including
+     *  hexadecimal values.
+     *
+     *  @param firstToken first token in the range
+     *  @param lastToken last token in the range
+     *  @return array with one entry for each integer token in the range
+     */
+    public int[] getIntArray( int firstToken, int lastToken ) {
+        if ( firstToken < 0 ) {
+            return( new int[0] );
+        }
+        if ( lastToken >= numberTokens ) {
+            lastToken = numberTokens - 1;
+        }
+        int count = 0;
+        for ( int i = firstToken; i <= lastToken; i++ ) {
+            if (( getType( i ) == NumberToken ) || isHexInt( i )) {
+                count++;
+            }
+        }
+        int[] result = new int[ count ];
+        int n = 0;
+        for ( int i = firstToken; i <= lastToken; i++ ) {
+            if (( getType( i ) == NumberToken ) || isHexInt( i )) {
+                result[ n++ ] = decodeInt( byteOffset( i ), getSize( i ));
+            }
+        }
+        return( result );
     }
 
     public boolean isFloat( int offset ) {
         if ( isNumber( offset )) {
             int size = getSize( offset );
-            int line = lineNumberArray[ offset ];
-            int lineOffset = lineOffsetArray[ offset ];
-            if ( lineOffset < 0 ) {
-                lineOffset += 65536;
-            }
-            int scanner = lineIdx[ line ] + lineOffset;
+            int scanner = byteOffset( offset );
+            byte[] data = bytesAt( scanner );
+            scanner = offsetIn( scanner );
             for ( int i = 0; i < size; i++, scanner++ ) {
-                if ( fileData[ scanner ] == (byte)'.' ) {
+                if ( data[ scanner ] == (byte)'.' ) {
                     return( true );
                 }
             }
@@ -1816,14 +3184,11 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
 
     public boolean hasChar( int offset, char cval ) {
         int size = getSize( offset );
-        int line = lineNumberArray[ offset ];
-        int lineOffset = lineOffsetArray[ offset ];
-        if ( lineOffset < 0 ) {
-            lineOffset += 65536;
-        }
-        int scanner = lineIdx[ line ] + lineOffset;
+        int scanner = byteOffset( offset );
+        byte[] data = bytesAt( scanner );
+        scanner = offsetIn( scanner );
         for ( int i = 0; i < size; i++, scanner++ ) {
-            if ( fileData[ scanner ] == (byte)cval ) {
+            if ( data[ scanner ] == (byte)cval ) {
                 return( true );
             }
         }
@@ -1831,25 +3196,76 @@ public class TokenEnumerator implements TokenTypes, java.io.Serializable {
     }
 
     public void append( int tokenOffset, StringBuffer accumulator ) {
-        int line = lineNumberArray[ tokenOffset ];
-        int lineOffset = lineOffsetArray[ tokenOffset ];
-        if ( lineOffset < 0 ) {
-            lineOffset += 65536;
-        }
-        int byteOffset = lineIdx[ line ] + lineOffset;
-        int size = tokenSizeArray[ tokenOffset ];
+        int byteOffset = byteOffset( tokenOffset );
+        byte[] data = bytesAt( byteOffset );
+        byteOffset = offsetIn( byteOffset );
+        int size = getSize( tokenOffset );
         for ( int i = 0; i < size; i++, byteOffset++ ) {
-            if (( fileData[byteOffset] & 128 ) != 0 ) {
-                int rleSize = fileData[ byteOffset ] & 127;
+            if (( data[byteOffset] & 128 ) != 0 ) {
+                int rleSize = data[ byteOffset ] & 127;
                 size -= rleSize;
                 size++;
                 accumulator.append( ' ' );
             } else {
-                accumulator.append( (char)fileData[ byteOffset ] );
+                accumulator.append( (char)data[ byteOffset ] );
             }
         }
     }
 
+    /** Append a token to any Appendable, same text as append() */
+    public void appendTo( int tokenOffset, Appendable a ) throws IOException {
+        int byteOffset = byteOffset( tokenOffset );
+        byte[] data = bytesAt( byteOffset );
+        byteOffset = offsetIn( byteOffset );
+        int size = getSize( tokenOffset );
+        for ( int i = 0; i < size; i++, byteOffset++ ) {
+            if (( data[byteOffset] & 128 ) != 0 ) {
+                int rleSize = data[ byteOffset ] & 127;
+                size -= rleSize;
+                size++;
+                a.append( ' ' );
+            } else {
+                a.append( (char)data[ byteOffset ] );
+            }
+        }
+    }
+
+    /** Write a token to an OutputStream, same text as append() */
+    public void writeTo( int tokenOffset, OutputStream out ) throws IOException {
+        int byteOffset = byteOffset( tokenOffset );
+        byte[] data = bytesAt( byteOffset );
+        byteOffset = offsetIn( byteOffset );
+        int size = getSize( tokenOffset );
+        int runStart = byteOffset;
+        for ( int i = 0; i < size; i++, byteOffset++ ) {
+            if (( data[byteOffset] & 128 ) != 0 ) {
+                out.write( data, runStart, byteOffset - runStart );
+                runStart = byteOffset + 1;
+                int rleSize = data[ byteOffset ] & 127;
+                size -= rleSize;
+                size++;
+                out.write( ' ' );
+            }
+        }
+        out.write( data, runStart, byteOffset - runStart );
+    }
+
+    /** Get a view of the text of a token, without copying it.
+     *
+     *  @param tokenOffset the token
+     *  @param text view to reuse, or null to create a new one
+     *
+     *  @return the view, only valid until the TokenEnumerator is edited
+     */
+    public TokenText getTokenText( int tokenOffset, TokenText text ) {
+        if ( text == null ) {
+            text = new TokenText();
+        }
+        int byteOffset = byteOffset( tokenOffset );
+        text.set( bytesAt( byteOffset ), offsetIn( byteOffset ), getSize( tokenOffset ));
+        return( text );
+    }
+
 
 static int counter = 0;
 
@@ -1863,6 +3279,10 @@ static int counter = 0;
     ReturnInteger tokenTypeReturn = new ReturnInteger();
     ReturnInteger tokenSizeReturn = new ReturnInteger();
     transient ByteString byteString = new ByteString();
+
+    /** Set while loading in parallel mode, lines are tokenized after they are all loaded */
+    transient boolean deferTokenizing = false;
+
 	void processLine( TokenFactory t, ByteString line, int lineNumber ) {
 		int charsProcessed = 0;
 //		System.out.println( "Process line " + lineNumber + ": '" + line + "'" );
@@ -1870,8 +3290,10 @@ static int counter = 0;
 //		ReturnInteger tokenTypeReturn = new ReturnInteger();
 //		ReturnInteger tokenSizeReturn = new ReturnInteger();
 		int rleCount = 0;
-		if (( fileData[ lineIdx[ lineNumber ]] & 128 ) != 0 ) {
-		    rleCount = ( fileData[ lineIdx[ lineNumber ]] & 127 ) - 1;
+		int lineByteOffset = lineIdx[ lineNumber ];
+		byte firstByte = bytesAt( lineByteOffset )[ offsetIn( lineByteOffset ) ];
+		if (( firstByte & 128 ) != 0 ) {
+		    rleCount = ( firstByte & 127 ) - 1;
 		}
 		int len = line.length();
 		while ( charsProcessed < len ) {
@@ -1902,7 +3324,7 @@ static int counter = 0;
 	}
 
     protected ByteString getByteString( int fileDataOffset ) {
-        byteString.setup( fileData, fileDataOffset );
+        byteString.setup( bytesAt( fileDataOffset ), offsetIn( fileDataOffset ));
         return( byteString );
     }
 
@@ -1928,7 +3350,7 @@ static int counter = 0;
 	/** report back based on token */
 	public void notifyByToken( int tokenOffset ) {
 	    if ( lineReporter != null ) {
-    	    lineReporter.report( lineNumberArray[ tokenOffset ] );
+    	    lineReporter.report( getLineNumber( tokenOffset ) );
     	}
 	}
 
@@ -1943,7 +3365,7 @@ static int counter = 0;
 
 	/** get the next token */
 	public int getNextToken() {
-	    if ( GlobalProgressIndicator.abortCurrentProcess ) {
+	    if ( ParseContext.isCurrentAborted() ) {
 	        return( -1 );
 	    }
 	    tokenScannerOffset++;
@@ -1952,7 +3374,7 @@ static int counter = 0;
 		    return( -1 );
 		} else {
 		    if ( factoryResponseListener != null ) {
-		        lineReporter.report( lineNumberArray[ tokenScannerOffset ] );
+		        lineReporter.report( getLineNumber( tokenScannerOffset ) );
 		    }
 		    return( tokenScannerOffset );
 		}
@@ -1996,9 +3418,9 @@ static int counter = 0;
     /**  skip comment tokens */
 	void skipCommentTokens() {
 		while ( tokenScannerOffset < numberTokens ) {
-		    if (( tokenTypeArray[ tokenScannerOffset ] == CommentToken ) && skipComments ) {
+		    if (( getType( tokenScannerOffset ) == CommentToken ) && skipComments ) {
 		        tokenScannerOffset++;
-		    } else if ( tokenTypeArray[ tokenScannerOffset ] == WhiteToken ) {
+		    } else if ( getType( tokenScannerOffset ) == WhiteToken ) {
 		        tokenScannerOffset++;
 		    } else {
 		        return;
@@ -2012,12 +3434,15 @@ static int counter = 0;
 	 *  @see TokenTypes
 	 */
 	public int getType( int offset ) {
+	    if ( isPacked() ) {
+	        return( (int)(( getPackedToken( offset ) >>> PackedTypeShift ) & PackedTypeMask ));
+	    }
 	    return( tokenTypeArray[ offset ] );
 	}
 
 	/** get a string form of the type of the token at a particular offset */
 	public String getTokenType( int offset ) {
-	    int type = tokenTypeArray[ offset ];
+	    int type = getType( offset );
 	    if ( type == WhiteToken ) {
 	        return( "WhiteToken" );
 	    } else if ( type == LeftBracket ) {
@@ -2067,24 +3492,55 @@ static int counter = 0;
 		tokenScannerOffset = state;
 	}
 
+    /** Create a TokenEnumerator over the same tokens with its own scanning state,
+     *  so that several threads can read the tokens at the same time.
+     *  <P>
+     *  Nothing is copied, the cursor shares the byte array and token arrays with this
+     *  TokenEnumerator, so neither may be edited while the cursor is in use.  The
+     *  cursor does not report progress.
+     *
+     *  @return the cursor, or null if this TokenEnumerator cannot have one
+     */
+    public TokenEnumerator createCursor() {
+        try {
+            // the cursor shares the symbol ids already stored in the token
+            // arrays, so it has to share the table they refer to
+            getSymbolTable();
+            TokenEnumerator cursor = (TokenEnumerator)clone();
+            cursor.factoryResponseListener = null;
+            cursor.lineReporter = cursor.new LineReporter();
+            cursor.lastLineReported = -1;
+            return( cursor );
+        } catch ( CloneNotSupportedException e ) {
+            e.printStackTrace();
+            return( null );
+        }
+    }
+
+    /** Copy the bytes of a token into an array */
+    void copyToken( int tokenOffset, byte[] result, int offset, int size ) {
+        int byteOffset = byteOffset( tokenOffset );
+        System.arraycopy( bytesAt( byteOffset ), offsetIn( byteOffset ), result, offset, size );
+    }
+
     /** create a byte array for a sequence of tokens */
     public byte[] getCharArray( int t1, int t2 ) {
-        int l1 = tokenSizeArray[t1];
-        int l2 = tokenSizeArray[t2];
+        int l1 = getSize( t1 );
+        int l2 = getSize( t2 );
         byte[] result = new byte[ l1 + l2 + 1 ];
-        System.arraycopy( fileData, getByteOffset(t1), result, 0, l1 );
-        System.arraycopy( fileData, getByteOffset(t2), result, l1+1, l2 );
+        copyToken( t1, result, 0, l1 );
+        copyToken( t2, result, l1+1, l2 );
         result[l1] = (byte)' ';
         return( result );
     }
     public byte[] getCharArray( int t1, int t2, int t3 ) {
-        int l1 = tokenSizeArray[t1];
-        int l2 = tokenSizeArray[t2];
-        int l3 = tokenSizeArray[t3];
+        int l1 = getSize( t1 );
+        int l2 = getSize( t2 );
+        int l3 = getSize( t3 );
         byte[] result = new byte[ l1 + l2 + l3 + 2 ];
-        System.arraycopy( fileData, getByteOffset(t1), result, 0, l1 );
-        System.arraycopy( fileData, getByteOffset(t2), result, l1+1, l2 );
-        System.arraycopy( fileData, getByteOffset(t3), result, l1+l2+2, l3 );
+        copyToken( t1, result, 0, l1 );
+        copyToken( t2, result, l1+1, l2 );
+        copyToken( t3, result, l1+l2+2, l3 );
         result[l1] = (byte)' ';
         result[l1+l2+1] = (byte)' ';
         return( result );
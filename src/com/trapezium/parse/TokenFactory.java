@@ -53,6 +53,11 @@ public class TokenFactory implements TokenTypes {
         }
     }
 
+    /** is a quoted string continuing onto the next line? */
+    boolean isUnterminatedString() {
+        return( unterminatedString );
+    }
+
     /**
      *  create token information for the next token in a string
      *
@@ -0,0 +1,83 @@
+/*
+ * @(#)TokenSource.java
+ *
+ * Copyright (c) 1998 by Trapezium Development LLC.  All Rights Reserved.
+ *
+ * The information in this file is the property of Trapezium Development LLC
+ * and may be used only in accordance with the terms of the license granted
+ * by Trapezium.
+ *
+ */
+package com.trapezium.parse;
+
+/**
+ *  Read access to a sequence of tokens, for code that makes a single
+ *  forward pass over the tokens and never edits them.
+ *  <P>
+ *  Token offsets and line numbers are absolute.  A TokenSource that does not
+ *  keep the whole file in memory, such as StreamingTokenEnumerator, may only
+ *  allow access to tokens near the current scanning state.
+ *
+ *  @see TokenEnumerator
+ *  @see StreamingTokenEnumerator
+ */
+public interface TokenSource extends TokenTypes {
+    /** Get the url the tokens were read from */
+    public String getFileUrl();
+
+    /** Get the next token, skipping comments, -1 at the end of the tokens */
+    public int getNextToken();
+
+    /** Get the token after a particular token */
+    public int getNextToken( int prevToken );
+
+    /** Get the scanning state, which is the offset of the current token */
+    public int getState();
+
+    /** Set the scanning state */
+    public void setState( int state );
+
+    /** Get the number of tokens read so far */
+    public int getNumberTokens();
+
+    /** Get the line number of a token */
+    public int getLineNumber( int tokenOffset );
+
+    /** Get the type of a token, one of the TokenTypes */
+    public int getType( int tokenOffset );
+
+    /** Get the number of bytes in a token */
+    public int getSize( int tokenOffset );
+
+    public int getIntValue( int tokenOffset );
+    public float getFloat( int tokenOffset );
+    public double getDouble( int tokenOffset );
+
+    public boolean isNumber( int tokenOffset );
+    public boolean isName( int tokenOffset );
+    public boolean isQuotedString( int tokenOffset );
+    public boolean isContinuationString( int tokenOffset );
+    public boolean isComment( int tokenOffset );
+    public boolean isLeftBrace( int tokenOffset );
+    public boolean isRightBrace( int tokenOffset );
+    public boolean isLeftBracket( int tokenOffset );
+    public boolean isRightBracket( int tokenOffset );
+
+    /** Get the table holding the symbols of name tokens */
+    public SymbolTable getSymbolTable();
+
+    /** Get the symbol of a name token, Symbols.NoSymbol if it has none */
+    public int getSymbol( int tokenOffset );
+
+    /** Check if a token is a particular symbol */
+    public boolean isSymbol( int tokenOffset, int symbol );
+
+    /** Check if a token is the same as a String */
+    public boolean sameAs( int tokenOffset, String s );
+
+    /** Get the text of a token */
+    public String toString( int tokenOffset );
+
+    /** Append the text of a token to a StringBuffer */
+    public void append( int tokenOffset, StringBuffer accumulator );
+}
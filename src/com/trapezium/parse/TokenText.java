@@ -0,0 +1,114 @@
+/*
+ * @(#)TokenText.java
+ *
+ * Copyright (c) 1998 by Trapezium Development LLC.  All Rights Reserved.
+ *
+ * The information in this file is the property of Trapezium Development LLC
+ * and may be used only in accordance with the terms of the license granted
+ * by Trapezium.
+ *
+ */
+package com.trapezium.parse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ *  Read only view of the text of a token, directly over the fileData bytes of
+ *  a TokenEnumerator.
+ *  <P>
+ *  Getting the view does not copy the text, and the same TokenText can be
+ *  reused for any number of tokens, so token text can be compared, hashed and
+ *  written without creating a String for each token.  The view is only valid
+ *  until the TokenEnumerator is edited.
+ *
+ *  @see TokenEnumerator#getTokenText
+ */
+public class TokenText implements CharSequence {
+    byte[] data;
+    int offset;
+    int length;
+
+    /** Class constructor, the view is empty until set by TokenEnumerator.getTokenText */
+    public TokenText() {
+        data = new byte[0];
+    }
+
+    /** Set the bytes the view is over */
+    void set( byte[] data, int offset, int length ) {
+        this.data = data;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /** Get the number of characters in the token */
+    public int length() {
+        return( length );
+    }
+
+    /** Get a character of the token */
+    public char charAt( int index ) {
+        return( (char)data[ offset + index ] );
+    }
+
+    /** Get a view of part of the token */
+    public CharSequence subSequence( int start, int end ) {
+        if (( start < 0 ) || ( end > length ) || ( start > end )) {
+            throw new IndexOutOfBoundsException( "subSequence " + start + " to " + end + " of " + length );
+        }
+        TokenText t = new TokenText();
+        t.set( data, offset + start, end - start );
+        return( t );
+    }
+
+    /** Compare the token to any other text, without creating a String */
+    public boolean contentEquals( CharSequence s ) {
+        if ( s.length() != length ) {
+            return( false );
+        }
+        for ( int i = 0; i < length; i++ ) {
+            if ( s.charAt( i ) != (char)data[ offset + i ] ) {
+                return( false );
+            }
+        }
+        return( true );
+    }
+
+    /** Check if two views hold the same text */
+    public boolean equals( Object o ) {
+        if ( o instanceof TokenText ) {
+            return( contentEquals( (TokenText)o ));
+        }
+        return( false );
+    }
+
+    /** Same value as the hashCode() of the String for the token */
+    public int hashCode() {
+        int h = 0;
+        for ( int i = 0; i < length; i++ ) {
+            h = 31*h + (char)data[ offset + i ];
+        }
+        return( h );
+    }
+
+    /** Append the token to a StringBuffer */
+    public void appendTo( StringBuffer sb ) {
+        for ( int i = 0; i < length; i++ ) {
+            sb.append( (char)data[ offset + i ] );
+        }
+    }
+
+    /** Write the bytes of the token to an OutputStream */
+    public void writeTo( OutputStream out ) throws IOException {
+        out.write( data, offset, length );
+    }
+
+    /** Create a String with the text of the token */
+    public String toString() {
+        char[] chars = new char[ length ];
+        for ( int i = 0; i < length; i++ ) {
+            chars[i] = (char)data[ offset + i ];
+        }
+        return( new String( chars ));
+    }
+}
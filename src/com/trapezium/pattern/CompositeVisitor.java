@@ -0,0 +1,163 @@
+/*
+ * @(#)CompositeVisitor.java
+ *
+ * Copyright (c) 1998 by Trapezium Development LLC.  All Rights Reserved.
+ *
+ * The information in this file is the property of Trapezium Development LLC
+ * and may be used only in accordance with the terms of the license granted
+ * by Trapezium.
+ *
+ */
+package com.trapezium.pattern;
+
+import com.trapezium.parse.TokenEnumerator;
+import com.trapezium.vrml.VrmlElement;
+
+/**
+ *  Visitor that passes each object to several visitors, so a single traversal
+ *  does the work of traversing with each visitor in turn.
+ *  <P>
+ *  Each visitor sees the same objects in the same order as in its own traversal.
+ *  A visitor that returns false for an object, or does not accept it, is left out
+ *  until the traversal is done with that object.  A visitor that does not visit
+ *  the children of elements that are not traversable only visits the element
+ *  itself.  Two pass visitors cannot be added.
+ *
+ *  @see com.trapezium.vrml.VrmlElement#traverse
+ */
+public class CompositeVisitor extends Visitor {
+    /** the visitors, each object is passed to them in the order they were added */
+    Visitor[] visitors;
+    int numberVisitors;
+
+    /** level at which each visitor was left out of the traversal, 0 if it is in
+     *  the traversal.  Negative if the visitor did not accept the object at that
+     *  level, in which case it did not visit the object.
+     */
+    int[] leftAt;
+
+    /** visitors that did not accept the object about to be visited */
+    boolean[] rejected;
+
+    /** true if any visitor visits the children of elements that are not traversable */
+    boolean visitsUntraversable;
+
+    /** Class constructor */
+    public CompositeVisitor( TokenEnumerator dataSource ) {
+        super( dataSource );
+        visitors = new Visitor[ 4 ];
+        leftAt = new int[ 4 ];
+        rejected = new boolean[ 4 ];
+    }
+
+    /** Add a visitor, must be done before the traversal */
+    public void addVisitor( Visitor v ) {
+        if ( v.isTwoPassVisitor() ) {
+            throw new IllegalArgumentException( "two pass visitor" );
+        }
+        if ( numberVisitors == visitors.length ) {
+            Visitor[] temp = new Visitor[ numberVisitors*2 ];
+            System.arraycopy( visitors, 0, temp, 0, numberVisitors );
+            visitors = temp;
+            leftAt = new int[ numberVisitors*2 ];
+            rejected = new boolean[ numberVisitors*2 ];
+        }
+        visitors[ numberVisitors++ ] = v;
+        if ( v.visitsUntraversable() ) {
+            visitsUntraversable = true;
+        }
+    }
+
+    /** Get the number of visitors */
+    public int getNumberVisitors() {
+        return( numberVisitors );
+    }
+
+    /** Get a specific visitor */
+    public Visitor getVisitorAt( int offset ) {
+        return( visitors[ offset ] );
+    }
+
+    /** Children of elements that are not traversable have to be traversed
+     *  if any of the visitors visits them.
+     */
+    public boolean visitsUntraversable() {
+        return( visitsUntraversable );
+    }
+
+    /** Check which of the visitors in the traversal accept an object.
+     *  Elements that are not traversable are visited without being accepted
+     *  by visitors that do not visit their children.
+     *
+     *  @return true if any of them accepts the object
+     */
+    public boolean accepts( Object a ) {
+        boolean untraversable = ( a instanceof VrmlElement ) && !((VrmlElement)a).isTraversable();
+        boolean result = false;
+        for ( int i = 0; i < numberVisitors; i++ ) {
+            if ( leftAt[i] == 0 ) {
+                if ( untraversable && !visitors[i].visitsUntraversable() ) {
+                    rejected[i] = false;
+                } else {
+                    rejected[i] = !visitors[i].accepts( a );
+                }
+                if ( !rejected[i] ) {
+                    result = true;
+                }
+            }
+        }
+        if ( !result ) {
+            for ( int i = 0; i < numberVisitors; i++ ) {
+                rejected[i] = false;
+            }
+        }
+        return( result );
+    }
+
+    /** Pass an object to each visitor in the traversal.
+     *
+     *  @return true if any visitor visits the children of the object
+     */
+    public boolean visit( Object a ) {
+        // only children are checked for being traversable, not the object traversal starts at
+        boolean untraversable = ( visitLevel > 0 ) && ( a instanceof VrmlElement ) && !((VrmlElement)a).isTraversable();
+        visitLevel++;
+        boolean result = false;
+        for ( int i = 0; i < numberVisitors; i++ ) {
+            if ( leftAt[i] != 0 ) {
+                continue;
+            }
+            Visitor v = visitors[i];
+            if ( untraversable && !v.visitsUntraversable() ) {
+                v.visit( a );
+                leftAt[i] = visitLevel;
+            } else if ( rejected[i] ) {
+                leftAt[i] = -visitLevel;
+            } else if ( v.visit( a )) {
+                result = true;
+            } else {
+                leftAt[i] = visitLevel;
+            }
+            rejected[i] = false;
+        }
+        return( result );
+    }
+
+    /** Done visiting at this level, for each visitor that visited the object */
+    public void done() {
+        for ( int i = 0; i < numberVisitors; i++ ) {
+            if (( leftAt[i] == 0 ) || ( leftAt[i] == visitLevel )) {
+                visitors[i].done();
+            }
+            if (( leftAt[i] == visitLevel ) || ( leftAt[i] == -visitLevel )) {
+                leftAt[i] = 0;
+            }
+        }
+        visitLevel--;
+    }
+
+    /** Not used, objects are passed to the visitors by <B>visit</B> */
+    public boolean visitObject( Object a ) {
+        return( true );
+    }
+}
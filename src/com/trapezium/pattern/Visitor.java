@@ -13,8 +13,8 @@ package com.trapezium.pattern;
 import com.trapezium.parse.TokenEnumerator;
 import com.trapezium.util.StringUtil;
 import com.trapezium.vrml.VrmlElement;
+import com.trapezium.vrml.ParseContext;
 import com.trapezium.vrml.node.PROTOInstance;
-import com.trapezium.util.GlobalProgressIndicator;
 import java.util.Hashtable;
 
 /**
@@ -69,7 +69,7 @@ import java.util.Hashtable;
     	    visited.put( a, a );
     	}
 	    notifyCallback( a );
-	    if ( GlobalProgressIndicator.abortCurrentProcess ) {
+	    if ( ParseContext.isCurrentAborted() ) {
 	        return( false );
 	    }
 		return( visitObject( a ));
@@ -107,6 +107,15 @@ import java.util.Hashtable;
 	public boolean accepts( Object a ) {
 		return( true );
 	}
+
+	/**
+	 *  Template method, indicates whether the children of elements that are
+	 *  not traversable, such as USE nodes, get visited.  The default visits only
+	 *  the element itself.
+	 */
+	public boolean visitsUntraversable() {
+	    return( false );
+	}
 	
 	public boolean acceptsPassOne( Object a ) {
 	    return( true );
@@ -1,6 +1,6 @@
 package com.trapezium.util;
 
-public class ByteString {
+public class ByteString implements CharSequence {
     byte[] dataSource;
     int start;
     int len;
@@ -46,4 +46,16 @@ public class ByteString {
             return( (char)(dataSource[ start + offset ]) );
         }
     }
+
+    public CharSequence subSequence( int begin, int end ) {
+        return( toString().substring( begin, end ));
+    }
+
+    public String toString() {
+        char[] chars = new char[ len ];
+        for ( int i = 0; i < len; i++ ) {
+            chars[i] = charAt( i );
+        }
+        return( new String( chars ));
+    }
 }
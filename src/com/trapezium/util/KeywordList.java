@@ -17,14 +17,13 @@ public class KeywordList {
         kSize++;
     }
 
-    String kElement;
-    void setKelement( int offset ) {
-        kElement = (String)kList.elementAt( offset );
-    }
-
+    /** Check if a keyword matches a token, first character is not compared.
+     *  Only locals are used here, so the list can be searched by several
+     *  TokenChunks at once.
+     */
     public boolean find( ByteString s, int offset, int size ) {
 	    for ( int i = 0; i < kSize; i++ ) {
-	        setKelement( i );
+	        String kElement = (String)kList.elementAt( i );
 	        if ( kElement.length() != size ) {
 	            continue;
 	        }
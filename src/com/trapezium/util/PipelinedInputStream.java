@@ -0,0 +1,177 @@
+/*
+ * @(#)PipelinedInputStream.java
+ *
+ * Copyright (c) 1998 by Trapezium Development LLC.  All Rights Reserved.
+ *
+ * The information in this file is the property of Trapezium Development LLC
+ * and may be used only in accordance with the terms of the license granted
+ * by Trapezium.
+ */
+package com.trapezium.util;
+
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  An InputStream that reads its source on a separate thread.
+ *  <P>
+ *  The reader thread fills large byte blocks and passes them to the consumer
+ *  through a bounded queue.  When the source is a GZIPInputStream, this lets
+ *  inflating the next blocks overlap with tokenizing the current one.  Blocks
+ *  are handed back to the reader once consumed, so a fixed number of blocks
+ *  is allocated for the life of the stream.
+ */
+public class PipelinedInputStream extends InputStream implements Runnable {
+    static public int DefaultBlockSize = 256*1024;
+    static public int DefaultBlockCount = 4;
+
+    /** Milliseconds the reader thread waits for the consumer before checking if the stream was closed */
+    static final long WaitMillis = 100;
+
+    /** A block of bytes read from the source */
+    static class Block {
+        byte[] data;
+        int length;
+        boolean last;
+        IOException error;
+
+        Block( int size ) {
+            data = new byte[ size ];
+        }
+    }
+
+    InputStream source;
+    ArrayBlockingQueue filledBlocks;
+    ArrayBlockingQueue freeBlocks;
+    Block current;
+    int position;
+    volatile boolean closed;
+    Thread reader;
+
+    /** Class constructor, starts reading the source immediately */
+    public PipelinedInputStream( InputStream source ) {
+        this( source, DefaultBlockSize, DefaultBlockCount );
+    }
+
+    /** Class constructor, starts reading the source immediately
+     *
+     *  @param source stream to read on the reader thread
+     *  @param blockSize number of bytes in each block
+     *  @param blockCount number of blocks, limits how far the reader gets ahead
+     */
+    public PipelinedInputStream( InputStream source, int blockSize, int blockCount ) {
+        this.source = source;
+        filledBlocks = new ArrayBlockingQueue( blockCount );
+        freeBlocks = new ArrayBlockingQueue( blockCount );
+        for ( int i = 0; i < blockCount; i++ ) {
+            freeBlocks.offer( new Block( blockSize ));
+        }
+        reader = new Thread( this, "PipelinedInputStream" );
+        reader.setDaemon( true );
+        reader.start();
+    }
+
+    /** Reader thread, fill free blocks until end of stream or error */
+    public void run() {
+        try {
+            while ( !closed ) {
+                Block b = (Block)freeBlocks.poll( WaitMillis, TimeUnit.MILLISECONDS );
+                if ( b == null ) {
+                    continue;
+                }
+                b.length = 0;
+                int n = 0;
+                try {
+                    while ( b.length < b.data.length ) {
+                        n = source.read( b.data, b.length, b.data.length - b.length );
+                        if ( n < 0 ) {
+                            break;
+                        }
+                        b.length += n;
+                    }
+                } catch ( IOException e ) {
+                    b.error = e;
+                    n = -1;
+                }
+                b.last = ( n < 0 );
+                while ( !filledBlocks.offer( b, WaitMillis, TimeUnit.MILLISECONDS )) {
+                    if ( closed ) {
+                        return;
+                    }
+                }
+                if ( b.last ) {
+                    break;
+                }
+            }
+        } catch ( InterruptedException e ) {
+        }
+    }
+
+    /** Make the next filled block current.
+     *
+     *  @return false if the end of the stream has been reached
+     */
+    boolean nextBlock() throws IOException {
+        if ( current != null ) {
+            if ( current.last ) {
+                return( false );
+            }
+            freeBlocks.offer( current );
+            current = null;
+        }
+        try {
+            current = (Block)filledBlocks.take();
+        } catch ( InterruptedException e ) {
+            throw new InterruptedIOException();
+        }
+        position = 0;
+        if ( current.error != null ) {
+            throw current.error;
+        }
+        return( true );
+    }
+
+    public int read() throws IOException {
+        while (( current == null ) || ( position >= current.length )) {
+            if ( !nextBlock() ) {
+                return( -1 );
+            }
+        }
+        return( current.data[ position++ ] & 0xff );
+    }
+
+    public int read( byte[] b, int off, int len ) throws IOException {
+        if ( len == 0 ) {
+            return( 0 );
+        }
+        while (( current == null ) || ( position >= current.length )) {
+            if ( !nextBlock() ) {
+                return( -1 );
+            }
+        }
+        int n = current.length - position;
+        if ( n > len ) {
+            n = len;
+        }
+        System.arraycopy( current.data, position, b, off, n );
+        position += n;
+        return( n );
+    }
+
+    public int available() {
+        if ( current == null ) {
+            return( 0 );
+        }
+        return( current.length - position );
+    }
+
+    /** Stop the reader thread and close the source */
+    public void close() throws IOException {
+        closed = true;
+        reader.interrupt();
+        source.close();
+    }
+}
@@ -12,6 +12,7 @@ package com.trapezium.vorlon;
 import com.trapezium.util.ReturnInteger;
 import java.util.Hashtable;
 import java.util.Enumeration;
+import java.util.Vector;
 
 public class ErrorSummary implements java.io.Serializable {
     int warningLimit;
@@ -39,6 +40,9 @@ public class ErrorSummary implements java.io.Serializable {
      *  @return true if the warning limit has not been reached, otherwise false
      */
     public boolean countWarning( String warningStr ) {
+        if ( deferredWarnings != null ) {
+            deferredWarnings.addElement( warningStr );
+        }
         warningCount++;
         ReturnInteger ri = (ReturnInteger)warningTable.get( warningStr );
         if ( ri == null ) {
@@ -49,6 +53,37 @@ public class ErrorSummary implements java.io.Serializable {
         return( warningCount < warningLimit );
     }
     
+    /** Warnings counted by a deferred summary, in the order they were counted */
+    Vector deferredWarnings;
+
+    /** Create a summary that counts warnings without any limit, and remembers them
+     *  so they can be counted against this summary later by countDeferred.  Used
+     *  when part of a file is checked on another thread.
+     */
+    public ErrorSummary createDeferred() {
+        ErrorSummary deferred = new ErrorSummary( Integer.MAX_VALUE );
+        deferred.deferredWarnings = new Vector();
+        return( deferred );
+    }
+
+    /** Count all the warnings of a deferred summary, in order.
+     *
+     *  @param deferred summary created by createDeferred
+     *  @return true if every one of the warnings is within the warning limit, and
+     *     was counted, false if any of them would reach the limit, in which case
+     *     none are counted
+     */
+    public boolean countDeferred( ErrorSummary deferred ) {
+        int n = deferred.deferredWarnings.size();
+        if ( warningCount + n >= warningLimit ) {
+            return( n == 0 );
+        }
+        for ( int i = 0; i < n; i++ ) {
+            countWarning( (String)deferred.deferredWarnings.elementAt( i ));
+        }
+        return( true );
+    }
+
     /** Get the count associated with a particular String. */
     public int getCount( String s ) {
         Enumeration e = warningTable.keys();
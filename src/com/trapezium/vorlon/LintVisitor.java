@@ -334,11 +334,14 @@ public class LintVisitor extends Visitor {
 			boolean result = true;
 			if ( vle instanceof Node ) {
 			    Node n = (Node)vle;
-			    if ( nodeTable.get( n ) == null ) {
-			        nodeTable.put( n, n );
-			    } else {
-			        return( false );
-			    }
+			    // nodes shared by PROTO instances are checked once for each instance
+			    if ( !n.isSharedPROTOnode() ) {
+    			    if ( nodeTable.get( n ) == null ) {
+    			        nodeTable.put( n, n );
+    			    } else {
+    			        return( false );
+    			    }
+    			}
 			    String baseName = n.getBaseName();
 			    String nodeError = n.getError();
 			    if ( baseName.compareTo( "IndexedFaceSet" ) == 0 ) {
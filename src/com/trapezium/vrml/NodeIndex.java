@@ -0,0 +1,188 @@
+/*
+ * @(#)NodeIndex.java
+ *
+ * Copyright (c) 1998 by Trapezium Development LLC.  All Rights Reserved.
+ *
+ * The information in this file is the property of Trapezium Development LLC
+ * and may be used only in accordance with the terms of the license granted
+ * by Trapezium.
+ *
+ */
+package com.trapezium.vrml;
+
+import com.trapezium.vrml.node.Node;
+import com.trapezium.vrml.node.PROTOInstance;
+import com.trapezium.vrml.node.PROTObase;
+import com.trapezium.vrml.node.DEFUSENode;
+import com.trapezium.vrml.grammar.VRML97;
+import java.util.Enumeration;
+import java.util.Hashtable;
+
+/**
+ *  The built in nodes of a file, by node id, in the order a traversal of the
+ *  Scene reaches them.
+ *  <P>
+ *  The index is built by the parser as nodes are created.  Nodes in PROTO
+ *  bodies and the copies made for PROTO instances are in the index of the file
+ *  Scene, a node shared by several PROTO instances is only in the index once.
+ *  Each node gets a number giving its position in the file, so nodes of
+ *  several types can be listed in the order they appear.
+ *  <P>
+ *  The index is not kept up to date when the Scene is edited after it is parsed,
+ *  the Scene drops it instead.
+ *
+ *  @see Scene#getNodeIndex
+ */
+public class NodeIndex {
+    /** nodes by node id, null for node ids without nodes */
+    Node[][] nodes;
+
+    /** position of each node in the file, by node id */
+    int[][] positions;
+
+    /** number of nodes, by node id */
+    int[] counts;
+
+    /** number of nodes in the index */
+    int size;
+
+    /** Class constructor */
+    public NodeIndex() {
+        int numberNodeIds = VRML97.getNumberNodes();
+        nodes = new Node[ numberNodeIds ][];
+        positions = new int[ numberNodeIds ][];
+        counts = new int[ numberNodeIds ];
+    }
+
+    /** nodes from the PROTO bodies of other files, see addOtherFileNode */
+    Hashtable otherFileNodes;
+
+    /** Add a node after all the nodes already in the index.
+     *
+     *  DEF nodes, PROTO declarations and PROTO instances are not built in nodes,
+     *  and are not added.
+     */
+    public void addNode( Node n ) {
+        if (( n instanceof DEFUSENode ) || ( n instanceof PROTObase ) || ( n instanceof PROTOInstance )) {
+            return;
+        }
+        int nodeId = n.getNodeId();
+        if ( nodeId < 0 ) {
+            return;
+        }
+        int count = counts[ nodeId ];
+        if ( nodes[ nodeId ] == null ) {
+            nodes[ nodeId ] = new Node[ 8 ];
+            positions[ nodeId ] = new int[ 8 ];
+        } else if ( count == nodes[ nodeId ].length ) {
+            Node[] temp = new Node[ count*2 ];
+            System.arraycopy( nodes[ nodeId ], 0, temp, 0, count );
+            nodes[ nodeId ] = temp;
+            int[] itemp = new int[ count*2 ];
+            System.arraycopy( positions[ nodeId ], 0, itemp, 0, count );
+            positions[ nodeId ] = itemp;
+        }
+        nodes[ nodeId ][ count ] = n;
+        positions[ nodeId ][ count ] = size++;
+        counts[ nodeId ] = count + 1;
+    }
+
+    /** Add a node from the body of an EXTERNPROTO, which is reached through the
+     *  copies made for the EXTERNPROTO's instances.
+     *
+     *  @return true if the node was not already reached, false if it was
+     */
+    public boolean addOtherFileNode( Node n ) {
+        if ( otherFileNodes == null ) {
+            otherFileNodes = new Hashtable();
+        } else if ( otherFileNodes.get( n ) != null ) {
+            return( false );
+        }
+        otherFileNodes.put( n, n );
+        addNode( n );
+        return( true );
+    }
+
+    /** Add the nodes of another index, in their order, after all the nodes
+     *  already in this index.
+     */
+    public void addNodes( NodeIndex other ) {
+        Node[] merged = new Node[ other.size ];
+        for ( int i = 0; i < other.nodes.length; i++ ) {
+            for ( int j = 0; j < other.counts[i]; j++ ) {
+                merged[ other.positions[i][j] ] = other.nodes[i][j];
+            }
+        }
+        for ( int i = 0; i < merged.length; i++ ) {
+            addNode( merged[i] );
+        }
+    }
+
+    /** Get the number of nodes in the index */
+    public int size() {
+        return( size );
+    }
+
+    /** Get the number of nodes with a node id */
+    public int getNumberNodes( int nodeId ) {
+        return( counts[ nodeId ] );
+    }
+
+    /** Get a node with a node id.
+     *
+     *  @param nodeId node id of the node
+     *  @param offset which of the nodes with that id, 0 for the first in the file
+     */
+    public Node getNode( int nodeId, int offset ) {
+        return( nodes[ nodeId ][ offset ] );
+    }
+
+    /** Get the nodes with any of a set of node ids, in the order they appear in the file.
+     *
+     *  @param nodeIds node ids of the nodes to get, each id listed once
+     *  @return Enumeration of the Node objects
+     */
+    public Enumeration elements( int[] nodeIds ) {
+        return( new NodeEnumeration( nodeIds ));
+    }
+
+    /** Merges the lists of several node ids by file position */
+    class NodeEnumeration implements Enumeration {
+        int[] nodeIds;
+        int[] offsets;
+
+        NodeEnumeration( int[] nodeIds ) {
+            this.nodeIds = nodeIds;
+            offsets = new int[ nodeIds.length ];
+        }
+
+        /** Get the index into nodeIds of the next node, -1 if there are no more */
+        int nextList() {
+            int result = -1;
+            int resultPosition = size;
+            for ( int i = 0; i < nodeIds.length; i++ ) {
+                int nodeId = nodeIds[i];
+                if ( offsets[i] < counts[ nodeId ] ) {
+                    int position = positions[ nodeId ][ offsets[i] ];
+                    if ( position < resultPosition ) {
+                        result = i;
+                        resultPosition = position;
+                    }
+                }
+            }
+            return( result );
+        }
+
+        public boolean hasMoreElements() {
+            return( nextList() != -1 );
+        }
+
+        public Object nextElement() {
+            int list = nextList();
+            if ( list == -1 ) {
+                throw new java.util.NoSuchElementException();
+            }
+            return( nodes[ nodeIds[ list ]][ offsets[ list ]++ ] );
+        }
+    }
+}
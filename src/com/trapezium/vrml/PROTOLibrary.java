@@ -0,0 +1,286 @@
+/*
+ * @(#)PROTOLibrary.java
+ *
+ * Copyright (c) 1998 by Trapezium Development LLC.  All Rights Reserved.
+ *
+ * The information in this file is the property of Trapezium Development LLC
+ * and may be used only in accordance with the terms of the license granted
+ * by Trapezium.
+ *
+ */
+package com.trapezium.vrml;
+
+import com.trapezium.parse.InputStreamFactory;
+import com.trapezium.parse.TokenEnumerator;
+import com.trapezium.vrml.node.PROTObase;
+import com.trapezium.vrml.grammar.VRML97parser;
+import java.io.File;
+import java.io.InputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Iterator;
+import java.util.Vector;
+import java.util.zip.CRC32;
+
+/**
+ *  The PROTO and EXTERNPROTO declarations of a file referenced by EXTERNPROTO
+ *  urls, parsed once per process.
+ *  <P>
+ *  Libraries are cached by url, and by the length and CRC of their text, so a
+ *  library is parsed once no matter how many files, or how many different urls,
+ *  refer to it.  A local file, named by a path or a "file:" url, is read again
+ *  only if its length or modification time changes.  Other urls cannot be
+ *  checked for changes, so they are dropped from the cache by clearUnchecked(),
+ *  which the factories call at the start of each job.  Both caches hold at most
+ *  maxLibraries entries, the least recently used are dropped first.  Nodes in
+ *  the library are not verified, only the declarations are kept.
+ *  <P>
+ *  The PROTObase declarations are shared by every caller, and must not be
+ *  changed.
+ *
+ *  @see com.trapezium.vrml.visitor.UrlVisitor
+ */
+public class PROTOLibrary {
+    /** Option, maximum number of libraries kept in each cache */
+    static public int maxLibraries = 64;
+    static public void setMaxLibraries( int n ) {
+        maxLibraries = n;
+    }
+
+    /** libraries by url, and by length and CRC of their text, least recently used first */
+    static LinkedHashMap librariesByUrl = createCache();
+    static LinkedHashMap librariesByContent = createCache();
+
+    /** Create a cache that drops its least recently used entry when it grows past maxLibraries */
+    static LinkedHashMap createCache() {
+        return( new LinkedHashMap( 16, 0.75f, true ) {
+            protected boolean removeEldestEntry( Map.Entry eldest ) {
+                return( size() > maxLibraries );
+            }
+        });
+    }
+
+    /** number of libraries parsed, for checking the cache is used */
+    static int numberParsed = 0;
+
+    String url;
+    String contentKey;
+
+    /** for local files, when the file was read */
+    boolean isLocal;
+    long fileLength;
+    long fileModified;
+
+    /** declarations by name, and names in file order */
+    Hashtable declarations;
+    Vector names;
+
+    /** Get the library at a url, reading and parsing it if necessary.
+     *
+     *  @param url resolved url of the library
+     *  @return the library, or null if the url cannot be read
+     */
+    static public PROTOLibrary get( String url ) {
+        File file = getLocalFile( url );
+        String key = url;
+        if ( file != null ) {
+            try {
+                key = file.getCanonicalPath();
+            } catch ( Exception e ) {
+            }
+        }
+        synchronized( PROTOLibrary.class ) {
+            PROTOLibrary library = (PROTOLibrary)librariesByUrl.get( key );
+            if (( library != null ) &&
+                (( file == null ) || (( file.length() == library.fileLength ) && ( file.lastModified() == library.fileModified )))) {
+                return( library );
+            }
+        }
+        long fileLength = 0;
+        long fileModified = 0;
+        if ( file != null ) {
+            fileLength = file.length();
+            fileModified = file.lastModified();
+        }
+        byte[] text = read( url );
+        if ( text == null ) {
+            return( null );
+        }
+        CRC32 crc = new CRC32();
+        crc.update( text, 0, text.length );
+        String contentKey = text.length + ":" + Long.toHexString( crc.getValue() );
+        PROTOLibrary library;
+        synchronized( PROTOLibrary.class ) {
+            library = (PROTOLibrary)librariesByContent.get( contentKey );
+        }
+        if ( library == null ) {
+            library = new PROTOLibrary( url, contentKey, text );
+        }
+        synchronized( PROTOLibrary.class ) {
+            PROTOLibrary existing = (PROTOLibrary)librariesByContent.get( contentKey );
+            if ( existing != null ) {
+                library = existing;
+            } else {
+                librariesByContent.put( contentKey, library );
+            }
+            PROTOLibrary entry = library;
+            if ( file != null ) {
+                // same text at another url or time, the url entry keeps its own file state
+                entry = new PROTOLibrary( library, key );
+                entry.isLocal = true;
+                entry.fileLength = fileLength;
+                entry.fileModified = fileModified;
+            }
+            librariesByUrl.put( key, entry );
+            return( entry );
+        }
+    }
+
+    /** Get the local file named by a path or a "file:" url, null if it is not a local file */
+    static File getLocalFile( String url ) {
+        File file = new File( url );
+        if ( file.isFile() ) {
+            return( file );
+        }
+        try {
+            URL u = new URL( url );
+            if ( "file".equals( u.getProtocol() )) {
+                file = new File( URLDecoder.decode( u.getPath(), "UTF-8" ));
+                if ( file.isFile() ) {
+                    return( file );
+                }
+            }
+        } catch ( Exception e ) {
+        }
+        return( null );
+    }
+
+    /** Remove all libraries from the cache */
+    static public synchronized void clearCache() {
+        librariesByUrl.clear();
+        librariesByContent.clear();
+    }
+
+    /** Remove the libraries read from urls that cannot be checked for changes,
+     *  called between jobs so each job reads those urls again.  A library whose
+     *  text has not changed is still parsed only once, since it is also cached
+     *  by content.
+     */
+    static public synchronized void clearUnchecked() {
+        Iterator i = librariesByUrl.values().iterator();
+        while ( i.hasNext() ) {
+            PROTOLibrary library = (PROTOLibrary)i.next();
+            if ( !library.isLocal ) {
+                i.remove();
+            }
+        }
+    }
+
+    /** Get the number of libraries parsed since the process started */
+    static public synchronized int getNumberParsed() {
+        return( numberParsed );
+    }
+
+    /** Read the text of a url, null if it cannot be read */
+    static byte[] read( String url ) {
+        try {
+            InputStream is = InputStreamFactory.getInputStream( url );
+            if ( is == null ) {
+                return( null );
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[ 8192 ];
+            int n;
+            while (( n = is.read( buffer )) > 0 ) {
+                out.write( buffer, 0, n );
+            }
+            is.close();
+            return( out.toByteArray() );
+        } catch ( Exception e ) {
+            return( null );
+        } catch ( NoClassDefFoundError e ) {
+            return( null );
+        }
+    }
+
+    /** Class constructor, parse the declarations in the text of a library */
+    PROTOLibrary( String url, String contentKey, byte[] text ) {
+        this.url = url;
+        this.contentKey = contentKey;
+        declarations = new Hashtable();
+        names = new Vector();
+
+        // the library is parsed in its own context, so its warnings and options
+        // are separate from the file that refers to it
+        ParseContext context = new ParseContext();
+        context.setVerifyDisabled( true );
+        context.setNowarning( true );
+        context.setNoUnusedDEFwarning( true );
+        ParseContext previousContext = ParseContext.bind( context );
+        try {
+            TokenEnumerator v = new TokenEnumerator( new ByteArrayInputStream( text ), url );
+            Scene scene = new Scene( url, v );
+            VRML97parser parser = new VRML97parser();
+            parser.Build( v, scene );
+            int n = scene.numberChildren();
+            for ( int i = 0; i < n; i++ ) {
+                VrmlElement child = scene.getChildAt( i );
+                if ( child instanceof PROTObase ) {
+                    PROTObase proto = (PROTObase)child;
+                    String name = proto.getId();
+                    if (( name != null ) && ( declarations.get( name ) == null )) {
+                        names.addElement( name );
+                    }
+                    if ( name != null ) {
+                        declarations.put( name, proto );
+                    }
+                }
+            }
+        } catch ( Exception e ) {
+            e.printStackTrace();
+        } finally {
+            ParseContext.bind( previousContext );
+        }
+        synchronized( PROTOLibrary.class ) {
+            numberParsed++;
+        }
+    }
+
+    /** Class constructor, share the declarations of another library */
+    PROTOLibrary( PROTOLibrary library, String url ) {
+        this.url = url;
+        contentKey = library.contentKey;
+        declarations = library.declarations;
+        names = library.names;
+    }
+
+    /** Get the url the library was read from */
+    public String getUrl() {
+        return( url );
+    }
+
+    /** Get the number of PROTO and EXTERNPROTO declarations */
+    public int getNumberPROTOs() {
+        return( names.size() );
+    }
+
+    /** Get the name of a declaration, in file order */
+    public String getPROTOName( int offset ) {
+        return( (String)names.elementAt( offset ));
+    }
+
+    /** Get a declaration by name, null if there is none */
+    public PROTObase getPROTO( String name ) {
+        return( (PROTObase)declarations.get( name ));
+    }
+
+    /** Is there a declaration with a particular name? */
+    public boolean hasPROTO( String name ) {
+        return( declarations.get( name ) != null );
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * @(#)ParseContext.java
+ *
+ * Copyright (c) 1998 by Trapezium Development LLC.  All Rights Reserved.
+ *
+ * The information in this file is the property of Trapezium Development LLC
+ * and may be used only in accordance with the terms of the license granted
+ * by Trapezium.
+ *
+ */
+package com.trapezium.vrml;
+
+import com.trapezium.vrml.node.NodeType;
+import com.trapezium.vrml.grammar.VRML97parser;
+import com.trapezium.util.GlobalProgressIndicator;
+
+/**
+ *  The options and counters of one parsing or chiseling job, so that several
+ *  files can be parsed and chiseled at the same time in one process.
+ *  <P>
+ *  A ParseContext is bound to the thread doing the work with "bind", and a
+ *  Scene keeps the context it was created with.  VrmlElements, node verification
+ *  and visitors use the context bound to their thread.
+ *  <P>
+ *  A thread with no context bound uses the default context, which reads and
+ *  writes the static options in VrmlElement, NodeType, VRML97parser and
+ *  GlobalProgressIndicator, so code that only sets those options works as before.
+ *  A new context starts with the current values of those static options.
+ *
+ *  @see VrmlElement#nowarning
+ *  @see NodeType#verifyDisabled
+ */
+public class ParseContext {
+    /** the context used by threads with no context bound */
+    static ParseContext defaultContext = new ParseContext( true );
+
+    /** context bound to each thread */
+    static ThreadLocal boundContext = new ThreadLocal();
+
+    boolean isDefault;
+    boolean nowarning;
+    boolean noUnusedDEFwarning;
+    boolean baseProfile;
+    boolean disableBaseProfile;
+    boolean verifyDisabled;
+    boolean usageChecksEnabled;
+    boolean aborted;
+    int createCount;
+    VRML97parser parser;
+
+    /** Class constructor, options start with the values of the static options */
+    public ParseContext() {
+        this( false );
+        nowarning = VrmlElement.nowarning;
+        noUnusedDEFwarning = VrmlElement.noUnusedDEFwarning;
+        baseProfile = VrmlElement.baseProfile;
+        disableBaseProfile = VrmlElement.disableBaseProfile;
+        verifyDisabled = NodeType.verifyDisabled;
+        usageChecksEnabled = NodeType.usageChecksEnabled;
+    }
+
+    ParseContext( boolean isDefault ) {
+        this.isDefault = isDefault;
+    }
+
+    /** Get the context bound to the current thread, or the default context if there is none */
+    static public ParseContext get() {
+        ParseContext context = (ParseContext)boundContext.get();
+        if ( context == null ) {
+            return( defaultContext );
+        } else {
+            return( context );
+        }
+    }
+
+    /** Bind a context to the current thread.
+     *
+     *  @param context the context to bind, null or the default context to remove the binding
+     *  @return the context previously bound to the thread, null if there was none,
+     *     used to restore the binding when done
+     */
+    static public ParseContext bind( ParseContext context ) {
+        ParseContext previous = (ParseContext)boundContext.get();
+        if (( context == null ) || context.isDefault ) {
+            boundContext.remove();
+        } else {
+            boundContext.set( context );
+        }
+        return( previous );
+    }
+
+    /** Is this the default context, which uses the static options? */
+    public boolean isDefault() {
+        return( isDefault );
+    }
+
+    /** Option, disable warnings entirely */
+    public boolean getNowarning() {
+        return( isDefault ? VrmlElement.nowarning : nowarning );
+    }
+    public void setNowarning( boolean value ) {
+        if ( isDefault ) {
+            VrmlElement.nowarning = value;
+        } else {
+            nowarning = value;
+        }
+    }
+
+    /** Option, disable unused DEF warnings */
+    public boolean getNoUnusedDEFwarning() {
+        return( isDefault ? VrmlElement.noUnusedDEFwarning : noUnusedDEFwarning );
+    }
+    public void setNoUnusedDEFwarning( boolean value ) {
+        if ( isDefault ) {
+            VrmlElement.noUnusedDEFwarning = value;
+        } else {
+            noUnusedDEFwarning = value;
+        }
+    }
+
+    /** Option, only record nonconformance messages */
+    public boolean getBaseProfile() {
+        return( isDefault ? VrmlElement.baseProfile : baseProfile );
+    }
+    public void setBaseProfile( boolean value ) {
+        if ( isDefault ) {
+            VrmlElement.baseProfile = value;
+        } else {
+            baseProfile = value;
+        }
+    }
+
+    /** Option, disable nonconformance messages */
+    public boolean getDisableBaseProfile() {
+        return( isDefault ? VrmlElement.disableBaseProfile : disableBaseProfile );
+    }
+    public void setDisableBaseProfile( boolean value ) {
+        if ( isDefault ) {
+            VrmlElement.disableBaseProfile = value;
+        } else {
+            disableBaseProfile = value;
+        }
+    }
+
+    /** Option, disable node verification */
+    public boolean getVerifyDisabled() {
+        return( isDefault ? NodeType.verifyDisabled : verifyDisabled );
+    }
+    public void setVerifyDisabled( boolean value ) {
+        if ( isDefault ) {
+            NodeType.verifyDisabled = value;
+        } else {
+            verifyDisabled = value;
+        }
+    }
+
+    /** Option, verify IndexedFaceSet and IndexedLineSet usage even when verification is disabled */
+    public boolean getUsageChecksEnabled() {
+        return( isDefault ? NodeType.usageChecksEnabled : usageChecksEnabled );
+    }
+    public void setUsageChecksEnabled( boolean value ) {
+        if ( isDefault ) {
+            NodeType.usageChecksEnabled = value;
+        } else {
+            usageChecksEnabled = value;
+        }
+    }
+
+    /** Count a VrmlElement created, not thread safe */
+    public void countElement() {
+        if ( isDefault ) {
+            VrmlElement.createCount++;
+        } else {
+            createCount++;
+        }
+    }
+
+    /** Get the number of VrmlElements created */
+    public int getCreateCount() {
+        return( isDefault ? VrmlElement.createCount : createCount );
+    }
+    public void setCreateCount( int n ) {
+        if ( isDefault ) {
+            VrmlElement.createCount = n;
+        } else {
+            createCount = n;
+        }
+    }
+
+    /** set once any job has been aborted, until then there is no need to look up
+     *  the context of the current thread to check for an abort
+     */
+    static volatile boolean anyAborted;
+
+    /** Abort the job */
+    public void abort() {
+        if ( isDefault ) {
+            GlobalProgressIndicator.abortCurrentProcess = true;
+        } else {
+            aborted = true;
+            anyAborted = true;
+        }
+    }
+
+    /** Has the job, or all jobs, been aborted? */
+    public boolean isAborted() {
+        return( aborted || GlobalProgressIndicator.abortCurrentProcess );
+    }
+
+    /** Has the job bound to the current thread, or all jobs, been aborted?
+     *  Same as get().isAborted(), but cheap enough to check for every token.
+     */
+    static public boolean isCurrentAborted() {
+        if ( GlobalProgressIndicator.abortCurrentProcess ) {
+            return( true );
+        } else if ( !anyAborted ) {
+            return( false );
+        } else {
+            return( get().isAborted() );
+        }
+    }
+
+    /** Get the parser used for PROTOs */
+    public VRML97parser getParser() {
+        if ( isDefault || ( parser == null )) {
+            return( VRML97parser.singleton );
+        } else {
+            return( parser );
+        }
+    }
+
+    /** Set the parser used for PROTOs.  The default context keeps its parser
+     *  in VRML97parser.singleton, which is not cleared when a null parser is
+     *  restored, so PROTOs created after parsing still find a parser.
+     *
+     *  @return the previous parser
+     */
+    public VRML97parser setParser( VRML97parser parser ) {
+        if ( isDefault ) {
+            VRML97parser previous = VRML97parser.singleton;
+            if ( parser != null ) {
+                VRML97parser.singleton = parser;
+            }
+            return( previous );
+        } else {
+            VRML97parser previous = this.parser;
+            this.parser = parser;
+            return( previous );
+        }
+    }
+}
@@ -12,6 +12,8 @@ package com.trapezium.vrml;
 
 import com.trapezium.parse.TokenEnumerator;
 import com.trapezium.parse.TokenFactory;
+import com.trapezium.parse.SymbolTable;
+import com.trapezium.parse.Symbols;
 import com.trapezium.vrml.node.PROTO;
 import com.trapezium.vrml.node.PROTObase;
 import com.trapezium.vrml.node.PROTOInstance;
@@ -21,6 +23,7 @@ import com.trapezium.vrml.node.NodeType;
 import com.trapezium.vrml.node.TokenData;
 import com.trapezium.util.ReturnInteger;
 import com.trapezium.vrml.grammar.VRML97;
+import com.trapezium.vrml.grammar.SpellingIndex;
 import com.trapezium.vrml.grammar.DEFNameFactory;
 import com.trapezium.vrml.visitor.DEFVisitor;
 import com.trapezium.vrml.visitor.NodeSelectionVisitor;
@@ -88,6 +91,21 @@ public class Scene extends MultipleTokenElement implements SelectNode {
         this.errorSummary = errorSummary;
     }
     
+    /** options and counters of the job that created this Scene */
+    transient ParseContext parseContext = ParseContext.get();
+
+    public ParseContext getParseContext() {
+        if ( parseContext == null ) {
+            return( ParseContext.get() );
+        } else {
+            return( parseContext );
+        }
+    }
+
+    public void setParseContext( ParseContext parseContext ) {
+        this.parseContext = parseContext;
+    }
+
     /** List of nodes verified, created if necessary */
     Hashtable verifyList;
     public Hashtable getVerifyList() {
@@ -97,14 +115,31 @@ public class Scene extends MultipleTokenElement implements SelectNode {
         return( verifyList );
     }
     
+    /** Built in nodes of the file by type, null until the parser registers the first
+     *  node.  The nodes of PROTO bodies are kept by the file Scene.
+     */
+    transient NodeIndex nodeIndex;
+
 	/** PROTO nodes by type */
 	public Hashtable protoTable = null;
 
 	/** PROTO node declarations available to Scene, identified by PROTO name */
 	public Hashtable PROTONodes = null;
 
+	/** SpellingIndex of PROTONodes, built when an unknown node needs one */
+	transient SpellingIndex protoSpelling = null;
+
 	/** DEF/USE nodes scope is limited to file */
 	public Hashtable DEFNodes = null;
+
+	/** The DEF nodes of DEFNodes by the symbol id of their name, for looking up
+	 *  USE nodes without hashing their names.  Only valid while DEFsIndexed is
+	 *  true, which it stops being once a DEF is registered whose name is not a
+	 *  symbol of DEFsymbolTable.
+	 */
+	transient DEFUSENode[] DEFsBySymbol;
+	transient SymbolTable DEFsymbolTable;
+	transient boolean DEFsIndexed;
 	
 	/** list of all ROUTEs, used to check for duplicates */
 	public Hashtable routeTable = null;
@@ -246,6 +281,85 @@ public class Scene extends MultipleTokenElement implements SelectNode {
 	    this.dataSource = te;
 	    this.defNameFactory = defNameFactory;
     }
+
+    /** DEFs registered in a statement Scene, in the order they were registered */
+    Vector statementDEFs;
+
+    /** Constructor for a statement Scene, see createStatementScene */
+    Scene( Scene main, TokenEnumerator cursor ) {
+        super( -1 );
+        sceneId = main.sceneId;
+        url = main.url;
+        dataSource = cursor;
+        PROTONodes = main.PROTONodes;
+        protoTable = main.protoTable;
+        parseContext = main.getParseContext();
+        if ( main.errorSummary != null ) {
+            errorSummary = main.errorSummary.createDeferred();
+        }
+        statementDEFs = new Vector();
+    }
+
+    /** Create an empty Scene that top level statements of this Scene can be parsed into
+     *  on another thread.  It has the url and PROTOs of this Scene, but its own DEFs,
+     *  verification tables, and a deferred ErrorSummary.  The statements are moved
+     *  into this Scene by addStatements.
+     *
+     *  @param cursor cursor on this Scene's TokenEnumerator, used to read the statements
+     */
+    public Scene createStatementScene( TokenEnumerator cursor ) {
+        return( new Scene( this, cursor ));
+    }
+
+    /** Move the statements parsed into a statement Scene to the end of this Scene.
+     *  Their DEFs are registered and their warnings counted in the same order as if
+     *  the statements had been parsed into this Scene.
+     *
+     *  @param s Scene created by createStatementScene
+     *  @return true if the statements were moved, false if their warnings would reach the
+     *     warning limit of this Scene's ErrorSummary, in which case nothing is moved,
+     *     and the statements have to be parsed again into this Scene
+     */
+    public boolean addStatements( Scene s ) {
+        if (( errorSummary != null ) && !errorSummary.countDeferred( s.errorSummary )) {
+            return( false );
+        }
+        int n = s.numberChildren();
+        for ( int i = 0; i < n; i++ ) {
+            addChild( s.getChildAt( i ));
+        }
+        s.children = null;
+        s.childCount = 0;
+        if ( s.nodeIndex != null ) {
+            if ( nodeIndex == null ) {
+                nodeIndex = new NodeIndex();
+            }
+            nodeIndex.addNodes( s.nodeIndex );
+        }
+        int nDEFs = s.statementDEFs.size();
+        for ( int i = 0; i < nDEFs; i++ ) {
+            registerDEF( (DEFUSENode)s.statementDEFs.elementAt( i ));
+        }
+        if ( s.usageTable != null ) {
+            getUsageTable().putAll( s.usageTable );
+        }
+        if ( s.coordTable != null ) {
+            getCoordTable().putAll( s.coordTable );
+        }
+        if ( s.texCoordTable != null ) {
+            getTexCoordTable().putAll( s.texCoordTable );
+        }
+        if ( s.colorTable != null ) {
+            getColorTable().putAll( s.colorTable );
+        }
+        if ( s.normalTable != null ) {
+            getNormalTable().putAll( s.normalTable );
+        }
+        if ( s.verifyList != null ) {
+            getVerifyList().putAll( s.verifyList );
+        }
+        return( true );
+    }
     
     /** Each scene assigned an id number as it is created */
     public int getSceneId() {
@@ -312,15 +426,61 @@ public class Scene extends MultipleTokenElement implements SelectNode {
 	void createDEFtable() {
 		if ( DEFNodes == null ) {
 			DEFNodes = new Hashtable();
+			DEFsIndexed = true;
 		}
 	}
 
+	/** Add a registered DEF to DEFsBySymbol */
+	void indexDEF( DEFUSENode def ) {
+	    if ( !DEFsIndexed ) {
+	        return;
+	    }
+	    int symbol = def.getSymbol();
+	    SymbolTable symbolTable = def.getSymbolTable();
+	    if ( DEFsymbolTable == null ) {
+	        DEFsymbolTable = symbolTable;
+	    }
+	    if (( symbol == Symbols.NoSymbol ) || ( symbolTable == null ) || ( symbolTable != DEFsymbolTable )) {
+	        stopIndexingDEFs();
+	        return;
+	    }
+	    if (( DEFsBySymbol == null ) || ( symbol >= DEFsBySymbol.length )) {
+	        int size = ( DEFsBySymbol == null ) ? 256 : DEFsBySymbol.length*2;
+	        while ( size <= symbol ) {
+	            size = size*2;
+	        }
+	        DEFUSENode[] temp = new DEFUSENode[ size ];
+	        if ( DEFsBySymbol != null ) {
+	            System.arraycopy( DEFsBySymbol, 0, temp, 0, DEFsBySymbol.length );
+	        }
+	        DEFsBySymbol = temp;
+	    }
+	    DEFsBySymbol[ symbol ] = def;
+	}
+
+	/** DEFs are looked up by name from now on */
+	void stopIndexingDEFs() {
+	    DEFsIndexed = false;
+	    DEFsBySymbol = null;
+	    DEFsymbolTable = null;
+	}
+
+	/** Is a DEF or USE named by a symbol in DEFsBySymbol? */
+	boolean isIndexedDEF( DEFUSENode def ) {
+	    return( DEFsIndexed && ( def.getSymbol() != Symbols.NoSymbol ) &&
+	        ( def.getSymbolTable() != null ) && ( def.getSymbolTable() == DEFsymbolTable ));
+	}
+
 	/** register DEF node in Scene.  This is done as file is processed so at this
 	 *  point names are changed to enforce uniqueness.
 	 */
 	public void registerDEF( DEFUSENode def ) {
 	    deregisterDEF( def );
 		DEFNodes.put( def.getId(), def );
+		indexDEF( def );
+		if ( statementDEFs != null ) {
+		    statementDEFs.addElement( def );
+		}
 	}
 	
 	/** deregister DEF node in Scene, used before a rename */
@@ -328,6 +488,13 @@ public class Scene extends MultipleTokenElement implements SelectNode {
 	    createDEFtable();
 	    if ( DEFNodes.get( def.getId() ) != null ) {
 	        DEFNodes.remove( def.getId() );
+	        if ( isIndexedDEF( def )) {
+	            if ( def.getSymbol() < DEFsBySymbol.length ) {
+	                DEFsBySymbol[ def.getSymbol() ] = null;
+	            }
+	        } else {
+	            stopIndexingDEFs();
+	        }
 	    }
 	}
 	
@@ -335,11 +502,19 @@ public class Scene extends MultipleTokenElement implements SelectNode {
 	public void registerDEF( String defName ) {
 		createDEFtable();
 		DEFNodes.put( defName, "" );
+		stopIndexingDEFs();
 	}
 
 	/** get a def node given a "USE" */
 	public DEFUSENode getDEF( DEFUSENode use ) {
 		createDEFtable();
+		if ( isIndexedDEF( use )) {
+		    int symbol = use.getSymbol();
+		    if (( DEFsBySymbol == null ) || ( symbol >= DEFsBySymbol.length )) {
+		        return( null );
+		    }
+		    return( DEFsBySymbol[ symbol ] );
+		}
 		DEFUSENode d = (DEFUSENode)DEFNodes.get( use.getId() );
 		return( d );
 	}
@@ -366,6 +541,78 @@ public class Scene extends MultipleTokenElement implements SelectNode {
     public Hashtable getDEFtable() {
         return( DEFNodes );
     }
+
+    /** Get the Scene keeping the NodeIndex, for the body of a PROTO this is the
+     *  Scene of the file the PROTO is declared in.
+     */
+    Scene getIndexScene() {
+        Scene s = this;
+        while ( s.protoParent != null ) {
+            VrmlElement protoScene = s.protoParent.getScene();
+            if ( !( protoScene instanceof Scene ) || ( protoScene == s )) {
+                break;
+            }
+            s = (Scene)protoScene;
+        }
+        return( s );
+    }
+
+    /** Get the built in nodes of the file by type.
+     *
+     *  @return the NodeIndex built by the parser, or null if there is none, or if
+     *     the scene graph has been edited since the file was parsed
+     */
+    public NodeIndex getNodeIndex() {
+        return( getIndexScene().nodeIndex );
+    }
+
+    /** Drop the NodeIndex, called when the scene graph is edited after parsing */
+    public void clearNodeIndex() {
+        getIndexScene().nodeIndex = null;
+    }
+
+    /** Add a node created by the parser to the NodeIndex */
+    public void registerNode( Node n ) {
+        Scene s = getIndexScene();
+        if ( s.nodeIndex == null ) {
+            s.nodeIndex = new NodeIndex();
+        }
+        s.nodeIndex.addNode( n );
+    }
+
+    /** Add the nodes copied for a PROTO instance to the NodeIndex.
+     *
+     *  The fields of a copy share their values with the PROTO body or with the
+     *  fields of the instance, so only the copy itself is a new node.  Nodes reached
+     *  through it are already in the index, except those in the body of an
+     *  EXTERNPROTO, which are added the first time they are reached.
+     *
+     *  @param pi PROTO instance
+     *  @param firstCopy offset of the first child added by copyBaseNodeInfo
+     */
+    public void registerCopies( PROTOInstance pi, int firstCopy ) {
+        Scene s = getIndexScene();
+        int n = pi.numberChildren();
+        for ( int i = firstCopy; i < n; i++ ) {
+            VrmlElement copy = pi.getChildAt( i );
+
+            // a copy shared by all instances is only new for the first instance
+            if (( copy instanceof Node ) && ( copy.getParent() == pi )) {
+                registerNode( (Node)copy );
+                VrmlElementIterator walk = new VrmlElementIterator( copy );
+                walk.nextElement();
+                while ( walk.hasMoreElements() ) {
+                    VrmlElement e = (VrmlElement)walk.nextElement();
+                    if ( e instanceof Node ) {
+                        Scene nodeScene = (Scene)e.getScene();
+                        if (( nodeScene == null ) || ( nodeScene.getIndexScene() == s ) || !s.nodeIndex.addOtherFileNode( (Node)e )) {
+                            walk.prune();
+                        }
+                    }
+                }
+            }
+        }
+    }
     
 	/**
 	 *  Register PROTO node in Scene.
@@ -401,6 +648,7 @@ public class Scene extends MultipleTokenElement implements SelectNode {
 			PROTONodes.remove( proto.getId() );
 		}
 		PROTONodes.put( proto.getId(), proto );
+		protoSpelling = null;
 	}
 
 	/**
@@ -500,7 +748,15 @@ public class Scene extends MultipleTokenElement implements SelectNode {
 	 *  the unknown PROTO name provided.
 	 */
 	public String getClosestMatch( String protoString, ReturnInteger result ) {
-	    return( VRML97.getClosestMatch( protoString, PROTONodes, result ));
+	    if ( PROTONodes == null ) {
+	        return( null );
+	    }
+	    SpellingIndex index = protoSpelling;
+	    if (( index == null ) || !index.isIndexOf( PROTONodes )) {
+	        index = new SpellingIndex( PROTONodes );
+	        protoSpelling = index;
+	    }
+	    return( index.getClosestMatch( protoString, result ));
 	}
 	
     /** Add a ROUTE to the scene.  If the ROUTE has DEFs that conflict with
@@ -575,6 +831,7 @@ public class Scene extends MultipleTokenElement implements SelectNode {
         sceneTokenData.insert( nodeTokenData );
         Node newNode = nodeTokenData.getNode();
         addChild( newNode );
+        clearNodeIndex();
         setLastTokenOffset( newNode.getLastTokenOffset() );
         if ( defResolver != null ) {
             defResolver.resolve( newNode );
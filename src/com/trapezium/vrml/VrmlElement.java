@@ -14,10 +14,9 @@ import com.trapezium.parse.TokenEnumerator;
 import com.trapezium.pattern.Visitor;
 import com.trapezium.pattern.VisitorPattern;
 import com.trapezium.vrml.visitor.DumpVisitor;
-import com.trapezium.vrml.visitor.ComplexityVisitor;
 import com.trapezium.vrml.visitor.AdjustmentVisitor;
 import com.trapezium.util.GlobalProgressIndicator;
-import java.util.Vector;
+import java.util.Hashtable;
 
 /**
  *  A VrmlElement is the base class for any object in the VRML 2.0 object hierarchy.
@@ -43,6 +42,9 @@ import java.util.Vector;
  *  @since           1.0
  */
 abstract public class VrmlElement implements VisitorPattern, java.io.Serializable {
+    // The options below are the defaults for each ParseContext, and are used
+    // directly by threads with no ParseContext bound.
+
     /** Option, disable warnings entirely */
 	static public boolean nowarning = false;
 	/** Option, disable unused DEF warnings */
@@ -51,7 +53,9 @@ abstract public class VrmlElement implements VisitorPattern, java.io.Serializabl
 	static public boolean baseProfile = false;
 	/** Option, disable nonconformance messages */
 	static public boolean disableBaseProfile = false;
-	/** Used to track number of VrmlElements created during parsing, not thread safe */
+	/** Used to track number of VrmlElements created during parsing, not thread safe.
+	 *  Only counts elements created by threads with no ParseContext bound.
+	 */
 	static public int createCount = 0;
 
 	/** any error creating a specific element is noted here, see setError, getError */
@@ -60,12 +64,18 @@ abstract public class VrmlElement implements VisitorPattern, java.io.Serializabl
 	/** parent, necessary for scoping searches */
 	VrmlElement parent = null;
 
-	/** children are seen only through the Visitor pattern */
+	/** children are seen only through the Visitor pattern.  A single child is
+	 *  kept directly, more than one in a VrmlElement array that is filled up to
+	 *  childCount.
+	 */
 	Object children = null;
 
+	/** number of children */
+	int childCount = 0;
+
 	/** default constructor */
 	public VrmlElement() {
-	    createCount++;
+	    ParseContext.get().countElement();
 	}
 
     /** Write out the object for serialization, mark progress if GlobalProgressIndicator
@@ -89,12 +99,21 @@ abstract public class VrmlElement implements VisitorPattern, java.io.Serializabl
     }
 
 
+	/** class names without package, by class, so each is only created once */
+	static Hashtable baseNames = new Hashtable();
+
 	/** get the class name without package */
 	public String getBaseName() {
-		String className = getClass().getName();
-		int firstIndex = className.lastIndexOf( '.' ) + 1;
-		int lastIndex = className.length();
-		return( className.substring( firstIndex, lastIndex ));
+		Class c = getClass();
+		String baseName = (String)baseNames.get( c );
+		if ( baseName == null ) {
+    		String className = c.getName();
+    		int firstIndex = className.lastIndexOf( '.' ) + 1;
+    		int lastIndex = className.length();
+    		baseName = className.substring( firstIndex, lastIndex );
+    		baseNames.put( c, baseName );
+    	}
+		return( baseName );
 	}
 
 	/* Set first token */
@@ -122,22 +141,28 @@ abstract public class VrmlElement implements VisitorPattern, java.io.Serializabl
 		if ( child == null ) {
 			return;
 		}
+		VrmlElement pChild = (VrmlElement)child;
 		// optimization, one child added directly, if more than one
-		// create Vector
-		if ( children == null ) {
-			children = child;
-		} else if ( children instanceof Vector ) {
-		    ((Vector)children).addElement( child );
+		// create array, doubled in size when full
+		if ( childCount == 0 ) {
+			children = pChild;
+		} else if ( childCount == 1 ) {
+		    VrmlElement[] a = new VrmlElement[ 4 ];
+		    a[0] = (VrmlElement)children;
+		    a[1] = pChild;
+		    children = a;
 		} else {
-		    Object original = children;
-		    children = new Vector();
-		    ((Vector)children).addElement( original );
-		    ((Vector)children).addElement( child );
-		}
-		if ( child instanceof VrmlElement ) {
-			VrmlElement pChild = (VrmlElement)child;
-			pChild.setParent( this );
+		    VrmlElement[] a = (VrmlElement[])children;
+		    if ( childCount == a.length ) {
+		        VrmlElement[] temp = new VrmlElement[ childCount*2 ];
+		        System.arraycopy( a, 0, temp, 0, childCount );
+		        a = temp;
+		        children = a;
+		    }
+		    a[ childCount ] = pChild;
 		}
+		childCount++;
+		pChild.setParent( this );
 	}
 
 	/** Remove a child.
@@ -147,14 +172,34 @@ abstract public class VrmlElement implements VisitorPattern, java.io.Serializabl
 	 *     of this VrmlElement
 	 */
 	public void removeChild( Object child ) throws VrmlElementNotFoundException {
-	    if ( !contains( child )) {
+	    int offset = indexOf( child );
+	    if ( offset == -1 ) {
 	        throw new VrmlElementNotFoundException();
 	    }
-        if ( children instanceof Vector ) {
-			((Vector)children).removeElement( child );
-    	} else {
-    	    children = null;
-    	}
+	    if ( childCount == 1 ) {
+	        children = null;
+	    } else {
+	        VrmlElement[] a = (VrmlElement[])children;
+	        System.arraycopy( a, offset + 1, a, offset, childCount - offset - 1 );
+	        a[ childCount - 1 ] = null;
+	        if ( childCount == 2 ) {
+	            children = a[0];
+	        }
+	    }
+	    childCount--;
+	}
+
+	/** Get the offset of a child, -1 if it is not a child of this VrmlElement */
+	int indexOf( Object child ) {
+	    if ( childCount == 1 ) {
+	        return(( children == child ) ? 0 : -1 );
+	    }
+	    for ( int i = 0; i < childCount; i++ ) {
+	        if ( ((VrmlElement[])children)[i] == child ) {
+	            return( i );
+	        }
+	    }
+	    return( -1 );
 	}
 
 	/** Check if a specific child exists.
@@ -163,15 +208,7 @@ abstract public class VrmlElement implements VisitorPattern, java.io.Serializabl
 	 *  @return true if child found, otherwise false
 	 */
 	public boolean contains( Object child ) {
-	    if ( children != null ) {
-	        if ( children instanceof Vector ) {
-	            return( ((Vector)children).contains( child ));
-	        } else {
-	            return( children == child );
-	        }
-	    } else {
-	        return( false );
-	    }
+	    return( indexOf( child ) != -1 );
 	}
 
     /** does nothing unless DEFUSENode */
@@ -204,6 +241,7 @@ abstract public class VrmlElement implements VisitorPattern, java.io.Serializabl
         container.removeChild( f );
         int numberTokens = f.getLastTokenOffset() - f.getFirstTokenOffset() + 1;
         Scene s = (Scene)f.getScene();
+        s.clearNodeIndex();
         TokenEnumerator tokenEnumerator = s.getTokenEnumerator();
         tokenEnumerator.startLineWith( f.getFirstTokenOffset() );
         tokenEnumerator.startLineWith( f.getLastTokenOffset() + 1 );
@@ -223,44 +261,23 @@ abstract public class VrmlElement implements VisitorPattern, java.io.Serializabl
 	 *     of range.
 	 */
 	public VrmlElement getChildAt( int offset ) {
-		if ( children == null ) {
+		if (( offset < 0 ) || ( offset >= childCount )) {
 			return( null );
-		} else if ( children instanceof Vector ) {
-		    Vector vchildren = (Vector)children;
-            if ( vchildren.size() <= offset ) {
-    			return( null );
-    		} else {
-    			return( (VrmlElement)vchildren.elementAt( offset ));
-    		}
-		} else if ( offset == 0 ) {
+		} else if ( childCount == 1 ) {
 		    return( (VrmlElement)children );
 		} else {
-		    return( null );
+		    return( ((VrmlElement[])children)[ offset ] );
 		}
 	}
 
 	/** Get the last child of this VrmlElement */
 	public VrmlElement getLastChild() {
-	    if ( children == null ) {
-	        return( null );
-	    } else if ( children instanceof Vector ) {
-	        Vector vchildren = (Vector)children;
-	        return( getChildAt( vchildren.size() - 1 ));
-	    } else {
-	        return( (VrmlElement)children );
-	    }
+	    return( getChildAt( childCount - 1 ));
 	}
 
 	/** Get the number of children */
 	public int numberChildren() {
-		if ( children == null ) {
-			return( 0 );
-		} else if ( children instanceof Vector ) {
-		    Vector vchildren = (Vector)children;
-			return( vchildren.size() );
-		} else {
-		    return( 1 );
-		}
+		return( childCount );
 	}
 
 	/** set a child's parent */
@@ -279,22 +296,23 @@ abstract public class VrmlElement implements VisitorPattern, java.io.Serializabl
 	        errorString = null;
 	        return;
 	    }
-		if ( nowarning ) {
+	    ParseContext context = ParseContext.get();
+		if ( context.getNowarning() ) {
 			if ( s.indexOf( "Warning" ) == 0 ) {
 				return;
 			}
 		}
-		if ( noUnusedDEFwarning ) {
+		if ( context.getNoUnusedDEFwarning() ) {
 		    if ( s.indexOf( "DEF is not used" ) > 0 ) {
 		        return;
 		    }
 		}
-		if ( baseProfile ) {
+		if ( context.getBaseProfile() ) {
 		    if ( s.indexOf( "Nonconformance" ) == -1 ) {
 		        return;
 		    }
 		}
-		if ( disableBaseProfile ) {
+		if ( context.getDisableBaseProfile() ) {
 		    if ( s.indexOf( "Nonconformance" ) == 0 ) {
 		        return;
 		    }
@@ -325,59 +343,20 @@ abstract public class VrmlElement implements VisitorPattern, java.io.Serializabl
     /** is this VrmlElement traversable */
 	abstract public boolean isTraversable();
 
-    /** template method, Field objects override this to traverse their
-     *  field value.
-     */
-    public void fieldValueTraverse( Visitor v ) {
-    }
-
-	/** Visitor pattern, traverse structure with a particular visitor */
+	/** Visitor pattern, traverse structure with a particular visitor.
+	 *  Children accepted by the visitor's acceptsPassOne are traversed
+	 *  first, then children accepted by its acceptsPassTwo.
+	 */
 	public void twoPassTraverse( Visitor v ) {
-		// the visitor controls whether children get visited or not
-		if ( v.visit( this )) {
-		    fieldValueTraverse( v );
-			if ( children != null ) {
-			    int nChildren = numberChildren();
-				for ( int i = 0; i < nChildren; i++ ) {
-					VrmlElement child = getChildAt( i );
-					if ( v.acceptsPassOne( child )) {
-					    child.twoPassTraverse( v );
-					}
-				}
-				for ( int i = 0; i < nChildren; i++ ) {
-					VrmlElement child = getChildAt( i );
-					if ( v.acceptsPassTwo( child )) {
-					    child.twoPassTraverse( v );
-					}
-				}
-			}
-		}
-		// used to keep track of how many levels down we are visiting
-		v.done();
+	    new VrmlElementIterator( this, v, true ).traverse();
 	}
 	
-	/** Visitor pattern, traverse structure with a particular visitor */
+	/** Visitor pattern, traverse structure with a particular visitor.
+	 *  The visitor controls whether children get visited or not, the
+	 *  traversal uses an explicit stack rather than recursion.
+	 */
 	public void traverse( Visitor v ) {
-		// the visitor controls whether children get visited or not
-		if ( v.visit( this )) {
-		    fieldValueTraverse( v );
-			if ( children != null ) {
-			    int nChildren = numberChildren();
-				for ( int i = 0; i < nChildren; i++ ) {
-					VrmlElement child = getChildAt( i );
-    				if ( !( v instanceof ComplexityVisitor ) && !child.isTraversable()) {
-					    v.visit( child );
-					    v.done();
-						continue;
-					}
-					if ( v.accepts( child )) {
-						child.traverse( v );
-					}
-				}
-			}
-		}
-		// used to keep track of how many levels down we are visiting
-		v.done();
+	    new VrmlElementIterator( this, v, false ).traverse();
 	}
 
     /** Get the root of the scene graph */
@@ -463,7 +442,7 @@ abstract public class VrmlElement implements VisitorPattern, java.io.Serializabl
      *  @param warning String message containing warning
      */
     public void addWarning( int tokenOffset, String warning ) {
-        if ( !nowarning ) {
+        if ( !ParseContext.get().getNowarning() ) {
             Value v = new Value( tokenOffset );
             v.setError( warning );
             addChild( v );
@@ -0,0 +1,270 @@
+/*
+ * @(#)VrmlElementIterator.java
+ *
+ * Copyright (c) 1998 by Trapezium Development LLC.  All Rights Reserved.
+ *
+ * The information in this file is the property of Trapezium Development LLC
+ * and may be used only in accordance with the terms of the license granted
+ * by Trapezium.
+ *
+ */
+package com.trapezium.vrml;
+
+import com.trapezium.pattern.Visitor;
+import com.trapezium.vrml.fields.Field;
+import java.util.Enumeration;
+
+/**
+ *  Walks a scene graph using an explicit stack instead of recursion, so deeply
+ *  nested files do not overflow the thread's stack.
+ *  <P>
+ *  The walk is a series of steps, each step is either the start or the end of
+ *  an element.  At the start of an element, its children can be skipped with
+ *  <B>prune</B>.  Field values are walked before the other children of a field.
+ *  Children of elements that are not traversable, such as USE nodes, are not
+ *  walked.
+ *  <P>
+ *  The walk can be stopped and resumed at any step.  As an Enumeration, it returns
+ *  the elements in the order their start steps are reached.
+ *  <P>
+ *  VrmlElement.traverse and twoPassTraverse use this with a Visitor.  The Visitor's
+ *  <B>visit</B> is called at the start of each element, and its children are
+ *  skipped if it returns false.  The Visitor's <B>done</B> is called at the end of
+ *  each element.  Children are only walked if the Visitor accepts them.
+ *
+ *  @see VrmlElement#traverse
+ */
+public class VrmlElementIterator implements Enumeration {
+    /** what happens next for an element on the stack */
+    static final int Start = 0;
+    static final int Children = 1;
+    static final int FirstPass = 2;
+    static final int SecondPass = 3;
+    static final int End = 4;
+
+    /** visitor accepting children, null if all children are walked */
+    Visitor visitor;
+
+    /** the stack, one entry for each element being walked */
+    VrmlElement[] elements;
+    int[] states;
+    int[] childOffsets;
+    int[] numberChildren;
+    boolean[] twoPass;
+    boolean[] pruned;
+    int depth;
+
+    /** the current step */
+    VrmlElement element;
+    boolean isEnd;
+    int level;
+
+    /** element found by hasMoreElements, not yet returned by nextElement */
+    VrmlElement nextElement;
+
+    /** Class constructor, for a walk of all elements under an element
+     *
+     *  @param root first element of the walk
+     */
+    public VrmlElementIterator( VrmlElement root ) {
+        this( root, null, false );
+    }
+
+    /** Class constructor, for a walk of the elements a Visitor accepts
+     *
+     *  @param root first element of the walk
+     *  @param v Visitor deciding which children are walked
+     *  @param twoPassWalk true if children are walked twice, first those
+     *     passing the Visitor's acceptsPassOne, then those passing acceptsPassTwo
+     */
+    public VrmlElementIterator( VrmlElement root, Visitor v, boolean twoPassWalk ) {
+        visitor = v;
+        elements = new VrmlElement[ 16 ];
+        states = new int[ 16 ];
+        childOffsets = new int[ 16 ];
+        numberChildren = new int[ 16 ];
+        twoPass = new boolean[ 16 ];
+        pruned = new boolean[ 16 ];
+        level = -1;
+        push( root, twoPassWalk, false );
+    }
+
+    /** Walk the whole scene graph with the Visitor */
+    public void traverse() {
+        while ( next() ) {
+            if ( isEnd ) {
+                visitor.done();
+            } else if ( !visitor.visit( element )) {
+                prune();
+            }
+        }
+    }
+
+    /** Go to the next step.
+     *
+     *  @return true if there is a next step, false if the walk is done
+     */
+    public boolean next() {
+        while ( depth > 0 ) {
+            int top = depth - 1;
+            VrmlElement e = elements[ top ];
+            switch ( states[ top ] ) {
+            case Start:
+                states[ top ] = Children;
+                setStep( e, false, top );
+                return( true );
+            case Children:
+                if ( pruned[ top ] ) {
+                    states[ top ] = End;
+                    break;
+                }
+                states[ top ] = twoPass[ top ] ? FirstPass : SecondPass;
+                childOffsets[ top ] = 0;
+                numberChildren[ top ] = -1;
+                if ( e instanceof Field ) {
+                    VrmlElement fieldValue = ((Field)e).getFieldValue();
+                    if ( fieldValue != null ) {
+                        boolean fieldValueTwoPass = ( visitor != null ) && visitor.isTwoPassVisitor();
+                        push( fieldValue, fieldValueTwoPass, false );
+                    }
+                }
+                break;
+            case FirstPass:
+            case SecondPass:
+                // number of children is only known once the field value has been walked
+                if ( numberChildren[ top ] == -1 ) {
+                    numberChildren[ top ] = e.numberChildren();
+                }
+                if ( childOffsets[ top ] < numberChildren[ top ] ) {
+                    VrmlElement child = e.getChildAt( childOffsets[ top ]++ );
+                    if ( child != null ) {
+                        pushChild( child, top );
+                    }
+                } else if ( states[ top ] == FirstPass ) {
+                    states[ top ] = SecondPass;
+                    childOffsets[ top ] = 0;
+                } else {
+                    states[ top ] = End;
+                }
+                break;
+            default:
+                depth--;
+                elements[ depth ] = null;
+                setStep( e, true, depth );
+                return( true );
+            }
+        }
+        element = null;
+        return( false );
+    }
+
+    /** Add a child to the walk, if it is accepted */
+    void pushChild( VrmlElement child, int top ) {
+        if ( twoPass[ top ] ) {
+            boolean accepted;
+            if ( visitor == null ) {
+                accepted = ( states[ top ] == FirstPass );
+            } else if ( states[ top ] == FirstPass ) {
+                accepted = visitor.acceptsPassOne( child );
+            } else {
+                accepted = visitor.acceptsPassTwo( child );
+            }
+            if ( accepted ) {
+                push( child, true, false );
+            }
+        } else {
+            boolean visitsUntraversable = ( visitor != null ) && visitor.visitsUntraversable();
+            if ( !visitsUntraversable && !child.isTraversable() ) {
+                push( child, false, true );
+            } else if (( visitor == null ) || visitor.accepts( child )) {
+                push( child, false, false );
+            }
+        }
+    }
+
+    /** Add an element to the walk */
+    void push( VrmlElement e, boolean isTwoPass, boolean noChildren ) {
+        if ( depth == elements.length ) {
+            int n = depth*2;
+            VrmlElement[] temp = new VrmlElement[ n ];
+            System.arraycopy( elements, 0, temp, 0, depth );
+            elements = temp;
+            states = grow( states, n );
+            childOffsets = grow( childOffsets, n );
+            numberChildren = grow( numberChildren, n );
+            twoPass = grow( twoPass, n );
+            pruned = grow( pruned, n );
+        }
+        elements[ depth ] = e;
+        states[ depth ] = Start;
+        twoPass[ depth ] = isTwoPass;
+        pruned[ depth ] = noChildren;
+        depth++;
+    }
+
+    static int[] grow( int[] a, int n ) {
+        int[] temp = new int[ n ];
+        System.arraycopy( a, 0, temp, 0, a.length );
+        return( temp );
+    }
+
+    static boolean[] grow( boolean[] a, int n ) {
+        boolean[] temp = new boolean[ n ];
+        System.arraycopy( a, 0, temp, 0, a.length );
+        return( temp );
+    }
+
+    void setStep( VrmlElement e, boolean end, int elementLevel ) {
+        element = e;
+        isEnd = end;
+        level = elementLevel;
+    }
+
+    /** Skip the children of the current element, only has an effect at the
+     *  start of an element.
+     */
+    public void prune() {
+        if ( !isEnd && ( depth > 0 ) && ( elements[ depth - 1 ] == element )) {
+            pruned[ depth - 1 ] = true;
+        }
+    }
+
+    /** Get the element of the current step */
+    public VrmlElement getElement() {
+        return( element );
+    }
+
+    /** Check if the current step is the end of an element */
+    public boolean isEnd() {
+        return( isEnd );
+    }
+
+    /** Get the level of the current element, 0 for the first element of the walk */
+    public int getLevel() {
+        return( level );
+    }
+
+    /** Enumeration interface, check if there is another element.  After this
+     *  is called, <B>prune</B> has no effect on the element last returned.
+     */
+    public boolean hasMoreElements() {
+        while (( nextElement == null ) && next() ) {
+            if ( !isEnd ) {
+                nextElement = element;
+            }
+        }
+        return( nextElement != null );
+    }
+
+    /** Enumeration interface, get the next element.  Its children can be
+     *  skipped with <B>prune</B>.
+     */
+    public Object nextElement() {
+        if ( !hasMoreElements() ) {
+            throw new java.util.NoSuchElementException();
+        }
+        VrmlElement result = nextElement;
+        nextElement = null;
+        return( result );
+    }
+}
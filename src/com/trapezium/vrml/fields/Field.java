@@ -19,7 +19,6 @@ import com.trapezium.vrml.node.Node;
 import com.trapezium.vrml.node.DEFUSENode;
 import com.trapezium.vrml.node.NodeType;
 import com.trapezium.vrml.grammar.VRML97;
-import com.trapezium.pattern.Visitor;
 
 /**
  *  Base class for all field instances.
@@ -72,16 +71,6 @@ public class Field extends MultipleTokenElement {
     	}
 	}
 	
-	public void fieldValueTraverse( Visitor v ) {
-	    if ( fieldValue != null ) {
-	        if ( v.isTwoPassVisitor() ) {
-	            fieldValue.twoPassTraverse( v );
-	        } else {
-       	        fieldValue.traverse( v );
-       	    }
-	    }
-	}
-
 	/**
 	 *  Get a string identifying the type of this field.
 	 */
@@ -115,6 +104,10 @@ public class Field extends MultipleTokenElement {
 	/** Set the name identifying this field */
 	public void setFieldId( String id ) {
 	    fieldId = id;
+	    VrmlElement p = getParent();
+	    if ( p instanceof Node ) {
+	        ((Node)p).clearFieldSlots();
+	    }
 	}
 
     /** Get the Node that is the parent of this Field */
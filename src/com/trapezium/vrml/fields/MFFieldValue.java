@@ -118,6 +118,70 @@ abstract public class MFFieldValue extends FieldValue {
 		setLastTokenOffset( tokenOffset );
 	}
 
+	/** Numbers decoded by getFloatValues or getIntValues, kept so that
+	 *  later passes over the same field do not decode the text again.
+	 */
+	transient float[] floatValues;
+	transient int[] intValues;
+	transient TokenEnumerator decodedSource;
+
+	/** Get all numbers in this field as floats, decoded in one pass
+	 *
+	 *  @param dataSource TokenEnumerator containing this field's tokens
+	 */
+	public float[] getFloatValues( TokenEnumerator dataSource ) {
+	    if (( floatValues == null ) || ( decodedSource != dataSource )) {
+	        clearDecodedValues();
+	        floatValues = dataSource.getFloatArray( getFirstTokenOffset(), getLastTokenOffset() );
+	        decodedSource = dataSource;
+	    }
+	    return( floatValues );
+	}
+
+	/** Get all numbers in this field as floats, null if not part of a Scene */
+	public float[] getFloatValues() {
+	    TokenEnumerator dataSource = getTokenEnumerator();
+	    if ( dataSource == null ) {
+	        return( null );
+	    }
+	    return( getFloatValues( dataSource ));
+	}
+
+	/** Get all numbers in this field as ints, decoded in one pass
+	 *
+	 *  @param dataSource TokenEnumerator containing this field's tokens
+	 */
+	public int[] getIntValues( TokenEnumerator dataSource ) {
+	    if (( intValues == null ) || ( decodedSource != dataSource )) {
+	        clearDecodedValues();
+	        intValues = dataSource.getIntArray( getFirstTokenOffset(), getLastTokenOffset() );
+	        decodedSource = dataSource;
+	    }
+	    return( intValues );
+	}
+
+	/** Get all numbers in this field as ints, null if not part of a Scene */
+	public int[] getIntValues() {
+	    TokenEnumerator dataSource = getTokenEnumerator();
+	    if ( dataSource == null ) {
+	        return( null );
+	    }
+	    return( getIntValues( dataSource ));
+	}
+
+	/** Discard decoded numbers, they are decoded again on next access */
+	public void clearDecodedValues() {
+	    floatValues = null;
+	    intValues = null;
+	    decodedSource = null;
+	}
+
+	/** Token offsets are changing, so decoded numbers may no longer match the text */
+	public void adjust( int boundary, int amount ) {
+	    clearDecodedValues();
+	    super.adjust( boundary, amount );
+	}
+
 	/** Get the number of values in this field? */
 	public int numberValues() {
 		ChildCounter cc = new ChildCounter( null );
@@ -71,25 +71,9 @@ public class MFFloatValue extends MFFieldValue {
 	}
 	
 	/** Optimization to get the array of floats associated with this field */
-    float[] floatArray;
     public float[] getFloatArray() {
-        if ( floatArray != null ) {
-            return( floatArray );
-        }
-        TokenEnumerator dataSource = getTokenEnumerator();
-        if ( dataSource == null ) {
-            return( null );
-        }
-        dataSource.setState( getFirstTokenOffset() );
-        int scanner = dataSource.skipNonNumbers();
         if ( optimizedValueCount > 0 ) {
-            floatArray = new float[ optimizedValueCount ];
-            for ( int i = 0; i < optimizedValueCount; i++ ) {
-                floatArray[i] = dataSource.getFloat( scanner );
-                scanner = dataSource.getNextToken();
-                scanner = dataSource.skipNonNumbers();
-            }
-            return( floatArray );
+            return( getFloatValues() );
         } else {
             return( null );
         }
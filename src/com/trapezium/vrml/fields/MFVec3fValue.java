@@ -53,15 +53,9 @@ public class MFVec3fValue extends MFFieldValue {
 	
 	public void genExtremes( TokenEnumerator dataSource ) {
 	    ev = new ExtremeValues();
-	    int scanner = getFirstTokenOffset();
-	    int last = getLastTokenOffset();
-	    dataSource.setState( scanner );
-	    while (( scanner != -1 ) && ( scanner <= last )) {
-	        scanner = dataSource.skipToNumber( 0 );
-	        if ( scanner != -1 ) {
-	            ev.putFloat( dataSource.getFloat( scanner ));
-	        }
-	        scanner = dataSource.getNextToken();
+	    float[] values = getFloatValues( dataSource );
+	    for ( int i = 0; i < values.length; i++ ) {
+	        ev.putFloat( values[i] );
 	    }
 	}
 	
@@ -92,6 +92,7 @@ class BuiltInNodeRule {
 
     		node.setFirstTokenOffset( tokenOffset );
     		parentElement.addChild( node );
+    		scene.registerNode( node );
     		BuildNodeGuts( node, tokenOffset, v, scene );
     		if ( parentElement instanceof DEFUSENode ) {
     		    parentElement.setLastTokenOffset( node.getLastTokenOffset() );
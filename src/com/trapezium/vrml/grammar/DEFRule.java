@@ -56,7 +56,7 @@ public class DEFRule {
 		tokenOffset = v.getNextToken();
 		parent.addChild( d );
 		String defId = d.getId();
-		DEFUSENode checkDef = scene.getDEF( defId );
+		DEFUSENode checkDef = scene.getDEF( d );
 		if ( defId != null ) {
 		    if ( defId.length() > Table7.NameLimit ) {
 		        d.setError( "Nonconformance, name length " + defId.length() + " exceeds base profile name length " + Table7.NameLimit );
@@ -11,6 +11,7 @@
 package com.trapezium.vrml.grammar;
 
 import com.trapezium.parse.TokenEnumerator;
+import com.trapezium.parse.Symbols;
 import com.trapezium.vrml.Scene;
 import com.trapezium.vrml.BadFieldId;
 import com.trapezium.vrml.FieldId;
@@ -65,13 +66,13 @@ class ExternInterfaceDeclarationRule {
      */
 	void Build( int tokenOffset, TokenEnumerator v, Scene scene, Node parent ) {
 		int declarationType;
-		if ( v.sameAs( tokenOffset, "exposedField" )) {
+		if ( v.isSymbol( tokenOffset, Symbols.ExposedField )) {
 		    declarationType = VRML97.exposedField;
-		} else if ( v.sameAs( tokenOffset, "field" )) {
+		} else if ( v.isSymbol( tokenOffset, Symbols.Field )) {
 			declarationType = VRML97.field;
-		} else if ( v.sameAs( tokenOffset, "eventIn" )) {
+		} else if ( v.isSymbol( tokenOffset, Symbols.EventIn )) {
 			declarationType = VRML97.eventIn;
-		} else if ( v.sameAs( tokenOffset, "eventOut" )) {
+		} else if ( v.isSymbol( tokenOffset, Symbols.EventOut )) {
 			declarationType = VRML97.eventOut;
 		} else {
 		    BadFieldId bfi = new BadFieldId( tokenOffset, "expected exposedField, field, eventIn, or eventOut" );
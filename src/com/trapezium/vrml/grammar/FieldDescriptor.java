@@ -80,7 +80,7 @@ public class FieldDescriptor {
     }
  
     /** get TokenEnumerator representing default field value for field */
-    TokenEnumerator getTokenEnumerator() {
+    synchronized TokenEnumerator getTokenEnumerator() {
         if ( initialValue == null ) {
             return( null );
         }
@@ -23,6 +23,7 @@ import com.trapezium.vrml.fields.NotExposedField;
 import com.trapezium.vrml.fields.EventIn;
 import com.trapezium.vrml.fields.EventOut;
 import com.trapezium.parse.TokenEnumerator;
+import com.trapezium.parse.Symbols;
 import com.trapezium.vrml.VrmlElement;
 import com.trapezium.vrml.node.Node;
 import com.trapezium.vrml.node.DEFUSENode;
@@ -183,6 +184,7 @@ class FieldFactory {
 	 */
 	Field CreateInstance( int tokenOffset, TokenEnumerator v, Scene s, Node parent ) {
 	    String fid = FieldId.getVRML2name( tokenOffset, v );
+	    int fieldId = VRML97.getFieldId( v, tokenOffset );
 	    int instanceStart = tokenOffset;
 	    v.breakLineAt( instanceStart );
 	    
@@ -226,11 +228,16 @@ class FieldFactory {
                 return( null );
 	        } else {
 	            bfi.setError( "not a valid field, possibly '" + fid + "'" );
+	            fieldId = VRML97.getFieldId( fid );
 	        }
 	    }
 	    if ( implicitField ) {
 	        fid = unImplicit( fid );
+	        fieldId = VRML97.getFieldId( fid );
 	    }
+
+	    // from here on the field is looked up by id
+	    int nodeId = parent.getNodeId();
 		tokenOffset = v.getNextToken();
 		if ( tokenOffset == -1 ) {
 			parent.setError( "unexpected end of file" );
@@ -242,11 +249,11 @@ class FieldFactory {
                 result = CreatePROTOFieldInstance( protoInstance, fid, instanceStart );
                 fieldDescriptor = protoInstance.getFieldDescriptor( fid );
             } else {
-                fieldDescriptor = VRML97.getFieldDescriptor( parent.getNodeName(), fid );
+                fieldDescriptor = VRML97.getFieldDescriptor( nodeId, fieldId );
                 result = CreateFieldInstance( fieldDescriptor, fid, instanceStart );
             }
 			FieldValue f = CreateFieldValue( result, result.getFieldType(), tokenOffset, v, s, parent );
-			if ( VRML97.fieldIsDefault( parent.getNodeName(), fid, f.getFirstTokenOffset(), f.getLastTokenOffset(), v )) {
+			if ( VRML97.fieldIsDefault( nodeId, fieldId, f.getFirstTokenOffset(), f.getLastTokenOffset(), v )) {
 				result.setError( "Warning, field value is default" );
 			}
 			if (( fieldDescriptor instanceof MFFieldDescriptor ) && ( f instanceof MFFieldValue )) {
@@ -341,7 +348,7 @@ class FieldFactory {
 			if ( f instanceof SFNodeValue ) {
 				SFNodeValue sfn = (SFNodeValue)f;
 				ReturnInteger fieldType = new ReturnInteger();
-				if ( VRML97.fieldHasType( parent.getNodeName(), fid, fieldType )) {
+				if ( VRML97.fieldHasType( nodeId, fieldId, fieldType )) {
 				    Node n = sfn.getNode();
 				    boolean setError = false;
 				    boolean externPROTO = false;
@@ -372,7 +379,7 @@ class FieldFactory {
 				}
 			} else if ( f instanceof MFNodeValue ) {  // MFNodeValue related blaxxun extensions
 				ReturnInteger fieldType = new ReturnInteger();
-				if ( VRML97.fieldHasType( parent.getNodeName(), fid, fieldType )) {
+				if ( VRML97.fieldHasType( nodeId, fieldId, fieldType )) {
 				    MFNodeValue mfnv = (MFNodeValue)f;
 				    for ( int i = 0; i < mfnv.numberChildren(); i++ ) {
 				        Object x = mfnv.getChildNode( i );
@@ -429,7 +436,7 @@ class FieldFactory {
 				// check for IS here?
 				if ( !v.isNumber( tokenOffset ) && v.nearlySameAs( tokenOffset, "IS" )) {
 					ISField isField = new ISField( f, tokenOffset, v, scene.getPROTOparent() );
-					if ( !v.sameAs( tokenOffset, "IS" )) {
+					if ( !v.isSymbol( tokenOffset, Symbols.IS )) {
 					    isField.setError( "bad case, possibly 'IS'" );
 					}
 					fv.addChild( isField );
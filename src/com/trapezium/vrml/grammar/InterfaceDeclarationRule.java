@@ -11,6 +11,7 @@
 package com.trapezium.vrml.grammar;
 
 import com.trapezium.parse.TokenEnumerator;
+import com.trapezium.parse.Symbols;
 import com.trapezium.vrml.Scene;
 import com.trapezium.vrml.node.Node;
 import com.trapezium.vrml.fields.Field;
@@ -54,7 +55,7 @@ class InterfaceDeclarationRule {
 	void Build( int tokenOffset, TokenEnumerator v, Scene scene, Node parent ) {
 		GrammarRule.Enter( "InterfaceDeclarationRule.Build" );
 
-		if ( v.sameAs( tokenOffset, "exposedField" )) {
+		if ( v.isSymbol( tokenOffset, Symbols.ExposedField )) {
 		    Field f = fieldFactory.CreateDeclaration( VRML97.exposedField, v, scene, parent );
 		    if ( f != null ) {
     			parent.addChild( f );
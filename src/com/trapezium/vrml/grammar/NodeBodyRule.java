@@ -11,6 +11,7 @@
 package com.trapezium.vrml.grammar;
 
 import com.trapezium.parse.TokenEnumerator;
+import com.trapezium.parse.Symbols;
 import com.trapezium.vrml.node.Node;
 import com.trapezium.vrml.Scene;
 
@@ -43,9 +44,9 @@ public class NodeBodyRule {
 	/** Build onto a Node by adding on individual NodeGuts */
 	public void Build( int tokenOffset, TokenEnumerator v, Scene scene, Node parent ) {
 		GrammarRule.Enter( "NodeBodyRule.Build" );
-		if ( v.sameAs( tokenOffset, "PROTO" )) {
+		if ( v.isSymbol( tokenOffset, Symbols.PROTO )) {
 			protoRule.Build( tokenOffset, v, scene, parent );
-		} else if ( v.sameAs( tokenOffset, "ROUTE" )) {
+		} else if ( v.isSymbol( tokenOffset, Symbols.ROUTE )) {
 			routeRule.Build( tokenOffset, v, scene, parent );
 		} else {
 		    parent.addChild( fieldFactory.CreateInstance( tokenOffset, v, scene, parent ));
@@ -11,6 +11,7 @@
 package com.trapezium.vrml.grammar;
 
 import com.trapezium.parse.TokenEnumerator;
+import com.trapezium.parse.Symbols;
 import com.trapezium.vrml.Scene;
 import com.trapezium.vrml.VrmlElement;
 import com.trapezium.vrml.BadFieldId;
@@ -100,13 +101,21 @@ public class NodeRule {
 	void Build( int tokenOffset, TokenEnumerator v, Scene scene, VrmlElement parent ) {
 		GrammarRule.Enter( "NodeRule.Build" );
 
-		if ( v.sameAs( tokenOffset, "Script" )) {
+		if ( v.isSymbol( tokenOffset, Symbols.Script )) {
 			scriptNodeRule.Build( tokenOffset, v, scene, parent );
 		} else {
 		    // First identify if the node is a built in type, or a PROTO.  If neither
 		    // attempt to get closest spelling match before continuing.
-		    String nodeTypeId = v.toString( tokenOffset );
-		    if ( VRML97.isBuiltInNode( nodeTypeId )) {
+		    // The node type is identified by its symbol, the name Strings are
+		    // shared rather than created for each node.
+		    int nodeId = VRML97.getNodeId( v, tokenOffset );
+		    String nodeTypeId = null;
+		    if ( VRML97.isBuiltInNode( nodeId )) {
+		        nodeTypeId = VRML97.getNodeName( nodeId );
+		    } else {
+		        nodeTypeId = v.getSymbolName( tokenOffset );
+		    }
+		    if ( VRML97.isBuiltInNode( nodeId )) {
 		        builtInNodeRule.Build( nodeTypeId, tokenOffset, v, scene, parent );
 		    } else if ( scene.isPROTO( nodeTypeId )) {
 		        protoNodeRule.Build( nodeTypeId, tokenOffset, v, scene, parent );
@@ -116,7 +125,7 @@ public class NodeRule {
 		    } else {
 		        // get closest match for built in, then for PROTO, then use the
 		        // closest giving preference to built in nodes if there is a match
-	            if ( nodeTypeId.compareTo( "ROUTE" ) == 0 ) {
+	            if ( v.isSymbol( tokenOffset, Symbols.ROUTE )) {
 	                ROUTE r = routeRule.Build( tokenOffset, v, scene, parent );
 	                r.setError( "ROUTE not allowed" );
 	            } else {
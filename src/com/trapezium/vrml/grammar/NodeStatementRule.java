@@ -13,6 +13,7 @@ package com.trapezium.vrml.grammar;
 import com.trapezium.vrml.Scene;
 import com.trapezium.vrml.VrmlElement;
 import com.trapezium.parse.TokenEnumerator;
+import com.trapezium.parse.Symbols;
 
 
 /**
@@ -58,9 +59,9 @@ public class NodeStatementRule {
 	public void Build( int tokenOffset, TokenEnumerator v, Scene scene, VrmlElement parent ) {
 		GrammarRule.Enter( "NodeStatement" );
 
-		if ( v.sameAs( tokenOffset, "DEF" )) {
+		if ( v.isSymbol( tokenOffset, Symbols.DEF )) {
 			defRule.Build( tokenOffset, v, scene, parent );
-		} else if ( v.sameAs( tokenOffset, "USE" )) {
+		} else if ( v.isSymbol( tokenOffset, Symbols.USE )) {
 			useRule.Build( tokenOffset, v, scene, parent );
 		} else {
 			nodeRule.Build( tokenOffset, v, scene, parent );
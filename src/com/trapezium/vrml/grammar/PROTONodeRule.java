@@ -87,7 +87,9 @@ class PROTONodeRule extends BuiltInNodeRule {
     		pi.setFirstTokenOffset( tokenOffset );
     		parentElement.addChild( pi );
     		BuildNodeGuts( pi, tokenOffset, v, scene );
+    		int firstCopy = pi.numberChildren();
     		pi.copyBaseNodeInfo();
+    		scene.registerCopies( pi, firstCopy );
     		pi.verify( v );
             if ( parentElement instanceof DEFUSENode ) {
                 parentElement.setLastTokenOffset( pi.getLastTokenOffset() );
@@ -106,7 +106,7 @@ public class PROTORule {
 			parent.addChild( p );
 
 			// Build the scene associated with the PROTO
-			VRML97parser parser = VRML97parser.singleton;
+			VRML97parser parser = scene.getParseContext().getParser();
 			parser.Build( v, s, s, "}" );
 
             if ( v.getCurrentTokenOffset() != -1 ) {
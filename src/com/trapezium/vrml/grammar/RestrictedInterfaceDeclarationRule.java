@@ -11,6 +11,7 @@
 package com.trapezium.vrml.grammar;
 
 import com.trapezium.parse.TokenEnumerator;
+import com.trapezium.parse.Symbols;
 import com.trapezium.vrml.fields.FieldValue;
 import com.trapezium.vrml.fields.EventIn;
 import com.trapezium.vrml.fields.EventOut;
@@ -64,21 +65,21 @@ class RestrictedInterfaceDeclarationRule {
 		GrammarRule.Enter( "RestrictedInterfaceDeclarationRule.Build" );
 		Field f = null;
 
-		if ( v.sameAs( tokenOffset, "eventIn" )) {
+		if ( v.isSymbol( tokenOffset, Symbols.EventIn )) {
 		    f = fieldFactory.CreateDeclaration( VRML97.eventIn, v, scene, (Node)parent );
 		    if ( f != null ) {
         		v.breakLineAt( tokenOffset );
     		    parent.addChild( f );
     		    parent.addInterface( f );
     		}
-		} else if ( v.sameAs( tokenOffset, "eventOut" )) {
+		} else if ( v.isSymbol( tokenOffset, Symbols.EventOut )) {
 		    f = fieldFactory.CreateDeclaration( VRML97.eventOut, v, scene, (Node)parent );
 		    if ( f != null ) {
         		v.breakLineAt( tokenOffset );
 		        parent.addChild( f );
 		        parent.addInterface( f );
 		    }
-		} else if ( v.sameAs( tokenOffset, "field" )) {
+		} else if ( v.isSymbol( tokenOffset, Symbols.Field )) {
 		    f = fieldFactory.CreateDeclaration( VRML97.field, v, scene, (Node)parent );
 		    if ( f != null ) {
         		v.breakLineAt( tokenOffset );
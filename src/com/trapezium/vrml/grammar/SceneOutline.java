@@ -0,0 +1,882 @@
+/*
+ * @(#)SceneOutline.java
+ *
+ * Copyright (c) 1998 by Trapezium Development LLC.  All Rights Reserved.
+ *
+ * The information in this file is the property of Trapezium Development LLC
+ * and may be used only in accordance with the terms of the license granted
+ * by Trapezium.
+ *
+ */
+package com.trapezium.vrml.grammar;
+
+import com.trapezium.parse.TokenSource;
+import com.trapezium.parse.TokenTypes;
+import com.trapezium.parse.Symbols;
+import com.trapezium.parse.SymbolTable;
+import java.util.BitSet;
+import java.util.Hashtable;
+import java.util.Enumeration;
+import java.io.PrintStream;
+
+/**
+ *  The outline of a file: where each node starts and ends, its type, DEF name
+ *  and parent, found in one forward pass matching brackets and braces.  The
+ *  pass uses an explicit stack instead of recursion, so deeply nested files do
+ *  not overflow the thread's stack.
+ *  <P>
+ *  No Fields or FieldValues are created, and nothing is checked, so this is
+ *  much faster than VRML97parser.Build, and useful when only the structure of
+ *  the file is needed, for example to count or list nodes, list DEF names, or
+ *  find Inline urls.  The values of fields with particular names can be kept
+ *  as text, and the numbers in the values of others can be counted.
+ *  <P>
+ *  Tokens are only read in order, so the outline can also be made with a
+ *  StreamingTokenEnumerator.  In that case the token offsets in the outline
+ *  refer to text that may no longer be in memory.
+ *
+ *  @see VRML97parser
+ *  @see com.trapezium.parse.StreamingTokenEnumerator
+ *  @see com.trapezium.vrml.VrmlElementIterator
+ */
+public class SceneOutline implements TokenTypes {
+    /** what a frame on the stack is outlining */
+    static final int Statements = 0;
+    static final int PROTOdeclaration = 1;
+    static final int NodeBody = 2;
+    static final int Brackets = 3;
+    static final int Braces = 4;
+    static final int Capture = 5;
+    static final int Count = 6;
+
+    /** what happens next in a PROTOdeclaration frame */
+    static final int Interface = 0;
+    static final int AfterInterface = 1;
+    static final int Body = 2;
+    static final int End = 3;
+
+    TokenSource v;
+    SymbolTable symbolTable;
+
+    /** nodes, in the order they start in the file */
+    int numberNodes;
+
+    /** VRML97 node id, -1 for PROTO instances and unknown nodes */
+    int[] nodeIds;
+
+    /** symbol of the node type, DEF name symbol or NoSymbol */
+    int[] typeSymbols;
+    int[] DEFsymbols;
+
+    /** first token (the DEF, USE or type), and last token (the right brace, or the USE name) */
+    int[] firstTokens;
+    int[] lastTokens;
+
+    /** parent node or -1, field of the parent containing the node or NoSymbol */
+    int[] parents;
+    int[] fieldSymbols;
+
+    /** for USE, the node DEFed with the name, -1 if there is none */
+    boolean[] isUSE;
+    int[] usedNodes;
+
+    /** PROTO declaration the node is part of, -1 if it is in the scene */
+    int[] PROTOs;
+
+    /** PROTO and EXTERNPROTO declarations */
+    int numberPROTOs;
+    int[] PROTOsymbols;
+    int[] PROTOfirstTokens;
+    int[] PROTOlastTokens;
+    boolean[] isEXTERNPROTO;
+    int currentPROTO;
+
+    /** field values kept as text */
+    BitSet capturedSymbols;
+    int numberCaptured;
+    int[] capturedNodes;
+    int[] capturedFieldSymbols;
+    String[] capturedValues;
+    StringBuffer capture;
+
+    /** field values whose numbers are counted */
+    BitSet countedSymbols;
+    int numberCounted;
+    int[] countedNodes;
+    int[] countedFieldSymbols;
+    int[] numberCounts;
+    int[] groupCounts;
+    boolean[] groupEnded;
+    int counting;
+
+    /** the stack, one frame for each list of statements, node body, value or field being outlined */
+    int[] frameKinds;
+    int[] frameStates;
+    int[] frameNodes;
+    int[] frameSymbols;
+    int[] frameOuters;
+    StringBuffer[] frameCaptures;
+    int depth;
+
+    /** by symbol, last node DEFed with the name + 1, and VRML97 node id + 2 */
+    int[] DEFnodes;
+    int[] nodeIdCache;
+
+    /** last token read */
+    int lastToken;
+
+    /** Class constructor, outline all statements after the current token.
+     *
+     *  @param v tokens of the file, its state is changed
+     */
+    public SceneOutline( TokenSource v ) {
+        this( v, null );
+    }
+
+    /** Class constructor, outline all statements after the current token.
+     *
+     *  @param v tokens of the file, its state is changed
+     *  @param capturedFields names of fields whose values are kept as text, may be null
+     */
+    public SceneOutline( TokenSource v, String[] capturedFields ) {
+        this( v, capturedFields, null );
+    }
+
+    /** Class constructor, outline all statements after the current token.
+     *
+     *  @param v tokens of the file, its state is changed
+     *  @param capturedFields names of fields whose values are kept as text, may be null
+     *  @param countedFields names of fields whose numbers are counted, may be null
+     */
+    public SceneOutline( TokenSource v, String[] capturedFields, String[] countedFields ) {
+        this.v = v;
+        symbolTable = v.getSymbolTable();
+        nodeIds = new int[ 64 ];
+        typeSymbols = new int[ 64 ];
+        DEFsymbols = new int[ 64 ];
+        firstTokens = new int[ 64 ];
+        lastTokens = new int[ 64 ];
+        parents = new int[ 64 ];
+        fieldSymbols = new int[ 64 ];
+        isUSE = new boolean[ 64 ];
+        usedNodes = new int[ 64 ];
+        PROTOs = new int[ 64 ];
+        PROTOsymbols = new int[ 8 ];
+        PROTOfirstTokens = new int[ 8 ];
+        PROTOlastTokens = new int[ 8 ];
+        isEXTERNPROTO = new boolean[ 8 ];
+        capturedSymbols = new BitSet();
+        if ( capturedFields != null ) {
+            for ( int i = 0; i < capturedFields.length; i++ ) {
+                capturedSymbols.set( symbolTable.intern( capturedFields[i] ));
+            }
+        }
+        capturedNodes = new int[ 8 ];
+        capturedFieldSymbols = new int[ 8 ];
+        capturedValues = new String[ 8 ];
+        countedSymbols = new BitSet();
+        if ( countedFields != null ) {
+            for ( int i = 0; i < countedFields.length; i++ ) {
+                countedSymbols.set( symbolTable.intern( countedFields[i] ));
+            }
+        }
+        countedNodes = new int[ 8 ];
+        countedFieldSymbols = new int[ 8 ];
+        numberCounts = new int[ 8 ];
+        groupCounts = new int[ 8 ];
+        groupEnded = new boolean[ 8 ];
+        counting = -1;
+        DEFnodes = new int[ 256 ];
+        nodeIdCache = new int[ 256 ];
+        frameKinds = new int[ 16 ];
+        frameStates = new int[ 16 ];
+        frameNodes = new int[ 16 ];
+        frameSymbols = new int[ 16 ];
+        frameOuters = new int[ 16 ];
+        frameCaptures = new StringBuffer[ 16 ];
+        currentPROTO = -1;
+        lastToken = -1;
+        int t = v.getNextToken();
+        push( Statements, -1, Symbols.NoSymbol );
+        while ( depth > 0 ) {
+            t = step( t );
+        }
+    }
+
+    /** Get the number of nodes in the outline, including USE nodes */
+    public int getNumberNodes() {
+        return( numberNodes );
+    }
+
+    /** Get the VRML97 node id of a node, -1 for PROTO instances and unknown nodes.
+     *  For a USE node this is the id of the node DEFed with the name.
+     */
+    public int getNodeId( int node ) {
+        return( nodeIds[ node ] );
+    }
+
+    /** Get the type of a node, null for a USE with no matching DEF */
+    public String getNodeType( int node ) {
+        return( getName( typeSymbols[ node ] ));
+    }
+
+    /** Get the DEF name of a node, null if it is not DEFed */
+    public String getDEFName( int node ) {
+        return( getName( DEFsymbols[ node ] ));
+    }
+
+    /** Get the first token of a node, the DEF, USE or node type */
+    public int getFirstToken( int node ) {
+        return( firstTokens[ node ] );
+    }
+
+    /** Get the last token of a node, the right brace or the USE name */
+    public int getLastToken( int node ) {
+        return( lastTokens[ node ] );
+    }
+
+    /** Get the parent of a node, -1 if it is at the top level of the scene or a PROTO */
+    public int getParent( int node ) {
+        return( parents[ node ] );
+    }
+
+    /** Get the name of the field containing a node, null at the top level */
+    public String getParentField( int node ) {
+        return( getName( fieldSymbols[ node ] ));
+    }
+
+    /** Is the node a USE? */
+    public boolean isUSE( int node ) {
+        return( isUSE[ node ] );
+    }
+
+    /** Get the node a USE refers to, -1 if it is not a USE or there is no DEF */
+    public int getUsedNode( int node ) {
+        return( usedNodes[ node ] );
+    }
+
+    /** Get the PROTO declaration a node is part of, -1 if it is in the scene */
+    public int getPROTO( int node ) {
+        return( PROTOs[ node ] );
+    }
+
+    /** Get the last node DEFed with a name, -1 if there is none */
+    public int getDEFNode( String name ) {
+        int symbol = symbolTable.lookup( name );
+        if (( symbol == Symbols.NoSymbol ) || ( symbol >= DEFnodes.length )) {
+            return( -1 );
+        }
+        return( DEFnodes[ symbol ] - 1 );
+    }
+
+    /** Get the number of PROTO and EXTERNPROTO declarations */
+    public int getNumberPROTOs() {
+        return( numberPROTOs );
+    }
+
+    /** Get the name of a PROTO or EXTERNPROTO declaration */
+    public String getPROTOName( int proto ) {
+        return( getName( PROTOsymbols[ proto ] ));
+    }
+
+    /** Get the first token of a PROTO or EXTERNPROTO declaration */
+    public int getPROTOFirstToken( int proto ) {
+        return( PROTOfirstTokens[ proto ] );
+    }
+
+    /** Get the last token of a PROTO or EXTERNPROTO declaration */
+    public int getPROTOLastToken( int proto ) {
+        return( PROTOlastTokens[ proto ] );
+    }
+
+    /** Is the declaration an EXTERNPROTO? */
+    public boolean isEXTERNPROTO( int proto ) {
+        return( isEXTERNPROTO[ proto ] );
+    }
+
+    /** Get the number of field values kept as text */
+    public int getNumberCapturedFields() {
+        return( numberCaptured );
+    }
+
+    /** Get the node of a field kept as text, -1 for a PROTO interface field */
+    public int getCapturedNode( int captured ) {
+        return( capturedNodes[ captured ] );
+    }
+
+    /** Get the name of a field kept as text */
+    public String getCapturedField( int captured ) {
+        return( getName( capturedFieldSymbols[ captured ] ));
+    }
+
+    /** Get the value of a field kept as text, tokens separated by spaces */
+    public String getCapturedValue( int captured ) {
+        return( capturedValues[ captured ] );
+    }
+
+    /** Get the number of field values whose numbers are counted */
+    public int getNumberCountedFields() {
+        return( numberCounted );
+    }
+
+    /** Get the node of a counted field, -1 for a PROTO interface field */
+    public int getCountedNode( int counted ) {
+        return( countedNodes[ counted ] );
+    }
+
+    /** Get the name of a counted field */
+    public String getCountedField( int counted ) {
+        return( getName( countedFieldSymbols[ counted ] ));
+    }
+
+    /** Get the number of numbers in a counted field value */
+    public int getNumberCount( int counted ) {
+        return( numberCounts[ counted ] );
+    }
+
+    /** Get the number of groups of numbers ended by -1 in a counted field value,
+     *  including a last group without a -1, the number of faces in a coordIndex.
+     */
+    public int getGroupCount( int counted ) {
+        return( groupCounts[ counted ] );
+    }
+
+    /** Count the nodes of a type, not including USE nodes */
+    public int countNodes( String nodeType ) {
+        int count = 0;
+        for ( int i = 0; i < numberNodes; i++ ) {
+            if ( !isUSE[i] && ( typeSymbols[i] != Symbols.NoSymbol ) && nodeType.equals( getNodeType( i ))) {
+                count++;
+            }
+        }
+        return( count );
+    }
+
+    /** Print the number of nodes of each type, and the Inline urls kept as text */
+    public void summary( PrintStream ps ) {
+        Hashtable counts = new Hashtable();
+        int numberDEFs = 0;
+        int numberUSEs = 0;
+        for ( int i = 0; i < numberNodes; i++ ) {
+            if ( isUSE[i] ) {
+                numberUSEs++;
+                continue;
+            }
+            if ( DEFsymbols[i] != Symbols.NoSymbol ) {
+                numberDEFs++;
+            }
+            String type = getNodeType( i );
+            int[] count = (int[])counts.get( type );
+            if ( count == null ) {
+                count = new int[1];
+                counts.put( type, count );
+            }
+            count[0]++;
+        }
+        ps.println( numberNodes + " nodes, " + numberDEFs + " DEFs, " + numberUSEs + " USEs, " + numberPROTOs + " PROTOs" );
+        String[] types = VRML97.sortedKeys( counts );
+        for ( int i = 0; i < types.length; i++ ) {
+            int[] count = (int[])counts.get( types[i] );
+            ps.println( "   " + count[0] + " " + types[i] );
+        }
+        for ( int i = 0; i < numberCaptured; i++ ) {
+            int node = capturedNodes[i];
+            if (( node != -1 ) && "Inline".equals( getNodeType( node ))) {
+                ps.println( "   Inline " + capturedValues[i] );
+            }
+        }
+    }
+
+    /** Print the DEF names, in the order they occur, with the type of each node */
+    public void listDEFs( PrintStream ps ) {
+        for ( int i = 0; i < numberNodes; i++ ) {
+            if ( !isUSE[i] && ( DEFsymbols[i] != Symbols.NoSymbol )) {
+                ps.println( "   DEF " + getDEFName( i ) + " " + getNodeType( i ));
+            }
+        }
+    }
+
+    String getName( int symbol ) {
+        if ( symbol == Symbols.NoSymbol ) {
+            return( null );
+        }
+        return( symbolTable.getName( symbol ));
+    }
+
+    /** Read a token, keeping its text if a field value is being kept.
+     *
+     *  @return the token after it, -1 if there is none
+     */
+    int next( int t ) {
+        if ( t == -1 ) {
+            return( -1 );
+        }
+        lastToken = t;
+        if ( capture != null ) {
+            if ( capture.length() > 0 ) {
+                capture.append( ' ' );
+            }
+            v.append( t, capture );
+        }
+        if (( counting != -1 ) && v.isNumber( t )) {
+            numberCounts[ counting ]++;
+            if ( v.getIntValue( t ) == -1 ) {
+                groupCounts[ counting ]++;
+                groupEnded[ counting ] = true;
+            } else {
+                groupEnded[ counting ] = false;
+            }
+        }
+        return( v.getNextToken( t ));
+    }
+
+    /** Take one step of the outline, for the frame on top of the stack.
+     *
+     *  @param t the current token
+     *  @return the token after the step
+     */
+    int step( int t ) {
+        int top = depth - 1;
+        int n = frameNodes[ top ];
+        switch ( frameKinds[ top ] ) {
+        case Statements:
+            if ( t == -1 ) {
+                pop();
+                return( -1 );
+            }
+            return( statement( t, -1 ));
+        case PROTOdeclaration:
+            return( PROTOstep( t, top ));
+        case NodeBody:
+            if (( t == -1 ) || v.isRightBrace( t )) {
+                lastTokens[n] = ( t == -1 ) ? lastToken : t;
+                pop();
+                return( next( t ));
+            }
+            int symbol = v.getSymbol( t );
+            if (( symbol == Symbols.PROTO ) || ( symbol == Symbols.EXTERNPROTO ) || ( symbol == Symbols.ROUTE )) {
+                return( statement( t, n ));
+            } else if ( isInterfaceSymbol( symbol )) {
+                return( interfaceDeclaration( t, n, true ));
+            } else if ( symbol != Symbols.NoSymbol ) {
+                return( field( next( t ), n, symbol ));
+            } else {
+                return( value( t, n, Symbols.NoSymbol ));
+            }
+        case Brackets:
+        case Braces:
+            if (( t == -1 ) || (( frameKinds[ top ] == Brackets ) ? v.isRightBracket( t ) : v.isRightBrace( t ))) {
+                pop();
+                return( next( t ));
+            }
+            return( value( t, n, frameSymbols[ top ] ));
+        case Capture:
+            String text = capture.toString();
+            StringBuffer outer = frameCaptures[ top ];
+            capture = outer;
+            if ( outer != null ) {
+                if ( outer.length() > 0 ) {
+                    outer.append( ' ' );
+                }
+                outer.append( text );
+            }
+            addCaptured( n, frameSymbols[ top ], text );
+            pop();
+            return( t );
+        default:
+            if ( !groupEnded[ counting ] ) {
+                groupCounts[ counting ]++;
+            }
+            counting = frameOuters[ top ];
+            pop();
+            return( t );
+        }
+    }
+
+    /** Start outlining a statement, a PROTO, EXTERNPROTO, ROUTE or node.
+     *
+     *  @param t first token of the statement
+     *  @param parent node containing the statement, -1 if there is none
+     *  @return the token after the statement, or after its first part if the
+     *     rest is outlined by a frame
+     */
+    int statement( int t, int parent ) {
+        int symbol = v.getSymbol( t );
+        if (( symbol == Symbols.PROTO ) || ( symbol == Symbols.EXTERNPROTO )) {
+            return( PROTO( t, symbol == Symbols.EXTERNPROTO ));
+        } else if ( symbol == Symbols.ROUTE ) {
+            return( next( next( next( next( t )))));
+        } else {
+            return( node( t, parent, Symbols.NoSymbol ));
+        }
+    }
+
+    /** Start outlining a PROTO or EXTERNPROTO declaration, the rest of it is
+     *  outlined by its frame.
+     */
+    int PROTO( int t, boolean isExtern ) {
+        int first = t;
+        t = next( t );
+        if ( t == -1 ) {
+            return( -1 );
+        }
+        int p = addPROTO( first, v.getSymbol( t ), isExtern );
+        push( PROTOdeclaration, p, Symbols.NoSymbol );
+        frameOuters[ depth - 1 ] = currentPROTO;
+        currentPROTO = p;
+        t = next( t );
+        if (( t != -1 ) && v.isLeftBracket( t )) {
+            frameStates[ depth - 1 ] = Interface;
+            return( next( t ));
+        }
+        frameStates[ depth - 1 ] = AfterInterface;
+        return( t );
+    }
+
+    /** Take one step of a PROTO or EXTERNPROTO declaration */
+    int PROTOstep( int t, int top ) {
+        int p = frameNodes[ top ];
+        switch ( frameStates[ top ] ) {
+        case Interface:
+            if (( t == -1 ) || v.isRightBracket( t )) {
+                frameStates[ top ] = AfterInterface;
+                return( next( t ));
+            } else if ( isInterfaceSymbol( v.getSymbol( t ))) {
+                return( interfaceDeclaration( t, -1, !isEXTERNPROTO[ p ] ));
+            } else {
+                return( next( t ));
+            }
+        case AfterInterface:
+            frameStates[ top ] = End;
+            if ( isEXTERNPROTO[ p ] ) {
+                if ( t != -1 ) {
+                    return( value( t, -1, Symbols.NoSymbol ));
+                }
+            } else if (( t != -1 ) && v.isLeftBrace( t )) {
+                frameStates[ top ] = Body;
+                return( next( t ));
+            }
+            return( t );
+        case Body:
+            if (( t == -1 ) || v.isRightBrace( t )) {
+                frameStates[ top ] = End;
+                return( next( t ));
+            }
+            return( statement( t, -1 ));
+        default:
+            PROTOlastTokens[ p ] = lastToken;
+            currentPROTO = frameOuters[ top ];
+            pop();
+            return( t );
+        }
+    }
+
+    boolean isInterfaceSymbol( int symbol ) {
+        return(( symbol == Symbols.Field ) || ( symbol == Symbols.ExposedField ) ||
+            ( symbol == Symbols.EventIn ) || ( symbol == Symbols.EventOut ));
+    }
+
+    /** Outline a PROTO or Script interface declaration.
+     *
+     *  @param t the field, exposedField, eventIn or eventOut token
+     *  @param node the Script node, -1 for a PROTO interface
+     *  @param hasValue false for EXTERNPROTO declarations, which have no values
+     *  @return the token after the declaration, or after the first part of its
+     *     value if the rest is outlined by a frame
+     */
+    int interfaceDeclaration( int t, int node, boolean hasValue ) {
+        int symbol = v.getSymbol( t );
+        t = next( next( t ));
+        if ( t == -1 ) {
+            return( -1 );
+        }
+        int nameSymbol = v.getSymbol( t );
+        t = next( t );
+        if ( t == -1 ) {
+            return( -1 );
+        }
+        if ( v.isSymbol( t, Symbols.IS )) {
+            return( next( next( t )));
+        } else if ( hasValue && (( symbol == Symbols.Field ) || ( symbol == Symbols.ExposedField ))) {
+            return( field( t, node, nameSymbol ));
+        } else {
+            return( t );
+        }
+    }
+
+    /** Outline a node, a USE, or a DEF and the node it names.  The body of the
+     *  node is outlined by its frame.
+     *
+     *  @param t first token of the node
+     *  @param parent node containing this node, -1 if there is none
+     *  @param fieldSymbol field of the parent containing this node
+     *  @return the token after the node type, or after the node if it has no body
+     */
+    int node( int t, int parent, int fieldSymbol ) {
+        int first = t;
+        int symbol = v.getSymbol( t );
+        if ( symbol == Symbols.USE ) {
+            t = next( t );
+            if ( t == -1 ) {
+                return( -1 );
+            }
+            int used = getDEFNode( v.getSymbol( t ));
+            int n = addNode( first, parent, fieldSymbol );
+            lastTokens[n] = t;
+            isUSE[n] = true;
+            usedNodes[n] = used;
+            if ( used != -1 ) {
+                nodeIds[n] = nodeIds[ used ];
+                typeSymbols[n] = typeSymbols[ used ];
+            }
+            return( next( t ));
+        }
+        int DEFsymbol = Symbols.NoSymbol;
+        if ( symbol == Symbols.DEF ) {
+            t = next( t );
+            if ( t == -1 ) {
+                return( -1 );
+            }
+            DEFsymbol = v.getSymbol( t );
+            t = next( t );
+            if ( t == -1 ) {
+                return( -1 );
+            }
+            symbol = v.getSymbol( t );
+        }
+        if ( symbol == Symbols.NoSymbol ) {
+            return( value( t, parent, Symbols.NoSymbol ));
+        }
+        t = next( t );
+        if (( t == -1 ) || !v.isLeftBrace( t )) {
+            return( t );
+        }
+        int n = addNode( first, parent, fieldSymbol );
+        typeSymbols[n] = symbol;
+        nodeIds[n] = getBuiltInNodeId( symbol );
+        DEFsymbols[n] = DEFsymbol;
+        if ( DEFsymbol != Symbols.NoSymbol ) {
+            ensureSymbol( DEFsymbol );
+            DEFnodes[ DEFsymbol ] = n + 1;
+        }
+        push( NodeBody, n, Symbols.NoSymbol );
+        return( next( t ));
+    }
+
+    /** Start outlining a field value, keeping it as text if the field is captured,
+     *  and counting its numbers if the field is counted.
+     *
+     *  @param t first token of the value
+     *  @param node node the field is part of, -1 for a PROTO interface
+     *  @param fieldSymbol name of the field
+     *  @return the token after the first part of the value
+     */
+    int field( int t, int node, int fieldSymbol ) {
+        if ( t == -1 ) {
+            return( -1 );
+        }
+        if ( countedSymbols.get( fieldSymbol )) {
+            push( Count, node, fieldSymbol );
+            frameOuters[ depth - 1 ] = counting;
+            counting = addCounted( node, fieldSymbol );
+        }
+        if ( capturedSymbols.get( fieldSymbol )) {
+            push( Capture, node, fieldSymbol );
+            frameCaptures[ depth - 1 ] = capture;
+            capture = new StringBuffer();
+        }
+        return( value( t, node, fieldSymbol ));
+    }
+
+    /** Start outlining a value, nodes in it are added to the outline.  Lists and
+     *  node bodies in the value are outlined by their frames.
+     *
+     *  @param t first token of the value
+     *  @param node node the value is part of, -1 if there is none
+     *  @param fieldSymbol field the value is part of
+     *  @return the token after the first part of the value
+     */
+    int value( int t, int node, int fieldSymbol ) {
+        int type = v.getType( t );
+        if ( type == LeftBracket ) {
+            push( Brackets, node, fieldSymbol );
+            return( next( t ));
+        } else if ( type == LeftBrace ) {
+            push( Braces, node, fieldSymbol );
+            return( next( t ));
+        } else if ( type == NumberToken ) {
+            do {
+                t = next( t );
+            } while (( t != -1 ) && v.isNumber( t ));
+            return( t );
+        } else if ( type == QuotedString ) {
+            do {
+                t = next( t );
+            } while (( t != -1 ) && v.isContinuationString( t ));
+            return( t );
+        }
+        int symbol = v.getSymbol( t );
+        if ( symbol == Symbols.IS ) {
+            return( next( next( t )));
+        } else if (( symbol == Symbols.NoSymbol ) || ( symbol == Symbols.TRUE ) ||
+            ( symbol == Symbols.FALSE ) || ( symbol == Symbols.NULL )) {
+            return( next( t ));
+        } else {
+            return( node( t, node, fieldSymbol ));
+        }
+    }
+
+    /** Get the VRML97 node id of a node type symbol, -1 if it is not a built in node */
+    int getBuiltInNodeId( int symbol ) {
+        ensureSymbol( symbol );
+        int id = nodeIdCache[ symbol ];
+        if ( id == 0 ) {
+            id = VRML97.getNodeId( symbolTable.getName( symbol ));
+            if (( id != -1 ) && !VRML97.isBuiltInNode( id )) {
+                id = -1;
+            }
+            id += 2;
+            nodeIdCache[ symbol ] = id;
+        }
+        return( id - 2 );
+    }
+
+    int getDEFNode( int symbol ) {
+        if (( symbol == Symbols.NoSymbol ) || ( symbol >= DEFnodes.length )) {
+            return( -1 );
+        }
+        return( DEFnodes[ symbol ] - 1 );
+    }
+
+    /** Make sure the tables indexed by symbol include a symbol */
+    void ensureSymbol( int symbol ) {
+        if ( symbol >= DEFnodes.length ) {
+            int size = DEFnodes.length*2;
+            while ( size <= symbol ) {
+                size = size*2;
+            }
+            DEFnodes = grow( DEFnodes, size );
+            nodeIdCache = grow( nodeIdCache, size );
+        }
+    }
+
+    int addNode( int first, int parent, int fieldSymbol ) {
+        if ( numberNodes == nodeIds.length ) {
+            int size = numberNodes*2;
+            nodeIds = grow( nodeIds, size );
+            typeSymbols = grow( typeSymbols, size );
+            DEFsymbols = grow( DEFsymbols, size );
+            firstTokens = grow( firstTokens, size );
+            lastTokens = grow( lastTokens, size );
+            parents = grow( parents, size );
+            fieldSymbols = grow( fieldSymbols, size );
+            usedNodes = grow( usedNodes, size );
+            PROTOs = grow( PROTOs, size );
+            boolean[] temp = new boolean[ size ];
+            System.arraycopy( isUSE, 0, temp, 0, numberNodes );
+            isUSE = temp;
+        }
+        int n = numberNodes++;
+        nodeIds[n] = -1;
+        firstTokens[n] = first;
+        lastTokens[n] = first;
+        parents[n] = parent;
+        fieldSymbols[n] = fieldSymbol;
+        usedNodes[n] = -1;
+        PROTOs[n] = currentPROTO;
+        return( n );
+    }
+
+    int addPROTO( int first, int symbol, boolean isExtern ) {
+        if ( numberPROTOs == PROTOsymbols.length ) {
+            int size = numberPROTOs*2;
+            PROTOsymbols = grow( PROTOsymbols, size );
+            PROTOfirstTokens = grow( PROTOfirstTokens, size );
+            PROTOlastTokens = grow( PROTOlastTokens, size );
+            boolean[] temp = new boolean[ size ];
+            System.arraycopy( isEXTERNPROTO, 0, temp, 0, numberPROTOs );
+            isEXTERNPROTO = temp;
+        }
+        int p = numberPROTOs++;
+        PROTOsymbols[p] = symbol;
+        PROTOfirstTokens[p] = first;
+        PROTOlastTokens[p] = first;
+        isEXTERNPROTO[p] = isExtern;
+
+        // instances of the PROTO are not built in nodes, even with a built in name
+        if ( symbol != Symbols.NoSymbol ) {
+            ensureSymbol( symbol );
+            nodeIdCache[ symbol ] = 1;
+        }
+        return( p );
+    }
+
+    void addCaptured( int node, int fieldSymbol, String text ) {
+        if ( numberCaptured == capturedNodes.length ) {
+            int size = numberCaptured*2;
+            capturedNodes = grow( capturedNodes, size );
+            capturedFieldSymbols = grow( capturedFieldSymbols, size );
+            String[] temp = new String[ size ];
+            System.arraycopy( capturedValues, 0, temp, 0, numberCaptured );
+            capturedValues = temp;
+        }
+        capturedNodes[ numberCaptured ] = node;
+        capturedFieldSymbols[ numberCaptured ] = fieldSymbol;
+        capturedValues[ numberCaptured ] = text;
+        numberCaptured++;
+    }
+
+    int addCounted( int node, int fieldSymbol ) {
+        if ( numberCounted == countedNodes.length ) {
+            int size = numberCounted*2;
+            countedNodes = grow( countedNodes, size );
+            countedFieldSymbols = grow( countedFieldSymbols, size );
+            numberCounts = grow( numberCounts, size );
+            groupCounts = grow( groupCounts, size );
+            boolean[] temp = new boolean[ size ];
+            System.arraycopy( groupEnded, 0, temp, 0, numberCounted );
+            groupEnded = temp;
+        }
+        int c = numberCounted++;
+        countedNodes[c] = node;
+        countedFieldSymbols[c] = fieldSymbol;
+        numberCounts[c] = 0;
+        groupCounts[c] = 0;
+        groupEnded[c] = true;
+        return( c );
+    }
+
+    /** Add a frame to the stack */
+    void push( int kind, int node, int symbol ) {
+        if ( depth == frameKinds.length ) {
+            int size = depth*2;
+            frameKinds = grow( frameKinds, size );
+            frameStates = grow( frameStates, size );
+            frameNodes = grow( frameNodes, size );
+            frameSymbols = grow( frameSymbols, size );
+            frameOuters = grow( frameOuters, size );
+            StringBuffer[] temp = new StringBuffer[ size ];
+            System.arraycopy( frameCaptures, 0, temp, 0, depth );
+            frameCaptures = temp;
+        }
+        frameKinds[ depth ] = kind;
+        frameStates[ depth ] = 0;
+        frameNodes[ depth ] = node;
+        frameSymbols[ depth ] = symbol;
+        frameOuters[ depth ] = -1;
+        frameCaptures[ depth ] = null;
+        depth++;
+    }
+
+    /** Remove the frame on top of the stack */
+    void pop() {
+        depth--;
+        frameCaptures[ depth ] = null;
+    }
+
+    static int[] grow( int[] a, int size ) {
+        int[] temp = new int[ size ];
+        System.arraycopy( a, 0, temp, 0, a.length );
+        return( temp );
+    }
+}
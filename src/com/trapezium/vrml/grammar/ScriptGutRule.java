@@ -11,6 +11,7 @@
 package com.trapezium.vrml.grammar;
 
 import com.trapezium.parse.TokenEnumerator;
+import com.trapezium.parse.Symbols;
 import com.trapezium.vrml.node.Node;
 import com.trapezium.vrml.node.PROTO;
 import com.trapezium.vrml.Scene;
@@ -58,9 +59,9 @@ public class ScriptGutRule {
 	public void Build( int tokenOffset, TokenEnumerator v, Scene scene, Node parent,
 		PROTO protoParent ) {
 		GrammarRule.Enter( "ScriptGutRule.Build" );
-		if ( v.sameAs( tokenOffset, "PROTO" )) {
+		if ( v.isSymbol( tokenOffset, Symbols.PROTO )) {
 			protoRule.Build( tokenOffset, v, scene, parent );
-		} else if ( v.sameAs( tokenOffset, "ROUTE" )) {
+		} else if ( v.isSymbol( tokenOffset, Symbols.ROUTE )) {
 			routeRule.Build( tokenOffset, v, scene, parent );
 		} else {
 			String fieldName = v.toString( tokenOffset );
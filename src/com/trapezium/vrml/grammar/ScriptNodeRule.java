@@ -70,6 +70,7 @@ class ScriptNodeRule {
             }
 			scriptNode.setFirstTokenOffset( tokenOffset );
 			parentElement.addChild( scriptNode );
+			scene.registerNode( scriptNode );
 			tokenOffset = v.getNextToken();
 			boolean firstTimeSkip = false;
 			if ( !v.sameAs( tokenOffset, "{" )) {
@@ -11,6 +11,7 @@
 package com.trapezium.vrml.grammar;
 
 import com.trapezium.parse.TokenEnumerator;
+import com.trapezium.parse.Symbols;
 import com.trapezium.vrml.Scene;
 import com.trapezium.vrml.VrmlElement;
 import com.trapezium.vrml.fields.ISField;
@@ -50,7 +51,7 @@ public class ScriptRestrictedInterfaceDeclarationRule extends RestrictedInterfac
 		Field result = super.Build( tokenOffset, v, scene, parent );
 		int state = v.getState();
 		int next = v.getNextToken();
-		if ( v.sameAs( next, "IS" )) {
+		if ( v.isSymbol( next, Symbols.IS )) {
 		    VrmlElement lastChild = parent.getLastChild();
 		    if (( lastChild != null ) && ( lastChild instanceof Field )) {
 		        Field f = (Field)lastChild;
@@ -31,46 +31,55 @@ public class Spelling {
 	// higher score is a better match
 	//
 	static public int getMatchScore( String goodStr, String badStr ) {
-		int score = 0;
 		String goodString = goodStr.toLowerCase();
 		String badString = badStr.toLowerCase();
 		int minimumScore = consonantCount( goodString )*60;
-		StringBuffer sb = new StringBuffer( goodString );
+		return( getMatchScore( goodString, minimumScore, badString, new char[ goodString.length() ] ));
+	}
+
+	//
+	// same as above, for strings already in lower case, used by SpellingIndex.
+	// minimumScore is consonantCount( goodString )*60, sb is scratch space
+	// at least as long as goodString.
+	//
+	static int getMatchScore( String goodString, int minimumScore, String badString, char[] sb ) {
+		int score = 0;
 		int goodStringLength = goodString.length();
+		goodString.getChars( 0, goodStringLength, sb, 0 );
 		for ( int i = 0; i < goodStringLength; i++ ) {
 			if ( invalidIdx( badString, i )) {
 				continue;
 			}
-			if ( isVowel( sb.charAt( i ))) {
+			if ( isVowel( sb[i] )) {
 				continue;
 			}
-			if ( sb.charAt( i ) == badString.charAt( i )) {
+			if ( sb[i] == badString.charAt( i )) {
 				score += 100;
-				sb.setCharAt( i, '.' );
+				sb[i] = '.';
 			}
 		}
 		for ( int i = 0; i < goodStringLength; i++ ) {
 			if ( invalidIdx( badString, i + 1 )) {
 				continue;
 			}
-			if ( isVowel( sb.charAt( i ))) {
+			if ( isVowel( sb[i] )) {
 				continue;
 			}
-			if ( sb.charAt( i ) == badString.charAt( i + 1 )) {
+			if ( sb[i] == badString.charAt( i + 1 )) {
 				score += 60;
-				sb.setCharAt( i, '.' );
+				sb[i] = '.';
 			}
 		}
 		for ( int i = 0; i < goodStringLength; i++ ) {
 			if ( invalidIdx( badString, i - 1 )) {
 				continue;
 			}
-			if ( isVowel( sb.charAt( i ))) {
+			if ( isVowel( sb[i] )) {
 				continue;
 			}
-			if ( sb.charAt( i ) == badString.charAt( i - 1 )) {
+			if ( sb[i] == badString.charAt( i - 1 )) {
 				score += 60;
-				sb.setCharAt( i, '.' );
+				sb[i] = '.';
 			}
 		}
 		if ( score < minimumScore ) {
@@ -0,0 +1,165 @@
+/*
+ * @(#)SpellingIndex.java
+ *
+ * Copyright (c) 1998 by Trapezium Development LLC.  All Rights Reserved.
+ *
+ * The information in this file is the property of Trapezium Development LLC
+ * and may be used only in accordance with the terms of the license granted
+ * by Trapezium.
+ *
+ */
+package com.trapezium.vrml.grammar;
+
+import com.trapezium.util.ReturnInteger;
+import java.util.Enumeration;
+import java.util.Hashtable;
+
+/**
+ *  The names of a Hashtable prepared for Spelling matches, and the matches
+ *  already found.
+ *  <P>
+ *  Gives exactly the result of VRML97.getClosestMatch on the same Hashtable,
+ *  including which name wins a tie.  Names are kept in the order the Hashtable
+ *  enumerates them, in lower case, with their minimum score.  A name is skipped
+ *  without scoring it when even a match at every one of its consonants that
+ *  occurs in the unknown name could not beat the best score so far.
+ *
+ *  @see Spelling#getMatchScore
+ */
+public class SpellingIndex {
+    /** names in Hashtable enumeration order */
+    String[] names;
+    String[] lowerNames;
+
+    /** lower case consonants of each name, and its minimum score */
+    char[][] consonants;
+    int[] minimumScores;
+
+    /** longest name, for the scratch space used by Spelling */
+    int maxLength;
+
+    /** the Hashtable indexed, and its size when indexed */
+    Hashtable source;
+    int sourceSize;
+
+    /** unknown name to Match, cleared when it gets too large */
+    Hashtable matches;
+    static final int MaxMatches = 2000;
+
+    /** a remembered result of getClosestMatch */
+    class Match {
+        String name;
+        int score;
+        Match( String name, int score ) {
+            this.name = name;
+            this.score = score;
+        }
+    }
+
+    /** Class constructor, index the keys of a Hashtable */
+    public SpellingIndex( Hashtable h ) {
+        source = h;
+        sourceSize = h.size();
+        names = new String[ sourceSize ];
+        lowerNames = new String[ sourceSize ];
+        consonants = new char[ sourceSize ][];
+        minimumScores = new int[ sourceSize ];
+        matches = new Hashtable();
+        int n = 0;
+        Enumeration keys = h.keys();
+        while ( keys.hasMoreElements() && ( n < sourceSize )) {
+            String s = (String)keys.nextElement();
+            String lower = s.toLowerCase();
+            names[n] = s;
+            lowerNames[n] = lower;
+            int count = Spelling.consonantCount( lower );
+            minimumScores[n] = count*60;
+            char[] c = new char[ count ];
+            int ci = 0;
+            int len = lower.length();
+            for ( int i = 0; i < len; i++ ) {
+                char x = lower.charAt( i );
+                if ( !Spelling.isVowel( x )) {
+                    c[ ci++ ] = x;
+                }
+            }
+            consonants[n] = c;
+            if ( len > maxLength ) {
+                maxLength = len;
+            }
+            n++;
+        }
+    }
+
+    /** Is this an index of the current contents of a Hashtable? */
+    public boolean isIndexOf( Hashtable h ) {
+        return(( source == h ) && ( sourceSize == h.size() ));
+    }
+
+    /** Get the indexed name that most closely matches an unknown name.
+     *
+     *  @param  bad         the unknown name
+     *  @param  matchScore  an output parameter with an integer value indicating how
+     *                      close the match is.
+     *
+     *  @return the closest name, or null if none is close enough
+     */
+    public String getClosestMatch( String bad, ReturnInteger matchScore ) {
+        if ( !VRML97.hasLetters( bad )) {
+            matchScore.setValue( 0 );
+            return( null );
+        }
+        Match m = (Match)matches.get( bad );
+        if ( m == null ) {
+            m = findClosestMatch( bad );
+            if ( matches.size() >= MaxMatches ) {
+                matches.clear();
+            }
+            matches.put( bad, m );
+        }
+        matchScore.setValue( m.score );
+        return( m.name );
+    }
+
+    /** Score every name that might beat the best score so far */
+    Match findClosestMatch( String bad ) {
+        String badLower = bad.toLowerCase();
+
+        // a '.' in the unknown name can match a consonant Spelling has already
+        // marked as matched, so the bound below only holds without one
+        boolean canSkip = ( badLower.indexOf( '.' ) == -1 );
+        long[] present = new long[4];
+        int badLength = badLower.length();
+        for ( int i = 0; i < badLength; i++ ) {
+            char x = badLower.charAt( i );
+            if ( x < 256 ) {
+                present[ x >> 6 ] |= ( 1L << ( x & 63 ));
+            }
+        }
+        char[] scratch = new char[ maxLength ];
+        int score = 0;
+        String result = null;
+        int n = names.length;
+        for ( int i = 0; i < n; i++ ) {
+            if ( canSkip ) {
+                char[] c = consonants[i];
+                int bound = 0;
+                for ( int j = 0; j < c.length; j++ ) {
+                    char x = c[j];
+                    if (( x >= 256 ) || (( present[ x >> 6 ] & ( 1L << ( x & 63 ))) != 0 )) {
+                        bound += 100;
+                    }
+                }
+                if (( bound <= score ) || ( bound < minimumScores[i] )) {
+                    continue;
+                }
+            }
+            int testScore = Spelling.getMatchScore( lowerNames[i], minimumScores[i], badLower, scratch );
+            if ( testScore > score ) {
+                score = testScore;
+                result = names[i];
+            }
+        }
+        return( new Match( result, score ));
+    }
+}
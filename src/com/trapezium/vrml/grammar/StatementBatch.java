@@ -0,0 +1,113 @@
+/*
+ * @(#)StatementBatch.java
+ *
+ * Copyright (c) 1998 by Trapezium Development LLC.  All Rights Reserved.
+ *
+ * The information in this file is the property of Trapezium Development LLC
+ * and may be used only in accordance with the terms of the license granted
+ * by Trapezium.
+ *
+ */
+package com.trapezium.vrml.grammar;
+
+import com.trapezium.vrml.Scene;
+import com.trapezium.vrml.ParseContext;
+import com.trapezium.parse.TokenEnumerator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ *  A run of independent top level statements, parsed on another thread into
+ *  a statement Scene with its own parser and its own cursor on the file's tokens.
+ *  <P>
+ *  The parsed statements are only added to the real Scene if each one ended
+ *  where the StatementScanner said it would, and if the Scene is at the first
+ *  statement of the batch when they are added.  Otherwise the statements are
+ *  parsed again on the Scene's own thread.
+ *
+ *  @see VRML97parser#parseStatements
+ */
+class StatementBatch implements Callable {
+    StatementScanner scanner;
+    int first;
+    int last;
+    TokenEnumerator cursor;
+    Scene statementScene;
+    Future future;
+
+    /** true if all statements were parsed and ended where expected */
+    boolean complete;
+
+    /** Class constructor
+     *
+     *  @param scene Scene the statements belong to
+     *  @param cursor TokenEnumerator used to parse the statements
+     *  @param scanner where the statements start and end
+     *  @param first index of the first statement in the batch
+     *  @param last index of the statement after the last statement in the batch
+     */
+    StatementBatch( Scene scene, TokenEnumerator cursor, StatementScanner scanner, int first, int last ) {
+        this.cursor = cursor;
+        this.scanner = scanner;
+        this.first = first;
+        this.last = last;
+        statementScene = scene.createStatementScene( cursor );
+    }
+
+    /** Parse the statements, called on the parsing thread */
+    public Object call() {
+        ParseContext previousContext = ParseContext.bind( statementScene.getParseContext() );
+        try {
+            StatementRule statementRule = new VRML97parser( null ).statementRule;
+            for ( int i = first; i < last; i++ ) {
+                int tokenOffset = scanner.starts[i];
+                cursor.setState( tokenOffset );
+                statementRule.Build( tokenOffset, cursor, statementScene, statementScene );
+                if ( cursor.getState() != scanner.ends[i] ) {
+                    return( null );
+                }
+            }
+            complete = true;
+        } catch ( Exception e ) {
+            // parsed again on the Scene's thread, where the exception is handled as usual
+        } finally {
+            ParseContext.bind( previousContext );
+        }
+        return( null );
+    }
+
+    /** Wait for the parsing thread to finish the batch */
+    void waitFor() {
+        if ( future != null ) {
+            try {
+                future.get();
+            } catch ( Exception e ) {
+                complete = false;
+            }
+            future = null;
+        }
+    }
+
+    /** Add the parsed statements to the Scene.
+     *
+     *  @param scene Scene the statements belong to
+     *  @param v TokenEnumerator of the Scene, at the token before the batch,
+     *     moved to the last token of the batch if the statements are added
+     *  @return true if the statements were added, false if they have to be parsed again
+     */
+    boolean addTo( Scene scene, TokenEnumerator v ) {
+        waitFor();
+        if ( !complete ) {
+            return( false );
+        }
+        int state = v.getState();
+        if (( v.getNextToken() != scanner.starts[ first ] ) || !scene.addStatements( statementScene )) {
+            v.setState( state );
+            return( false );
+        }
+        int lastToken = scanner.ends[ last - 1 ];
+        v.setState( lastToken );
+        v.notifyByToken( lastToken );
+        return( true );
+    }
+}
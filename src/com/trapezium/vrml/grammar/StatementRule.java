@@ -13,6 +13,7 @@ package com.trapezium.vrml.grammar;
 import com.trapezium.vrml.VrmlElement;
 import com.trapezium.vrml.Scene;
 import com.trapezium.parse.TokenEnumerator;
+import com.trapezium.parse.Symbols;
 import com.trapezium.vrml.node.PROTO;
 import com.trapezium.vrml.node.Node;
 
@@ -62,11 +63,11 @@ class StatementRule {
 
 		// no more tokens means nothing left to build
 		if ( tokenOffset != -1 ) {
-			if ( v.sameAs( tokenOffset, "PROTO" )) {
+			if ( v.isSymbol( tokenOffset, Symbols.PROTO )) {
 				protoRule.Build( tokenOffset, v, scene, parent );
-			} else if ( v.sameAs( tokenOffset, "EXTERNPROTO" ) || v.matches( tokenOffset, "EXTERNPROTO#" )) {
+			} else if ( v.isSymbol( tokenOffset, Symbols.EXTERNPROTO ) || v.matches( tokenOffset, "EXTERNPROTO#" )) {
 				externProtoRule.Build( tokenOffset, v, scene, parent );
-			} else if ( v.sameAs( tokenOffset, "ROUTE" )) {
+			} else if ( v.isSymbol( tokenOffset, Symbols.ROUTE )) {
 				routeRule.Build( tokenOffset, v, scene, parent );
 			} else {
 				nodeStatementRule.Build( tokenOffset, v, scene, parent );
@@ -0,0 +1,257 @@
+/*
+ * @(#)StatementScanner.java
+ *
+ * Copyright (c) 1998 by Trapezium Development LLC.  All Rights Reserved.
+ *
+ * The information in this file is the property of Trapezium Development LLC
+ * and may be used only in accordance with the terms of the license granted
+ * by Trapezium.
+ *
+ */
+package com.trapezium.vrml.grammar;
+
+import com.trapezium.parse.TokenEnumerator;
+import com.trapezium.parse.TokenTypes;
+import com.trapezium.parse.Symbols;
+import java.util.BitSet;
+
+/**
+ *  Finds the top level statements of a file by matching brackets and braces,
+ *  without parsing them, and decides which statements can be parsed on another
+ *  thread.
+ *  <P>
+ *  A statement is independent if it has no PROTO, EXTERNPROTO or ROUTE, no
+ *  instance of any PROTO, no Anchor, only USEs names DEFed earlier in the same
+ *  statement, and only DEFs names no earlier statement DEFs.  Parsing an
+ *  independent statement that comes after all PROTO declarations gives the same
+ *  result whether or not the statements before it have been parsed.
+ *  Anchors are excluded because their url can refer to a Viewpoint DEFed in an
+ *  earlier statement.
+ *  <P>
+ *  The scan is only a prediction, when a statement is parsed it is checked to
+ *  start and end where the scan says it does.  The scan stops at the first
+ *  statement it cannot find the end of.
+ *
+ *  @see VRML97parser#parseStatements
+ */
+class StatementScanner implements TokenTypes {
+    /** first and last token of each statement */
+    int[] starts;
+    int[] ends;
+
+    /** which statements are independent */
+    boolean[] independent;
+
+    /** number of statements found */
+    int numberStatements;
+
+    /** index of the last statement with a PROTO or EXTERNPROTO, -1 if there is none */
+    int lastPROTOstatement;
+
+    TokenEnumerator v;
+
+    /** names DEFed by the statements already scanned */
+    BitSet fileDEFs;
+
+    /** names DEFed by the current statement, also kept as a list to clear and copy them */
+    BitSet statementDEFs;
+    int[] statementDEFlist;
+    int numberStatementDEFs;
+
+    /** names declared by PROTO or EXTERNPROTO */
+    BitSet PROTOnames;
+
+    /** what the scan of the current statement found so far */
+    boolean isIndependent;
+    boolean hasPROTO;
+    int previousSymbol;
+
+    /** Class constructor, scans all statements after the current token.
+     *
+     *  @param cursor TokenEnumerator used for the scan, its state is changed
+     */
+    StatementScanner( TokenEnumerator cursor ) {
+        v = cursor;
+        starts = new int[ 64 ];
+        ends = new int[ 64 ];
+        independent = new boolean[ 64 ];
+        lastPROTOstatement = -1;
+        fileDEFs = new BitSet();
+        statementDEFs = new BitSet();
+        statementDEFlist = new int[ 16 ];
+        PROTOnames = new BitSet();
+        int tokenOffset = v.getNextToken();
+        while ( tokenOffset != -1 ) {
+            int end = scanStatement( tokenOffset );
+            if ( end == -1 ) {
+                break;
+            }
+            addStatement( tokenOffset, end );
+            tokenOffset = v.getNextToken( end );
+        }
+    }
+
+    /** Record a statement, and the names it DEFs */
+    void addStatement( int start, int end ) {
+        if ( numberStatements == starts.length ) {
+            int[] temp = new int[ numberStatements*2 ];
+            System.arraycopy( starts, 0, temp, 0, numberStatements );
+            starts = temp;
+            temp = new int[ numberStatements*2 ];
+            System.arraycopy( ends, 0, temp, 0, numberStatements );
+            ends = temp;
+            boolean[] btemp = new boolean[ numberStatements*2 ];
+            System.arraycopy( independent, 0, btemp, 0, numberStatements );
+            independent = btemp;
+        }
+        starts[ numberStatements ] = start;
+        ends[ numberStatements ] = end;
+        independent[ numberStatements ] = isIndependent;
+        if ( hasPROTO ) {
+            lastPROTOstatement = numberStatements;
+        }
+        numberStatements++;
+        for ( int i = 0; i < numberStatementDEFs; i++ ) {
+            fileDEFs.set( statementDEFlist[i] );
+            statementDEFs.clear( statementDEFlist[i] );
+        }
+        numberStatementDEFs = 0;
+    }
+
+    /** Scan one statement.
+     *
+     *  @param tokenOffset first token of the statement
+     *  @return the last token of the statement, or -1 if it cannot be found
+     */
+    int scanStatement( int tokenOffset ) {
+        isIndependent = true;
+        hasPROTO = false;
+        previousSymbol = Symbols.NoSymbol;
+        int symbol = check( tokenOffset );
+        if (( symbol == Symbols.PROTO ) || ( symbol == Symbols.EXTERNPROTO )) {
+            // name, interface, then body or url
+            tokenOffset = skipGroup( next( next( tokenOffset )));
+            tokenOffset = next( tokenOffset );
+            if ( symbol == Symbols.PROTO ) {
+                return( skipGroup( tokenOffset ));
+            } else if (( tokenOffset != -1 ) && v.isLeftBracket( tokenOffset )) {
+                return( skipGroup( tokenOffset ));
+            } else {
+                return( tokenOffset );
+            }
+        } else if ( symbol == Symbols.ROUTE ) {
+            isIndependent = false;
+            return( next( next( next( tokenOffset ))));
+        } else if ( symbol == Symbols.USE ) {
+            isIndependent = false;
+            return( next( tokenOffset ));
+        } else if ( isEXTERNPROTOurl( tokenOffset )) {
+            return( -1 );
+        }
+        if ( symbol == Symbols.DEF ) {
+            tokenOffset = next( next( tokenOffset ));
+        }
+        if ( v.getSymbol( tokenOffset ) == Symbols.NoSymbol ) {
+            return( -1 );
+        }
+        return( skipGroup( next( tokenOffset )));
+    }
+
+    /** Get the next token, and check it */
+    int next( int tokenOffset ) {
+        if ( tokenOffset == -1 ) {
+            return( -1 );
+        }
+        tokenOffset = v.getNextToken( tokenOffset );
+        if ( tokenOffset != -1 ) {
+            check( tokenOffset );
+        }
+        return( tokenOffset );
+    }
+
+    /** Skip to the bracket or brace matching the one at a token.
+     *
+     *  @return the matching bracket or brace, -1 if there is none, or if the
+     *     token is not a left bracket or brace
+     */
+    int skipGroup( int tokenOffset ) {
+        if ( tokenOffset == -1 ) {
+            return( -1 );
+        }
+        int type = v.getType( tokenOffset );
+        if (( type != LeftBrace ) && ( type != LeftBracket )) {
+            return( -1 );
+        }
+        int depth = 1;
+        while ( depth > 0 ) {
+            tokenOffset = next( tokenOffset );
+            if ( tokenOffset == -1 ) {
+                return( -1 );
+            }
+            type = v.getType( tokenOffset );
+            if (( type == LeftBrace ) || ( type == LeftBracket )) {
+                depth++;
+            } else if (( type == RightBrace ) || ( type == RightBracket )) {
+                depth--;
+            }
+        }
+        return( tokenOffset );
+    }
+
+    /** Check a token of the current statement for anything that makes the
+     *  statement depend on other statements.
+     *
+     *  @return the symbol id of the token
+     */
+    int check( int tokenOffset ) {
+        int symbol = v.getSymbol( tokenOffset );
+        if ( symbol != Symbols.NoSymbol ) {
+            if ( previousSymbol == Symbols.DEF ) {
+                if ( fileDEFs.get( symbol )) {
+                    isIndependent = false;
+                }
+                if ( !statementDEFs.get( symbol )) {
+                    statementDEFs.set( symbol );
+                    if ( numberStatementDEFs == statementDEFlist.length ) {
+                        int[] temp = new int[ numberStatementDEFs*2 ];
+                        System.arraycopy( statementDEFlist, 0, temp, 0, numberStatementDEFs );
+                        statementDEFlist = temp;
+                    }
+                    statementDEFlist[ numberStatementDEFs++ ] = symbol;
+                }
+            } else if ( previousSymbol == Symbols.USE ) {
+                if ( !statementDEFs.get( symbol )) {
+                    isIndependent = false;
+                }
+            } else if (( previousSymbol == Symbols.PROTO ) || ( previousSymbol == Symbols.EXTERNPROTO )) {
+                PROTOnames.set( symbol );
+            } else if (( symbol == Symbols.PROTO ) || ( symbol == Symbols.EXTERNPROTO )) {
+                hasPROTO = true;
+                isIndependent = false;
+            } else if ( symbol == Symbols.ROUTE ) {
+                isIndependent = false;
+            } else if ( PROTOnames.get( symbol )) {
+                isIndependent = false;
+            } else if ( v.sameAs( tokenOffset, "Anchor" )) {
+                isIndependent = false;
+            }
+        }
+        previousSymbol = symbol;
+        return( symbol );
+    }
+
+    /** Check for the "EXTERNPROTO#url" form StatementRule accepts */
+    boolean isEXTERNPROTOurl( int tokenOffset ) {
+        String prefix = "EXTERNPROTO#";
+        int n = prefix.length();
+        if ( v.getSize( tokenOffset ) < n ) {
+            return( false );
+        }
+        for ( int i = 0; i < n; i++ ) {
+            if ( v.charAt( i, tokenOffset ) != prefix.charAt( i )) {
+                return( false );
+            }
+        }
+        return( true );
+    }
+}
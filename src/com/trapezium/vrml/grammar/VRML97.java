@@ -22,9 +22,12 @@ import com.trapezium.vrml.ROUTE;
 import com.trapezium.vrml.fields.ISField;
 import com.trapezium.vrml.node.ScriptInstance;
 import com.trapezium.parse.TokenEnumerator;
+import com.trapezium.parse.SymbolTable;
+import com.trapezium.parse.Symbols;
 import java.util.Hashtable;
 import java.util.Enumeration;
 import java.util.StringTokenizer;
+import java.util.Arrays;
 
 /**
  *  Static public methods about the VRML specification.
@@ -838,6 +841,7 @@ public class VRML97 {
     		builtInNodes.put( "NurbsPositionInterpolator", nurbsPositionInterpolatorFields );
     		builtInNodes.put( "CoordinateDeformer", coordinateDeformerFields );
     		nurbsAreEnabled = true;
+    		updateNodeEnabled();
     	}
 	}
 	
@@ -851,6 +855,17 @@ public class VRML97 {
 	        builtInNodes.remove( "NurbsPositionInterpolator" );
 	        builtInNodes.remove( "CoordinateDeformer" );
 	        nurbsAreEnabled = false;
+	        updateNodeEnabled();
+	    }
+	}
+
+	/** Enable the node ids of the nodes in builtInNodes */
+	static void updateNodeEnabled() {
+	    for ( int i = 0; i < nodeNames.length; i++ ) {
+	        nodeEnabled[i] = ( builtInNodes.get( nodeNames[i] ) != null );
+	    }
+	    synchronized( VRML97.class ) {
+	        nodeSpelling = null;
 	    }
 	}
 	
@@ -919,6 +934,195 @@ public class VRML97 {
 		actualTypesByField.put( "CoordinateDeformer_inputTransform", new Integer( NodeType.TransformListNode ));
 	}
 
+	/*
+	    Each built in node, including the nurbs nodes, has a node id, and each
+	    field name used by a built in node has a field id.  Within each node the
+	    fields are numbered from 0 by slot, so a Node can keep its fields in an
+	    array indexed by slot.  After a field name is converted to a field id once,
+	    the FieldDescriptor, node type restriction and Node field are array lookups.
+	    Ids are assigned in alphabetical order, so they are the same in every run.
+	*/
+	static Hashtable nodeIds = new Hashtable();
+	static String[] nodeNames;
+	static Hashtable fieldIds = new Hashtable();
+	static String[] fieldNames;
+
+	/** slot of each field id in each node id, -1 if the node has no such field */
+	static int[][] fieldSlots;
+
+	/** FieldDescriptor for each slot of each node id */
+	static FieldDescriptor[][] slotDescriptors;
+
+	/** node type the slot is restricted to, null if it is not restricted */
+	static Integer[][] slotTypes;
+
+	/** nodes in builtInNodes, nurbs nodes are only enabled by enableNurbs */
+	static boolean[] nodeEnabled;
+
+	static {
+	    Hashtable allNodes = (Hashtable)builtInNodes.clone();
+		allNodes.put( "NurbsSurface", nurbsSurfaceFields );
+		allNodes.put( "NurbsGroup", nurbsGroupFields );
+		allNodes.put( "NurbsTextureSurface", nurbsTextureSurfaceFields );
+		allNodes.put( "NurbsCurve2D", nurbsCurve2DFields );
+		allNodes.put( "TrimmedSurface", trimmedSurfaceFields );
+		allNodes.put( "NurbsPositionInterpolator", nurbsPositionInterpolatorFields );
+		allNodes.put( "CoordinateDeformer", coordinateDeformerFields );
+		nodeNames = sortedKeys( allNodes );
+		int numberNodes = nodeNames.length;
+		Hashtable allFields = new Hashtable();
+		for ( int i = 0; i < numberNodes; i++ ) {
+		    nodeIds.put( nodeNames[i], new Integer( i ));
+		    Enumeration e = ((Hashtable)allNodes.get( nodeNames[i] )).keys();
+		    while ( e.hasMoreElements() ) {
+		        allFields.put( e.nextElement(), allFields );
+		    }
+		}
+		fieldNames = sortedKeys( allFields );
+		int numberFields = fieldNames.length;
+		for ( int i = 0; i < numberFields; i++ ) {
+		    fieldIds.put( fieldNames[i], new Integer( i ));
+		}
+		fieldSlots = new int[ numberNodes ][];
+		slotDescriptors = new FieldDescriptor[ numberNodes ][];
+		slotTypes = new Integer[ numberNodes ][];
+		nodeEnabled = new boolean[ numberNodes ];
+		for ( int i = 0; i < numberNodes; i++ ) {
+		    Hashtable fieldTable = (Hashtable)allNodes.get( nodeNames[i] );
+		    String[] nodeFields = sortedKeys( fieldTable );
+		    int numberSlots = nodeFields.length;
+		    fieldSlots[i] = new int[ numberFields ];
+		    for ( int j = 0; j < numberFields; j++ ) {
+		        fieldSlots[i][j] = -1;
+		    }
+		    slotDescriptors[i] = new FieldDescriptor[ numberSlots ];
+		    slotTypes[i] = new Integer[ numberSlots ];
+		    for ( int slot = 0; slot < numberSlots; slot++ ) {
+		        fieldSlots[i][ getFieldId( nodeFields[ slot ] ) ] = slot;
+		        slotDescriptors[i][ slot ] = (FieldDescriptor)fieldTable.get( nodeFields[ slot ] );
+		        slotTypes[i][ slot ] = (Integer)actualTypesByField.get( nodeNames[i] + "_" + nodeFields[ slot ] );
+		    }
+		    nodeEnabled[i] = ( builtInNodes.get( nodeNames[i] ) != null );
+		}
+	}
+
+	/** Get the keys of a Hashtable in alphabetical order */
+	static String[] sortedKeys( Hashtable h ) {
+	    String[] keys = new String[ h.size() ];
+	    int i = 0;
+	    Enumeration e = h.keys();
+	    while ( e.hasMoreElements() ) {
+	        keys[ i++ ] = (String)e.nextElement();
+	    }
+	    Arrays.sort( keys );
+	    return( keys );
+	}
+
+	/** Get the node id of a built in node.
+	 *
+	 *  @param nodeName name of the node
+	 *  @return the node id, or -1 if the name is not a built in node.  The nurbs
+	 *     nodes have node ids whether or not they are enabled.
+	 */
+	static public int getNodeId( String nodeName ) {
+	    Integer id = (Integer)nodeIds.get( nodeName );
+	    if ( id != null ) {
+	        return( id.intValue() );
+	    } else {
+	        return( -1 );
+	    }
+	}
+
+	/** Get the node id of the node type name in a token.  The id is looked up
+	 *  once per name in the SymbolTable of the TokenEnumerator.
+	 *
+	 *  @param v TokenEnumerator containing the token
+	 *  @param tokenOffset the node type token
+	 *  @return the node id, or -1 if the token is not a built in node
+	 */
+	static public int getNodeId( TokenEnumerator v, int tokenOffset ) {
+	    int symbol = v.getSymbol( tokenOffset );
+	    if ( symbol == Symbols.NoSymbol ) {
+	        return( -1 );
+	    }
+	    SymbolTable symbolTable = v.getSymbolTable();
+	    int id = symbolTable.getCachedId( SymbolTable.NodeIdCache, symbol );
+	    if ( id == SymbolTable.NoCachedId ) {
+	        id = getNodeId( symbolTable.getName( symbol ));
+	        symbolTable.setCachedId( SymbolTable.NodeIdCache, symbol, id );
+	    }
+	    return( id );
+	}
+
+	/** Get the name of a node id */
+	static public String getNodeName( int nodeId ) {
+	    return( nodeNames[ nodeId ] );
+	}
+
+	/** Get the number of node ids */
+	static public int getNumberNodes() {
+	    return( nodeNames.length );
+	}
+
+	/** Get the field id of a field name.
+	 *
+	 *  @param fieldName name of the field
+	 *  @return the field id, or -1 if no built in node has a field with that name
+	 */
+	static public int getFieldId( String fieldName ) {
+	    Integer id = (Integer)fieldIds.get( fieldName );
+	    if ( id != null ) {
+	        return( id.intValue() );
+	    } else {
+	        return( -1 );
+	    }
+	}
+
+	/** Get the field id of the field name in a token.  The id is looked up
+	 *  once per name in the SymbolTable of the TokenEnumerator.
+	 *
+	 *  @param v TokenEnumerator containing the token
+	 *  @param tokenOffset the field name token
+	 *  @return the field id, or -1 if no built in node has a field with that name
+	 */
+	static public int getFieldId( TokenEnumerator v, int tokenOffset ) {
+	    int symbol = v.getSymbol( tokenOffset );
+	    if ( symbol == Symbols.NoSymbol ) {
+	        return( -1 );
+	    }
+	    SymbolTable symbolTable = v.getSymbolTable();
+	    int id = symbolTable.getCachedId( SymbolTable.FieldIdCache, symbol );
+	    if ( id == SymbolTable.NoCachedId ) {
+	        id = getFieldId( symbolTable.getName( symbol ));
+	        symbolTable.setCachedId( SymbolTable.FieldIdCache, symbol, id );
+	    }
+	    return( id );
+	}
+
+	/** Get the name of a field id */
+	static public String getFieldName( int fieldId ) {
+	    return( fieldNames[ fieldId ] );
+	}
+
+	/** Get the slot of a field within a node.
+	 *
+	 *  @param nodeId node id of an enabled built in node, or -1
+	 *  @param fieldId field id, or -1
+	 *  @return the slot of the field, from 0 to getNumberSlots( nodeId ) - 1,
+	 *     or -1 if the node has no such field or either id is -1
+	 */
+	static public int getFieldSlot( int nodeId, int fieldId ) {
+	    if (( nodeId < 0 ) || ( fieldId < 0 ) || !nodeEnabled[ nodeId ] ) {
+	        return( -1 );
+	    }
+	    return( fieldSlots[ nodeId ][ fieldId ] );
+	}
+
+	/** Get the number of field slots of a node id */
+	static public int getNumberSlots( int nodeId ) {
+	    return( slotDescriptors[ nodeId ].length );
+	}
+
     /** Does a field restrict its values to a specific type?
      *
      *  @param  node   the node to check
@@ -940,6 +1144,31 @@ public class VRML97 {
 	    }
 	}
 
+    /** Does a field restrict its values to a specific type?
+     *
+     *  @param  nodeId   node id of the node to check
+     *  @param  fieldId  field id of the field to check
+     *  @param  result   if this method returns true, the type the value is limited to
+     *
+     *  @return  true if the node/field refers to a Node that can only be a specific type.
+     */
+	static public boolean fieldHasType( int nodeId, int fieldId, ReturnInteger result ) {
+	    if (( nodeId < 0 ) || ( fieldId < 0 )) {
+	        return( false );
+	    }
+	    int slot = fieldSlots[ nodeId ][ fieldId ];
+	    if ( slot == -1 ) {
+	        return( false );
+	    }
+	    Integer x = slotTypes[ nodeId ][ slot ];
+	    if ( x != null ) {
+	        result.setValue( x.intValue() );
+	        return( true );
+	    } else {
+	        return( false );
+	    }
+	}
+
 	/** create a node by name */
 	static public Node NodeFactory( String nodeName ) throws InstantiationException, IllegalAccessException, ClassNotFoundException, IllegalArgumentException {
 		if ( nodeName.compareTo( "NULL" ) == 0 ) {
@@ -963,6 +1192,11 @@ public class VRML97 {
 	    return( builtInNodes.get( nodeName ) != null );
 	}
 
+    /** is the node id an enabled built in node? */
+	static public boolean isBuiltInNode( int nodeId ) {
+	    return(( nodeId >= 0 ) && nodeEnabled[ nodeId ] );
+	}
+
 	/** is the type part of the VRML97 spec? */
 	static public boolean isBuiltInType( String typeName ) {
 	    return( builtInTypes.get( typeName ) != null );
@@ -980,12 +1214,18 @@ public class VRML97 {
 	    if ( nodeName == null ) {
 	        return( false );
 	    }
-	    Hashtable fieldTable = (Hashtable)builtInNodes.get( nodeName );
-	    if ( fieldTable != null ) {
-	        return( fieldTable.get( fieldId ) != null );
-	    } else {
-	        return( false );
-	    }
+	    return( getFieldSlot( getNodeId( nodeName ), getFieldId( fieldId )) != -1 );
+	}
+
+	/** Is the node & field combination valid?
+	 *
+	 *  @param nodeId the node id of a built in VRML 97 node, or -1
+	 *  @param fieldId the field id of a field, or -1
+	 *
+	 *  @return true if the node has the field, otherwise false
+	 */
+	static public boolean isValidFieldId( int nodeId, int fieldId ) {
+	    return( getFieldSlot( nodeId, fieldId ) != -1 );
 	}
 	
 	/** Get the field data type constant associated with a node & field.
@@ -997,13 +1237,10 @@ public class VRML97 {
 	    if ( nodeName == null ) {
 	        return( UnknownType );
 	    }
-	    Hashtable fieldTable = (Hashtable)builtInNodes.get( nodeName );
-	    if ( fieldTable != null ) {
-	        FieldDescriptor fd = (FieldDescriptor)fieldTable.get( fieldId );
-	        if ( fd != null ) {
-	            return( fd.getFieldType() );
-	        }
-	    }
+        FieldDescriptor fd = getFieldDescriptor( nodeName, fieldId );
+        if ( fd != null ) {
+            return( fd.getFieldType() );
+        }
 	    return( UnknownType );
 	}
 
@@ -1027,13 +1264,13 @@ public class VRML97 {
 	 *    then VRML97.eventIn or VRML97.eventOut is returned.
 	 */
 	static public int getInterfaceType( String nodeName, String fieldId ) {
-	    Hashtable fieldTable = (Hashtable)builtInNodes.get( nodeName );
-	    if ( fieldTable != null ) {
-	        FieldDescriptor fd = (FieldDescriptor)fieldTable.get( fieldId );
+	    int nodeId = getNodeId( nodeName );
+	    if ( isBuiltInNode( nodeId )) {
+	        FieldDescriptor fd = getFieldDescriptor( nodeId, getFieldId( fieldId ));
 	        if ( fd == null ) {
 	            if ( fieldId.indexOf( "set_" ) == 0 ) {
 	                String nameWithoutPrefix = fieldId.substring( 4 );
-	                fd = (FieldDescriptor)fieldTable.get( nameWithoutPrefix );
+	                fd = getFieldDescriptor( nodeId, getFieldId( nameWithoutPrefix ));
 	                if ( fd != null ) {
 	                    if ( fd.getDeclarationType() == exposedField ) {
 	                        return( eventIn );
@@ -1041,7 +1278,7 @@ public class VRML97 {
     	            }
 	            } else if ( fieldId.indexOf( "_changed" ) > 0 ) {
 	                String nameWithoutSuffix = fieldId.substring( 0, fieldId.indexOf( "_changed" ));
-	                fd = (FieldDescriptor)fieldTable.get( nameWithoutSuffix );
+	                fd = getFieldDescriptor( nodeId, getFieldId( nameWithoutSuffix ));
 	                if ( fd != null ) {
     	                if ( fd.getDeclarationType() == exposedField ) {
     	                    return( eventOut );
@@ -1064,13 +1301,15 @@ public class VRML97 {
 	 *    indicate a boolean field, or do not indicate a valid field.
 	 */
 	static public boolean getDefaultBoolValue( String nodeName, String fieldId ) {
-	    Hashtable fieldTable = (Hashtable)builtInNodes.get( nodeName );
-	    if ( fieldTable != null ) {
-	        FieldDescriptor fd = (FieldDescriptor)fieldTable.get( fieldId );
-	        if ( fd != null ) {
-	            return( fd.getDefaultBoolValue() );
-	        }
-	    }
+	    return( getDefaultBoolValue( getNodeId( nodeName ), getFieldId( fieldId )));
+	}
+
+    /** Get the default boolean value for a node id and field id, see above */
+	static public boolean getDefaultBoolValue( int nodeId, int fieldId ) {
+        FieldDescriptor fd = getFieldDescriptor( nodeId, fieldId );
+        if ( fd != null ) {
+            return( fd.getDefaultBoolValue() );
+        }
 	    return( false );
 	}
 
@@ -1084,9 +1323,22 @@ public class VRML97 {
 	 *          if that combination indicates an unknown field.
 	 */
 	static public FieldDescriptor getFieldDescriptor( String nodeName, String fieldId ) {
-	    Hashtable fieldTable = (Hashtable)builtInNodes.get( nodeName );
-	    if ( fieldTable != null ) {
-	        return( (FieldDescriptor)fieldTable.get( fieldId ));
+	    return( getFieldDescriptor( getNodeId( nodeName ), getFieldId( fieldId )));
+	}
+
+	/**
+	 *  get the FieldDescriptor associated with a node id and field id
+	 *
+	 *  @param  nodeId   node id of the node containing the field, or -1
+	 *  @param  fieldId  field id of the field, or -1
+	 *
+	 *  @return a FieldDescriptor for the nodeId/fieldId combination, or null
+	 *          if that combination indicates an unknown field.
+	 */
+	static public FieldDescriptor getFieldDescriptor( int nodeId, int fieldId ) {
+	    int slot = getFieldSlot( nodeId, fieldId );
+	    if ( slot != -1 ) {
+	        return( slotDescriptors[ nodeId ][ slot ] );
 	    } else {
 	        return( null );
 	    }
@@ -1115,53 +1367,67 @@ public class VRML97 {
 	    if ( nodeName == null ) {
 	        return( false );
 	    }
-	    // get the hash table of default field values for the node
-	    Hashtable fieldTable = (Hashtable)builtInNodes.get( nodeName );
-	    if ( fieldTable != null ) {
-	        // get the descriptor for the particular field
-	        FieldDescriptor fieldData = (FieldDescriptor)fieldTable.get( fieldId );
-	        if ( fieldData != null ) {
+	    return( fieldIsDefault( getNodeId( nodeName ), getFieldId( fieldId ), firstTokenOffset, lastTokenOffset, v ));
+	}
+
+	/**
+	 *  Is a field value equivalent to the default field value?
+	 *
+	 *  @param   nodeId     node id of the node containing the field, or -1
+	 *  @param   fieldId    field id of the field, or -1
+	 *  @param   firstTokenOffset  the first token of the field value
+	 *  @param   lastTokenOffset   the last token of the field value
+	 *
+	 *  @return  <B>true</B> if the field value is equaivalent to the default field value.
+	 */
+	static public boolean fieldIsDefault( int nodeId, int fieldId,
+	    int firstTokenOffset, int lastTokenOffset, TokenEnumerator v ) {
+        // get the descriptor for the particular field
+        FieldDescriptor fieldData = getFieldDescriptor( nodeId, fieldId );
+        if ( fieldData != null ) {
 	            // get the token enumerator containing the default value
 	            TokenEnumerator te = fieldData.getTokenEnumerator();
 	            if ( te == null ) {
 	                return( false );
 	            }
-        		int state = v.getState();
-        		int scannerOffset = firstTokenOffset;
-        		v.setState( scannerOffset );
-        		te.setState( -1 );
-        		// compare token by token
-        		while ( te.hasMoreElements() ) {
-        			int test = te.getNextToken();
-        			if ( test == -1 ) {
-        				break;
-        			}
-        			if ( te.sameAs( v )) {
-        				if ( scannerOffset == lastTokenOffset ) {
-        					v.setState( state );
-        					return( true );
-        				}
-        			} else if ( te.isNumber( test ) && v.isNumber( scannerOffset )) {
-        			    try {
-            				if ( te.getFloat( test ) == v.getFloat( scannerOffset )) {
-            					if ( scannerOffset == lastTokenOffset ) {
-            						v.setState( state );
-            						return( true );
-            					}
-            				} else {
-            					break;
+                // the default value TokenEnumerator is shared by all parsing threads
+                synchronized( te ) {
+            		int state = v.getState();
+            		int scannerOffset = firstTokenOffset;
+            		v.setState( scannerOffset );
+            		te.setState( -1 );
+            		// compare token by token
+            		while ( te.hasMoreElements() ) {
+            			int test = te.getNextToken();
+            			if ( test == -1 ) {
+            				break;
+            			}
+            			if ( te.sameAs( v )) {
+            				if ( scannerOffset == lastTokenOffset ) {
+            					v.setState( state );
+            					return( true );
             				}
-            			} catch ( Exception e ) { // assume NumberFormatException
-            			    return( false );
+            			} else if ( te.isNumber( test ) && v.isNumber( scannerOffset )) {
+            			    try {
+                				if ( te.getFloat( test ) == v.getFloat( scannerOffset )) {
+                					if ( scannerOffset == lastTokenOffset ) {
+                						v.setState( state );
+                						return( true );
+                					}
+                				} else {
+                					break;
+                				}
+                			} catch ( Exception e ) { // assume NumberFormatException
+                			    return( false );
+                			}
+            			} else {
+            				break;
             			}
-        			} else {
-        				break;
-        			}
-        			scannerOffset = v.getNextToken();
-        		}
-                v.setState( state );
-        		return( false );
-        	}
+            			scannerOffset = v.getNextToken();
+            		}
+                    v.setState( state );
+            		return( false );
+                }
        	}
        	return( false );
     }
@@ -1175,7 +1441,7 @@ public class VRML97 {
 	 *          unknown node type input parameter.  If none is close enough, returns null.
 	 */
 	static public String getClosestNode( String nodeType, ReturnInteger matchScore ) {
-	    return( getClosestMatch( nodeType, builtInNodes, matchScore ));
+	    return( getNodeSpelling().getClosestMatch( nodeType, matchScore ));
 	}
 
 	/** get the fieldType String that most closely matches the unknown field type string
@@ -1187,7 +1453,38 @@ public class VRML97 {
 	*          the unknown field type input parameter.  If none is close enough, returns null.
 	*/
 	static public String getClosestType( String fieldType, ReturnInteger matchScore ) {
-	    return( getClosestMatch( fieldType, builtInTypes, matchScore ));
+	    return( getTypeSpelling().getClosestMatch( fieldType, matchScore ));
+	}
+
+	/** SpellingIndex of builtInNodes, of builtInTypes, and of the fields of each node id */
+	static SpellingIndex nodeSpelling;
+	static SpellingIndex typeSpelling;
+	static SpellingIndex[] fieldSpelling;
+
+	static synchronized SpellingIndex getNodeSpelling() {
+	    if (( nodeSpelling == null ) || !nodeSpelling.isIndexOf( builtInNodes )) {
+	        nodeSpelling = new SpellingIndex( builtInNodes );
+	    }
+	    return( nodeSpelling );
+	}
+
+	static synchronized SpellingIndex getTypeSpelling() {
+	    if (( typeSpelling == null ) || !typeSpelling.isIndexOf( builtInTypes )) {
+	        typeSpelling = new SpellingIndex( builtInTypes );
+	    }
+	    return( typeSpelling );
+	}
+
+	static synchronized SpellingIndex getFieldSpelling( int nodeId, Hashtable fields ) {
+	    if ( fieldSpelling == null ) {
+	        fieldSpelling = new SpellingIndex[ nodeNames.length ];
+	    }
+	    SpellingIndex result = fieldSpelling[ nodeId ];
+	    if (( result == null ) || !result.isIndexOf( fields )) {
+	        result = new SpellingIndex( fields );
+	        fieldSpelling[ nodeId ] = result;
+	    }
+	    return( result );
 	}
 
 
@@ -1205,7 +1502,10 @@ public class VRML97 {
 	        return( null );
 	    }
 	    Hashtable h = (Hashtable)builtInNodes.get( nodeName );
-	    if ( h != null ) {
+	    int nodeId = getNodeId( nodeName );
+	    if (( h != null ) && ( nodeId != -1 )) {
+	        return( getFieldSpelling( nodeId, h ).getClosestMatch( fieldId, matchScore ));
+	    } else if ( h != null ) {
 	        return( getClosestMatch( fieldId, h, matchScore ));
 	    } else {
 	        return( null );
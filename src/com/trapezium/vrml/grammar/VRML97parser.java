@@ -13,8 +13,11 @@ package com.trapezium.vrml.grammar;
 import com.trapezium.vrml.VrmlElement;
 import com.trapezium.vrml.Scene;
 import com.trapezium.vrml.ErrorElement;
+import com.trapezium.vrml.ParseContext;
 import com.trapezium.vrml.visitor.ParentSetter;
 import com.trapezium.parse.TokenEnumerator;
+import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  *  Main class for parsing a VRML 2.0 file.
@@ -54,9 +57,19 @@ public class VRML97parser {
     NodeRule nodeRule;
     StatementRule statementRule;
     
-    // PROTOs use same parser as base
+    // PROTOs use same parser as base, see ParseContext.getParser.  This is the
+    // parser last used to Build a Scene with the default ParseContext.
     static public VRML97parser singleton = null;
 
+    /** Option, parse the top level statements of large files on several threads */
+    static public boolean parallelParsing = false;
+    static public void setParallelParsing( boolean value ) {
+        parallelParsing = value;
+    }
+
+    /** Minimum number of tokens parsed by one thread when parsing in parallel */
+    static int ParallelBatchSize = 20000;
+
     /** Parser with no DEFNameFactory and no error reporting limits */
     public VRML97parser() {
         this( null );
@@ -71,7 +84,6 @@ public class VRML97parser {
     public VRML97parser( DEFNameFactory defNameFactory ) {
         nodeRule = new NodeRule( defNameFactory );
         statementRule = new StatementRule( nodeRule );
-        singleton = this;
     }
     
 	/**
@@ -91,6 +103,9 @@ public class VRML97parser {
 	 *  this is 0, which is the header, which is not ignored by the parsing.
 	 *  For dynamically generated Nodes, with no header, this is set to
 	 *  -1 so that first token is not ignored in parsing.
+	 *  <P>
+	 *  The Scene's ParseContext is bound to the thread while parsing, with this
+	 *  parser as the parser for PROTOs.
 	 */
 	public void Build( TokenEnumerator v, Scene scene, int startToken )  {
 	    v.setState( startToken );
@@ -99,12 +114,20 @@ public class VRML97parser {
 	    if ( scene.getDEFNameFactory() != null ) {
 	        nodeRule.setDEFNameFactory( scene.getDEFNameFactory() );
 	    }
-		Build( v, scene, scene, "" );
-		
-		// necessary to prevent infinite loop on visitors if
-		// scene graph has Script field self references
-		ParentSetter ps = new ParentSetter( v );
-		scene.traverse( ps );
+	    ParseContext context = scene.getParseContext();
+	    ParseContext previousContext = ParseContext.bind( context );
+	    VRML97parser previousParser = context.setParser( this );
+	    try {
+    		Build( v, scene, scene, "" );
+    		
+    		// necessary to prevent infinite loop on visitors if
+    		// scene graph has Script field self references
+    		ParentSetter ps = new ParentSetter( v );
+    		scene.traverse( ps );
+    	} finally {
+    	    context.setParser( previousParser );
+    	    ParseContext.bind( previousContext );
+    	}
 	}
 
 	/**
@@ -114,6 +137,10 @@ public class VRML97parser {
 	void Build( TokenEnumerator v, Scene scene, VrmlElement parent, String terminator ) {
 		GrammarRule.Enter( "SceneRule.Build" );
 		scene.setFirstTokenOffset( v.getCurrentTokenOffset() );
+		if ( parallelParsing && ( parent == scene ) && ( terminator.length() == 0 ) &&
+		    ( nodeRule.getDEFNameFactory() == null )) {
+		    parseStatements( v, scene );
+		}
 		int tokenOffset = -1;
 		while ( true ) {
 			tokenOffset = v.getNextToken();
@@ -132,5 +159,106 @@ public class VRML97parser {
     	}
 		GrammarRule.Exit( "SceneRule.Build" );
 	}
+
+	/**
+	 *  Parse the top level statements of a file on several threads, for the
+	 *  parallelParsing option.
+	 *  <P>
+	 *  The StatementScanner finds where the statements are.  Statements up to the
+	 *  last PROTO declaration are parsed here.  After that, runs of independent
+	 *  statements are parsed by StatementBatches on other threads, while the other
+	 *  statements are parsed here.  Batches are added to the Scene in file order,
+	 *  so DEFs, duplicate DEF warnings, and the warning limit come out exactly as
+	 *  if every statement were parsed here.
+	 *  <P>
+	 *  Returns with the TokenEnumerator at the last token parsed, the
+	 *  caller parses anything the scan did not cover.
+	 */
+	void parseStatements( TokenEnumerator v, Scene scene ) {
+	    TokenEnumerator cursor = v.createCursor();
+	    if ( cursor == null ) {
+	        return;
+	    }
+	    StatementScanner scanner = new StatementScanner( cursor );
+	    int numberStatements = scanner.numberStatements;
+	    int firstBatch = scanner.lastPROTOstatement + 1;
+	    int independentTokens = 0;
+	    for ( int i = firstBatch; i < numberStatements; i++ ) {
+	        if ( scanner.independent[i] ) {
+	            independentTokens += scanner.ends[i] - scanner.starts[i] + 1;
+	        }
+	    }
+	    if ( independentTokens < ParallelBatchSize*2 ) {
+	        return;
+	    }
+
+	    // PROTOs have to be known before any batch is parsed
+	    for ( int i = 0; i < firstBatch; i++ ) {
+	        if ( !parseStatement( v, scene, scanner.starts[i], scanner.ends[i] )) {
+	            return;
+	        }
+	    }
+
+	    int batchSize = independentTokens/( Runtime.getRuntime().availableProcessors()*4 );
+	    if ( batchSize < ParallelBatchSize ) {
+	        batchSize = ParallelBatchSize;
+	    }
+	    StatementBatch[] batchAt = new StatementBatch[ numberStatements ];
+	    Vector batches = new Vector();
+	    int i = firstBatch;
+	    while ( i < numberStatements ) {
+	        if ( !scanner.independent[i] ) {
+	            i++;
+	            continue;
+	        }
+	        int first = i;
+	        int tokens = 0;
+	        while (( i < numberStatements ) && scanner.independent[i] && ( tokens < batchSize )) {
+	            tokens += scanner.ends[i] - scanner.starts[i] + 1;
+	            i++;
+	        }
+	        StatementBatch b = new StatementBatch( scene, v.createCursor(), scanner, first, i );
+	        b.future = ForkJoinPool.commonPool().submit( b );
+	        batchAt[ first ] = b;
+	        batches.addElement( b );
+	    }
+
+	    // add batches, and parse the other statements here, in file order
+	    i = firstBatch;
+	    while ( i < numberStatements ) {
+	        StatementBatch b = batchAt[i];
+	        if (( b != null ) && b.addTo( scene, v )) {
+	            i = b.last;
+	        } else if ( parseStatement( v, scene, scanner.starts[i], scanner.ends[i] )) {
+	            i++;
+	        } else {
+	            break;
+	        }
+	    }
+
+	    // batches not added are parsed again by the caller, they must not be running then
+	    int numberBatches = batches.size();
+	    for ( int j = 0; j < numberBatches; j++ ) {
+	        ((StatementBatch)batches.elementAt( j )).waitFor();
+	    }
+	}
+
+	/**
+	 *  Parse one statement found by the StatementScanner.
+	 *
+	 *  @return true if the statement started and ended where expected, false if
+	 *     not, in which case the rest of the scan cannot be used.  The statement is
+	 *     not parsed if it does not start where expected.
+	 */
+	boolean parseStatement( TokenEnumerator v, Scene scene, int start, int end ) {
+	    int state = v.getState();
+	    int tokenOffset = v.getNextToken();
+	    if ( tokenOffset != start ) {
+	        v.setState( state );
+	        return( false );
+	    }
+	    statementRule.Build( tokenOffset, v, scene, scene );
+	    return( v.getState() == end );
+	}
 }
 
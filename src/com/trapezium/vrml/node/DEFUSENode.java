@@ -11,6 +11,8 @@
 package com.trapezium.vrml.node;
 
 import com.trapezium.parse.TokenEnumerator;
+import com.trapezium.parse.SymbolTable;
+import com.trapezium.parse.Symbols;
 import com.trapezium.vrml.VrmlElement;
 import com.trapezium.vrml.Scene;
 import com.trapezium.vrml.fields.FieldValue;
@@ -37,6 +39,10 @@ public class DEFUSENode extends Node {
 	/** the name */
 	String defuseName;
 
+	/** symbol id of the name in symbolTable, NoSymbol once the name is changed */
+	int defuseSymbol = Symbols.NoSymbol;
+	transient SymbolTable symbolTable;
+
 	/** polygon count, optimization to avoid recounting on USE
 	 *  (not done, need to set during DEF node traversal, need to
 	 *  get bounds on traverse of DEF node, probably can do with visitLevel,
@@ -116,7 +122,11 @@ public class DEFUSENode extends Node {
 	public DEFUSENode( int tokenOffset, TokenEnumerator v, int type ) {
 		super( tokenOffset );
 		tokenOffset = v.getNextToken();
-		defuseName = v.toString( tokenOffset );
+		defuseSymbol = v.getSymbol( tokenOffset );
+		if ( defuseSymbol != Symbols.NoSymbol ) {
+		    symbolTable = v.getSymbolTable();
+		}
+		defuseName = v.getSymbolName( tokenOffset );
 		if ( type == DEF ) {
 			isDEFNode = true;
 		} else {
@@ -207,6 +217,20 @@ public class DEFUSENode extends Node {
 	    return( defuseName );
 	}
 
+	/** Get the symbol id of the name, NoSymbol if the name has been changed
+	 *  since it was parsed.
+	 *
+	 *  @see #getSymbolTable
+	 */
+	public int getSymbol() {
+	    return( defuseSymbol );
+	}
+
+	/** Get the SymbolTable of the symbol id returned by getSymbol */
+	public SymbolTable getSymbolTable() {
+	    return( symbolTable );
+	}
+
     /** Rename the DEF within the Scene */
     public void setId( String newDEFname ) {
         Scene myScene = (Scene)getScene();
@@ -218,6 +242,7 @@ public class DEFUSENode extends Node {
                 myScene.traverse( drv );
             }
             defuseName = newDEFname;
+            defuseSymbol = Symbols.NoSymbol;
             myScene.registerDEF( this );
         }
     }
@@ -225,6 +250,7 @@ public class DEFUSENode extends Node {
     /** Rename Id just within this DEFUSENode */
     public void resetId( String newDEFname ) {
         defuseName = newDEFname;
+        defuseSymbol = Symbols.NoSymbol;
     }
 
     /** Get the name assigned to the node, or the name referenced by USE */
@@ -235,6 +261,7 @@ public class DEFUSENode extends Node {
 	/** Set the DEF name, this does not adjust subsequent USE nodes */
 	public void setDEFName( String newDEFName ) {
 	    defuseName = newDEFName;
+	    defuseSymbol = Symbols.NoSymbol;
         VrmlElement root = getRoot();
         if ( root instanceof Scene ) {
             Scene sroot = (Scene)root;
@@ -273,4 +300,14 @@ public class DEFUSENode extends Node {
             return( null );
         }
     }
+
+    /** Get the node id of the node associated with this DEF/USE node */
+    public int getNodeId() {
+        Node n = getNode();
+        if ( n != null ) {
+            return( n.getNodeId() );
+        } else {
+            return( -1 );
+        }
+    }
 }
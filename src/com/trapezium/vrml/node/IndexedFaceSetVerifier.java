@@ -21,6 +21,7 @@ import com.trapezium.vrml.fields.MFInt32Value;
 import com.trapezium.vrml.Scene;
 import com.trapezium.vrml.Value;
 import com.trapezium.vrml.VrmlElement;
+import com.trapezium.vrml.ParseContext;
 import com.trapezium.vrml.grammar.Table7;
 import com.trapezium.vrml.node.generated.IndexedFaceSet;
 
@@ -446,7 +447,7 @@ public class IndexedFaceSetVerifier extends IndexedLineSetVerifier {
 	    VrmlElement coordValues, Node nodeToBeVerified, int factor, 
 	    String indexString, String valueName, 
 	    TokenEnumerator v, ErrorSummary errorSummary ) {
-	    if ( VrmlElement.nowarning ) {
+	    if ( ParseContext.get().getNowarning() ) {
 	        return;
 	    }
 	    boolean indexExists = ( nodeToBeVerified.getField( indexString ) != null );
@@ -629,25 +630,20 @@ public class IndexedFaceSetVerifier extends IndexedLineSetVerifier {
 	
 	static boolean singleColorIndex( Field colorIndex, TokenEnumerator dataSource ) {
 	    if ( colorIndex != null ) {
-	        int first = colorIndex.getFirstTokenOffset();
-	        int last = colorIndex.getLastTokenOffset();
-	        int scanner = first;
-	        dataSource.setState( scanner );
-	        int doffset = dataSource.skipToNumber( 0 );
-	        int dval = dataSource.getIntValue( doffset );
-	        while (( scanner != -1 ) && ( scanner < last )) {
-	            scanner = dataSource.getNextToken();
-	            if ( scanner == -1 ) {
-	                return( true );
-	            }
-	            int offset = dataSource.skipToNumber( 0 );
-	            if (( offset == -1 ) || ( offset > last )) {
-	                return( true );
-	            }
-	            if ( dataSource.getIntValue( offset ) != dval ) {
+	        FieldValue fv = colorIndex.getFieldValue();
+	        if ( !( fv instanceof MFFieldValue )) {
+	            return( false );
+	        }
+	        int[] values = ((MFFieldValue)fv).getIntValues( dataSource );
+	        if ( values.length == 0 ) {
+	            return( false );
+	        }
+	        for ( int i = 1; i < values.length; i++ ) {
+	            if ( values[i] != values[0] ) {
 	                return( false );
 	            }
 	        }
+	        return( true );
 	    }
 	    return( false );
 	}
@@ -118,6 +118,16 @@ public class Node extends Field {
 	    return( false );
 	}
 
+	/** Is this node the copy of a PROTO body node shared by all instances of the PROTO */
+	public boolean isSharedPROTOnode() {
+	    VrmlElement p = getParent();
+	    if ( p instanceof PROTOInstance ) {
+	        return( ((PROTOInstance)p).isSharedNode( this ));
+	    } else {
+	        return( false );
+	    }
+	}
+
     /** Get the DEF node that is the parent of this node.
      */
 	public DEFUSENode getDEFparent() {
@@ -203,7 +213,7 @@ public class Node extends Field {
 	public boolean getBoolValue( String fieldName ) {
 		Field f = getField( fieldName );
 		if ( f == null ) {
-		    return( VRML97.getDefaultBoolValue( getNodeName(), fieldName ));
+		    return( getDefaultBoolValue( fieldName ));
 		} else {
     		SFBoolValue bf = (SFBoolValue)f.getFieldValue();
     		return( bf.getValue() );
@@ -303,6 +313,99 @@ public class Node extends Field {
 	    return( null );
 	}
 
+	/** node id of the node name, -2 if not looked up yet */
+	int nodeId = -2;
+
+	/** Get the node id of this node's built in node type.
+	 *
+	 *  @return the VRML97 node id of getNodeName(), -1 if it is not a built in node
+	 */
+	public int getNodeId() {
+	    if ( nodeId == -2 ) {
+	        String nodeName = getNodeName();
+	        if ( nodeName == null ) {
+	            return( -1 );
+	        }
+	        nodeId = VRML97.getNodeId( nodeName );
+	    }
+	    return( nodeId );
+	}
+
+	/** The first field with each VRML97 field id, by slot, null until needed */
+	transient Field[] fieldSlots;
+
+	/** Can fields be found using their slot?  Not for nodes whose fields are
+	 *  declared by an interface.
+	 */
+	protected boolean usesFieldSlots() {
+	    return( true );
+	}
+
+	/** Forget the field slots, called when fields are removed or renamed */
+	public void clearFieldSlots() {
+	    fieldSlots = null;
+	}
+
+	/** Put a field in its slot, unless an earlier field has the same id */
+	void setFieldSlot( Field f ) {
+	    String id = f.getFieldId();
+	    if ( id != null ) {
+	        int slot = VRML97.getFieldSlot( getNodeId(), VRML97.getFieldId( id ));
+	        if (( slot != -1 ) && ( fieldSlots[ slot ] == null )) {
+	            fieldSlots[ slot ] = f;
+	        }
+	    }
+	}
+
+	/** Add a child, keeping the field slots up to date */
+	public void addChild( Object child ) {
+	    super.addChild( child );
+	    if (( fieldSlots != null ) && ( child instanceof Field )) {
+	        setFieldSlot( (Field)child );
+	    }
+	}
+
+	/** Remove a child, the field slots are created again when needed */
+	public void removeChild( Object child ) throws VrmlElementNotFoundException {
+	    fieldSlots = null;
+	    super.removeChild( child );
+	}
+
+	/** Get the field in a slot, creating the slots if necessary */
+	Field getFieldAtSlot( int slot ) {
+	    if ( fieldSlots == null ) {
+	        fieldSlots = new Field[ VRML97.getNumberSlots( getNodeId() ) ];
+	        int nChildren = numberChildren();
+	        for ( int i = 0; i < nChildren; i++ ) {
+	            VrmlElement e = getChildAt( i );
+	            if ( e instanceof Field ) {
+	                setFieldSlot( (Field)e );
+	            }
+	        }
+	    }
+	    return( fieldSlots[ slot ] );
+	}
+
+	/**
+	 *  Find a field given its VRML97 field id, only finds explicitly defined fields.
+	 *
+	 *  @param fieldId the VRML97 field id of the field
+	 *  @return  Field object with the given id, or null if the field
+	 *     is not explicitly mentioned in the VRML 2.0 file.
+	 */
+	public Field getField( int fieldId ) {
+	    if ( usesFieldSlots() ) {
+	        int slot = VRML97.getFieldSlot( getNodeId(), fieldId );
+	        if ( slot != -1 ) {
+	            return( getFieldAtSlot( slot ));
+	        }
+	    }
+	    if ( fieldId < 0 ) {
+	        return( null );
+	    }
+	    return( getField( VRML97.getFieldName( fieldId )));
+	}
+
 	/**
 	 *  Find a field given its name, only finds explicitly defined fields.
 	 *
@@ -313,6 +416,12 @@ public class Node extends Field {
 		if ( fieldName == null ) {
 			return( null );
 		} else {
+		    if ( usesFieldSlots() ) {
+    		    int slot = VRML97.getFieldSlot( getNodeId(), VRML97.getFieldId( fieldName ));
+    		    if ( slot != -1 ) {
+    		        return( getFieldAtSlot( slot ));
+    		    }
+    		}
 		    int nChildren = numberChildren();
 			for ( int i = 0; i < nChildren; i++ ) {
 				VrmlElement e = getChildAt( i );
@@ -433,7 +542,7 @@ public class Node extends Field {
 	public boolean getBoolean( String fieldName ) {
 		FieldValue fv = getFieldValue( fieldName );
 		if ( fv == null ) {
-		    return( VRML97.getDefaultBoolValue( getNodeName(), fieldName ));
+		    return( getDefaultBoolValue( fieldName ));
 		} else if ( fv instanceof SFBoolValue ) {
 			SFBoolValue sfbv = (SFBoolValue)fv;
 			return( sfbv.getValue() );
@@ -468,7 +577,12 @@ public class Node extends Field {
 	 * @return  true if the field is valid, otherwise false
 	 */
 	public boolean isValidFieldId( String fieldId ) {
-	    return( VRML97.isValidFieldId( getNodeName(), fieldId ));
+	    return( VRML97.isValidFieldId( getNodeId(), VRML97.getFieldId( fieldId )));
+	}
+
+	/** Get the default value of a boolean field, false if it is not a boolean field */
+	boolean getDefaultBoolValue( String fieldName ) {
+	    return( VRML97.getDefaultBoolValue( getNodeId(), VRML97.getFieldId( fieldName )));
 	}
 
 
@@ -572,6 +686,7 @@ public class Node extends Field {
         // add the new vrmlElement as a child
         FieldValue fv = children.getFieldValue();
         fv.addChild( newTokenData.getNode() );
+        clearNodeIndex();
         if ( defResolver != null ) {
             defResolver.resolve( newTokenData.getNode() );
         }
@@ -656,6 +771,7 @@ public class Node extends Field {
             tokenData.setInsertionToken( getFirstTokenOffset(), TokenTypes.LeftBrace );
             tokenData.insert( newTokenData );
             addChild( newTokenData.getField() );
+            clearNodeIndex();
 			return( newTokenData.getField() );
         } catch ( Exception e ) {
             System.out.println( "Exception: " + e );
@@ -683,6 +799,7 @@ public class Node extends Field {
             tokenData.setInsertionToken( getFirstTokenOffset(), TokenTypes.LeftBrace );
             tokenData.insert( newTokenData );
             addChild( newTokenData.getField() );
+            clearNodeIndex();
             return( newTokenData.getField() );
         } catch ( Exception e ) {
             System.out.println( "Exception: " + e );
@@ -719,6 +836,16 @@ public class Node extends Field {
         te.detailDump( s );
     }
 
+    /** Drop the NodeIndex of the Scene, the nodes it lists change when fields
+     *  or children are added or removed.
+     */
+    void clearNodeIndex() {
+        Scene s = (Scene)getScene();
+        if ( s != null ) {
+            s.clearNodeIndex();
+        }
+    }
+
     /** Remove a Field from the TokenEnumerator and scene graph */
     public void removeField( Field f ) throws VrmlElementNotFoundException {
         removeVrmlElement( f );
@@ -13,6 +13,7 @@ package com.trapezium.vrml.node;
 import com.trapezium.parse.TokenEnumerator;
 import com.trapezium.vrml.BadFieldId;
 import com.trapezium.vrml.SingleTokenElement;
+import com.trapezium.vrml.ParseContext;
 import com.trapezium.vrml.grammar.Spelling;
 import com.trapezium.vrml.grammar.Table7;
 import com.trapezium.vrml.fields.MFFieldValue;
@@ -41,6 +42,8 @@ import java.util.Enumeration;
  */
 public class NodeType extends SingleTokenElement {
 	static public boolean coplanarEnabled = false;
+
+	// defaults for each ParseContext, used directly by threads with no ParseContext bound
 	static public boolean verifyDisabled = false;
 	
 	// allows verify of IFS, ILS even when verify disabled
@@ -308,16 +311,10 @@ public class NodeType extends SingleTokenElement {
 		}
 	}
     static public void dumpState() {
-	    System.out.println( "NodeType.verifyDisabled " + verifyDisabled + ", usageChecksEnabled " + usageChecksEnabled );
+        ParseContext context = ParseContext.get();
+	    System.out.println( "NodeType.verifyDisabled " + context.getVerifyDisabled() + ", usageChecksEnabled " + context.getUsageChecksEnabled() );
 	}
 
-    /** Visitor used to locate any "IS" fields within a node.  Currently we don't
-     *  verify any node that contains an "IS" field, which is a bit too strict.
-     *  Ideally, we need to specify which fields are used in the verification
-     *  by node type, then only disable verification if any of these is an "IS" field.
-     */
-    static ISLocator isLocator = new ISLocator();
-    
     /** Verify the information in a node using a node specific verifier.
      *
      *  @param n the Node to verify
@@ -325,8 +322,9 @@ public class NodeType extends SingleTokenElement {
      *  @param s the Scene containing the node
      */
 	static public void verify( Node n, String nodeType, Scene s ) {
-		if ( verifyDisabled ) {
-		    if (( nodeType != null ) && usageChecksEnabled ) {
+	    ParseContext context = s.getParseContext();
+		if ( context.getVerifyDisabled() ) {
+		    if (( nodeType != null ) && context.getUsageChecksEnabled() ) {
 //		        System.out.println( "NodeType is '" + nodeType + "'" );
     		    if (!(( nodeType.compareTo( "IndexedFaceSet" ) == 0 ) ||
     		         ( nodeType.compareTo( "IndexedLineSet" ) == 0 ))) {
@@ -341,10 +339,22 @@ public class NodeType extends SingleTokenElement {
 		}
 		Verifier v = (Verifier)verifierTable.get( nodeType );
 		if ( v != null ) {
-		    isLocator.reset();
+		    // Visitor used to locate any "IS" fields within a node.  Currently we don't
+		    // verify any node that contains an "IS" field, which is a bit too strict.
+		    // Ideally, we need to specify which fields are used in the verification
+		    // by node type, then only disable verification if any of these is an "IS" field.
+		    // Not shared, since nodes may be verified on several parsing threads.
+		    ISLocator isLocator = new ISLocator();
 		    n.traverse( isLocator );
 		    if ( !isLocator.foundISField() ) {
-    			v.verify( n, s, s.getErrorSummary(), s.getVerifyList() );
+		        if ( v instanceof InterpolatorVerifier ) {
+		            // interpolator verifiers keep the key lists being checked in fields
+		            synchronized( v ) {
+            			v.verify( n, s, s.getErrorSummary(), s.getVerifyList() );
+            		}
+		        } else {
+        			v.verify( n, s, s.getErrorSummary(), s.getVerifyList() );
+        		}
     		}
 		}
 	}
@@ -358,7 +368,8 @@ public class NodeType extends SingleTokenElement {
      */
 	static public void verifyUsage( Hashtable usageTable, TokenEnumerator v, ErrorSummary errorSummary ) {
 //	    System.out.println( "verifyUsage, verifyDisabled " + verifyDisabled + ", usageChecksEnabled " + usageChecksEnabled );
-		if ( verifyDisabled && !usageChecksEnabled ) return;
+	    ParseContext context = ParseContext.get();
+		if ( context.getVerifyDisabled() && !context.getUsageChecksEnabled() ) return;
 		IndexedFaceSetVerifier.verifyUsage( usageTable, v, errorSummary );
 	}
 }
@@ -32,6 +32,11 @@ import java.util.Vector;
  *  copied from the PROTO declaration, with actual values from the
  *  instance substituted where indicated by IS fields.
  *
+ *  Nodes in the PROTO declaration without IS fields are the same in every
+ *  instance, so all instances refer to a single shared copy of each of these.
+ *  The shared copy is never changed in place, chisels change the text of the
+ *  PROTO declaration, which every instance refers to anyway.
+ *
  *  Note:  The above level of PROTOInstance construction is not complete.
  *
  *    USE nodeNameId
@@ -97,6 +102,21 @@ public class PROTOInstance extends Node {
         }
     }
 
+    /** Get the node id of the Node type compatible with this PROTO */
+    public int getNodeId() {
+        Node n = getPROTONodeType();
+        if ( n != null ) {
+            return( n.getNodeId() );
+        } else {
+            return( -1 );
+        }
+    }
+
+    /** Fields are declared by the PROTO interface, so they have no slots */
+    protected boolean usesFieldSlots() {
+        return( false );
+    }
+
 	/** get the field id with the closest spelling */
 	public String getClosestFieldId( String fieldName ) {
 	    if ( protoBase != null ) {
@@ -148,34 +168,53 @@ public class PROTOInstance extends Node {
 
 	/** Copy all nodes containing IS references from PROTO declaration body.
 	 *
-	 *  IS references are resolved as the copy takes place.
+	 *  IS references are resolved as the copy takes place.  Nodes without
+	 *  IS references are not copied, the instance refers to the copy shared
+	 *  by all instances of the PROTO.
 	 */
 	public void copyBaseNodeInfo() {
 	    if ( protoBase != null ) {
 	        Scene s = protoBase.getPROTObody();
 	        if ( s != null ) {
 	            int nChildren = s.numberChildren();
-//                ISLocator il = new ISLocator();
 	            for ( int i = 0; i < nChildren; i++ ) {
 	                VrmlElement vle = s.getChildAt( i );
 	                if ( vle instanceof Node ) {
-//	                    il.reset();
-//	                    vle.traverse( il );
-
-	                    // create copies of nodes that have IS field references
-//	                    if ( il.foundISField() ) {
-                            Node n = (Node)vle;
+                        Node n = (Node)vle;
+                        Node sharedNode = protoBase.getSharedNode( n, this );
+                        if ( sharedNode == null ) {
+                            // create copies of nodes that have IS field references
                             Node newNode = (Node)n.vrmlClone( this );
                             addChild( newNode );
-//                        }
+                        } else {
+                            // only the first instance becomes the parent of the shared copy
+                            VrmlElement sharedParent = sharedNode.getParent();
+                            addChild( sharedNode );
+                            if ( sharedParent != null ) {
+                                sharedNode.setParent( sharedParent );
+                            }
+                        }
 	                }
 	            }
 	        }
 	    }
 	}
 
+	/** Check if a node of the instance is the copy shared by all instances */
+	public boolean isSharedNode( VrmlElement ve ) {
+	    if ( protoBase != null ) {
+	        return( protoBase.isSharedNode( ve ));
+	    } else {
+	        return( false );
+	    }
+	}
+
 	/**
 	 *  Validate the nodes contained in a PROTO instance.
+	 *
+	 *  Shared copies are verified for each instance.  While this is done,
+	 *  the instance is made the parent of the shared copy, so that errors
+	 *  are reported at the instance.
 	 */
 	public void verify( TokenEnumerator v ) {
    		Scene scene = (Scene)getScene();
@@ -186,7 +225,10 @@ public class PROTOInstance extends Node {
     	        VrmlElement ve = getChildAt( i );
     	        if ( ve instanceof Node ) {
     	            Node node = (Node)ve;
+    	            VrmlElement nodeParent = node.getParent();
+    	            node.setParent( this );
            	    	NodeType.verify( node, node.getNodeName(), scene );
+           	    	node.setParent( nodeParent );
                	}
             }
        		v.setState( vstate );
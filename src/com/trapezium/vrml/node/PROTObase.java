@@ -11,9 +11,11 @@
 package com.trapezium.vrml.node;
 
 import java.util.Vector;
+import java.util.Hashtable;
 import com.trapezium.vrml.VrmlElement;
 import com.trapezium.vrml.NodeTypeId;
 import com.trapezium.vrml.fields.Field;
+import com.trapezium.vrml.fields.FieldValue;
 import com.trapezium.vrml.fields.ISField;
 import com.trapezium.vrml.Scene;
 import com.trapezium.vrml.grammar.Spelling;
@@ -44,6 +46,16 @@ abstract public class PROTObase extends Node {
 	boolean unusedInterfaceCheckComplete;
 	boolean unusedInterfacesExist;
 
+	/** copies of PROTO body nodes without IS fields, shared by all instances,
+	 *  key is the body node, value is the copy
+	 */
+	transient Hashtable sharedNodes;
+
+	/** the same copies the other way around, key is the copy, value is the
+	 *  body node, so a copy is found without searching all the values
+	 */
+	transient Hashtable sharedCopies;
+
 	/** Create a PROTO or EXTERNPROTO starting at a token */
 	public PROTObase( int tokenOffset ) {
 		super( tokenOffset );
@@ -174,6 +186,63 @@ abstract public class PROTObase extends Node {
 	    return( null );
 	}
 	
+	/** Get the copy of a PROTO body node shared by all instances of the PROTO.
+	 *
+	 *  The copy of a node with no IS fields is the same for every instance,
+	 *  since the copy refers to the field values of the body node.  It is
+	 *  created and verified by the first instance, and is the child of that
+	 *  instance.  Other instances refer to it without becoming its parent.
+	 *
+	 *  @param bodyNode node in the PROTO body
+	 *  @param pi PROTOInstance the copy is created for, if it does not exist yet
+	 *  @return the shared copy, or null if the body node has IS fields, in which
+	 *     case each instance needs its own copy
+	 */
+	synchronized Node getSharedNode( Node bodyNode, PROTOInstance pi ) {
+	    if ( sharedNodes == null ) {
+	        sharedNodes = new Hashtable();
+	        sharedCopies = new Hashtable();
+	    }
+	    Node sharedNode = (Node)sharedNodes.get( bodyNode );
+	    if (( sharedNode == null ) && !hasISField( bodyNode )) {
+	        sharedNode = (Node)bodyNode.vrmlClone( pi );
+	        if ( sharedNode != null ) {
+	            sharedNodes.put( bodyNode, sharedNode );
+	            sharedCopies.put( sharedNode, bodyNode );
+	        }
+	    }
+	    return( sharedNode );
+	}
+
+	/** Check if a node is a copy shared by all instances of the PROTO */
+	boolean isSharedNode( VrmlElement ve ) {
+	    if ( sharedCopies == null ) {
+	        return( false );
+	    } else {
+	        return( sharedCopies.get( ve ) != null );
+	    }
+	}
+
+	/** Check if any field of a PROTO body node gets its value from an IS field.
+	 *  These are the fields that are different in each copy of the node.
+	 */
+	static boolean hasISField( Node bodyNode ) {
+	    Node n = bodyNode.getNode();
+	    if ( n != null ) {
+	        int nChildren = n.numberChildren();
+	        for ( int i = 0; i < nChildren; i++ ) {
+	            VrmlElement ve = n.getChildAt( i );
+	            if ( ve instanceof Field ) {
+	                FieldValue fv = ((Field)ve).getFieldValue();
+	                if (( fv != null ) && ( fv.getChildAt( 0 ) instanceof ISField )) {
+	                    return( true );
+	                }
+	            }
+	        }
+	    }
+	    return( false );
+	}
+
 	/** Get the first node of the PROTO, indicate type for the PROTO */
 	public Node getPROTONodeType() {
 	    return( getNodeAt( 0 ));
@@ -64,6 +64,11 @@ public class ScriptInstance extends Node {
     public String getNodeName() {
         return( scriptBase.getNodeName() );
     }
+
+    /** Script fields are mostly declared by the Script, so they have no slots */
+    protected boolean usesFieldSlots() {
+        return( false );
+    }
     
     public String getBaseName() {
         return( scriptBase.getBaseName() );
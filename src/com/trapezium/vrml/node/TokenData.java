@@ -12,6 +12,7 @@ package com.trapezium.vrml.node;
 
 import com.trapezium.vrml.VrmlElement;
 import com.trapezium.vrml.Scene;
+import com.trapezium.vrml.ParseContext;
 import com.trapezium.vrml.visitor.AdjustmentVisitor;
 import com.trapezium.vrml.grammar.*;
 import com.trapezium.vrml.fields.Field;
@@ -230,12 +231,13 @@ public class TokenData {
      */
     boolean nodeVerifyState = false;
     void disableNodeVerify() {
-        nodeVerifyState = NodeType.verifyDisabled;
-        NodeType.verifyDisabled = true;
+        ParseContext context = ParseContext.get();
+        nodeVerifyState = context.getVerifyDisabled();
+        context.setVerifyDisabled( true );
     }
     
     void restoreNodeVerify() {
-        NodeType.verifyDisabled = nodeVerifyState;
+        ParseContext.get().setVerifyDisabled( nodeVerifyState );
     }
 
     /** Get the first token */
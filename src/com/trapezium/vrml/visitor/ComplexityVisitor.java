@@ -23,10 +23,12 @@ import com.trapezium.vrml.node.PROTOInstance;
 import com.trapezium.vrml.node.PROTObase;
 import com.trapezium.vrml.node.DEFUSENode;
 import com.trapezium.vrml.VrmlElement;
+import com.trapezium.vrml.grammar.SceneOutline;
 import com.trapezium.pattern.Visitor;
 
 import com.trapezium.parse.TokenEnumerator;
 import java.io.PrintStream;
+import java.util.BitSet;
 import java.util.Hashtable;
 
 /**
@@ -42,6 +44,26 @@ public class ComplexityVisitor extends Visitor {
 	ComplexityData cd;
 	Hashtable visited;
 
+	/** field values of outline nodes, by node, only while visitOutline runs */
+	BitSet notSolid;
+	BitSet noBeginCap;
+	BitSet noEndCap;
+	int[] xDimensions;
+	int[] zDimensions;
+	int[] faces;
+	int[] crossSectionEntries;
+	int[] spineEntries;
+
+    /** fields a SceneOutline keeps as text for visitOutline */
+    static public final String[] OutlineCapturedFields = {
+        "url", "solid", "beginCap", "endCap", "xDimension", "zDimension"
+    };
+
+    /** fields a SceneOutline counts the numbers of for visitOutline */
+    static public final String[] OutlineCountedFields = {
+        "coordIndex", "crossSection", "spine"
+    };
+
     /** class constructor */
 	public ComplexityVisitor( ComplexityData cd, TokenEnumerator v ) {
 		super( v );
@@ -49,6 +71,16 @@ public class ComplexityVisitor extends Visitor {
 		visited = new Hashtable();
 	}
 
+    /** class constructor, for collecting info from a SceneOutline with visitOutline */
+	public ComplexityVisitor( ComplexityData cd ) {
+		this( cd, null );
+	}
+
+    /** USE nodes are traversed, to count the geometry they refer to */
+    public boolean visitsUntraversable() {
+        return( true );
+    }
+
     /** get the ComplexityData from this visitor, used to add to sum total */
 	public ComplexityData getComplexityData() {
 		return( cd );
@@ -87,10 +119,13 @@ public class ComplexityVisitor extends Visitor {
 		} else if ( a instanceof Field ) {
 			Field f = (Field)a;
 			if ( f instanceof Node ) {
-			    if ( visited.get( f ) != null ) {
-			        return( false );
-			    }
-			    visited.put( f, f );
+			    // nodes shared by PROTO instances are counted once for each instance
+			    if ( !((Node)f).isSharedPROTOnode() ) {
+    			    if ( visited.get( f ) != null ) {
+    			        return( false );
+    			    }
+    			    visited.put( f, f );
+    			}
 			    if ( f instanceof DEFUSENode ) {
 			        DEFUSENode dun = (DEFUSENode)f;
 			        if ( !dun.isDEF() ) {
@@ -238,6 +273,230 @@ public class ComplexityVisitor extends Visitor {
 		}
 	}
 
+    /** Collect complexity info from a SceneOutline instead of a scene graph.
+     *  <P>
+     *  The outline must keep the OutlineCapturedFields as text, and count the
+     *  numbers in the OutlineCountedFields.  As with the scene graph, geometry
+     *  is counted again for each USE in a geometry field, and geometry in a PROTO
+     *  body is counted again for each instance of the PROTO.  Field values of
+     *  PROTO instances are not known, so an instance in a geometry field only
+     *  counts if the PROTO is a Box, Cone, Cylinder or Sphere.
+     */
+	public void visitOutline( SceneOutline outline ) {
+	    int numberNodes = outline.getNumberNodes();
+	    notSolid = new BitSet( numberNodes );
+	    noBeginCap = new BitSet( numberNodes );
+	    noEndCap = new BitSet( numberNodes );
+	    xDimensions = new int[ numberNodes ];
+	    zDimensions = new int[ numberNodes ];
+	    int numberCaptured = outline.getNumberCapturedFields();
+	    for ( int i = 0; i < numberCaptured; i++ ) {
+	        int node = outline.getCapturedNode( i );
+	        if ( node == -1 ) {
+	            continue;
+	        }
+	        String fName = outline.getCapturedField( i );
+	        String value = outline.getCapturedValue( i );
+	        if ( fName.compareTo( "url" ) == 0 ) {
+	            if ( outline.getPROTO( node ) == -1 ) {
+	                incInlines( value );
+	            }
+	        } else if ( fName.compareTo( "solid" ) == 0 ) {
+	            setFalse( notSolid, node, value );
+	        } else if ( fName.compareTo( "beginCap" ) == 0 ) {
+	            setFalse( noBeginCap, node, value );
+	        } else if ( fName.compareTo( "endCap" ) == 0 ) {
+	            setFalse( noEndCap, node, value );
+	        } else if ( fName.compareTo( "xDimension" ) == 0 ) {
+	            xDimensions[ node ] = getIntValue( value );
+	        } else if ( fName.compareTo( "zDimension" ) == 0 ) {
+	            zDimensions[ node ] = getIntValue( value );
+	        }
+	    }
+
+	    // -1 for fields that are not in the file
+	    faces = new int[ numberNodes ];
+	    crossSectionEntries = new int[ numberNodes ];
+	    spineEntries = new int[ numberNodes ];
+	    for ( int i = 0; i < numberNodes; i++ ) {
+	        faces[i] = -1;
+	        crossSectionEntries[i] = -1;
+	        spineEntries[i] = -1;
+	    }
+	    int numberCounted = outline.getNumberCountedFields();
+	    for ( int i = 0; i < numberCounted; i++ ) {
+	        int node = outline.getCountedNode( i );
+	        if ( node == -1 ) {
+	            continue;
+	        }
+	        String fName = outline.getCountedField( i );
+	        if ( fName.compareTo( "coordIndex" ) == 0 ) {
+	            faces[ node ] = outline.getGroupCount( i );
+	        } else if ( fName.compareTo( "crossSection" ) == 0 ) {
+	            crossSectionEntries[ node ] = outline.getNumberCount( i )/2;
+	        } else if ( fName.compareTo( "spine" ) == 0 ) {
+	            spineEntries[ node ] = outline.getNumberCount( i )/3;
+	        }
+	    }
+
+	    // counts are polygons, cones, spheres, cylinders, for the scene and each PROTO body
+	    int numberPROTOs = outline.getNumberPROTOs();
+	    int[] sceneCounts = new int[ 4 ];
+	    int[][] PROTOcounts = new int[ numberPROTOs ][];
+	    String[] PROTOtypes = new String[ numberPROTOs ];
+	    boolean[] PROTOtyped = new boolean[ numberPROTOs ];
+	    for ( int i = 0; i < numberPROTOs; i++ ) {
+	        PROTOcounts[i] = new int[ 4 ];
+	    }
+	    for ( int i = 0; i < numberNodes; i++ ) {
+	        int p = outline.getPROTO( i );
+	        int[] counts = ( p == -1 ) ? sceneCounts : PROTOcounts[p];
+	        if (( p != -1 ) && !PROTOtyped[p] && ( outline.getParent( i ) == -1 )) {
+	            PROTOtypes[p] = outline.getNodeType( i );
+	            PROTOtyped[p] = true;
+	        }
+	        boolean isGeometry = "geometry".equals( outline.getParentField( i ));
+	        int n = outline.isUSE( i ) ? outline.getUsedNode( i ) : i;
+	        if ( n == -1 ) {
+	            continue;
+	        }
+	        int q = getInstancePROTO( outline, n );
+	        if ( q != -1 ) {
+	            if ( !outline.isUSE( i )) {
+	                for ( int j = 0; j < 4; j++ ) {
+	                    counts[j] += PROTOcounts[q][j];
+	                }
+	            }
+	            if ( isGeometry ) {
+	                incCounts( counts, -1, PROTOtypes[q] );
+	            }
+	        } else if ( isGeometry ) {
+	            incCounts( counts, n, outline.getNodeType( n ));
+	        }
+	    }
+	    cd.incPolygonCount( sceneCounts[0] );
+	    for ( int i = 0; i < sceneCounts[1]; i++ ) {
+	        cd.incConeCount();
+	    }
+	    for ( int i = 0; i < sceneCounts[2]; i++ ) {
+	        cd.incSphereCount();
+	    }
+	    for ( int i = 0; i < sceneCounts[3]; i++ ) {
+	        cd.incCylinderCount();
+	    }
+	    notSolid = null;
+	    noBeginCap = null;
+	    noEndCap = null;
+	    xDimensions = null;
+	    zDimensions = null;
+	    faces = null;
+	    crossSectionEntries = null;
+	    spineEntries = null;
+	}
+
+    /** Get the PROTO declared before a node that the node is an instance of,
+     *  -1 if the node is not a PROTO instance.
+     */
+	int getInstancePROTO( SceneOutline outline, int node ) {
+	    if ( outline.getNodeId( node ) != -1 ) {
+	        return( -1 );
+	    }
+	    String nodeName = outline.getNodeType( node );
+	    if ( nodeName == null ) {
+	        return( -1 );
+	    }
+	    int first = outline.getFirstToken( node );
+	    for ( int p = outline.getNumberPROTOs() - 1; p >= 0; p-- ) {
+	        if (( outline.getPROTOLastToken( p ) < first ) && nodeName.equals( outline.getPROTOName( p ))) {
+	            return( p );
+	        }
+	    }
+	    return( -1 );
+	}
+
+    /** Add the counts of a geometry node in an outline.
+     *
+     *  @param counts polygons, cones, spheres, cylinders
+     *  @param n the node, -1 if its field values are not known
+     *  @param nodeName the type of the node
+     */
+	void incCounts( int[] counts, int n, String nodeName ) {
+	    if ( nodeName == null ) {
+	        return;
+	    }
+	    boolean solid = ( n == -1 ) || !notSolid.get( n );
+	    if ( nodeName.compareTo( "Cone" ) == 0 ) {
+	        counts[1]++;
+	    } else if ( nodeName.compareTo( "Sphere" ) == 0 ) {
+	        counts[2]++;
+	    } else if ( nodeName.compareTo( "Cylinder" ) == 0 ) {
+	        counts[3]++;
+	    } else if ( nodeName.compareTo( "Box" ) == 0 ) {
+	        counts[0] += 6;
+	    } else if ( n == -1 ) {
+	        return;
+	    } else if ( nodeName.compareTo( "IndexedFaceSet" ) == 0 ) {
+	        int numberFaces = ( faces[n] == -1 ) ? 0 : faces[n];
+	        counts[0] += solid ? numberFaces : numberFaces*2;
+	    } else if ( nodeName.compareTo( "ElevationGrid" ) == 0 ) {
+	        int xValue = xDimensions[n];
+	        int zValue = zDimensions[n];
+	        if (( xValue > 1 ) && ( zValue > 1 )) {
+	            int polygonCount = ( xValue - 1 ) * ( zValue - 1 );
+	            counts[0] += solid ? polygonCount : polygonCount*2;
+	        }
+	    } else if ( nodeName.compareTo( "Extrusion" ) == 0 ) {
+	        int spineCount = ( spineEntries[n] == -1 ) ? 2 : spineEntries[n];
+	        int crossSectionCount = ( crossSectionEntries[n] == -1 ) ? 5 : crossSectionEntries[n];
+	        int polyCount = 0;
+	        if (( spineCount > 0 ) && ( crossSectionCount > 0 )) {
+	            polyCount = ( spineCount - 1 ) * (( crossSectionCount - 1 ) * 2 );
+	        }
+	        if ( !noBeginCap.get( n )) {
+	            polyCount++;
+	        }
+	        if ( !noEndCap.get( n )) {
+	            polyCount++;
+	        }
+	        counts[0] += solid ? polyCount : polyCount*2;
+	    }
+	}
+
+    /** add each quoted string in a url value kept as text */
+	void incInlines( String value ) {
+	    int start = value.indexOf( '"' );
+	    while ( start != -1 ) {
+	        int end = start + 1;
+	        while (( end < value.length() ) && ( value.charAt( end ) != '"' )) {
+	            if ( value.charAt( end ) == '\\' ) {
+	                end++;
+	            }
+	            end++;
+	        }
+	        if ( end >= value.length() ) {
+	            break;
+	        }
+	        cd.incInline( value.substring( start, end + 1 ));
+	        start = value.indexOf( '"', end + 1 );
+	    }
+	}
+
+    /** set a node's bit if a boolean value kept as text is FALSE */
+	void setFalse( BitSet bits, int node, String value ) {
+	    if ( value.compareTo( "FALSE" ) == 0 ) {
+	        bits.set( node );
+	    }
+	}
+
+    /** get an integer value kept as text, 0 if it is not an integer */
+	int getIntValue( String value ) {
+	    try {
+	        return( Integer.parseInt( value ));
+	    } catch ( NumberFormatException e ) {
+	        return( 0 );
+	    }
+	}
+
     /** print a summary of the information to a PrintStream */
 	public void summary( PrintStream ps ) {
 		cd.summary( ps );
@@ -14,6 +14,7 @@ import com.trapezium.parse.TokenEnumerator;
 import com.trapezium.pattern.Visitor;
 import com.trapezium.vrml.VrmlElement;
 import com.trapezium.vrml.node.DEFUSENode;
+import com.trapezium.vrml.node.PROTOInstance;
 
 /**
  *  Sets all parent fields.
@@ -55,6 +56,10 @@ public class ParentSetter extends Visitor {
 							continue;
 						}
 					}
+					// node shared by PROTO instances keeps the instance it was created for
+					if (( vle instanceof PROTOInstance ) && ((PROTOInstance)vle).isSharedNode( vle2 )) {
+					    continue;
+					}
 					vle2.setParent( vle );
 				}
 			}
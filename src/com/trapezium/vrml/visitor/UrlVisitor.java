@@ -20,6 +20,7 @@ import com.trapezium.pattern.Visitor;
 import com.trapezium.util.RemoteUrlGenerator;
 import com.trapezium.vrml.VrmlElement;
 import com.trapezium.vrml.Scene;
+import com.trapezium.vrml.PROTOLibrary;
 import com.trapezium.vrml.ROUTE;
 import com.trapezium.vrml.RouteDestination;
 import com.trapezium.vrml.grammar.VRML97;
@@ -58,7 +59,6 @@ public class UrlVisitor extends Visitor {
 	
 	/** files that we aren't checking */
 	Vector nocheckFiles;
-	Vector protoListByFile;
 	String[] bgurls;
 	
 	boolean originalNamesOnly;
@@ -263,7 +263,6 @@ public class UrlVisitor extends Visitor {
 					System.out.println( "checking existence of '" + fileName + "'" );
 					InputStream is = InputStreamFactory.getInputStream( fileName );
 					fileFound = true;
-					PROTOlist pl = null;
 					if (( fileName.lastIndexOf( ".class" ) > 0 ) && scriptUrlFlag ) {
 						Class nodeClass = null;
 						try {
@@ -272,29 +271,13 @@ public class UrlVisitor extends Visitor {
 							n.addChild( new ScriptFileParsed( -1 ));
 						} catch ( Exception e ) {
 						}
-					} else if ( scriptUrlFlag || externPROTO ) {
+					} else if ( scriptUrlFlag ) {
 						TextLineEnumerator tle = new TextLineEnumerator( new TextLineParser( is ));
 						int linecount = tle.size();
 						for ( int j = 0; j < linecount; j++ ) {
-							String s = tle.getLineAt( j );
-							if ( scriptUrlFlag ) {
-								VRML97.addFunction( s, n );
-							} else if ( externPROTO ) {
-								if (( s.indexOf( "PROTO" ) != -1 ) && ( s.indexOf( "EXTERNPROTO" ) == -1 )) {
-									if ( pl == null ) {
-										pl = new PROTOlist( fileName );
-										if ( protoListByFile == null ) {
-											protoListByFile = new Vector();
-										}
-										protoListByFile.addElement( pl );
-									}
-									pl.addPROTOline( s );
-								}
-							}
-						}
-						if ( scriptUrlFlag ) {
-							n.addChild( new ScriptFileParsed( -1 ));
+							VRML97.addFunction( tle.getLineAt( j ), n );
 						}
+						n.addChild( new ScriptFileParsed( -1 ));
 					}						
 					is.close();
 				}
@@ -350,34 +333,19 @@ public class UrlVisitor extends Visitor {
     			}
 			}
 			if ( externPROTO && !originalNamesOnly ) {
-				PROTOlist pl = getProtoList( fileName );
-				if ( pl == null ) {
+				PROTOLibrary library = null;
+				if ( !fileNotFound( fileName )) {
+					library = PROTOLibrary.get( fileName );
+				}
+				if (( library == null ) || ( library.getNumberPROTOs() == 0 )) {
 					n.setError( "Referenced file has no PROTOs." );
-				} else {
-					if ( protoName != null ) {
-						if ( !pl.hasPROTO( protoName )) {
-							n.setError( "Referenced file has no PROTO named \"" + protoName + "\"" );
-						}
-					}
+				} else if (( protoName != null ) && !library.hasPROTO( protoName )) {
+					n.setError( "Referenced file has no PROTO named \"" + protoName + "\"" );
 				}
 			}
 		}
 	}
 
-	public PROTOlist getProtoList( String fileName ) {
-		if ( protoListByFile == null ) {
-			return( null );
-		}
-		int plcount = protoListByFile.size();
-		for ( int i = 0; i < plcount; i++ ) {
-			PROTOlist test = (PROTOlist)protoListByFile.elementAt( i );
-			if ( test.getFileName().compareTo( fileName ) == 0 ) {
-				return( test );		
-			}
-		}
-		return( null );
-	}
-
     /** add the file name to the list of file names if it isn't already there */
 	public void addFile( String fileName ) {
 		if ( !fileFound( fileName )) {
@@ -419,42 +387,3 @@ public class UrlVisitor extends Visitor {
 		}
 	}
 }
-
-
-
-class PROTOlist {
-	String fileName;
-	Vector protoLines;
-
-	public PROTOlist( String fileName ) {
-		this.fileName = fileName;
-		protoLines = new Vector();
-	}
-
-	public String getFileName() {
-		return( fileName );
-	}
-
-	public int getNumberPROTOlines() {
-		return( protoLines.size() );
-	}
-
-	public String getPROTOlineAt( int offset ) {
-		return( (String)protoLines.elementAt( offset ));
-	}
-
-	public void addPROTOline( String line ) {
-		protoLines.addElement( line );
-	}
-
-	public boolean hasPROTO( String name ) {
-		int n = protoLines.size();
-		for ( int i = 0; i < n; i++ ) {
-			String s = getPROTOlineAt( i );
-			if ( s.indexOf( name ) > 0 ) {
-				return( true );
-			}
-		}
-		return( false );
-	}
-}